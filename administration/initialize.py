@@ -36,11 +36,19 @@ MOPWD = MONGO + 'pwd'
 SETTINGS = 'settings'
 SHOCKURL = 'shock_location'
 SHOCKUSER = 'shock_user'
+FSLOC = 'fs_location'
+FSSYNC = 'fs_sync'
 BACKEND = 'backend'
 TYPE_DB = 'type_db'
+BLOB_CODEC = 'blob_codec'
 BACKENDCREDS = 'backend-secret'
 SHOCK = 'shock'
 GFS = 'gridFS'
+FS = 'filesystem'
+NO_SYNC = 'none'
+FILE_SYNC = 'file'
+NO_CODEC = 'none'
+GZIP = 'gzip'
 
 REQPARAMS = [MOHOST, MODB]
 AUTHPARAMS = [MOUSER, MOPWD]
@@ -97,7 +105,8 @@ def getparams(params, cfg, dropall):
 
 
 def printDBsettings(settings):
-    for s in [TYPE_DB, BACKEND, SHOCKURL, SHOCKUSER]:
+    for s in [TYPE_DB, BACKEND, SHOCKURL, SHOCKUSER, FSLOC, FSSYNC,
+              BLOB_CODEC]:
         print(s + '=' + str(settings.get(s, None)))
 
 
@@ -127,7 +136,8 @@ def _get_token(user_id, password,
 
 
 def configDB(wscfg, db):
-    settings = {SHOCKURL: None, SHOCKUSER: None, BACKEND: None}
+    settings = {SHOCKURL: None, SHOCKUSER: None, BACKEND: None, FSLOC: None,
+                FSSYNC: None}
     typedb = None
     while not typedb:
         typedb = input('Please enter the name of the mongodb type database: ')
@@ -136,7 +146,8 @@ def configDB(wscfg, db):
                   'workspace database name: ' + wscfg[MODB])
             typedb = None
     settings[TYPE_DB] = typedb
-    backend = getinput('Choose a backend: ', ('s', SHOCK), {'g': GFS})
+    backend = getinput('Choose a backend: ', ('s', SHOCK),
+                       {'g': GFS, 'f': FS})
     if backend == 's':
         settings[BACKEND] = SHOCK
         shockurl = input('Please enter the url of the shock server: ')
@@ -159,8 +170,26 @@ def configDB(wscfg, db):
             printerr(shockurl + ' is not a shock server root url')
         settings[SHOCKURL] = j['url']
         settings[SHOCKUSER] = shockuser
+    elif backend == 'f':
+        settings[BACKEND] = FS
+        fsloc = None
+        while not fsloc:
+            fsloc = input('Please enter the absolute path of the directory ' +
+                          'in which to store objects: ')
+            if not os.path.isabs(fsloc):
+                print('The path must be absolute.')
+                fsloc = None
+        settings[FSLOC] = fsloc
+        sync = getinput('Sync objects to disk as they are saved?',
+                        ('n', NO_SYNC), {'f': FILE_SYNC})
+        settings[FSSYNC] = FILE_SYNC if sync == 'f' else NO_SYNC
     else:
         settings[BACKEND] = GFS
+    # blobs written with any codec are always readable, so this is safe to
+    # change
+    codec = getinput('Compress new objects in the backend?', ('n', NO_CODEC),
+                     {'g': GZIP})
+    settings[BLOB_CODEC] = GZIP if codec == 'g' else NO_CODEC
 
     db[SETTINGS].update({}, settings, upsert=True)
     settings = db[SETTINGS].find_one()
@@ -234,7 +263,7 @@ def main():
         print(
 '''\nYou can change the server configuration now, but if the workspaceservice
 has already saved objects it could put the workspace and the backend store
-(gridFS or shock) in an inconsistent state, in which case all workspace
+(gridFS, shock, or the filesystem) in an inconsistent state, in which case all workspace
 objects will be irretrievable and you will make a lot of people really really
 mad.''')
         prompts = ['Do you want to change the configuration?',
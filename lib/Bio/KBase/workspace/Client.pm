@@ -1551,6 +1551,7 @@ ObjectSaveData is a reference to a hash where the following keys are defined:
 	meta has a value which is a Workspace.usermeta
 	provenance has a value which is a reference to a list where each element is a Workspace.ProvenanceAction
 	hidden has a value which is a Workspace.boolean
+	upload_id has a value which is a Workspace.upload_id
 type_string is a string
 obj_name is a string
 obj_id is an int
@@ -1581,6 +1582,7 @@ ExternalDataUnit is a reference to a hash where the following keys are defined:
 	data_id has a value which is a string
 	description has a value which is a string
 boolean is an int
+upload_id is a string
 object_info is a reference to a list containing 11 items:
 	0: (objid) a Workspace.obj_id
 	1: (name) a Workspace.obj_name
@@ -1617,6 +1619,7 @@ ObjectSaveData is a reference to a hash where the following keys are defined:
 	meta has a value which is a Workspace.usermeta
 	provenance has a value which is a reference to a list where each element is a Workspace.ProvenanceAction
 	hidden has a value which is a Workspace.boolean
+	upload_id has a value which is a Workspace.upload_id
 type_string is a string
 obj_name is a string
 obj_id is an int
@@ -1647,6 +1650,7 @@ ExternalDataUnit is a reference to a hash where the following keys are defined:
 	data_id has a value which is a string
 	description has a value which is a string
 boolean is an int
+upload_id is a string
 object_info is a reference to a list containing 11 items:
 	0: (objid) a Workspace.obj_id
 	1: (name) a Workspace.obj_name
@@ -1720,6 +1724,365 @@ sub save_objects
 
 
 
+=head2 start_upload
+
+  $id = $obj->start_upload($chunk_size)
+
+=over 4
+
+=item Parameter and return types
+
+=begin html
+
+<pre>
+$chunk_size is an int
+$id is a Workspace.upload_id
+upload_id is a string
+
+</pre>
+
+=end html
+
+=begin text
+
+$chunk_size is an int
+$id is a Workspace.upload_id
+upload_id is a string
+
+
+=end text
+
+=item Description
+
+Start a chunked upload of the data for an object. Chunked uploads
+allow saving objects that are too large to send in a single
+save_objects call. Once all the chunks are uploaded, save the object
+by providing the upload id to save_objects rather than the data.
+
+Uploads are held by the server process that started them, so an
+interrupted upload can only be resumed if it is sent to the same
+server, and is lost if that server restarts. Idle uploads are
+deleted after a day. A user may have at most 10 uploads in progress,
+and the server at most 100.
+
+int chunk_size - the size of each chunk in bytes. Every chunk except
+        the last must be exactly this size. The maximum chunk size is
+        50MB.
+
+=back
+
+=cut
+
+sub start_upload
+{
+    my($self, @args) = @_;
+
+# Authentication: required
+
+    if ((my $n = @args) != 1)
+    {
+	Bio::KBase::Exceptions::ArgumentValidationError->throw(error =>
+							       "Invalid argument count for function start_upload (received $n, expecting 1)");
+    }
+    {
+	my($chunk_size) = @args;
+
+	my @_bad_arguments;
+        (!ref($chunk_size)) or push(@_bad_arguments, "Invalid type for argument 1 \"chunk_size\" (value was \"$chunk_size\")");
+        if (@_bad_arguments) {
+	    my $msg = "Invalid arguments passed to start_upload:\n" . join("", map { "\t$_\n" } @_bad_arguments);
+	    Bio::KBase::Exceptions::ArgumentValidationError->throw(error => $msg,
+								   method_name => 'start_upload');
+	}
+    }
+
+    my $result = $self->{client}->call($self->{url}, $self->{headers}, {
+	method => "Workspace.start_upload",
+	params => \@args,
+    });
+    if ($result) {
+	if ($result->is_error) {
+	    Bio::KBase::Exceptions::JSONRPC->throw(error => $result->error_message,
+					       code => $result->content->{error}->{code},
+					       method_name => 'start_upload',
+					       data => $result->content->{error}->{error} # JSON::RPC::ReturnObject only supports JSONRPC 1.1 or 1.O
+					      );
+	} else {
+	    return wantarray ? @{$result->result} : $result->result->[0];
+	}
+    } else {
+        Bio::KBase::Exceptions::HTTP->throw(error => "Error invoking method start_upload",
+					    status_line => $self->{client}->status_line,
+					    method_name => 'start_upload',
+				       );
+    }
+}
+
+
+
+=head2 upload_chunk
+
+  $obj->upload_chunk($id, $chunk, $data, $md5)
+
+=over 4
+
+=item Parameter and return types
+
+=begin html
+
+<pre>
+$id is a Workspace.upload_id
+$chunk is an int
+$data is a string
+$md5 is a string
+upload_id is a string
+
+</pre>
+
+=end html
+
+=begin text
+
+$id is a Workspace.upload_id
+$chunk is an int
+$data is a string
+$md5 is a string
+upload_id is a string
+
+
+=end text
+
+=item Description
+
+Upload a chunk of object data. Chunks may be uploaded in any order,
+and a chunk may be uploaded again, for example after a network error.
+
+upload_id id - the id of the upload.
+int chunk - the number of the chunk, starting at 0.
+string data - the chunk data, base64 encoded.
+string md5 - the hex encoded MD5 checksum of the chunk data before
+        encoding.
+
+=back
+
+=cut
+
+sub upload_chunk
+{
+    my($self, @args) = @_;
+
+# Authentication: required
+
+    if ((my $n = @args) != 4)
+    {
+	Bio::KBase::Exceptions::ArgumentValidationError->throw(error =>
+							       "Invalid argument count for function upload_chunk (received $n, expecting 4)");
+    }
+    {
+	my($id, $chunk, $data, $md5) = @args;
+
+	my @_bad_arguments;
+        (!ref($id)) or push(@_bad_arguments, "Invalid type for argument 1 \"id\" (value was \"$id\")");
+        (!ref($chunk)) or push(@_bad_arguments, "Invalid type for argument 2 \"chunk\" (value was \"$chunk\")");
+        (!ref($data)) or push(@_bad_arguments, "Invalid type for argument 3 \"data\" (value was \"$data\")");
+        (!ref($md5)) or push(@_bad_arguments, "Invalid type for argument 4 \"md5\" (value was \"$md5\")");
+        if (@_bad_arguments) {
+	    my $msg = "Invalid arguments passed to upload_chunk:\n" . join("", map { "\t$_\n" } @_bad_arguments);
+	    Bio::KBase::Exceptions::ArgumentValidationError->throw(error => $msg,
+								   method_name => 'upload_chunk');
+	}
+    }
+
+    my $result = $self->{client}->call($self->{url}, $self->{headers}, {
+	method => "Workspace.upload_chunk",
+	params => \@args,
+    });
+    if ($result) {
+	if ($result->is_error) {
+	    Bio::KBase::Exceptions::JSONRPC->throw(error => $result->error_message,
+					       code => $result->content->{error}->{code},
+					       method_name => 'upload_chunk',
+					       data => $result->content->{error}->{error} # JSON::RPC::ReturnObject only supports JSONRPC 1.1 or 1.O
+					      );
+	} else {
+	    return;
+	}
+    } else {
+        Bio::KBase::Exceptions::HTTP->throw(error => "Error invoking method upload_chunk",
+					    status_line => $self->{client}->status_line,
+					    method_name => 'upload_chunk',
+				       );
+    }
+}
+
+
+
+=head2 get_upload_chunks
+
+  $chunks = $obj->get_upload_chunks($id)
+
+=over 4
+
+=item Parameter and return types
+
+=begin html
+
+<pre>
+$id is a Workspace.upload_id
+$chunks is a reference to a list where each element is an int
+upload_id is a string
+
+</pre>
+
+=end html
+
+=begin text
+
+$id is a Workspace.upload_id
+$chunks is a reference to a list where each element is an int
+upload_id is a string
+
+
+=end text
+
+=item Description
+
+List the chunks received so far for an upload, so that an interrupted
+upload may be resumed.
+
+=back
+
+=cut
+
+sub get_upload_chunks
+{
+    my($self, @args) = @_;
+
+# Authentication: required
+
+    if ((my $n = @args) != 1)
+    {
+	Bio::KBase::Exceptions::ArgumentValidationError->throw(error =>
+							       "Invalid argument count for function get_upload_chunks (received $n, expecting 1)");
+    }
+    {
+	my($id) = @args;
+
+	my @_bad_arguments;
+        (!ref($id)) or push(@_bad_arguments, "Invalid type for argument 1 \"id\" (value was \"$id\")");
+        if (@_bad_arguments) {
+	    my $msg = "Invalid arguments passed to get_upload_chunks:\n" . join("", map { "\t$_\n" } @_bad_arguments);
+	    Bio::KBase::Exceptions::ArgumentValidationError->throw(error => $msg,
+								   method_name => 'get_upload_chunks');
+	}
+    }
+
+    my $result = $self->{client}->call($self->{url}, $self->{headers}, {
+	method => "Workspace.get_upload_chunks",
+	params => \@args,
+    });
+    if ($result) {
+	if ($result->is_error) {
+	    Bio::KBase::Exceptions::JSONRPC->throw(error => $result->error_message,
+					       code => $result->content->{error}->{code},
+					       method_name => 'get_upload_chunks',
+					       data => $result->content->{error}->{error} # JSON::RPC::ReturnObject only supports JSONRPC 1.1 or 1.O
+					      );
+	} else {
+	    return wantarray ? @{$result->result} : $result->result->[0];
+	}
+    } else {
+        Bio::KBase::Exceptions::HTTP->throw(error => "Error invoking method get_upload_chunks",
+					    status_line => $self->{client}->status_line,
+					    method_name => 'get_upload_chunks',
+				       );
+    }
+}
+
+
+
+=head2 abort_upload
+
+  $obj->abort_upload($id)
+
+=over 4
+
+=item Parameter and return types
+
+=begin html
+
+<pre>
+$id is a Workspace.upload_id
+upload_id is a string
+
+</pre>
+
+=end html
+
+=begin text
+
+$id is a Workspace.upload_id
+upload_id is a string
+
+
+=end text
+
+=item Description
+
+Abort an upload and delete the uploaded data. Uploads that are not
+accessed for a day are deleted automatically.
+
+=back
+
+=cut
+
+sub abort_upload
+{
+    my($self, @args) = @_;
+
+# Authentication: required
+
+    if ((my $n = @args) != 1)
+    {
+	Bio::KBase::Exceptions::ArgumentValidationError->throw(error =>
+							       "Invalid argument count for function abort_upload (received $n, expecting 1)");
+    }
+    {
+	my($id) = @args;
+
+	my @_bad_arguments;
+        (!ref($id)) or push(@_bad_arguments, "Invalid type for argument 1 \"id\" (value was \"$id\")");
+        if (@_bad_arguments) {
+	    my $msg = "Invalid arguments passed to abort_upload:\n" . join("", map { "\t$_\n" } @_bad_arguments);
+	    Bio::KBase::Exceptions::ArgumentValidationError->throw(error => $msg,
+								   method_name => 'abort_upload');
+	}
+    }
+
+    my $result = $self->{client}->call($self->{url}, $self->{headers}, {
+	method => "Workspace.abort_upload",
+	params => \@args,
+    });
+    if ($result) {
+	if ($result->is_error) {
+	    Bio::KBase::Exceptions::JSONRPC->throw(error => $result->error_message,
+					       code => $result->content->{error}->{code},
+					       method_name => 'abort_upload',
+					       data => $result->content->{error}->{error} # JSON::RPC::ReturnObject only supports JSONRPC 1.1 or 1.O
+					      );
+	} else {
+	    return;
+	}
+    } else {
+        Bio::KBase::Exceptions::HTTP->throw(error => "Error invoking method abort_upload",
+					    status_line => $self->{client}->status_line,
+					    method_name => 'abort_upload',
+				       );
+    }
+}
+
+
+
 =head2 get_object
 
   $output = $obj->get_object($params)
@@ -2914,6 +3277,166 @@ sub list_referencing_object_counts
 
 
 
+=head2 list_transitive_references
+
+  $levels = $obj->list_transitive_references($params)
+
+=over 4
+
+=item Parameter and return types
+
+=begin html
+
+<pre>
+$params is a Workspace.ListTransitiveReferencesParams
+$levels is a reference to a list where each element is a reference to a list where each element is a Workspace.object_info
+ListTransitiveReferencesParams is a reference to a hash where the following keys are defined:
+	objects has a value which is a reference to a list where each element is a Workspace.ObjectIdentity
+	downstream has a value which is a Workspace.boolean
+	maxDepth has a value which is an int
+	maxObjects has a value which is an int
+ObjectIdentity is a reference to a hash where the following keys are defined:
+	workspace has a value which is a Workspace.ws_name
+	wsid has a value which is a Workspace.ws_id
+	name has a value which is a Workspace.obj_name
+	objid has a value which is a Workspace.obj_id
+	ver has a value which is a Workspace.obj_ver
+	ref has a value which is a Workspace.obj_ref
+ws_name is a string
+ws_id is an int
+obj_name is a string
+obj_id is an int
+obj_ver is an int
+obj_ref is a string
+boolean is an int
+object_info is a reference to a list containing 11 items:
+	0: (objid) a Workspace.obj_id
+	1: (name) a Workspace.obj_name
+	2: (type) a Workspace.type_string
+	3: (save_date) a Workspace.timestamp
+	4: (version) an int
+	5: (saved_by) a Workspace.username
+	6: (wsid) a Workspace.ws_id
+	7: (workspace) a Workspace.ws_name
+	8: (chsum) a string
+	9: (size) an int
+	10: (meta) a Workspace.usermeta
+type_string is a string
+timestamp is a string
+username is a string
+usermeta is a reference to a hash where the key is a string and the value is a string
+
+</pre>
+
+=end html
+
+=begin text
+
+$params is a Workspace.ListTransitiveReferencesParams
+$levels is a reference to a list where each element is a reference to a list where each element is a Workspace.object_info
+ListTransitiveReferencesParams is a reference to a hash where the following keys are defined:
+	objects has a value which is a reference to a list where each element is a Workspace.ObjectIdentity
+	downstream has a value which is a Workspace.boolean
+	maxDepth has a value which is an int
+	maxObjects has a value which is an int
+ObjectIdentity is a reference to a hash where the following keys are defined:
+	workspace has a value which is a Workspace.ws_name
+	wsid has a value which is a Workspace.ws_id
+	name has a value which is a Workspace.obj_name
+	objid has a value which is a Workspace.obj_id
+	ver has a value which is a Workspace.obj_ver
+	ref has a value which is a Workspace.obj_ref
+ws_name is a string
+ws_id is an int
+obj_name is a string
+obj_id is an int
+obj_ver is an int
+obj_ref is a string
+boolean is an int
+object_info is a reference to a list containing 11 items:
+	0: (objid) a Workspace.obj_id
+	1: (name) a Workspace.obj_name
+	2: (type) a Workspace.type_string
+	3: (save_date) a Workspace.timestamp
+	4: (version) an int
+	5: (saved_by) a Workspace.username
+	6: (wsid) a Workspace.ws_id
+	7: (workspace) a Workspace.ws_name
+	8: (chsum) a string
+	9: (size) an int
+	10: (meta) a Workspace.usermeta
+type_string is a string
+timestamp is a string
+username is a string
+usermeta is a reference to a hash where the key is a string and the value is a string
+
+
+=end text
+
+=item Description
+
+List the objects reachable from one or more objects by following
+references.
+
+The objects are returned in levels. The first level contains the
+objects one reference away from the input objects, the second level
+the objects two references away, and so on. Each object is returned
+once, in the first level in which it is found.
+
+Only objects accessible to the user are returned, and references
+are not followed through inaccessible or deleted objects.
+
+=back
+
+=cut
+
+sub list_transitive_references
+{
+    my($self, @args) = @_;
+
+# Authentication: optional
+
+    if ((my $n = @args) != 1)
+    {
+	Bio::KBase::Exceptions::ArgumentValidationError->throw(error =>
+							       "Invalid argument count for function list_transitive_references (received $n, expecting 1)");
+    }
+    {
+	my($params) = @args;
+
+	my @_bad_arguments;
+        (ref($params) eq 'HASH') or push(@_bad_arguments, "Invalid type for argument 1 \"params\" (value was \"$params\")");
+        if (@_bad_arguments) {
+	    my $msg = "Invalid arguments passed to list_transitive_references:\n" . join("", map { "\t$_\n" } @_bad_arguments);
+	    Bio::KBase::Exceptions::ArgumentValidationError->throw(error => $msg,
+								   method_name => 'list_transitive_references');
+	}
+    }
+
+    my $result = $self->{client}->call($self->{url}, $self->{headers}, {
+	method => "Workspace.list_transitive_references",
+	params => \@args,
+    });
+    if ($result) {
+	if ($result->is_error) {
+	    Bio::KBase::Exceptions::JSONRPC->throw(error => $result->error_message,
+					       code => $result->content->{error}->{code},
+					       method_name => 'list_transitive_references',
+					       data => $result->content->{error}->{error} # JSON::RPC::ReturnObject only supports JSONRPC 1.1 or 1.O
+					      );
+	} else {
+	    return wantarray ? @{$result->result} : $result->result->[0];
+	}
+    } else {
+        Bio::KBase::Exceptions::HTTP->throw(error => "Error invoking method list_transitive_references",
+					    status_line => $self->{client}->status_line,
+					    method_name => 'list_transitive_references',
+				       );
+    }
+}
+
+
+
 =head2 get_referenced_objects
 
   $data = $obj->get_referenced_objects($ref_chains)
@@ -3564,6 +4087,7 @@ ListObjectsParams is a reference to a hash where the following keys are defined:
 	excludeGlobal has a value which is a Workspace.boolean
 	skip has a value which is an int
 	limit has a value which is an int
+	startAfter has a value which is a Workspace.obj_ref
 ws_name is a string
 ws_id is an int
 type_string is a string
@@ -3572,6 +4096,7 @@ username is a string
 usermeta is a reference to a hash where the key is a string and the value is a string
 timestamp is a string
 boolean is an int
+obj_ref is a string
 object_info is a reference to a list containing 11 items:
 	0: (objid) a Workspace.obj_id
 	1: (name) a Workspace.obj_name
@@ -3612,6 +4137,7 @@ ListObjectsParams is a reference to a hash where the following keys are defined:
 	excludeGlobal has a value which is a Workspace.boolean
 	skip has a value which is an int
 	limit has a value which is an int
+	startAfter has a value which is a Workspace.obj_ref
 ws_name is a string
 ws_id is an int
 type_string is a string
@@ -3620,6 +4146,7 @@ username is a string
 usermeta is a reference to a hash where the key is a string and the value is a string
 timestamp is a string
 boolean is an int
+obj_ref is a string
 object_info is a reference to a list containing 11 items:
 	0: (objid) a Workspace.obj_id
 	1: (name) a Workspace.obj_name
@@ -8749,6 +9276,37 @@ auth has a value which is a string
 
 
 
+=head2 upload_id
+
+=over 4
+
+
+
+=item Description
+
+The id of a chunked upload of object data.
+
+
+=item Definition
+
+=begin html
+
+<pre>
+a string
+</pre>
+
+=end html
+
+=begin text
+
+a string
+
+=end text
+
+=back
+
+
+
 =head2 ObjectSaveData
 
 =over 4
@@ -8762,7 +9320,11 @@ An object and associated data required for saving.
         Required arguments:
         type_string type - the type of the object. Omit the version information
                 to use the latest version.
+        
+        One, and only one, of the following is required:
         UnspecifiedObject data - the object data.
+        upload_id upload_id - the id of a completed chunked upload containing
+                the object data. The upload is deleted once the object is saved.
         
         Optional arguments:
         One of an object name or id. If no name or id is provided the name
@@ -8794,6 +9356,7 @@ objid has a value which is a Workspace.obj_id
 meta has a value which is a Workspace.usermeta
 provenance has a value which is a reference to a list where each element is a Workspace.ProvenanceAction
 hidden has a value which is a Workspace.boolean
+upload_id has a value which is a Workspace.upload_id
 
 </pre>
 
@@ -8809,6 +9372,7 @@ objid has a value which is a Workspace.obj_id
 meta has a value which is a Workspace.usermeta
 provenance has a value which is a reference to a list where each element is a Workspace.ProvenanceAction
 hidden has a value which is a Workspace.boolean
+upload_id has a value which is a Workspace.upload_id
 
 
 =end text
@@ -9110,6 +9674,61 @@ handle_stacktrace has a value which is a string
 
 
 
+=head2 ListTransitiveReferencesParams
+
+=over 4
+
+
+
+=item Description
+
+Input parameters for the "list_transitive_references" function.
+
+        Required arguments:
+        list<ObjectIdentity> objects - the objects at which to start.
+        
+        Optional arguments:
+        boolean downstream - if true, list the objects that reference the
+                objects, the objects that reference those objects, and so on.
+                Otherwise list the objects referenced by the objects, including
+                references in their provenance, the objects referenced by those
+                objects, and so on. Default false.
+        int maxDepth - the maximum number of references to follow from the
+                objects. Default 10, maximum 100.
+        int maxObjects - the maximum number of objects to return. Default
+                and maximum 10000.
+
+
+=item Definition
+
+=begin html
+
+<pre>
+a reference to a hash where the following keys are defined:
+objects has a value which is a reference to a list where each element is a Workspace.ObjectIdentity
+downstream has a value which is a Workspace.boolean
+maxDepth has a value which is an int
+maxObjects has a value which is an int
+
+</pre>
+
+=end html
+
+=begin text
+
+a reference to a hash where the following keys are defined:
+objects has a value which is a reference to a list where each element is a Workspace.ObjectIdentity
+downstream has a value which is a Workspace.boolean
+maxDepth has a value which is an int
+maxObjects has a value which is an int
+
+
+=end text
+
+=back
+
+
+
 =head2 list_workspaces_params
 
 =over 4
@@ -9333,6 +9952,15 @@ Parameters for the 'list_objects' function.
                         < 0 are treated as 0, the default.
                 int limit - limit the output to X objects. Default and maximum value
                         is 10000. Limit values < 1 are treated as 10000, the default.
+                obj_ref startAfter - only return objects after this object version,
+                        which must be given as a reference of the form
+                        wsid/objid/version, e.g. the workspace id, object id and version
+                        of the last object returned by the previous call. Objects are
+                        then returned in order of workspace id, object id and version,
+                        and the limit applies to the objects returned after filtering,
+                        so fewer objects than the limit means there are no more
+                        objects. This is much faster than skip for large workspaces and
+                        cannot be combined with skip.
 
 
 =item Definition
@@ -9357,6 +9985,7 @@ includeMetadata has a value which is a Workspace.boolean
 excludeGlobal has a value which is a Workspace.boolean
 skip has a value which is an int
 limit has a value which is an int
+startAfter has a value which is a Workspace.obj_ref
 
 </pre>
 
@@ -9381,6 +10010,7 @@ includeMetadata has a value which is a Workspace.boolean
 excludeGlobal has a value which is a Workspace.boolean
 skip has a value which is an int
 limit has a value which is an int
+startAfter has a value which is a Workspace.obj_ref
 
 
 =end text
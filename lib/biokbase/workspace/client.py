@@ -231,6 +231,24 @@ class Workspace(object):
                           [params])
         return resp[0]
 
+    def start_upload(self, chunk_size):
+        resp = self._call('Workspace.start_upload',
+                          [chunk_size])
+        return resp[0]
+
+    def upload_chunk(self, id, chunk, data, md5):
+        self._call('Workspace.upload_chunk',
+                   [id, chunk, data, md5])
+
+    def get_upload_chunks(self, id):
+        resp = self._call('Workspace.get_upload_chunks',
+                          [id])
+        return resp[0]
+
+    def abort_upload(self, id):
+        self._call('Workspace.abort_upload',
+                   [id])
+
     def get_object(self, params):
         resp = self._call('Workspace.get_object',
                           [params])
@@ -266,6 +284,11 @@ class Workspace(object):
                           [object_ids])
         return resp[0]
 
+    def list_transitive_references(self, params):
+        resp = self._call('Workspace.list_transitive_references',
+                          [params])
+        return resp[0]
+
     def get_referenced_objects(self, ref_chains):
         resp = self._call('Workspace.get_referenced_objects',
                           [ref_chains])
@@ -164,6 +164,46 @@ function Workspace(url, auth, auth_cb) {
         return json_call_ajax("Workspace.save_objects", [params], 1, _callback, _error_callback);
     };
 
+    this.start_upload = function (chunk_size, _callback, _errorCallback) {
+    return json_call_ajax("Workspace.start_upload",
+        [chunk_size], 1, _callback, _errorCallback);
+};
+
+    this.start_upload_async = function (chunk_size, _callback, _error_callback) {
+        deprecationWarning();
+        return json_call_ajax("Workspace.start_upload", [chunk_size], 1, _callback, _error_callback);
+    };
+
+    this.upload_chunk = function (id, chunk, data, md5, _callback, _errorCallback) {
+    return json_call_ajax("Workspace.upload_chunk",
+        [id, chunk, data, md5], 0, _callback, _errorCallback);
+};
+
+    this.upload_chunk_async = function (id, chunk, data, md5, _callback, _error_callback) {
+        deprecationWarning();
+        return json_call_ajax("Workspace.upload_chunk", [id, chunk, data, md5], 0, _callback, _error_callback);
+    };
+
+    this.get_upload_chunks = function (id, _callback, _errorCallback) {
+    return json_call_ajax("Workspace.get_upload_chunks",
+        [id], 1, _callback, _errorCallback);
+};
+
+    this.get_upload_chunks_async = function (id, _callback, _error_callback) {
+        deprecationWarning();
+        return json_call_ajax("Workspace.get_upload_chunks", [id], 1, _callback, _error_callback);
+    };
+
+    this.abort_upload = function (id, _callback, _errorCallback) {
+    return json_call_ajax("Workspace.abort_upload",
+        [id], 0, _callback, _errorCallback);
+};
+
+    this.abort_upload_async = function (id, _callback, _error_callback) {
+        deprecationWarning();
+        return json_call_ajax("Workspace.abort_upload", [id], 0, _callback, _error_callback);
+    };
+
     this.get_object = function (params, _callback, _errorCallback) {
     return json_call_ajax("Workspace.get_object",
         [params], 1, _callback, _errorCallback);
@@ -234,6 +274,16 @@ function Workspace(url, auth, auth_cb) {
         return json_call_ajax("Workspace.list_referencing_object_counts", [object_ids], 1, _callback, _error_callback);
     };
 
+    this.list_transitive_references = function (params, _callback, _errorCallback) {
+    return json_call_ajax("Workspace.list_transitive_references",
+        [params], 1, _callback, _errorCallback);
+};
+
+    this.list_transitive_references_async = function (params, _callback, _error_callback) {
+        deprecationWarning();
+        return json_call_ajax("Workspace.list_transitive_references", [params], 1, _callback, _error_callback);
+    };
+
     this.get_referenced_objects = function (ref_chains, _callback, _errorCallback) {
     return json_call_ajax("Workspace.get_referenced_objects",
         [ref_chains], 1, _callback, _errorCallback);
@@ -0,0 +1,428 @@
+package us.kbase.typedobj.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+/** An index of the byte ranges of the values in a JSON document whose root
+ * is an object. The index records the range of each top level value and,
+ * for top level objects and arrays, the range of each of their values.
+ *
+ * The index allows extracting a subset of a large document while only
+ * reading the parts of the document that contain the requested data.
+ * Indexes are created with a {@link JsonOffsetIndexer} as the document is
+ * written.
+ * @author gaprice@lbl.gov
+ *
+ */
+public class JsonOffsetIndex {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int FORMAT_VERSION = 1;
+	private static final byte[] PLACEHOLDER = "0".getBytes(UTF8);
+	private static final byte[] COMMA = ",".getBytes(UTF8);
+	private static final byte[] START_ARRAY = "[".getBytes(UTF8);
+	private static final byte[] END_ARRAY = "]".getBytes(UTF8);
+	private static final byte[] START_OBJECT = "{".getBytes(UTF8);
+	private static final byte[] END_OBJECT = "}".getBytes(UTF8);
+	private static final byte[] QUOTE = "\"".getBytes(UTF8);
+	private static final byte[] COLON = ":".getBytes(UTF8);
+
+	private final Node root;
+
+	JsonOffsetIndex(final Node root) {
+		this.root = root;
+	}
+
+	/** Returns the number of bytes in the indexed document.
+	 * @return the size of the document.
+	 */
+	public long getSize() {
+		return root.end;
+	}
+
+	/** Serialize the index.
+	 * @return the serialized index.
+	 */
+	public byte[] toBytes() {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		final DataOutputStream dos = new DataOutputStream(baos);
+		try {
+			dos.writeByte(FORMAT_VERSION);
+			writeVarLong(dos, root.end);
+			writeNodes(dos, root.children, 0);
+			dos.close();
+		} catch (IOException ioe) {
+			throw new RuntimeException("Writing to memory failed", ioe);
+		}
+		return baos.toByteArray();
+	}
+
+	/** Deserialize an index.
+	 * @param index the serialized index.
+	 * @return the index.
+	 * @throws IllegalArgumentException if the index is in an unknown format.
+	 */
+	public static JsonOffsetIndex fromBytes(final byte[] index) {
+		final DataInputStream dis = new DataInputStream(
+				new ByteArrayInputStream(index));
+		try {
+			final int ver = dis.readByte();
+			if (ver != FORMAT_VERSION) {
+				throw new IllegalArgumentException(
+						"Unknown offset index format: " + ver);
+			}
+			final Node root = new Node(null, 0, false);
+			root.end = readVarLong(dis);
+			root.children = readNodes(dis, 0, 0);
+			return new JsonOffsetIndex(root);
+		} catch (IOException ioe) {
+			throw new IllegalArgumentException(
+					"Corrupt offset index: " + ioe.getLocalizedMessage(), ioe);
+		}
+	}
+
+	// children are stored with offsets relative to the end of the previous
+	// sibling to keep the numbers small
+	private static void writeNodes(final DataOutputStream dos,
+			final List<Node> nodes, long pos) throws IOException {
+		if (nodes == null) {
+			writeVarLong(dos, 0);
+			return;
+		}
+		writeVarLong(dos, nodes.size() + 1);
+		for (final Node n: nodes) {
+			dos.writeByte((n.key == null ? 0 : 1) | (n.array ? 2 : 0));
+			if (n.key != null) {
+				final byte[] key = n.key.getBytes(UTF8);
+				writeVarLong(dos, key.length);
+				dos.write(key);
+			}
+			writeVarLong(dos, n.start - pos);
+			writeVarLong(dos, n.end - n.start);
+			writeNodes(dos, n.children, n.start);
+			pos = n.end;
+		}
+	}
+
+	private static List<Node> readNodes(final DataInputStream dis, long pos,
+			final int depth)
+			throws IOException {
+		final long count = readVarLong(dis) - 1;
+		if (count < 0) {
+			return null;
+		}
+		if (depth > 1) {
+			throw new IOException("Offset index is too deep");
+		}
+		final List<Node> ret = new ArrayList<Node>((int) count);
+		for (long i = 0; i < count; i++) {
+			final int flags = dis.readByte();
+			String key = null;
+			if ((flags & 1) != 0) {
+				final byte[] k = new byte[(int) readVarLong(dis)];
+				dis.readFully(k);
+				key = new String(k, UTF8);
+			}
+			final Node n = new Node(key, pos + readVarLong(dis),
+					(flags & 2) != 0);
+			n.end = n.start + readVarLong(dis);
+			n.children = readNodes(dis, n.start, depth + 1);
+			ret.add(n);
+			pos = n.end;
+		}
+		return ret;
+	}
+
+	private static void writeVarLong(final DataOutputStream dos, long l)
+			throws IOException {
+		while ((l & ~0x7FL) != 0) {
+			dos.writeByte((int) ((l & 0x7F) | 0x80));
+			l >>>= 7;
+		}
+		dos.writeByte((int) l);
+	}
+
+	private static long readVarLong(final DataInputStream dis)
+			throws IOException {
+		long ret = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			final int b = dis.readUnsignedByte();
+			ret |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return ret;
+			}
+		}
+		throw new IOException("Malformed variable length number");
+	}
+
+	/** Get a stream of a JSON document that contains everything in the
+	 * indexed document the selection can extract, but as little else as
+	 * possible. Unselected values in objects are left out and unselected
+	 * values in arrays are replaced by a placeholder, so extracting the
+	 * selection from the returned stream produces the same result as
+	 * extracting it from the original document.
+	 * @param selection the selection to be extracted.
+	 * @param data the indexed document.
+	 * @return a stream of the pruned document.
+	 */
+	InputStream getPrunedStream(final SubdataExtractionNode selection,
+			final ByteSource data) {
+		final Segments segs = new Segments();
+		prune(root, selection, segs);
+		return new SegmentInputStream(segs.getSegments(), data);
+	}
+
+	private void prune(final Node node, final SubdataExtractionNode selection,
+			final Segments segs) {
+		final Map<String, SubdataExtractionNode> sel =
+				selection == null ? null : selection.getChildren();
+		if (node.children == null || sel == null || sel.isEmpty()) {
+			segs.add(node.start, node.end);
+			return;
+		}
+		if (node.array) {
+			final SubdataExtractionNode all = sel.get("[*]");
+			if (all != null && sel.size() > 1) {
+				// invalid selection, let the extractor report the error
+				segs.add(node.start, node.end);
+				return;
+			}
+			for (final String key: sel.keySet()) {
+				if (all == null && !isInteger(key)) {
+					segs.add(node.start, node.end);
+					return;
+				}
+			}
+			segs.add(START_ARRAY);
+			for (int i = 0; i < node.children.size(); i++) {
+				if (i > 0) {
+					segs.add(COMMA);
+				}
+				final SubdataExtractionNode s = all != null ? all :
+					sel.get("" + i);
+				if (s == null) {
+					segs.add(PLACEHOLDER);
+				} else {
+					prune(node.children.get(i), s, segs);
+				}
+			}
+			segs.add(END_ARRAY);
+		} else {
+			final SubdataExtractionNode all = sel.get("*");
+			if (all != null && sel.size() > 1) {
+				segs.add(node.start, node.end);
+				return;
+			}
+			segs.add(START_OBJECT);
+			boolean first = true;
+			for (final Node child: node.children) {
+				final SubdataExtractionNode s = all != null ? all :
+					sel.get(child.key);
+				if (s == null) {
+					continue;
+				}
+				if (!first) {
+					segs.add(COMMA);
+				}
+				first = false;
+				segs.add(QUOTE);
+				segs.add(JsonStringEncoder.getInstance().quoteAsUTF8(
+						child.key));
+				segs.add(QUOTE);
+				segs.add(COLON);
+				prune(child, s, segs);
+			}
+			segs.add(END_OBJECT);
+		}
+	}
+
+	private static boolean isInteger(final String s) {
+		try {
+			Integer.parseInt(s);
+			return true;
+		} catch (NumberFormatException nfe) {
+			return false;
+		}
+	}
+
+	/** A source of the bytes of an indexed document. */
+	public interface ByteSource {
+
+		/** Read bytes from the document.
+		 * @param position the position in the document at which to start
+		 * reading.
+		 * @param b the buffer into which to read.
+		 * @param off the offset in the buffer at which to start writing.
+		 * @param len the maximum number of bytes to read.
+		 * @return the number of bytes read, or -1 if the position is past the
+		 * end of the document.
+		 * @throws IOException if an IO error occurs.
+		 */
+		public int read(long position, byte[] b, int off, int len)
+				throws IOException;
+	}
+
+	/** Create a source for a document in memory.
+	 * @param data the document.
+	 * @return the source.
+	 */
+	public static ByteSource getByteSource(final byte[] data) {
+		return new ByteSource() {
+
+			@Override
+			public int read(final long position, final byte[] b,
+					final int off, final int len) {
+				if (position >= data.length) {
+					return -1;
+				}
+				final int count = (int) Math.min(len, data.length - position);
+				System.arraycopy(data, (int) position, b, off, count);
+				return count;
+			}
+		};
+	}
+
+	/** Create a source for a document in a file. The caller is responsible
+	 * for closing the file.
+	 * @param file the document.
+	 * @return the source.
+	 */
+	public static ByteSource getByteSource(final RandomAccessFile file) {
+		return new ByteSource() {
+
+			@Override
+			public int read(final long position, final byte[] b,
+					final int off, final int len) throws IOException {
+				file.seek(position);
+				return file.read(b, off, len);
+			}
+		};
+	}
+
+	static class Node {
+
+		final String key;
+		final long start;
+		final boolean array;
+		long end;
+		// null if not a container or not indexed
+		List<Node> children;
+
+		Node(final String key, final long start, final boolean array) {
+			this.key = key;
+			this.start = start;
+			this.array = array;
+		}
+	}
+
+	// either a literal or a range of the source document
+	private static class Segment {
+
+		private final byte[] literal;
+		private final long start;
+		private final long end;
+
+		private Segment(final byte[] literal) {
+			this.literal = literal;
+			this.start = 0;
+			this.end = literal.length;
+		}
+
+		private Segment(final long start, final long end) {
+			this.literal = null;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	// merges consecutive literals into one segment
+	private static class Segments {
+
+		private final List<Segment> segs = new LinkedList<Segment>();
+		private ByteArrayOutputStream literal = new ByteArrayOutputStream();
+
+		private void add(final byte[] b) {
+			literal.write(b, 0, b.length);
+		}
+
+		private void add(final long start, final long end) {
+			flush();
+			segs.add(new Segment(start, end));
+		}
+
+		private void flush() {
+			if (literal.size() > 0) {
+				segs.add(new Segment(literal.toByteArray()));
+				literal = new ByteArrayOutputStream();
+			}
+		}
+
+		private List<Segment> getSegments() {
+			flush();
+			return segs;
+		}
+	}
+
+	private static class SegmentInputStream extends InputStream {
+
+		private final Iterator<Segment> segs;
+		private final ByteSource data;
+		private Segment cur = null;
+		private long pos = 0;
+
+		private SegmentInputStream(final List<Segment> segs,
+				final ByteSource data) {
+			this.segs = segs.iterator();
+			this.data = data;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final byte[] b = new byte[1];
+			final int read = read(b, 0, 1);
+			return read < 0 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len)
+				throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			while (cur == null || pos >= cur.end) {
+				if (!segs.hasNext()) {
+					return -1;
+				}
+				cur = segs.next();
+				pos = cur.start;
+			}
+			final int count = (int) Math.min(len, cur.end - pos);
+			final int read;
+			if (cur.literal != null) {
+				System.arraycopy(cur.literal, (int) pos, b, off, count);
+				read = count;
+			} else {
+				read = data.read(pos, b, off, count);
+				if (read < 0) {
+					throw new IOException(
+							"Document is shorter than its offset index");
+				}
+			}
+			pos += read;
+			return read;
+		}
+	}
+}
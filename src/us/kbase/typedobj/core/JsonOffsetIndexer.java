@@ -0,0 +1,312 @@
+package us.kbase.typedobj.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedList;
+
+import us.kbase.typedobj.core.JsonOffsetIndex.Node;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/** An output stream that builds a {@link JsonOffsetIndex} of the JSON
+ * document written to it, and optionally passes the data on to another
+ * output stream. Allows indexing a document as it is written elsewhere
+ * rather than in a separate pass.
+ *
+ * The document is expected to be valid JSON, as written by a JSON
+ * generator. If the root of the document is not an object no index is
+ * created.
+ * @author gaprice@lbl.gov
+ *
+ */
+public class JsonOffsetIndexer extends OutputStream {
+
+	/** The default maximum number of values in top level objects and arrays
+	 * to index. Values past the limit are not indexed, but the top level
+	 * values still are.
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 1000000;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final OutputStream out;
+	private final int maxEntries;
+	private int entries = 0;
+	private long pos = 0;
+
+	private Node root = null;
+	private boolean complete = false;
+	private boolean failed = false;
+	// open containers, innermost first
+	private final LinkedList<Frame> stack = new LinkedList<Frame>();
+
+	private boolean inString = false;
+	private boolean escape = false;
+	private boolean stringIsKey = false;
+	private boolean inScalar = false;
+	// non-null when the current string is a key that needs recording
+	private ByteArrayOutputStream key = null;
+	private boolean keyEscaped = false;
+
+	public JsonOffsetIndexer() {
+		this(null);
+	}
+
+	/** Create a stream that indexes data and passes it on.
+	 * @param out the stream to which data will be written after indexing.
+	 * If null, the data is discarded.
+	 */
+	public JsonOffsetIndexer(final OutputStream out) {
+		this(out, DEFAULT_MAX_ENTRIES);
+	}
+
+	/** Create a stream that indexes data and passes it on.
+	 * @param out the stream to which data will be written after indexing.
+	 * If null, the data is discarded.
+	 * @param maxEntries the maximum number of values in top level objects
+	 * and arrays to index.
+	 */
+	public JsonOffsetIndexer(final OutputStream out, final int maxEntries) {
+		if (maxEntries < 0) {
+			throw new IllegalArgumentException(
+					"maxEntries cannot be negative");
+		}
+		this.out = out;
+		this.maxEntries = maxEntries;
+	}
+
+	/** Get the index of the data written to this stream.
+	 * @return the index, or null if a complete JSON object has not been
+	 * written to the stream.
+	 */
+	public JsonOffsetIndex getIndex() {
+		if (!complete || failed) {
+			return null;
+		}
+		return new JsonOffsetIndex(root);
+	}
+
+	@Override
+	public void write(final byte[] b) throws IOException {
+		write(b, 0, b.length);
+	}
+
+	@Override
+	public void write(final byte[] b, final int offset, final int len)
+			throws IOException {
+		if (out != null) {
+			out.write(b, offset, len);
+		}
+		final int end = offset + len;
+		for (int i = offset; i < end; i++) {
+			// skip through the bodies of strings quickly
+			if (inString && !escape && key == null) {
+				while (i < end && b[i] != '"' && b[i] != '\\') {
+					i++;
+					pos++;
+				}
+				if (i == end) {
+					break;
+				}
+			}
+			scan(b[i]);
+			pos++;
+		}
+	}
+
+	@Override
+	public void write(final int b) throws IOException {
+		if (out != null) {
+			out.write(b);
+		}
+		scan((byte) b);
+		pos++;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (out != null) {
+			out.flush();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (out != null) {
+			out.close();
+		}
+	}
+
+	private void scan(final byte b) throws IOException {
+		if (failed) {
+			return;
+		}
+		if (inString) {
+			scanString(b);
+			return;
+		}
+		if (inScalar) {
+			if (b != ',' && b != '}' && b != ']' && !isWhitespace(b)) {
+				return;
+			}
+			inScalar = false;
+			endValue(false, null, pos);
+		}
+		if (isWhitespace(b)) {
+			return;
+		}
+		if (complete) {
+			failed = true; // trailing data
+			return;
+		}
+		final Frame top = stack.peek();
+		if (top == null && b != '{') {
+			failed = true; // the root must be an object
+			return;
+		}
+		if (b == '{' || b == '[') {
+			startContainer(b == '[');
+		} else if (b == '}' || b == ']') {
+			endContainer();
+		} else if (b == ':') {
+			top.expectKey = false;
+		} else if (b == ',') {
+			top.expectKey = !top.array;
+		} else if (b == '"') {
+			inString = true;
+			if (top != null && top.expectKey) {
+				stringIsKey = true;
+				key = top.recording() ? new ByteArrayOutputStream() : null;
+				keyEscaped = false;
+			} else {
+				stringIsKey = false;
+				startValue();
+			}
+		} else {
+			inScalar = true;
+			startValue();
+		}
+	}
+
+	private void scanString(final byte b) throws IOException {
+		if (escape) {
+			escape = false;
+		} else if (b == '\\') {
+			escape = true;
+			keyEscaped = true;
+		} else if (b == '"') {
+			inString = false;
+			if (stringIsKey) {
+				if (key != null) {
+					stack.peek().pendingKey = decodeKey();
+				}
+				key = null;
+			} else {
+				endValue(false, null, pos + 1);
+			}
+			return;
+		}
+		if (key != null) {
+			key.write(b);
+		}
+	}
+
+	private String decodeKey() throws IOException {
+		final byte[] k = key.toByteArray();
+		if (!keyEscaped) {
+			return new String(k, UTF8);
+		}
+		final ByteArrayOutputStream quoted = new ByteArrayOutputStream();
+		quoted.write('"');
+		quoted.write(k);
+		quoted.write('"');
+		return MAPPER.readValue(quoted.toByteArray(), String.class);
+	}
+
+	private void startValue() {
+		final Frame parent = stack.peek();
+		parent.valueStart = pos;
+		parent.valueKey = parent.pendingKey;
+		parent.pendingKey = null;
+	}
+
+	private void startContainer(final boolean array) {
+		final Node node;
+		if (stack.isEmpty()) {
+			root = new Node(null, pos, false);
+			root.children = new ArrayList<Node>();
+			node = root;
+		} else {
+			startValue();
+			final Frame parent = stack.peek();
+			if (stack.size() == 1) {
+				node = new Node(parent.valueKey, pos, array);
+				if (entries < maxEntries) {
+					node.children = new ArrayList<Node>();
+				}
+			} else {
+				node = null;
+			}
+		}
+		stack.push(new Frame(array, node));
+	}
+
+	private void endContainer() {
+		final Frame f = stack.pop();
+		if (stack.isEmpty()) {
+			root.end = pos + 1;
+			complete = true;
+			return;
+		}
+		endValue(f.array, f.node, pos + 1);
+	}
+
+	private void endValue(final boolean array, Node node, final long end) {
+		final Frame parent = stack.peek();
+		if (!parent.recording()) {
+			return;
+		}
+		if (node == null) {
+			node = new Node(parent.valueKey, parent.valueStart, array);
+		}
+		node.end = end;
+		if (stack.size() == 2) {
+			entries++;
+			if (entries > maxEntries) {
+				// too many values, stop indexing this container
+				parent.node.children = null;
+				return;
+			}
+		}
+		parent.node.children.add(node);
+	}
+
+	private static boolean isWhitespace(final byte b) {
+		return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+	}
+
+	private static class Frame {
+
+		private final boolean array;
+		// null if the values in this container are not indexed
+		private final Node node;
+		private boolean expectKey;
+		private String pendingKey = null;
+		private String valueKey = null;
+		private long valueStart = -1;
+
+		private Frame(final boolean array, final Node node) {
+			this.array = array;
+			this.node = node;
+			expectKey = !array;
+		}
+
+		private boolean recording() {
+			return node != null && node.children != null;
+		}
+	}
+}
@@ -5,6 +5,7 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.RoundingMode;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -43,6 +44,8 @@ public class JsonTokenValidationSchema {
 	private JsonTokenValidationSchema objectAdditionalPropertiesType;	// For mapping value type: additionalProperties
 	private boolean objectAdditionalPropertiesBoolean;	// For structures: additionalProperties
 	private Map<String, Integer> objectRequired;		// For structures: required
+	private Map<String, ObjectField> objectFields;		// For structures: properties and required, combined for validation
+	private long objectRequiredMask;					// For structures: bits of required positions (up to 64 fields)
 	private JsonTokenValidationSchema arrayItems;						// For list: items (one type for all items)
 	private List<JsonTokenValidationSchema> arrayItemList;				// For tuple: items (list of types)
 	private Integer arrayMinItems;						// For tuple: minItems
@@ -145,6 +148,7 @@ public class JsonTokenValidationSchema {
 				for (String reqItem : reqList)
 					ret.objectRequired.put(reqItem, ret.objectRequired.size());
 			}
+			ret.compileObjectFields();
 		} else if (ret.type == Type.array) {
 			Object items = data.get("items");
 			if (items instanceof Map) {
@@ -167,6 +171,26 @@ public class JsonTokenValidationSchema {
 		return ret;
 	}
 
+	/**
+	 * Combines properties and required fields into one table so validation of each field of an
+	 * object needs a single lookup, and precomputes the mask of required positions used to track
+	 * the required fields that were seen without allocating anything per object.
+	 */
+	private void compileObjectFields() {
+		objectFields = new HashMap<String, ObjectField>();
+		for (Map.Entry<String, JsonTokenValidationSchema> entry : objectProperties.entrySet()) {
+			Integer reqPos = objectRequired.get(entry.getKey());
+			objectFields.put(entry.getKey(), new ObjectField(entry.getValue(), 
+					reqPos == null ? -1 : reqPos));
+		}
+		for (Map.Entry<String, Integer> entry : objectRequired.entrySet()) {
+			if (!objectFields.containsKey(entry.getKey()))
+				objectFields.put(entry.getKey(), new ObjectField(null, entry.getValue()));
+		}
+		int reqCount = objectRequired.size();
+		objectRequiredMask = reqCount >= 64 ? -1L : (1L << reqCount) - 1;
+	}
+
 	/**
 	 * Method validates object described by tokens provided by json parser against 
 	 * selected type this schema object was created for.
@@ -228,9 +252,12 @@ public class JsonTokenValidationSchema {
 					throw new JsonTokenValidationException(
 							generateError(type, t, path, false));
 				}
-				// flags for usage (true) or not usage (false) of fields having positions in this 
-				// array coded in objectRequired map
-				boolean[] reqPropUsage = new boolean[objectRequired.size()];
+				// bits for usage (1) or not usage (0) of fields having positions coded in 
+				// objectRequired map
+				long reqPropUsageBits = 0;
+				// flags used instead of the bits in case there are more than 64 required fields
+				boolean[] reqPropUsage = objectRequired.size() > 64 ? 
+						new boolean[objectRequired.size()] : null;
 				// count of true values in reqPropUsage
 				int reqPropUsageCount = 0;
 				// in following loop we process all fields of opened object
@@ -250,13 +277,18 @@ public class JsonTokenValidationSchema {
 					String fieldName = jp.getCurrentName();
 					// set current path pointing to this field
 					path.replaceLast(fieldName);
+					ObjectField field = objectFields.get(fieldName);
 					// if this field is required we mark it as visited
-					if (objectRequired.containsKey(fieldName)) {
-						reqPropUsageCount++;
-						reqPropUsage[objectRequired.get(fieldName)] = true;
+					if (field != null && field.requiredPos >= 0) {
+						if (reqPropUsage == null) {
+							reqPropUsageBits |= 1L << field.requiredPos;
+						} else if (!reqPropUsage[field.requiredPos]) {
+							reqPropUsageCount++;
+							reqPropUsage[field.requiredPos] = true;
+						}
 					}
 					// we need to find json-schema node describing value of this field
-					JsonTokenValidationSchema childType = objectProperties.get(fieldName);
+					JsonTokenValidationSchema childType = field == null ? null : field.schema;
 					if (childType == null) {
 						if (!objectAdditionalPropertiesBoolean) {
 							if (objectProperties.size() > 0)
@@ -286,11 +318,15 @@ public class JsonTokenValidationSchema {
 					}
 				}
 				// check whether all required fields were occured
-				if (reqPropUsageCount != reqPropUsage.length) {
+				if (reqPropUsage == null ? reqPropUsageBits != objectRequiredMask :
+						reqPropUsageCount != reqPropUsage.length) {
 					List<String> absentProperties = new ArrayList<String>();
-					for (Map.Entry<String, Integer> entry : objectRequired.entrySet())
-						if (!reqPropUsage[entry.getValue()])
+					for (Map.Entry<String, Integer> entry : objectRequired.entrySet()) {
+						int pos = entry.getValue();
+						if (reqPropUsage == null ? (reqPropUsageBits & (1L << pos)) == 0 :
+								!reqPropUsage[pos])
 							absentProperties.add(entry.getKey());
+					}
 					lst.addError("Object doesn't have required fields : " +
 							absentProperties + ", at " +
 							path.getLocationOfContainerAsString());
@@ -625,6 +661,16 @@ public class JsonTokenValidationSchema {
 
 
 
+	private static class ObjectField {
+		public final JsonTokenValidationSchema schema;	// null if only required, not a property
+		public final int requiredPos;					// position in objectRequired or -1
+		
+		public ObjectField(JsonTokenValidationSchema schema, int requiredPos) {
+			this.schema = schema;
+			this.requiredPos = requiredPos;
+		}
+	}
+	
 	private static class IdRefDescr {
 		IdReferenceType idType;
 		List<String> attributes;
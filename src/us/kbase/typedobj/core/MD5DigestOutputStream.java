@@ -1,29 +1,42 @@
-package us.kbase.workspace.database.mongo;
+package us.kbase.typedobj.core;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
-import us.kbase.typedobj.core.MD5;
-
+/** An output stream that calculates the MD5 and size of the data written to
+ * it, and optionally passes the data on to another output stream. Allows
+ * calculating the MD5 of data as it is written elsewhere rather than in a
+ * separate pass.
+ *
+ */
 public class MD5DigestOutputStream extends OutputStream {
 
 	private final MessageDigest digest;
+	private final OutputStream out;
 	private long size = 0;
 	
 	public MD5DigestOutputStream() {
+		this(null);
+	}
+	
+	/** Create a stream that digests data and passes it on.
+	 * @param out the stream to which data will be written after digestion.
+	 * If null, the data is discarded.
+	 */
+	public MD5DigestOutputStream(final OutputStream out) {
 		try {
 			digest = MessageDigest.getInstance("MD5");
 		} catch (NoSuchAlgorithmException nsae) {
 			throw new RuntimeException("There definitely should be an MD5 digest");
 		}
+		this.out = out;
 	}
 	
 	@Override
 	public void write(byte[] b) throws IOException {
-		digest.update(b);
-		size += b.length;
+		write(b, 0, b.length);
 	}
 	
 	public long getSize() {
@@ -49,10 +62,31 @@ public class MD5DigestOutputStream extends OutputStream {
 	public void write(byte[] b, int offset, int len) throws IOException {
 		digest.update(b, offset, len);
 		size += len;
+		if (out != null) {
+			out.write(b, offset, len);
+		}
 	}
 
 	@Override
 	public void write(final int b) throws IOException {
-		throw new RuntimeException("Unimplemented");
+		digest.update((byte) b);
+		size++;
+		if (out != null) {
+			out.write(b);
+		}
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		if (out != null) {
+			out.flush();
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		if (out != null) {
+			out.close();
+		}
 	}
 }
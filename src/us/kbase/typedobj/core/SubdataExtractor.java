@@ -59,9 +59,28 @@ public class SubdataExtractor {
 		extractFields(objpaths, createTokenSequenceProvider(jp), output);
 	}
 	
-	private static void extractFields(ObjectPaths objpaths, TokenSequenceProvider jts, JsonGenerator output) 
-	        throws IOException, TypedObjectExtractionException {
-		//if the selection is empty, we return without adding anything
+	/**
+	 * extract the fields listed in selection from indexed json data. Only the parts of the data
+	 * that may contain the selection are read, otherwise the result is the same as for
+	 * extract(ObjectPaths, JsonParser, JsonGenerator).
+	 * @throws TypedObjectExtractionException 
+	 */
+	public static void extract(ObjectPaths objpaths, JsonOffsetIndex index,
+			JsonOffsetIndex.ByteSource data, JsonGenerator output)
+			throws IOException, TypedObjectExtractionException {
+		SubdataExtractionNode root = buildSelection(objpaths);
+		JsonParser jp = mapper.getFactory().createParser(index.getPrunedStream(root, data));
+		try {
+			TokenSequenceProvider jts = createTokenSequenceProvider(jp);
+			extractFieldsWithOpenToken(jts, jts.nextToken(), root, output, new ArrayList<String>(), 
+					objpaths.isStrictMaps(), objpaths.isStrictArrays());
+		} finally {
+			jp.close();
+		}
+	}
+	
+	private static SubdataExtractionNode buildSelection(ObjectPaths objpaths)
+			throws TypedObjectExtractionException {
 		SubdataExtractionNode root = new SubdataExtractionNode();
 		for (int i = 0; i < objpaths.size(); i++) {
 		    try {
@@ -71,6 +90,13 @@ public class SubdataExtractor {
 		        throw new TypedObjectExtractionException(ex.getMessage(), ex);
 		    }
 		}
+		return root;
+	}
+	
+	private static void extractFields(ObjectPaths objpaths, TokenSequenceProvider jts, JsonGenerator output) 
+	        throws IOException, TypedObjectExtractionException {
+		//if the selection is empty, we return without adding anything
+		SubdataExtractionNode root = buildSelection(objpaths);
 		JsonToken t = jts.nextToken();
 		extractFieldsWithOpenToken(jts, t, root, output, new ArrayList<String>(), 
 		        objpaths.isStrictMaps(), objpaths.isStrictArrays());
@@ -79,6 +79,10 @@ public class TypedObjectValidationReport {
 	private long size = -1;
 	// whether the object is naturally sorted after relabeling. Only set to true after relabeling.
 	private boolean sorted = false;
+	// the MD5 of the relabeled and sorted object. null if not yet calculated.
+	private MD5 md5 = null;
+	// the size of the relabeled and sorted object. -1 if not yet calculated.
+	private long sortedSize = -1;
 	
 	private byte[] cacheForSorting = null;
 	
@@ -114,6 +118,19 @@ public class TypedObjectValidationReport {
 		this.schema = schema;
 	}
 	
+	/**
+	 * Replace the ID handler set used to relabel the IDs in the instance. Use
+	 * when the IDs were collected in a separate handler set during validation
+	 * and then added to the replacement set.
+	 * @param idHandler the ID handler set.
+	 */
+	public void setIdHandler(final IdReferenceHandlerSet<?> idHandler) {
+		if (idHandler == null) {
+			throw new NullPointerException("idHandler cannot be null");
+		}
+		this.idHandler = idHandler;
+	}
+	
 	/**
 	 * Get the absolute ID of the typedef that was used to validate the instance
 	 * @return
@@ -204,25 +221,47 @@ public class TypedObjectValidationReport {
 		if (size > -1) {
 			return size;
 		}
-		final long[] size = {0L};
-		final OutputStream sizeOs = new OutputStream() {
-			@Override
-			public void write(int b) throws IOException {
-				size[0]++;
-			}
-			@Override
-			public void write(byte[] b, int off, int len)
-					throws IOException {
-				size[0] += len;
-			}
-		};
+		// if the object is already sorted this pass also provides the MD5
+		final MD5DigestOutputStream sizeOs = new MD5DigestOutputStream();
 		final JsonGenerator jgen = new JsonFactory().createGenerator(sizeOs);
 		sorted = relabelWsIdReferencesIntoGeneratorAndCheckOrder(jgen);
 		jgen.close();
-		this.size = size[0];
+		this.size = sizeOs.getSize();
+		final MD5 relabeledMD5 = sizeOs.getMD5();
+		if (sorted) {
+			md5 = relabeledMD5;
+			sortedSize = this.size;
+		}
 		return this.size;
 	}
 	
+	/** Get the MD5 of the data written by the Writable returned from
+	 * createJsonWritable(). The MD5 is calculated while calculating the size
+	 * or sorting the object, so the data does not need to be written again
+	 * to calculate it.
+	 * @return the MD5 of the relabeled and sorted object.
+	 */
+	public MD5 getMD5() {
+		if (md5 == null) {
+			throw new IllegalStateException(
+					"You must call sort() prior to getting the MD5.");
+		}
+		return md5;
+	}
+	
+	/** Get the size, in bytes, of the data written by the Writable returned
+	 * from createJsonWritable(). Like the MD5, the size is measured while
+	 * calculating the relabeled size or sorting the object.
+	 * @return the size of the relabeled and sorted object.
+	 */
+	public long getSortedSize() {
+		if (sortedSize < 0) {
+			throw new IllegalStateException(
+					"You must call sort() prior to getting the sorted size.");
+		}
+		return sortedSize;
+	}
+	
 	/** Relabel ids, sort the object if necessary and keep a copy.
 	 * You must call this method prior to calling createJsonWritable().
 	 * Equivalent of sort(null). All data is kept in memory.
@@ -271,8 +310,13 @@ public class TypedObjectValidationReport {
 				jgen.close();
 				cacheForSorting = os.toByteArray();
 				os = new ByteArrayOutputStream();
-				fac.getSorter(cacheForSorting).writeIntoStream(os);
-				os.close();
+				final MD5DigestOutputStream md5os =
+						new MD5DigestOutputStream(os);
+				fac.getSorter(cacheForSorting).writeIntoStream(md5os);
+				md5os.close();
+				// getting the MD5 resets the size
+				sortedSize = md5os.getSize();
+				md5 = md5os.getMD5();
 				cacheForSorting = os.toByteArray();
 			} else {
 				final File f1 = tfm.generateTempFile("sortinp", "json");
@@ -285,10 +329,13 @@ public class TypedObjectValidationReport {
 					jgen = null;
 					fileForSorting = tfm.generateTempFile(
 							"sortout", "json");
-					final FileOutputStream os = new FileOutputStream(
-							fileForSorting);
+					final MD5DigestOutputStream os =
+							new MD5DigestOutputStream(new FileOutputStream(
+									fileForSorting));
 					fac.getSorter(f1).writeIntoStream(os);
 					os.close();
+					sortedSize = os.getSize();
+					md5 = os.getMD5();
 				} finally {
 					f1.delete();
 					if (jgen != null)
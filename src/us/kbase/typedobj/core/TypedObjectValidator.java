@@ -177,9 +177,9 @@ public final class TypedObjectValidator {
 		
 		// Actually perform the validation and return the report
 		final List<String> errors = new ArrayList<String>();
-		String schemaText = typeDefDB.getJsonSchemaDocument(absoluteTypeDefId);
+		// parsed schemas are cached by the type database
 		final JsonTokenValidationSchema schema =
-				JsonTokenValidationSchema.parseJsonSchema(schemaText);
+				typeDefDB.getJsonSchema(absoluteTypeDefId);
 		
 		// these must be arrays to get the inner class def override to work
 		final JsonNode [] wsSubsetSelection = new JsonNode[] {null}; // was renamed from searchDataWrap
@@ -20,7 +20,14 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.commons.codec.digest.DigestUtils;
 
@@ -85,13 +92,19 @@ public class TypeDefinitionDB {
 	private final TypeStorage storage;
 	private final File parentTempDir;
 	private final Object tempDirLock = new Object(); 
-	private final Object moduleStateLock = new Object(); 
-	private final Map<String, ModuleState> moduleStates = new HashMap<String, ModuleState>();
-	private final ThreadLocal<Map<String,Integer>> localReadLocks = new ThreadLocal<Map<String,Integer>>(); 
+	private final ConcurrentMap<String, ModuleLock> moduleLocks = new ConcurrentHashMap<String, ModuleLock>();
+	private final AtomicLong readLocks = new AtomicLong();
+	private final AtomicLong contendedReadLocks = new AtomicLong();
+	private final AtomicLong writeLocks = new AtomicLong();
+	private final AtomicLong contendedWriteLocks = new AtomicLong();
+	private final AtomicLong lockWaitNanos = new AtomicLong();
+	private final AtomicLong optimisticReads = new AtomicLong();
+	private final AtomicLong failedOptimisticReads = new AtomicLong();
 	private final String kbTopPath;
 	private final KidlSource kidlSource;
 	private final LoadingCache<String, ModuleInfo> moduleInfoCache;
 	private final LoadingCache<AbsoluteTypeDefId, String> typeJsonSchemaCache;
+	private final LoadingCache<AbsoluteTypeDefId, JsonTokenValidationSchema> typeValidationSchemaCache;
 	
 	private static final SemanticVersion defaultVersion = new SemanticVersion(0, 1);
 	private static final SemanticVersion releaseVersion = new SemanticVersion(1, 0);
@@ -186,6 +199,14 @@ public class TypeDefinitionDB {
 						return jsonSchemaDocument;
 					}
 				});
+		typeValidationSchemaCache = CacheBuilder.newBuilder().maximumSize(cacheSize).build(
+				new CacheLoader<AbsoluteTypeDefId, JsonTokenValidationSchema>() {
+					@Override
+					public JsonTokenValidationSchema load(AbsoluteTypeDefId typeDefId) throws TypeStorageException, 
+							NoSuchModuleException, NoSuchTypeException, TypedObjectSchemaException {
+						return JsonTokenValidationSchema.parseJsonSchema(getJsonSchemaDocumentNL(typeDefId, null));
+					}
+				});
 	}
 	
 	
@@ -202,38 +223,17 @@ public class TypeDefinitionDB {
 		return getJsonSchemaDocument(new TypeDefId(typeDefName));
 	}
 	
-	private ModuleState getModuleState(String moduleName) {
-		synchronized (moduleStateLock) {
-			ModuleState ret = moduleStates.get(moduleName);
-			if (ret == null) {
-				ret = new ModuleState();
-				moduleStates.put(moduleName, ret);
-			}
-			return ret;
-		}
-	}
-	
-	private int getLocalReadLocks(String moduleName) {
-		Map<String, Integer> map = localReadLocks.get();
-		if (map == null) {
-			map = new HashMap<String, Integer>();
-			localReadLocks.set(map);
+	private ModuleLock getModuleLock(String moduleName) {
+		ModuleLock ret = moduleLocks.get(moduleName);
+		if (ret == null) {
+			final ModuleLock ml = new ModuleLock();
+			ret = moduleLocks.putIfAbsent(moduleName, ml);
+			if (ret == null)
+				ret = ml;
 		}
-		Integer ret = map.get(moduleName);
-		if (ret == null)
-			return 0;
 		return ret;
 	}
-
-	private void setLocalReadLocks(String moduleName, int locks) {
-		Map<String, Integer> map = localReadLocks.get();
-		if (map == null) {
-			map = new HashMap<String, Integer>();
-			localReadLocks.set(map);
-		}
-		map.put(moduleName, locks);
-	}
-
+	
 	private void requestReadLock(String moduleName) throws NoSuchModuleException, TypeStorageException {
 		if (moduleInfoCache.getIfPresent(moduleName) == null) {
 			if (!storage.checkModuleExist(moduleName))
@@ -243,70 +243,111 @@ public class TypeDefinitionDB {
 	}
 		
 	private void requestReadLockNM(String moduleName) throws TypeStorageException {
-		int lrl = getLocalReadLocks(moduleName);
-		if (lrl == 0) {
-			final ModuleState ms = getModuleState(moduleName);
-			synchronized (ms) {
-				long startTime = System.currentTimeMillis();
-				while (ms.writerCount > 0) {
-					try {
-						ms.wait(10000);
-					} catch (InterruptedException ignore) {}
-					if (System.currentTimeMillis() - startTime > maxDeadLockWaitTime)
-						throw new IllegalStateException("Looks like deadlock");
-				}
-				ms.readerCount++;
-				//new Exception("moduleName=" + moduleName + ", readerCount=" + ms.readerCount).printStackTrace(System.out);
-			}
+		final Lock lock = getModuleLock(moduleName).lock.readLock();
+		readLocks.incrementAndGet();
+		if (!lock.tryLock()) {
+			contendedReadLocks.incrementAndGet();
+			waitForLock(lock);
 		}
-		setLocalReadLocks(moduleName, lrl + 1);
 	}
 	
 	private void releaseReadLock(String moduleName) {
-		final ModuleState ms = getModuleState(moduleName);
-		int lrl = getLocalReadLocks(moduleName);
-		lrl--;
-		setLocalReadLocks(moduleName, lrl);
-		if (lrl == 0) {
-			synchronized (ms) {
-				if (ms.readerCount == 0)
-					throw new IllegalStateException("Can not release empty read lock");
-				ms.readerCount--;
-				//new Exception("moduleName=" + moduleName + ", readerCount=" + ms.readerCount).printStackTrace(System.out);
-				ms.notifyAll();
-			}		
-		}
+		getModuleLock(moduleName).lock.readLock().unlock();
 	}
 	
 	private void requestWriteLock(String moduleName) {
-		final ModuleState ms = getModuleState(moduleName);
-		synchronized (ms) {
-			if (ms.writerCount > 0)
-				throw new IllegalStateException("Concurent changes of module " + moduleName);
-			ms.writerCount++;
-			//new Exception("moduleName=" + moduleName + ", writerCount=" + ms.writerCount).printStackTrace(System.out);
-			long startTime = System.currentTimeMillis();
-			while (ms.readerCount > 0) {
+		final ModuleLock ml = getModuleLock(moduleName);
+		if (!ml.writer.compareAndSet(false, true))
+			throw new IllegalStateException("Concurent changes of module " + moduleName);
+		final Lock lock = ml.lock.writeLock();
+		writeLocks.incrementAndGet();
+		if (!lock.tryLock()) {
+			contendedWriteLocks.incrementAndGet();
+			try {
+				waitForLock(lock);
+			} catch (IllegalStateException e) {
+				ml.writer.set(false);
+				throw e;
+			}
+		}
+		ml.stamp++;
+	}
+	
+	private void releaseWriteLock(String moduleName) {
+		final ModuleLock ml = getModuleLock(moduleName);
+		if (!ml.lock.isWriteLockedByCurrentThread())
+			throw new IllegalStateException("Can not release empty write lock");
+		ml.stamp++;
+		ml.writer.set(false);
+		ml.lock.writeLock().unlock();
+	}
+	
+	private void waitForLock(Lock lock) {
+		final long start = System.nanoTime();
+		final long deadline = start + TimeUnit.MILLISECONDS.toNanos(maxDeadLockWaitTime);
+		boolean interrupted = false;
+		try {
+			while (true) {
 				try {
-					ms.wait(10000);
-				} catch (InterruptedException ignore) {}
-				if (System.currentTimeMillis() - startTime > maxDeadLockWaitTime) {
-					ms.writerCount--;
+					if (lock.tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS))
+						return;
 					throw new IllegalStateException("Looks like deadlock");
+				} catch (InterruptedException e) {
+					interrupted = true;
 				}
 			}
+		} finally {
+			lockWaitNanos.addAndGet(System.nanoTime() - start);
+			if (interrupted)
+				Thread.currentThread().interrupt();
 		}
 	}
 	
-	private void releaseWriteLock(String moduleName) {
-		final ModuleState ms = getModuleState(moduleName);
-		synchronized (ms) {
-			if (ms.writerCount == 0)
-				throw new IllegalStateException("Can not release empty write lock");
-			ms.writerCount--;
-			//new Exception("moduleName=" + moduleName + ", writerCount=" + ms.writerCount).printStackTrace(System.out);
-			ms.notifyAll();
-		}		
+	/**
+	 * Look up a value for an absolute type without taking the module lock. Returns null, in which
+	 * case the caller should take the lock, if the type isn't absolute, the value isn't cached, or the
+	 * module was being changed during the lookup.
+	 */
+	private <T> T getCachedOptimistically(TypeDefId typeDefId, LoadingCache<AbsoluteTypeDefId, T> cache) {
+		if (!typeDefId.isAbsolute() || typeDefId.getMd5() != null)
+			return null;
+		// don't create a lock for a module that may not exist. A module with
+		// cached values always has a lock, since values are cached under it.
+		final ModuleLock ml = moduleLocks.get(typeDefId.getType().getModule());
+		if (ml == null) {
+			failedOptimisticReads.incrementAndGet();
+			return null;
+		}
+		final long stamp = ml.stamp;
+		// an odd stamp means a writer holds the lock
+		if (stamp % 2 == 0) {
+			final AbsoluteTypeDefId absTypeDefId = new AbsoluteTypeDefId(typeDefId.getType(),
+					typeDefId.getMajorVersion(), typeDefId.getMinorVersion());
+			final T ret = cache.getIfPresent(absTypeDefId);
+			if (ret != null && ml.stamp == stamp) {
+				optimisticReads.incrementAndGet();
+				return ret;
+			}
+		}
+		failedOptimisticReads.incrementAndGet();
+		return null;
+	}
+	
+	/**
+	 * Get statistics about the module locks.
+	 * @return a mapping of statistic name to value.
+	 */
+	public Map<String, Long> getLockStatistics() {
+		final Map<String, Long> ret = new LinkedHashMap<String, Long>();
+		ret.put("modules", (long) moduleLocks.size());
+		ret.put("readlocks", readLocks.get());
+		ret.put("contendedreadlocks", contendedReadLocks.get());
+		ret.put("writelocks", writeLocks.get());
+		ret.put("contendedwritelocks", contendedWriteLocks.get());
+		ret.put("waitms", TimeUnit.NANOSECONDS.toMillis(lockWaitNanos.get()));
+		ret.put("optimisticreads", optimisticReads.get());
+		ret.put("failedoptimisticreads", failedOptimisticReads.get());
+		return ret;
 	}
 	
 	/**
@@ -322,6 +363,9 @@ public class TypeDefinitionDB {
 	 */
 	public String getJsonSchemaDocument(final TypeDefId typeDefId)
 			throws NoSuchTypeException, NoSuchModuleException, TypeStorageException {
+		final String cached = getCachedOptimistically(typeDefId, typeJsonSchemaCache);
+		if (cached != null)
+			return cached;
 		String moduleName = typeDefId.getType().getModule();
 		requestReadLock(moduleName);
 		try {
@@ -456,6 +500,9 @@ public class TypeDefinitionDB {
 	 */
 	public AbsoluteTypeDefId resolveTypeDefId(final TypeDefId typeDefId) 
 			throws NoSuchTypeException, NoSuchModuleException, TypeStorageException {
+		if (getCachedOptimistically(typeDefId, typeJsonSchemaCache) != null)
+			return new AbsoluteTypeDefId(typeDefId.getType(),
+					typeDefId.getMajorVersion(), typeDefId.getMinorVersion());
 		String moduleName = typeDefId.getType().getModule();
 		requestReadLock(moduleName);
 		try {
@@ -523,12 +570,33 @@ public class TypeDefinitionDB {
 	public JsonTokenValidationSchema getJsonSchema(final TypeDefId typeDefId)
 			throws NoSuchTypeException, NoSuchModuleException,
 			TypeStorageException, TypedObjectSchemaException {
+		final JsonTokenValidationSchema cached = getCachedOptimistically(
+				typeDefId, typeValidationSchemaCache);
+		if (cached != null)
+			return cached;
 		String moduleName = typeDefId.getType().getModule();
 		requestReadLock(moduleName);
 		try {
-			final String jsonSchemaDocument =
-					getJsonSchemaDocumentNL(typeDefId, null);
-			return JsonTokenValidationSchema.parseJsonSchema(jsonSchemaDocument);
+			AbsoluteTypeDefId absTypeDefId = resolveTypeDefIdNL(typeDefId, false);
+			try {
+				return typeValidationSchemaCache.get(absTypeDefId);
+			} catch (ExecutionException e) {
+				if (e.getCause() != null) {
+					if (e.getCause() instanceof NoSuchModuleException) {
+						throw (NoSuchModuleException)e.getCause();
+					} else if (e.getCause() instanceof NoSuchTypeException) {
+						throw (NoSuchTypeException)e.getCause();
+					} else if (e.getCause() instanceof TypeStorageException) {
+						throw (TypeStorageException)e.getCause();
+					} else if (e.getCause() instanceof TypedObjectSchemaException) {
+						throw (TypedObjectSchemaException)e.getCause();
+					} else {
+						throw new TypeStorageException(e.getCause().getMessage(), e.getCause());
+					}
+				} else {
+					throw new TypeStorageException(e.getMessage(), e);
+				}
+			}
 		} finally {
 			releaseReadLock(moduleName);
 		}
@@ -1149,6 +1217,7 @@ public class TypeDefinitionDB {
 	public void cleanupCaches() {
 		moduleInfoCache.cleanUp();
 		typeJsonSchemaCache.cleanUp();
+		typeValidationSchemaCache.cleanUp();
 	}
 	
 	private ModuleInfo copyOf(ModuleInfo input) throws TypeStorageException {
@@ -2615,6 +2684,17 @@ public class TypeDefinitionDB {
 	
 	private void removeModuleInfoFromCache(String moduleName) {
 		moduleInfoCache.invalidate(moduleName);		
+		removeTypeSchemasFromCache(typeJsonSchemaCache, moduleName);
+		removeTypeSchemasFromCache(typeValidationSchemaCache, moduleName);
+	}
+	
+	private static void removeTypeSchemasFromCache(LoadingCache<AbsoluteTypeDefId, ?> cache, 
+			String moduleName) {
+		List<AbsoluteTypeDefId> toRemove = new ArrayList<AbsoluteTypeDefId>();
+		for (AbsoluteTypeDefId typeDefId : cache.asMap().keySet())
+			if (typeDefId.getType().getModule().equals(moduleName))
+				toRemove.add(typeDefId);
+		cache.invalidateAll(toRemove);
 	}
 	
 	public TypeDetailedInfo getTypeDetailedInfo(TypeDefId typeDef, boolean markLinksInSpec, String userId) 
@@ -2893,8 +2973,12 @@ public class TypeDefinitionDB {
 		}
 	}
 	
-	private static class ModuleState {
-		int readerCount = 0;
-		int writerCount = 0;
+	private static class ModuleLock {
+		final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		// set while a writer holds or is waiting for the write lock
+		final AtomicBoolean writer = new AtomicBoolean(false);
+		// incremented when the write lock is taken and released, so it's odd
+		// while the module is being changed. Only changed by the writer.
+		volatile long stamp = 0;
 	}
 }
@@ -35,6 +35,7 @@ import com.mongodb.MongoClient;
 
 import us.kbase.common.test.controllers.mongo.MongoController;
 import us.kbase.typedobj.core.AbsoluteTypeDefId;
+import us.kbase.typedobj.core.JsonTokenValidationSchema;
 import us.kbase.typedobj.core.MD5;
 import us.kbase.typedobj.core.TypeDefId;
 import us.kbase.typedobj.core.TypeDefName;
@@ -560,6 +561,18 @@ public class TypeRegisteringTest {
 		}
 	}
 	
+	@Test
+	public void testNoLocksForMissingModules() throws Exception {
+		long modules = db.getLockStatistics().get("modules");
+		for (int i = 0; i < 10; i++) {
+			try {
+				db.getJsonSchemaDocument(new TypeDefId("NoSuchModule" + i + ".type", "1.0"));
+				Assert.fail();
+			} catch (NoSuchModuleException ex) {}
+		}
+		Assert.assertEquals(modules, (long) db.getLockStatistics().get("modules"));
+	}
+	
 	@Test
 	public void testStop() throws Exception {
 		String moduleName = "Regulation";
@@ -830,6 +843,25 @@ public class TypeRegisteringTest {
 		Assert.assertEquals("funcdef foo() returns () authentication none;", db.getFuncDetailedInfo("EmptyModule", "foo", null, false, "author").getSpecDef());
 	}
 	
+	@Test
+	public void testSchemaCache() throws Exception {
+		String user = "Owner";
+		initModule("Taxonomy", user);
+		db.registerModule(loadSpec("simple", "Taxonomy"), Arrays.asList("taxon"), user);
+		releaseModule("Taxonomy", user);
+		TypeDefId type = new TypeDefId(new TypeDefName("Taxonomy.taxon"), 1, 0);
+		JsonTokenValidationSchema schema = db.getJsonSchema(type);
+		Assert.assertSame(schema, db.getJsonSchema(type));
+		Assert.assertSame(schema, db.getJsonSchema(new TypeDefId("Taxonomy.taxon")));
+		db.removeModule("Taxonomy", adminUser, true);
+		try {
+			db.getJsonSchema(type);
+			Assert.fail("got schema for removed module");
+		} catch (NoSuchModuleException ex) {
+			Assert.assertTrue(ex.getMessage(), ex.getMessage().contains("Taxonomy"));
+		}
+	}
+	
 	private Map<String, Long> restrict(Object... params) {
 		Map<String, Long> restrictions = new HashMap<String, Long>();
 		for (int i = 0; i < params.length / 2; i++) {
@@ -7,6 +7,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class IdReferenceHandlerSet<T> {
 	
@@ -16,6 +17,8 @@ public class IdReferenceHandlerSet<T> {
 	private int currentUniqueIdCount = 0;
 	private boolean processed = false;
 	private T associated = null;
+	private List<IdReference<String>> recordedIds = null;
+	private AtomicInteger sharedIdCount = null;
 	
 	private final Map<IdReferenceType, IdReferenceHandler<T>> handlers;
 	
@@ -213,14 +216,70 @@ public class IdReferenceHandlerSet<T> {
 	public void addStringId(final IdReference<String> id)
 			throws TooManyIdsException, IdReferenceHandlerException {
 		checkIdRefValidity(id);
-		updateIdCount(handlers.get(id.getType()).addId(associated, 
-				id.getId(), id.getAttributes()));
+		final boolean newId = handlers.get(id.getType()).addId(associated, 
+				id.getId(), id.getAttributes());
+		if (recordedIds != null) {
+			recordedIds.add(id);
+		}
+		updateIdCount(newId);
+	}
+	
+	/** Record all IDs subsequently added to this handler set so they can be
+	 * added to another handler set with addStringIds(). This allows
+	 * validating objects concurrently with one handler set per object, and
+	 * then merging the IDs into a single set for batch processing.
+	 * @return this.
+	 */
+	public IdReferenceHandlerSet<T> recordIds() {
+		if (recordedIds == null) {
+			recordedIds = new LinkedList<IdReference<String>>();
+		}
+		return this;
+	}
+	
+	/** Count the unique IDs added to this handler set against a count
+	 * shared with other handler sets, as well as against this set's own
+	 * count. The maximum ID count applies to both, so the handler sets
+	 * together hold no more IDs than the maximum, for example when objects
+	 * are validated concurrently with one handler set per object.
+	 * @param count the count shared between the handler sets.
+	 * @return this.
+	 */
+	public IdReferenceHandlerSet<T> shareIdCount(final AtomicInteger count) {
+		if (count == null) {
+			throw new NullPointerException("count cannot be null");
+		}
+		sharedIdCount = count;
+		return this;
+	}
+	
+	/** Add all the string IDs recorded by another handler set to the
+	 * appropriate ID handlers, in the order they were recorded. The IDs are
+	 * associated with the object currently associated with this handler set.
+	 * @param ids the handler set that recorded the IDs.
+	 * @throws TooManyIdsException if too many IDs are currently in memory.
+	 * @throws IdReferenceHandlerException if an id could not be handled
+	 */
+	public void addStringIds(final IdReferenceHandlerSet<?> ids)
+			throws TooManyIdsException, IdReferenceHandlerException {
+		if (ids == null) {
+			throw new NullPointerException("ids cannot be null");
+		}
+		if (ids.recordedIds == null) {
+			throw new IllegalStateException(
+					"The handler set did not record its IDs");
+		}
+		for (final IdReference<String> id: ids.recordedIds) {
+			addStringId(id);
+		}
 	}
 
 	private void updateIdCount(final boolean newId)
 			throws TooManyIdsException {
 		currentUniqueIdCount += newId ? 1 : 0;
-		if (currentUniqueIdCount > maxUniqueIdCount) {
+		if (currentUniqueIdCount > maxUniqueIdCount || (newId &&
+				sharedIdCount != null &&
+				sharedIdCount.incrementAndGet() > maxUniqueIdCount)) {
 			throw new TooManyIdsException("Maximum ID count of " + 
 					maxUniqueIdCount + " exceeded");
 		}
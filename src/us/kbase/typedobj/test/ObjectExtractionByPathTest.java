@@ -3,6 +3,7 @@ package us.kbase.typedobj.test;
 import static org.junit.Assert.*;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -27,11 +28,14 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 import org.junit.runners.Parameterized.Parameters;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 
 import us.kbase.common.test.TestException;
+import us.kbase.typedobj.core.JsonOffsetIndex;
+import us.kbase.typedobj.core.JsonOffsetIndexer;
 import us.kbase.typedobj.core.ObjectPaths;
 import us.kbase.typedobj.core.SubdataExtractor;
 import us.kbase.typedobj.exceptions.TypedObjectExtractionException;
@@ -149,6 +153,56 @@ public class ObjectExtractionByPathTest {
 		if(VERBOSE) System.out.println("      PASS.");
 	}
 	
+	@Test
+	public void testIndexedInstance() throws Exception {
+		
+		TestInstanceInfo instance = instanceResources.get(this.instanceNumber);
+		String instanceJson = loadResourceFile(TEST_RESOURCE_LOCATION+instance.resourceName);
+		if(VERBOSE) System.out.println("  -INDEXED EXTRACTION TEST ("+instance.resourceName+")");
+		
+		ObjectMapper mapper = new ObjectMapper();
+		JsonNode instanceData = mapper.readTree(instanceJson);
+		JsonNode paths = instanceData.get("paths");
+		JsonNode data = instanceData.get("data");
+		JsonNode strict = instanceData.get("strict");
+		JsonNode expectedExtract = instanceData.get("extract");
+		boolean expectError = expectedExtract.isTextual();
+		
+		List<String>pathStrings = new ArrayList <String> (paths.size());
+		for(int k=0; k<paths.size(); k++) {
+			pathStrings.add(paths.get(k).asText());
+		}
+		ObjectPaths op;
+		if (strict != null) {
+			op = new ObjectPaths(pathStrings, strict.asBoolean(), ObjectPaths.STRICT_ARRAYS_DEFAULT);
+		} else {
+			op = new ObjectPaths(pathStrings);
+		}
+		// index the data as it is written, as the workspace does on save
+		ByteArrayOutputStream dataOut = new ByteArrayOutputStream();
+		JsonOffsetIndexer indexer = new JsonOffsetIndexer(dataOut);
+		mapper.writeValue(indexer, data);
+		byte[] dataBytes = dataOut.toByteArray();
+		JsonOffsetIndex index = JsonOffsetIndex.fromBytes(indexer.getIndex().toBytes());
+		assertEquals("  -("+instance.resourceName+") incorrect index size", dataBytes.length, index.getSize());
+		try {
+			ByteArrayOutputStream extractOut = new ByteArrayOutputStream();
+			JsonGenerator jgen = mapper.getFactory().createGenerator(extractOut);
+			SubdataExtractor.extract(op, index, JsonOffsetIndex.getByteSource(dataBytes), jgen);
+			jgen.close();
+			JsonNode extract = mapper.readTree(extractOut.toByteArray());
+			
+			assertFalse("  -("+instance.resourceName+") extracted something when error was expected; extract="+extract,expectError);
+			
+			compare(extract,expectedExtract, instance.resourceName);
+			
+		} catch(TypedObjectExtractionException e) {
+			assertTrue("  -("+instance.resourceName+") error message should be '"+expectedExtract.asText()+"', but was: '"+e.getMessage()+"'",
+					expectError && expectedExtract.asText().equals(e.getMessage()));
+		}
+		if(VERBOSE) System.out.println("      PASS.");
+	}
+	
 	public void compare(JsonNode expectedSubset, JsonNode actualSubset, String resourceName) throws IOException {
 		assertEquals("  -(" + resourceName + ") extracted object does not match expected extract",
 				sortJson(expectedSubset), sortJson(actualSubset));
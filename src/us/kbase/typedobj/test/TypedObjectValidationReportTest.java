@@ -26,6 +26,7 @@ import us.kbase.common.utils.sortjson.KeyDuplicationException;
 import us.kbase.common.utils.sortjson.TooManyKeysException;
 import us.kbase.common.utils.sortjson.UTF8JsonSorterFactory;
 import us.kbase.typedobj.core.JsonDocumentLocation;
+import us.kbase.typedobj.core.MD5DigestOutputStream;
 import us.kbase.typedobj.core.TempFilesManager;
 import us.kbase.typedobj.core.TypeDefId;
 import us.kbase.typedobj.core.TypedObjectValidationReport;
@@ -364,6 +365,11 @@ public class TypedObjectValidationReportTest {
 		ByteArrayOutputStream o = new ByteArrayOutputStream();
 		tovr.createJsonWritable().write(o);
 		assertThat("Relabel and sort in memory correctly", o.toString("UTF-8"), is(expectedJson));
+		MD5DigestOutputStream md5 = new MD5DigestOutputStream();
+		md5.write(o.toByteArray());
+		assertThat("correct md5", tovr.getMD5(), is(md5.getMD5()));
+		assertThat("correct sorted size", tovr.getSortedSize(),
+				is((long) o.size()));
 		
 		//sort via sort(TFM) method with null TFM, again in memory
 		handlers = fac.createHandlers(String.class).associateObject("foo");
@@ -393,6 +399,9 @@ public class TypedObjectValidationReportTest {
 		Writable w = tovr.createJsonWritable();
 		w.write(o);
 		assertThat("Relabel and in file correctly", o.toString("UTF-8"), is(expectedJson));
+		assertThat("correct md5 in file", tovr.getMD5(), is(md5.getMD5()));
+		assertThat("correct sorted size in file", tovr.getSortedSize(),
+				is((long) o.size()));
 		w.releaseResources();
 		assertThat("Temp files manager is empty", tfm.isEmpty(), is(true));
 	}
@@ -56,6 +56,15 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
  *                         < 0 are treated as 0, the default.
  *                 int limit - limit the output to X objects. Default and maximum value
  *                         is 10000. Limit values < 1 are treated as 10000, the default.
+ *                 obj_ref startAfter - only return objects after this object version,
+ *                         which must be given as a reference of the form
+ *                         wsid/objid/version, e.g. the workspace id, object id and version
+ *                         of the last object returned by the previous call. Objects are
+ *                         then returned in order of workspace id, object id and version,
+ *                         and the limit applies to the objects returned after filtering,
+ *                         so fewer objects than the limit means there are no more
+ *                         objects. This is much faster than skip for large workspaces and
+ *                         cannot be combined with skip.
  * </pre>
  * 
  */
@@ -77,7 +86,8 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
     "includeMetadata",
     "excludeGlobal",
     "skip",
-    "limit"
+    "limit",
+    "startAfter"
 })
 public class ListObjectsParams {
 
@@ -113,6 +123,8 @@ public class ListObjectsParams {
     private java.lang.Long skip;
     @JsonProperty("limit")
     private java.lang.Long limit;
+    @JsonProperty("startAfter")
+    private java.lang.String startAfter;
     private Map<java.lang.String, Object> additionalProperties = new HashMap<java.lang.String, Object>();
 
     @JsonProperty("workspaces")
@@ -355,6 +367,21 @@ public class ListObjectsParams {
         return this;
     }
 
+    @JsonProperty("startAfter")
+    public java.lang.String getStartAfter() {
+        return startAfter;
+    }
+
+    @JsonProperty("startAfter")
+    public void setStartAfter(java.lang.String startAfter) {
+        this.startAfter = startAfter;
+    }
+
+    public ListObjectsParams withStartAfter(java.lang.String startAfter) {
+        this.startAfter = startAfter;
+        return this;
+    }
+
     @JsonAnyGetter
     public Map<java.lang.String, Object> getAdditionalProperties() {
         return this.additionalProperties;
@@ -367,7 +394,7 @@ public class ListObjectsParams {
 
     @Override
     public java.lang.String toString() {
-        return ((((((((((((((((((((((((((((((((((("ListObjectsParams"+" [workspaces=")+ workspaces)+", ids=")+ ids)+", type=")+ type)+", perm=")+ perm)+", savedby=")+ savedby)+", meta=")+ meta)+", after=")+ after)+", before=")+ before)+", showDeleted=")+ showDeleted)+", showOnlyDeleted=")+ showOnlyDeleted)+", showHidden=")+ showHidden)+", showAllVersions=")+ showAllVersions)+", includeMetadata=")+ includeMetadata)+", excludeGlobal=")+ excludeGlobal)+", skip=")+ skip)+", limit=")+ limit)+", additionalProperties=")+ additionalProperties)+"]");
+        return ((((((((((((((((((((((((((((((((((((("ListObjectsParams"+" [workspaces=")+ workspaces)+", ids=")+ ids)+", type=")+ type)+", perm=")+ perm)+", savedby=")+ savedby)+", meta=")+ meta)+", after=")+ after)+", before=")+ before)+", showDeleted=")+ showDeleted)+", showOnlyDeleted=")+ showOnlyDeleted)+", showHidden=")+ showHidden)+", showAllVersions=")+ showAllVersions)+", includeMetadata=")+ includeMetadata)+", excludeGlobal=")+ excludeGlobal)+", skip=")+ skip)+", limit=")+ limit)+", startAfter=")+ startAfter)+", additionalProperties=")+ additionalProperties)+"]");
     }
 
 }
@@ -20,7 +20,11 @@ import us.kbase.common.service.UObject;
  *         Required arguments:
  *         type_string type - the type of the object. Omit the version information
  *                 to use the latest version.
+ *         
+ *         One, and only one, of the following is required:
  *         UnspecifiedObject data - the object data.
+ *         upload_id upload_id - the id of a completed chunked upload containing
+ *                 the object data. The upload is deleted once the object is saved.
  *         
  *         Optional arguments:
  *         One of an object name or id. If no name or id is provided the name
@@ -49,7 +53,8 @@ import us.kbase.common.service.UObject;
     "objid",
     "meta",
     "provenance",
-    "hidden"
+    "hidden",
+    "upload_id"
 })
 public class ObjectSaveData {
 
@@ -67,6 +72,8 @@ public class ObjectSaveData {
     private List<ProvenanceAction> provenance;
     @JsonProperty("hidden")
     private Long hidden;
+    @JsonProperty("upload_id")
+    private java.lang.String uploadId;
     private Map<java.lang.String, Object> additionalProperties = new HashMap<java.lang.String, Object>();
 
     @JsonProperty("type")
@@ -174,6 +181,21 @@ public class ObjectSaveData {
         return this;
     }
 
+    @JsonProperty("upload_id")
+    public java.lang.String getUploadId() {
+        return uploadId;
+    }
+
+    @JsonProperty("upload_id")
+    public void setUploadId(java.lang.String uploadId) {
+        this.uploadId = uploadId;
+    }
+
+    public ObjectSaveData withUploadId(java.lang.String uploadId) {
+        this.uploadId = uploadId;
+        return this;
+    }
+
     @JsonAnyGetter
     public Map<java.lang.String, Object> getAdditionalProperties() {
         return this.additionalProperties;
@@ -186,7 +208,7 @@ public class ObjectSaveData {
 
     @Override
     public java.lang.String toString() {
-        return ((((((((((((((((("ObjectSaveData"+" [type=")+ type)+", data=")+ data)+", name=")+ name)+", objid=")+ objid)+", meta=")+ meta)+", provenance=")+ provenance)+", hidden=")+ hidden)+", additionalProperties=")+ additionalProperties)+"]");
+        return ((((((((((((((((((("ObjectSaveData"+" [type=")+ type)+", data=")+ data)+", name=")+ name)+", objid=")+ objid)+", meta=")+ meta)+", provenance=")+ provenance)+", hidden=")+ hidden)+", uploadId=")+ uploadId)+", additionalProperties=")+ additionalProperties)+"]");
     }
 
 }
@@ -453,6 +453,99 @@ public class WorkspaceClient {
         return res.get(0);
     }
 
+    /**
+     * <p>Original spec-file function name: start_upload</p>
+     * <pre>
+     * Start a chunked upload of the data for an object. Chunked uploads
+     * allow saving objects that are too large to send in a single
+     * save_objects call. Once all the chunks are uploaded, save the object
+     * by providing the upload id to save_objects rather than the data.
+     * Uploads are held by the server process that started them, so an
+     * interrupted upload can only be resumed if it is sent to the same
+     * server, and is lost if that server restarts. Idle uploads are
+     * deleted after a day. A user may have at most 10 uploads in progress,
+     * and the server at most 100.
+     * int chunk_size - the size of each chunk in bytes. Every chunk except
+     *         the last must be exactly this size. The maximum chunk size is
+     *         50MB.
+     * </pre>
+     * @param   chunkSize   instance of Long
+     * @return   parameter "id" of original type "upload_id" (The id of a chunked upload of object data.)
+     * @throws IOException if an IO exception occurs
+     * @throws JsonClientException if a JSON RPC exception occurs
+     */
+    public String startUpload(Long chunkSize) throws IOException, JsonClientException {
+        List<Object> args = new ArrayList<Object>();
+        args.add(chunkSize);
+        TypeReference<List<String>> retType = new TypeReference<List<String>>() {};
+        List<String> res = caller.jsonrpcCall("Workspace.start_upload", args, retType, true, true);
+        return res.get(0);
+    }
+
+    /**
+     * <p>Original spec-file function name: upload_chunk</p>
+     * <pre>
+     * Upload a chunk of object data. Chunks may be uploaded in any order,
+     * and a chunk may be uploaded again, for example after a network error.
+     * upload_id id - the id of the upload.
+     * int chunk - the number of the chunk, starting at 0.
+     * string data - the chunk data, base64 encoded.
+     * string md5 - the hex encoded MD5 checksum of the chunk data before
+     *         encoding.
+     * </pre>
+     * @param   id   instance of original type "upload_id" (The id of a chunked upload of object data.)
+     * @param   chunk   instance of Long
+     * @param   data   instance of String
+     * @param   md5   instance of String
+     * @throws IOException if an IO exception occurs
+     * @throws JsonClientException if a JSON RPC exception occurs
+     */
+    public void uploadChunk(String id, Long chunk, String data, String md5) throws IOException, JsonClientException {
+        List<Object> args = new ArrayList<Object>();
+        args.add(id);
+        args.add(chunk);
+        args.add(data);
+        args.add(md5);
+        TypeReference<Object> retType = new TypeReference<Object>() {};
+        caller.jsonrpcCall("Workspace.upload_chunk", args, retType, false, true);
+    }
+
+    /**
+     * <p>Original spec-file function name: get_upload_chunks</p>
+     * <pre>
+     * List the chunks received so far for an upload, so that an interrupted
+     * upload may be resumed.
+     * </pre>
+     * @param   id   instance of original type "upload_id" (The id of a chunked upload of object data.)
+     * @return   parameter "chunks" of list of Long
+     * @throws IOException if an IO exception occurs
+     * @throws JsonClientException if a JSON RPC exception occurs
+     */
+    public List<Long> getUploadChunks(String id) throws IOException, JsonClientException {
+        List<Object> args = new ArrayList<Object>();
+        args.add(id);
+        TypeReference<List<List<Long>>> retType = new TypeReference<List<List<Long>>>() {};
+        List<List<Long>> res = caller.jsonrpcCall("Workspace.get_upload_chunks", args, retType, true, true);
+        return res.get(0);
+    }
+
+    /**
+     * <p>Original spec-file function name: abort_upload</p>
+     * <pre>
+     * Abort an upload and delete the uploaded data. Uploads that are not
+     * accessed for a day are deleted automatically.
+     * </pre>
+     * @param   id   instance of original type "upload_id" (The id of a chunked upload of object data.)
+     * @throws IOException if an IO exception occurs
+     * @throws JsonClientException if a JSON RPC exception occurs
+     */
+    public void abortUpload(String id) throws IOException, JsonClientException {
+        List<Object> args = new ArrayList<Object>();
+        args.add(id);
+        TypeReference<Object> retType = new TypeReference<Object>() {};
+        caller.jsonrpcCall("Workspace.abort_upload", args, retType, false, true);
+    }
+
     /**
      * <p>Original spec-file function name: get_object</p>
      * <pre>
@@ -597,6 +690,31 @@ public class WorkspaceClient {
         return res.get(0);
     }
 
+    /**
+     * <p>Original spec-file function name: list_transitive_references</p>
+     * <pre>
+     * List the objects reachable from one or more objects by following
+     * references.
+     * The objects are returned in levels. The first level contains the
+     * objects one reference away from the input objects, the second level
+     * the objects two references away, and so on. Each object is returned
+     * once, in the first level in which it is found.
+     * Only objects accessible to the user are returned, and references
+     * are not followed through inaccessible or deleted objects.
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.workspace.ListTransitiveReferencesParams ListTransitiveReferencesParams}
+     * @return   parameter "levels" of list of list of original type "object_info" (Information about an object, including user provided metadata. obj_id objid - the numerical id of the object. obj_name name - the name of the object. type_string type - the type of the object. timestamp save_date - the save date of the object. obj_ver ver - the version of the object. username saved_by - the user that saved or copied the object. ws_id wsid - the workspace containing the object. ws_name workspace - the workspace containing the object. string chsum - the md5 checksum of the object. int size - the size of the object in bytes. usermeta meta - arbitrary user-supplied metadata about the object.) &rarr; tuple of size 11: parameter "objid" of original type "obj_id" (The unique, permanent numerical ID of an object.), parameter "name" of original type "obj_name" (A string used as a name for an object. Any string consisting of alphanumeric characters and the characters |._- that is not an integer is acceptable.), parameter "type" of original type "type_string" (A type string. Specifies the type and its version in a single string in the format [module].[typename]-[major].[minor]: module - a string. The module name of the typespec containing the type. typename - a string. The name of the type as assigned by the typedef statement. major - an integer. The major version of the type. A change in the major version implies the type has changed in a non-backwards compatible way. minor - an integer. The minor version of the type. A change in the minor version implies that the type has changed in a way that is backwards compatible with previous type definitions. In many cases, the major and minor versions are optional, and if not provided the most recent version will be used. Example: MyModule.MyType-3.1), parameter "save_date" of original type "timestamp" (A time in the format YYYY-MM-DDThh:mm:ssZ, where Z is either the character Z (representing the UTC timezone) or the difference in time to UTC in the format +/-HHMM, eg: 2012-12-17T23:24:06-0500 (EST time) 2013-04-03T08:56:32+0000 (UTC time) 2013-04-03T08:56:32Z (UTC time)), parameter "version" of Long, parameter "saved_by" of original type "username" (Login name of a KBase user account.), parameter "wsid" of original type "ws_id" (The unique, permanent numerical ID of a workspace.), parameter "workspace" of original type "ws_name" (A string used as a name for a workspace. Any string consisting of alphanumeric characters and "_", ".", or "-" that is not an integer is acceptable. The name may optionally be prefixed with the workspace owner's user name and a colon, e.g. kbasetest:my_workspace.), parameter "chsum" of String, parameter "size" of Long, parameter "meta" of original type "usermeta" (User provided metadata about an object. Arbitrary key-value pairs provided by the user.) &rarr; mapping from String to String
+     * @throws IOException if an IO exception occurs
+     * @throws JsonClientException if a JSON RPC exception occurs
+     */
+    public List<List<Tuple11<Long, String, String, String, Long, String, Long, String, String, Long, Map<String,String>>>> listTransitiveReferences(ListTransitiveReferencesParams params) throws IOException, JsonClientException {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<List<List<Tuple11<Long, String, String, String, Long, String, Long, String, String, Long, Map<String,String>>>>>> retType = new TypeReference<List<List<List<Tuple11<Long, String, String, String, Long, String, Long, String, String, Long, Map<String,String>>>>>>() {};
+        List<List<List<Tuple11<Long, String, String, String, Long, String, Long, String, String, Long, Map<String,String>>>>> res = caller.jsonrpcCall("Workspace.list_transitive_references", args, retType, true, false);
+        return res.get(0);
+    }
+
     /**
      * <p>Original spec-file function name: get_referenced_objects</p>
      * <pre>
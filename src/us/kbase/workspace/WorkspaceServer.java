@@ -23,6 +23,8 @@ import static us.kbase.workspace.kbase.ArgUtils.translateObjectProvInfo;
 import static us.kbase.workspace.kbase.ArgUtils.translateObjectData;
 import static us.kbase.workspace.kbase.ArgUtils.objInfoToTuple;
 import static us.kbase.workspace.kbase.ArgUtils.translateObjectDataList;
+import static us.kbase.workspace.kbase.StreamingObjectDataList.streamObjectSubsets;
+import static us.kbase.workspace.kbase.StreamingObjectDataList.streamObjects;
 import static us.kbase.workspace.kbase.ArgUtils.longToBoolean;
 import static us.kbase.workspace.kbase.ArgUtils.longToInt;
 import static us.kbase.workspace.kbase.ArgUtils.parseDate;
@@ -160,10 +162,28 @@ public class WorkspaceServer extends JsonServerServlet {
 	//directory for temp files
 	private static final String TEMP_DIR = "temp-dir";
 	
+	//size of the shared object data cache in MB
+	private static final String BLOB_CACHE_MEM = "blob-cache-memory";
+	private static final String BLOB_CACHE_DISK = "blob-cache-disk";
+	//number of threads used to fetch object data from the backend
+	private static final String BLOB_FETCH_THREADS = "blob-fetch-threads";
+	//number of threads used to validate and sort objects being saved
+	private static final String VALIDATION_THREADS = "validation-threads";
+	//time in seconds to cache workspace permissions
+	private static final String PERM_CACHE_TTL = "permission-cache-ttl";
+	//stream get_objects and get_object_subset responses one object at a time
+	private static final String STREAM_OBJECTS = "stream-get-objects";
+	//directory for the local tier in front of the backend
+	private static final String LOCAL_TIER_DIR = "local-tier-dir";
+	
 	
 	private static final long MAX_RPC_PACKAGE_SIZE = 1005000000;
 	private static final int MAX_RPC_PACKAGE_MEM_USE = 100000000;
 	
+	//defaults for list_transitive_references
+	private static final int DEFAULT_REFERENCE_DEPTH = 10;
+	private static final int DEFAULT_REFERENCE_OBJECTS = 10000;
+	
 	private final static int TOKEN_REFRESH_INTERVAL_SEC = 24 * 60 * 60;
 	
 	private static Map<String, String> wsConfig = null;
@@ -180,6 +200,8 @@ public class WorkspaceServer extends JsonServerServlet {
 	private final URL handleManagerUrl;
 	private final RefreshingToken handleMgrToken;
 	
+	private final boolean streamObjectData;
+	
 	private ThreadLocal<Set<ByteArrayFileCache>> resourcesToDelete =
 			new ThreadLocal<Set<ByteArrayFileCache>>();
 	
@@ -187,14 +209,15 @@ public class WorkspaceServer extends JsonServerServlet {
 	
 	private WorkspaceDatabase getDB(final String host, final String dbs,
 			final String secret, final String user, final String pwd,
-			final TempFilesManager tfm, final int mongoReconnectRetry) {
+			final TempFilesManager tfm, final int mongoReconnectRetry,
+			final File localTier) {
 		try {
 			if (user != null) {
 				return new MongoWorkspaceDB(host, dbs, secret, user, pwd, tfm,
-						mongoReconnectRetry);
+						mongoReconnectRetry, localTier);
 			} else {
 				return new MongoWorkspaceDB(host, dbs, secret, tfm,
-						mongoReconnectRetry);
+						mongoReconnectRetry, localTier);
 			}
 		} catch (UnknownHostException uhe) {
 			fail("Couldn't find mongo host " + host + ": " +
@@ -342,6 +365,84 @@ public class WorkspaceServer extends JsonServerServlet {
 	}
 	
 
+	private long getMegabytes(final String configKey) {
+		final String mb = wsConfig.get(configKey);
+		if (mb == null || mb.isEmpty()) {
+			return 0;
+		}
+		Long mblong = null;
+		try {
+			mblong = Long.parseLong(mb);
+		} catch (NumberFormatException nfe) {
+			//do nothing
+		}
+		if (mblong == null || mblong < 0) {
+			logInfo(String.format("Couldn't parse %s value to a positive " +
+					"integer: %s, using 0", configKey, mb));
+			return 0;
+		}
+		logInfo(configKey + " value is " + mblong + "MB");
+		return mblong * 1000000L;
+	}
+	
+	private int getThreadCount(final String configKey, final int def) {
+		final String threads = wsConfig.get(configKey);
+		if (threads == null || threads.isEmpty()) {
+			return def;
+		}
+		Integer thrint = null;
+		try {
+			thrint = Integer.parseInt(threads);
+		} catch (NumberFormatException nfe) {
+			//do nothing
+		}
+		if (thrint == null || thrint < 1) {
+			logInfo(String.format("Couldn't parse %s value to an integer " +
+					"greater than 0: %s, using %s", configKey, threads, def));
+			return def;
+		}
+		logInfo(configKey + " value is " + thrint);
+		return thrint;
+	}
+	
+	private int getSeconds(final String configKey, final int def) {
+		final String secs = wsConfig.get(configKey);
+		if (secs == null || secs.isEmpty()) {
+			return def;
+		}
+		Integer secint = null;
+		try {
+			secint = Integer.parseInt(secs);
+		} catch (NumberFormatException nfe) {
+			//do nothing
+		}
+		if (secint == null || secint < 0) {
+			logInfo(String.format("Couldn't parse %s value to a positive " +
+					"integer: %s, using %s", configKey, secs, def));
+			return def;
+		}
+		logInfo(configKey + " value is " + secint + "s");
+		return secint;
+	}
+	
+	private ResourceUsageConfiguration getResourceUsageConfig() {
+		final long cacheMem = Math.min(getMegabytes(BLOB_CACHE_MEM),
+				Integer.MAX_VALUE);
+		return new ResourceUsageConfigurationBuilder()
+				.withBlobCacheMemoryUsage((int) cacheMem)
+				.withBlobCacheDiskUsage(getMegabytes(BLOB_CACHE_DISK))
+				.withBlobFetchThreads(getThreadCount(BLOB_FETCH_THREADS,
+						ResourceUsageConfigurationBuilder
+							.DEFAULT_BLOB_FETCH_THREADS))
+				.withValidationThreads(getThreadCount(VALIDATION_THREADS,
+						ResourceUsageConfigurationBuilder
+							.DEFAULT_VALIDATION_THREADS))
+				.withPermissionCacheTTL(getSeconds(PERM_CACHE_TTL,
+						ResourceUsageConfigurationBuilder
+							.DEFAULT_PERMISSION_CACHE_TTL))
+				.build();
+	}
+
 	private URL getHandleUrl(String configKey) {
 		final String urlStr = wsConfig.get(configKey);
 		if (urlStr == null || urlStr.isEmpty()) {
@@ -510,6 +611,11 @@ public class WorkspaceServer extends JsonServerServlet {
 			}
 		}
 		
+		streamObjectData = "true".equals(wsConfig.get(STREAM_OBJECTS));
+		if (streamObjectData) {
+			logInfo("Streaming object data responses one object at a time");
+		}
+		
 		if (!wsConfig.containsKey(KBASE_ADMIN_USER)) {
 			fail("Must provide param " + KBASE_ADMIN_USER + " in config file");
 			failed = true;
@@ -549,9 +655,16 @@ public class WorkspaceServer extends JsonServerServlet {
 			System.out.println("Temporary file location: "
 					+ tfm.getTempDir());
 			logInfo("Temporary file location: " + tfm.getTempDir());
+			final String tier = wsConfig.get(LOCAL_TIER_DIR);
+			final File localTier = tier == null || tier.isEmpty() ? null :
+				new File(tier);
+			if (localTier != null) {
+				System.out.println("Local tier location: " + localTier);
+				logInfo("Local tier location: " + localTier);
+			}
 			final int mongoConnectRetry = getReconnectCount();
 			final WorkspaceDatabase db = getDB(host, dbs, secret, user, pwd,
-					tfm, mongoConnectRetry);
+					tfm, mongoConnectRetry, localTier);
 			if (db == null) {
 				fail("Server startup failed - all calls will error out.");
 				ws = null;
@@ -562,8 +675,7 @@ public class WorkspaceServer extends JsonServerServlet {
 						db.getBackendType()));
 				logInfo(String.format("Initialized %s backend",
 						db.getBackendType()));
-				ws = new Workspace(db,
-						new ResourceUsageConfigurationBuilder().build(),
+				ws = new Workspace(db, getResourceUsageConfig(),
 						new KBaseReferenceParser());
 				wsmeth = new WorkspaceServerMethods(ws, handleServiceUrl,
 						maxUniqueIdCountPerCall,
@@ -885,6 +997,90 @@ public class WorkspaceServer extends JsonServerServlet {
         return returnVal;
     }
 
+    /**
+     * <p>Original spec-file function name: start_upload</p>
+     * <pre>
+     * Start a chunked upload of the data for an object. Chunked uploads
+     * allow saving objects that are too large to send in a single
+     * save_objects call. Once all the chunks are uploaded, save the object
+     * by providing the upload id to save_objects rather than the data.
+     * Uploads are held by the server process that started them, so an
+     * interrupted upload can only be resumed if it is sent to the same
+     * server, and is lost if that server restarts. Idle uploads are
+     * deleted after a day. A user may have at most 10 uploads in progress,
+     * and the server at most 100.
+     * int chunk_size - the size of each chunk in bytes. Every chunk except
+     *         the last must be exactly this size. The maximum chunk size is
+     *         50MB.
+     * </pre>
+     * @param   chunkSize   instance of Long
+     * @return   parameter "id" of original type "upload_id" (The id of a chunked upload of object data.)
+     */
+    @JsonServerMethod(rpc = "Workspace.start_upload")
+    public String startUpload(Long chunkSize, AuthToken authPart) throws Exception {
+        String returnVal = null;
+        //BEGIN start_upload
+		returnVal = wsmeth.startUpload(chunkSize, getUser(authPart));
+        //END start_upload
+        return returnVal;
+    }
+
+    /**
+     * <p>Original spec-file function name: upload_chunk</p>
+     * <pre>
+     * Upload a chunk of object data. Chunks may be uploaded in any order,
+     * and a chunk may be uploaded again, for example after a network error.
+     * upload_id id - the id of the upload.
+     * int chunk - the number of the chunk, starting at 0.
+     * string data - the chunk data, base64 encoded.
+     * string md5 - the hex encoded MD5 checksum of the chunk data before
+     *         encoding.
+     * </pre>
+     * @param   id   instance of original type "upload_id" (The id of a chunked upload of object data.)
+     * @param   chunk   instance of Long
+     * @param   data   instance of String
+     * @param   md5   instance of String
+     */
+    @JsonServerMethod(rpc = "Workspace.upload_chunk")
+    public void uploadChunk(String id, Long chunk, String data, String md5, AuthToken authPart) throws Exception {
+        //BEGIN upload_chunk
+		wsmeth.uploadChunk(id, chunk, data, md5, getUser(authPart));
+        //END upload_chunk
+    }
+
+    /**
+     * <p>Original spec-file function name: get_upload_chunks</p>
+     * <pre>
+     * List the chunks received so far for an upload, so that an interrupted
+     * upload may be resumed.
+     * </pre>
+     * @param   id   instance of original type "upload_id" (The id of a chunked upload of object data.)
+     * @return   parameter "chunks" of list of Long
+     */
+    @JsonServerMethod(rpc = "Workspace.get_upload_chunks")
+    public List<Long> getUploadChunks(String id, AuthToken authPart) throws Exception {
+        List<Long> returnVal = null;
+        //BEGIN get_upload_chunks
+		returnVal = wsmeth.getUploadChunks(id, getUser(authPart));
+        //END get_upload_chunks
+        return returnVal;
+    }
+
+    /**
+     * <p>Original spec-file function name: abort_upload</p>
+     * <pre>
+     * Abort an upload and delete the uploaded data. Uploads that are not
+     * accessed for a day are deleted automatically.
+     * </pre>
+     * @param   id   instance of original type "upload_id" (The id of a chunked upload of object data.)
+     */
+    @JsonServerMethod(rpc = "Workspace.abort_upload")
+    public void abortUpload(String id, AuthToken authPart) throws Exception {
+        //BEGIN abort_upload
+		wsmeth.abortUpload(id, getUser(authPart));
+        //END abort_upload
+    }
+
     /**
      * <p>Original spec-file function name: get_object</p>
      * <pre>
@@ -950,9 +1146,14 @@ public class WorkspaceServer extends JsonServerServlet {
 		final List<ObjectIdentifier> loi = processObjectIdentifiers(objectIds);
 		final Set<ByteArrayFileCache> resources =
 				new HashSet<ByteArrayFileCache>();
-		returnVal = translateObjectData(
-				ws.getObjects(getUser(authPart), loi), getUser(authPart),
-					resources, handleManagerUrl, handleMgrToken, true);
+		if (streamObjectData) {
+			returnVal = streamObjects(ws, getUser(authPart), loi, resources,
+					handleManagerUrl, handleMgrToken);
+		} else {
+			returnVal = translateObjectData(
+					ws.getObjects(getUser(authPart), loi), getUser(authPart),
+						resources, handleManagerUrl, handleMgrToken, true);
+		}
 		resourcesToDelete.set(resources);
         //END get_objects
         return returnVal;
@@ -985,9 +1186,15 @@ public class WorkspaceServer extends JsonServerServlet {
 				subObjectIds);
 		final Set<ByteArrayFileCache> resources =
 				new HashSet<ByteArrayFileCache>();
-		returnVal = translateObjectData(
-				ws.getObjectsSubSet(getUser(authPart), loi), getUser(authPart),
-						resources, handleManagerUrl, handleMgrToken, true);
+		if (streamObjectData) {
+			returnVal = streamObjectSubsets(ws, getUser(authPart), loi,
+					resources, handleManagerUrl, handleMgrToken);
+		} else {
+			returnVal = translateObjectData(
+					ws.getObjectsSubSet(getUser(authPart), loi),
+					getUser(authPart), resources, handleManagerUrl,
+					handleMgrToken, true);
+		}
 		resourcesToDelete.set(resources);
         //END get_object_subset
         return returnVal;
@@ -1056,6 +1263,40 @@ public class WorkspaceServer extends JsonServerServlet {
         return returnVal;
     }
 
+    /**
+     * <p>Original spec-file function name: list_transitive_references</p>
+     * <pre>
+     * List the objects reachable from one or more objects by following
+     * references.
+     * The objects are returned in levels. The first level contains the
+     * objects one reference away from the input objects, the second level
+     * the objects two references away, and so on. Each object is returned
+     * once, in the first level in which it is found.
+     * Only objects accessible to the user are returned, and references
+     * are not followed through inaccessible or deleted objects.
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.workspace.ListTransitiveReferencesParams ListTransitiveReferencesParams}
+     * @return   parameter "levels" of list of list of original type "object_info" (Information about an object, including user provided metadata. obj_id objid - the numerical id of the object. obj_name name - the name of the object. type_string type - the type of the object. timestamp save_date - the save date of the object. obj_ver ver - the version of the object. username saved_by - the user that saved or copied the object. ws_id wsid - the workspace containing the object. ws_name workspace - the workspace containing the object. string chsum - the md5 checksum of the object. int size - the size of the object in bytes. usermeta meta - arbitrary user-supplied metadata about the object.) &rarr; tuple of size 11: parameter "objid" of original type "obj_id" (The unique, permanent numerical ID of an object.), parameter "name" of original type "obj_name" (A string used as a name for an object. Any string consisting of alphanumeric characters and the characters |._- that is not an integer is acceptable.), parameter "type" of original type "type_string" (A type string. Specifies the type and its version in a single string in the format [module].[typename]-[major].[minor]: module - a string. The module name of the typespec containing the type. typename - a string. The name of the type as assigned by the typedef statement. major - an integer. The major version of the type. A change in the major version implies the type has changed in a non-backwards compatible way. minor - an integer. The minor version of the type. A change in the minor version implies that the type has changed in a way that is backwards compatible with previous type definitions. In many cases, the major and minor versions are optional, and if not provided the most recent version will be used. Example: MyModule.MyType-3.1), parameter "save_date" of original type "timestamp" (A time in the format YYYY-MM-DDThh:mm:ssZ, where Z is either the character Z (representing the UTC timezone) or the difference in time to UTC in the format +/-HHMM, eg: 2012-12-17T23:24:06-0500 (EST time) 2013-04-03T08:56:32+0000 (UTC time) 2013-04-03T08:56:32Z (UTC time)), parameter "version" of Long, parameter "saved_by" of original type "username" (Login name of a KBase user account.), parameter "wsid" of original type "ws_id" (The unique, permanent numerical ID of a workspace.), parameter "workspace" of original type "ws_name" (A string used as a name for a workspace. Any string consisting of alphanumeric characters and "_", ".", or "-" that is not an integer is acceptable. The name may optionally be prefixed with the workspace owner's user name and a colon, e.g. kbasetest:my_workspace.), parameter "chsum" of String, parameter "size" of Long, parameter "meta" of original type "usermeta" (User provided metadata about an object. Arbitrary key-value pairs provided by the user.) &rarr; mapping from String to String
+     */
+    @JsonServerMethod(rpc = "Workspace.list_transitive_references", authOptional=true)
+    public List<List<Tuple11<Long, String, String, String, Long, String, Long, String, String, Long, Map<String,String>>>> listTransitiveReferences(ListTransitiveReferencesParams params, AuthToken authPart) throws Exception {
+        List<List<Tuple11<Long, String, String, String, Long, String, Long, String, String, Long, Map<String,String>>>> returnVal = null;
+        //BEGIN list_transitive_references
+		checkAddlArgs(params.getAdditionalProperties(), params.getClass());
+		final List<ObjectIdentifier> loi = processObjectIdentifiers(
+				params.getObjects());
+		final int maxDepth = longToInt(params.getMaxDepth(), "Maximum depth",
+				DEFAULT_REFERENCE_DEPTH);
+		final int maxObjects = longToInt(params.getMaxObjects(),
+				"Maximum objects", DEFAULT_REFERENCE_OBJECTS);
+		returnVal = translateObjectDataList(
+				ws.getTransitiveReferences(getUser(authPart), loi,
+						longToBoolean(params.getDownstream()), maxDepth,
+						maxObjects), false);
+        //END list_transitive_references
+        return returnVal;
+    }
+
     /**
      * <p>Original spec-file function name: get_referenced_objects</p>
      * <pre>
@@ -1220,6 +1461,9 @@ public class WorkspaceServer extends JsonServerServlet {
 				params.getExcludeGlobal());
 		final int skip = longToInt(params.getSkip(), "Skip", -1);
 		final int limit = longToInt(params.getLimit(), "Limit", -1);
+		final ObjectIdentifier startAfter = params.getStartAfter() == null ?
+				null : ObjectIdentifier.parseObjectReference(
+						params.getStartAfter());
 		returnVal = objInfoToTuple(
 				//this sig is insane
 				ws.listObjects(getUser(authPart), wsis, type, p,
@@ -1227,7 +1471,8 @@ public class WorkspaceServer extends JsonServerServlet {
 						params.getMeta(), parseDate(params.getAfter()),
 						parseDate(params.getBefore()), showHidden,
 						showDeleted, showOnlyDeleted, showAllVers,
-						includeMetadata, excludeGlobal, skip, limit),
+						includeMetadata, excludeGlobal, skip, limit,
+						startAfter),
 						false);
         //END list_objects
         return returnVal;
@@ -3,17 +3,23 @@ package us.kbase.workspace.database;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 
 import us.kbase.common.service.JsonTokenStream;
 import us.kbase.common.service.UObject;
+import us.kbase.typedobj.core.JsonOffsetIndex;
 import us.kbase.typedobj.core.ObjectPaths;
 import us.kbase.typedobj.core.SubdataExtractor;
 import us.kbase.typedobj.core.TempFilesManager;
@@ -25,16 +31,43 @@ public class ByteArrayFileCacheManager {
 	
 	//TODO unit tests
 	
+	// max bytes to move per channel transfer when spilling to disk
+	private static final long TRANSFER_SIZE = 16 * 1024 * 1024;
+	
 	private int sizeInMem = 0;
 	private final int maxSizeInMem;
 	private long sizeOnDisk = 0;
 	private final long maxSizeOnDisk;
 	private final TempFilesManager tfm;
+	// null if this manager's usage is not counted against another manager
+	private final ByteArrayFileCacheManager parent;
 	
 	public ByteArrayFileCacheManager(int maxSizeInMem, long maxSizeOnDisk, TempFilesManager tfm) {
 		this.maxSizeInMem = maxSizeInMem;
 		this.maxSizeOnDisk = maxSizeOnDisk;
 		this.tfm = tfm;
+		this.parent = null;
+	}
+	
+	/** Create a manager whose usage is also counted against another
+	 * manager. Space is only available if it is available in both managers,
+	 * so the new manager's limits decide where data is stored, and the
+	 * parent's limits how much data may be stored in total.
+	 * @param parent the manager against which usage is also counted.
+	 * @param maxSizeInMem the maximum memory usage of this manager.
+	 * @param maxSizeOnDisk the maximum disk usage of this manager.
+	 * @param tfm the temporary file manager used to store data on disk.
+	 */
+	public ByteArrayFileCacheManager(final ByteArrayFileCacheManager parent,
+			final int maxSizeInMem, final long maxSizeOnDisk,
+			final TempFilesManager tfm) {
+		if (parent == null) {
+			throw new NullPointerException("parent cannot be null");
+		}
+		this.maxSizeInMem = maxSizeInMem;
+		this.maxSizeOnDisk = maxSizeOnDisk;
+		this.tfm = tfm;
+		this.parent = parent;
 	}
 	
 	public ByteArrayFileCache createBAFC(InputStream input)
@@ -42,7 +75,7 @@ public class ByteArrayFileCacheManager {
 		return createBAFC(input);
 	}
 	
-	public int getSizeInMem() {
+	public synchronized int getSizeInMem() {
 		return sizeInMem;
 	}
 
@@ -50,7 +83,7 @@ public class ByteArrayFileCacheManager {
 		return maxSizeInMem;
 	}
 
-	public long getSizeOnDisk() {
+	public synchronized long getSizeOnDisk() {
 		return sizeOnDisk;
 	}
 
@@ -64,75 +97,281 @@ public class ByteArrayFileCacheManager {
 			throws FileCacheIOException, FileCacheLimitExceededException {
 		byte[] buf = new byte[100000];
 		ByteArrayOutputStream bufOs = new ByteArrayOutputStream();
-		int maxInMemorySize = maxSizeInMem - sizeInMem;
 		long size = 0;
-		while (size < maxInMemorySize + 1) {
+		boolean inMem = true;
+		while (inMem) {
 			int count;
 			try {
-				count = input.read(buf, 0, Math.min(
-						buf.length, maxInMemorySize + 1 - (int)size));
+				count = input.read(buf, 0, buf.length);
 			} catch (IOException ioe) {
+				releaseMemory(size);
 				throw new FileCacheIOException(ioe.getLocalizedMessage(), ioe);
 			}
 			if (count < 0)
 				break;
 			bufOs.write(buf, 0, count);
-			size += count;
+			if (reserveMemory(count)) {
+				size += count;
+			} else {
+				releaseMemory(size);
+				size += count;
+				inMem = false;
+			}
 		}
 		try {
 			bufOs.close();
 		} catch (IOException ioe) {
 			throw new FileCacheIOException(ioe.getLocalizedMessage(), ioe);
 		}
-		if (size > maxInMemorySize) {
+		if (!inMem) {
 			File tempFile = null;
-			OutputStream os = null;
+			FileOutputStream os = null;
+			long diskReserved = 0;
 			try {
+				if (!reserveDisk(size)) {
+					throw new FileCacheLimitExceededException(
+							"Disk limit exceeded for file cache: " +
+									maxSizeOnDisk);
+				}
+				diskReserved = size;
 				tempFile = tfm.generateTempFile("resp", "json");
-				os = new BufferedOutputStream(
-						new FileOutputStream(tempFile));
+				os = new FileOutputStream(tempFile);
 				try {
-					os.write(bufOs.toByteArray());
+					// writes the internal buffer directly, no copy
+					bufOs.writeTo(os);
 					bufOs = null;
+					buf = null;
+					final FileChannel fc = os.getChannel();
+					// don't close, the caller owns the input stream. File
+					// channels share their position with the stream and are
+					// copied by the OS rather than through a buffer.
+					final ReadableByteChannel in =
+							input instanceof FileInputStream ?
+							((FileInputStream) input).getChannel() :
+							Channels.newChannel(input);
 					while (true) {
-						if (sizeOnDisk + size > maxSizeOnDisk) {
-							cleanUp(tempFile, os);
+						// never transfer more than 1 byte past the limit
+						final long count = fc.transferFrom(in, size, Math.min(
+								TRANSFER_SIZE, getRemainingDisk()) + 1);
+						if (count < 1)
+							break;
+						size += count;
+						if (!reserveDisk(count)) {
 							throw new FileCacheLimitExceededException(
 									"Disk limit exceeded for file cache: " +
 											maxSizeOnDisk);
 						}
-						int count = input.read(buf, 0, buf.length);
-						if (count < 0)
-							break;
-						os.write(buf, 0, count);
-						size += count;
+						diskReserved += count;
 					}
 				} finally {
 					try { os.close(); } catch (Exception ignore) {}
 				}
-				sizeOnDisk += size;
-				return new ByteArrayFileCache(null, tempFile,
+				return new ByteArrayFileCache(null, tempFile, null, size,
 						new JsonTokenStream(tempFile)
 							.setTrustedWholeJson(trustedJson), sorted);
+			} catch (FileCacheLimitExceededException e) {
+				releaseDisk(diskReserved);
+				cleanUp(tempFile, os);
+				throw e;
 			} catch (IOException ioe) {
+				releaseDisk(diskReserved);
 				cleanUp(tempFile, os);
 				throw new FileCacheIOException(ioe.getLocalizedMessage(), ioe);
 			} catch (RuntimeException re) {
+				releaseDisk(diskReserved);
 				cleanUp(tempFile, os);
 				throw re;
 			}
 		} else {
-			sizeInMem += (int)size;
 			try {
-				return new ByteArrayFileCache(null, null,
-						new JsonTokenStream(bufOs.toByteArray())
+				final byte[] data = bufOs.toByteArray();
+				return new ByteArrayFileCache(null, null, data, size,
+						new JsonTokenStream(data)
 							.setTrustedWholeJson(trustedJson), sorted);
 			} catch (IOException ioe) {
+				releaseMemory(size);
 				throw new FileCacheIOException(
 						ioe.getLocalizedMessage(), ioe);
 			}
 		}
 	}
+	
+	/** Writes data of a known size directly to the file backing a
+	 * ByteArrayFileCache.
+	 */
+	public interface FileFiller {
+		
+		/** Write the data to the file. Data may be written at any position
+		 * and from any thread, but must all be written when this method
+		 * returns.
+		 * @param file the file to which the data will be written.
+		 * @throws IOException if the data could not be written.
+		 */
+		public void fill(FileChannel file) throws IOException;
+	}
+	
+	/** Create a ByteArrayFileCache on disk by writing data of a known size
+	 * directly to the cache file, for example from parallel downloads,
+	 * rather than reading it from a stream. Disk space for all the data is
+	 * reserved before the filler is called.
+	 * @param size the size of the data in bytes.
+	 * @param filler writes the data to the cache file.
+	 * @param trustedJson true if the data is trusted to be valid JSON.
+	 * @param sorted true if the data is sorted.
+	 * @return the new cache.
+	 * @throws FileCacheIOException if the filler or the cache fails. The
+	 * filler's exception is the cause.
+	 * @throws FileCacheLimitExceededException if there is not enough space
+	 * left in the cache.
+	 */
+	public ByteArrayFileCache createBAFC(final long size,
+			final FileFiller filler, final boolean trustedJson,
+			final boolean sorted)
+			throws FileCacheIOException, FileCacheLimitExceededException {
+		if (!reserveDisk(size)) {
+			throw new FileCacheLimitExceededException(
+					"Disk limit exceeded for file cache: " + maxSizeOnDisk);
+		}
+		File tempFile = null;
+		RandomAccessFile raf = null;
+		try {
+			tempFile = tfm.generateTempFile("resp", "json");
+			raf = new RandomAccessFile(tempFile, "rw");
+			raf.setLength(size);
+			filler.fill(raf.getChannel());
+			raf.close();
+			raf = null;
+			return new ByteArrayFileCache(null, tempFile, null, size,
+					new JsonTokenStream(tempFile)
+						.setTrustedWholeJson(trustedJson), sorted);
+		} catch (IOException ioe) {
+			releaseDisk(size);
+			cleanUp(tempFile, raf);
+			throw new FileCacheIOException(ioe.getLocalizedMessage(), ioe);
+		} catch (RuntimeException re) {
+			releaseDisk(size);
+			cleanUp(tempFile, raf);
+			throw re;
+		}
+	}
+	
+	private void cleanUp(final File tempFile, final RandomAccessFile raf) {
+		if (raf != null)
+			try {
+				raf.close();
+			} catch (Exception ignore) {}
+		if (tempFile != null)
+			tempFile.delete();
+	}
+	
+	/* Space is reserved as data arrives rather than after it's all been read
+	 * so that multiple threads can share one manager without exceeding the
+	 * limits. Locks are always taken child first, so a child and its parent
+	 * can't deadlock.
+	 */
+	
+	private synchronized boolean reserveMemory(final long size) {
+		if (sizeInMem + size > maxSizeInMem) {
+			return false;
+		}
+		if (parent != null && !parent.reserveMemory(size)) {
+			return false;
+		}
+		sizeInMem += (int) size;
+		return true;
+	}
+	
+	private synchronized void releaseMemory(final long size) {
+		sizeInMem -= (int) size;
+		if (parent != null) {
+			parent.releaseMemory(size);
+		}
+	}
+	
+	private synchronized boolean reserveDisk(final long size) {
+		if (sizeOnDisk + size > maxSizeOnDisk) {
+			return false;
+		}
+		if (parent != null && !parent.reserveDisk(size)) {
+			return false;
+		}
+		sizeOnDisk += size;
+		return true;
+	}
+	
+	private synchronized void releaseDisk(final long size) {
+		sizeOnDisk -= size;
+		if (parent != null) {
+			parent.releaseDisk(size);
+		}
+	}
+	
+	private synchronized long getRemainingDisk() {
+		final long remaining = maxSizeOnDisk - sizeOnDisk;
+		return parent == null ? remaining :
+			Math.min(remaining, parent.getRemainingDisk());
+	}
+	
+	// true if this manager or one of its parents is the given manager
+	private boolean countsAgainst(final ByteArrayFileCacheManager man) {
+		for (ByteArrayFileCacheManager m = this; m != null; m = m.parent) {
+			if (m == man) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Create a ByteArrayFileCache that reads the same data as an existing
+	 * cache without copying it. Destroying the new cache never deletes the
+	 * source's data. Instead, the listener, if any, is notified so that the
+	 * owner of the source can keep track of outstanding readers.
+	 * 
+	 * The size of the data is counted against this manager's limits, as if
+	 * the data had been read by this manager, unless the source was created
+	 * by this manager or a manager whose usage is counted against this one.
+	 * @param source the cache containing the data to share.
+	 * @param listener notified when the new cache is destroyed. May be null.
+	 * @return a new cache that shares the source's data.
+	 * @throws FileCacheIOException if the shared data could not be opened.
+	 * @throws FileCacheLimitExceededException if there is not enough space
+	 * left in this manager for the data.
+	 */
+	public ByteArrayFileCache createSharedBAFC(
+			final ByteArrayFileCache source, final DestroyListener listener)
+			throws FileCacheIOException, FileCacheLimitExceededException {
+		source.checkIfDestroyed();
+		final boolean reserve = !source.getManager().countsAgainst(this);
+		// data in memory that doesn't fit would have been spilled to disk
+		final boolean inMem = reserve && source.data != null &&
+				reserveMemory(source.size);
+		if (reserve && !inMem && !reserveDisk(source.size)) {
+			throw new FileCacheLimitExceededException(
+					"Disk limit exceeded for file cache: " + maxSizeOnDisk);
+		}
+		try {
+			final JsonTokenStream jts;
+			if (source.data != null) {
+				jts = new JsonTokenStream(source.data);
+			} else {
+				jts = new JsonTokenStream(source.getBackingFile());
+			}
+			final ByteArrayFileCache ret = new ByteArrayFileCache(null, null,
+					source.data, source.size,
+					jts.setTrustedWholeJson(source.containsTrustedJson()),
+					source.isSorted());
+			ret.sharedFile = source.getBackingFile();
+			ret.listener = listener;
+			return ret;
+		} catch (IOException ioe) {
+			if (inMem) {
+				releaseMemory(source.size);
+			} else if (reserve) {
+				releaseDisk(source.size);
+			}
+			throw new FileCacheIOException(ioe.getLocalizedMessage(), ioe);
+		}
+	}
 
 	private void cleanUp(File tempFile, OutputStream os) {
 		if (os != null)
@@ -143,14 +382,37 @@ public class ByteArrayFileCacheManager {
 			tempFile.delete();
 	}
 
-	@SuppressWarnings("resource")
 	public ByteArrayFileCache getSubdataExtraction(
 			final ByteArrayFileCache parent, final ObjectPaths paths)
 			throws TypedObjectExtractionException,
 			FileCacheLimitExceededException, FileCacheIOException {
+		return getSubdataExtraction(parent, paths, null);
+	}
+	
+	/** Extract a subset of the data in a cache.
+	 * @param parent the cache containing the data.
+	 * @param paths the paths to extract.
+	 * @param index an offset index of the data in the parent cache, or null.
+	 * If provided, only the parts of the data that may contain the paths are
+	 * read.
+	 * @return a new cache containing the extracted data.
+	 * @throws TypedObjectExtractionException if the paths could not be
+	 * extracted.
+	 * @throws FileCacheLimitExceededException if the cache limits were
+	 * exceeded.
+	 * @throws FileCacheIOException if an IO error occurred.
+	 */
+	@SuppressWarnings("resource")
+	public ByteArrayFileCache getSubdataExtraction(
+			final ByteArrayFileCache parent, final ObjectPaths paths,
+			final JsonOffsetIndex index)
+			throws TypedObjectExtractionException,
+			FileCacheLimitExceededException, FileCacheIOException {
 		final OutputStream[] origin = {new ByteArrayOutputStream()};
 		final File[] tempFile = {null};
 		final long[] size = {0L};
+		final long[] memReserved = {0L};
+		final long[] diskReserved = {0L};
 		OutputStream os = new OutputStream() {
 			@Override
 			public void write(int b) throws IOException {
@@ -161,39 +423,51 @@ public class ByteArrayFileCacheManager {
 				origin[0].write(b, off, len);
 				size[0] += len;
 				if (tempFile[0] == null) {
-					if (sizeInMem + size[0] > maxSizeInMem) {
-						origin[0].close();
-						byte[] arr = ((ByteArrayOutputStream)origin[0]).toByteArray();
+					if (reserveMemory(len)) {
+						memReserved[0] += len;
+					} else {
+						releaseMemory(memReserved[0]);
+						memReserved[0] = 0;
+						final ByteArrayOutputStream mem =
+								(ByteArrayOutputStream) origin[0];
+						mem.close();
 						tempFile[0] = tfm.generateTempFile("resp", "json");
 						origin[0] = new BufferedOutputStream(new FileOutputStream(tempFile[0]));
-						origin[0].write(arr);
+						// writes the internal buffer directly, no copy
+						mem.writeTo(origin[0]);
+						reserveDiskOrFail(size[0]);
+						diskReserved[0] = size[0];
 					}
 				} else {
-					if (sizeOnDisk + size[0] > maxSizeOnDisk) {
-						final String err = "Disk limit exceeded for file cache: " +
-								maxSizeOnDisk;
-						throw new IOException(err,
-								new FileCacheLimitExceededException(err));
-					}
+					reserveDiskOrFail(len);
+					diskReserved[0] += len;
 				}
 			}
 			@Override
 			public void close() throws IOException {
 				origin[0].close();
 			}
+			
+			private void reserveDiskOrFail(final long len)
+					throws IOException {
+				if (!reserveDisk(len)) {
+					final String err = "Disk limit exceeded for file cache: " +
+							maxSizeOnDisk;
+					throw new IOException(err,
+							new FileCacheLimitExceededException(err));
+				}
+			}
 		};
 		try {
-			parent.getSubdataExtractionAsStream(paths, os);
+			parent.getSubdataExtractionAsStream(paths, index, os);
 			if (tempFile[0] != null) {
-				sizeOnDisk += size[0];
-				return new ByteArrayFileCache(parent, tempFile[0],
-						new JsonTokenStream(tempFile[0])
+				return new ByteArrayFileCache(parent, tempFile[0], null,
+						size[0], new JsonTokenStream(tempFile[0])
 						.setTrustedWholeJson(parent.containsTrustedJson()),
 						parent.isSorted()); 
 			} else {
-				sizeInMem += (int)size[0];
 				byte[] arr = ((ByteArrayOutputStream)origin[0]).toByteArray();
-				return new ByteArrayFileCache(parent, null,
+				return new ByteArrayFileCache(parent, null, arr, size[0],
 						new JsonTokenStream(arr)
 						.setTrustedWholeJson(parent.containsTrustedJson()),
 						parent.isSorted());
@@ -205,6 +479,8 @@ public class ByteArrayFileCacheManager {
 			if (tempFile[0] != null) {
 				tempFile[0].delete();
 			}
+			releaseMemory(memReserved[0]);
+			releaseDisk(diskReserved[0]);
 			if (e instanceof TypedObjectExtractionException) {
 				throw (TypedObjectExtractionException)e;
 			}
@@ -223,25 +499,42 @@ public class ByteArrayFileCacheManager {
 	}
 	
 	@Override
-	public String toString() {
+	public synchronized String toString() {
 		return "ByteArrayFileCacheManager [sizeInMem=" + sizeInMem
 				+ ", maxSizeInMem=" + maxSizeInMem + ", sizeOnDisk="
 				+ sizeOnDisk + ", maxSizeOnDisk=" + maxSizeOnDisk + "]";
 	}
 	
+	/** Notified when a ByteArrayFileCache created by
+	 * {@link ByteArrayFileCacheManager#createSharedBAFC} is destroyed.
+	 */
+	public interface DestroyListener {
+		
+		/** Called once when a shared cache is destroyed.
+		 * @param bafc the destroyed cache.
+		 */
+		public void destroyed(ByteArrayFileCache bafc);
+	}
+	
 	public class ByteArrayFileCache {
 		private File tempFile = null;
+		private File sharedFile = null;
+		private byte[] data = null;
+		private final long size;
 		private JsonTokenStream jts;
 		private ByteArrayFileCache parent = null;
+		private DestroyListener listener = null;
 		private boolean destroyed = false;
 		private final boolean sorted;
 		
 		// sorted is ignored if a parent is present
 		private ByteArrayFileCache(final ByteArrayFileCache parent,
-				final File tempFile, final JsonTokenStream jts,
-				final boolean sorted) {
+				final File tempFile, final byte[] data, final long size,
+				final JsonTokenStream jts, final boolean sorted) {
 			this.parent = parent;
 			this.tempFile = tempFile;
+			this.data = data;
+			this.size = size;
 			this.jts = jts;
 			if (parent != null) {
 				this.sorted = parent.isSorted();
@@ -254,6 +547,29 @@ public class ByteArrayFileCacheManager {
 			return sorted;
 		}
 		
+		/** Returns the size of the data in this cache in bytes.
+		 * @return the size of the data.
+		 */
+		public long getSize() {
+			return size;
+		}
+		
+		/** True if the data in this cache is stored in a file rather than
+		 * in memory.
+		 * @return true if the data is stored on disk.
+		 */
+		public boolean isOnDisk() {
+			return data == null;
+		}
+		
+		private File getBackingFile() {
+			return tempFile != null ? tempFile : sharedFile;
+		}
+		
+		private ByteArrayFileCacheManager getManager() {
+			return ByteArrayFileCacheManager.this;
+		}
+		
 		public UObject getUObject() {
 			checkIfDestroyed();
 			return new UObject(jts);
@@ -286,13 +602,29 @@ public class ByteArrayFileCacheManager {
 		}
 		
 		private void getSubdataExtractionAsStream(final ObjectPaths paths, 
-				final OutputStream os)
+				final JsonOffsetIndex index, final OutputStream os)
 				throws TypedObjectExtractionException {
 			checkIfDestroyed();
+			// an index for some other data is useless, so fall back to a scan
+			final boolean useIndex = index != null && index.getSize() == size;
 			try {
 				JsonGenerator jgen = UObject.getMapper().getFactory().createGenerator(os);
 				try {
-					SubdataExtractor.extract(paths, jts.setRoot(null), jgen);
+					if (!useIndex) {
+						SubdataExtractor.extract(paths, jts.setRoot(null), jgen);
+					} else if (data != null) {
+						SubdataExtractor.extract(paths, index,
+								JsonOffsetIndex.getByteSource(data), jgen);
+					} else {
+						final RandomAccessFile raf = new RandomAccessFile(
+								getBackingFile(), "r");
+						try {
+							SubdataExtractor.extract(paths, index,
+									JsonOffsetIndex.getByteSource(raf), jgen);
+						} finally {
+							raf.close();
+						}
+					}
 				} finally {
 					jts.close();
 					jgen.close();
@@ -320,7 +652,14 @@ public class ByteArrayFileCacheManager {
 			parent = null;
 			jts = null;
 			tempFile = null;
+			sharedFile = null;
+			data = null;
 			destroyed = true;
+			if (listener != null) {
+				final DestroyListener l = listener;
+				listener = null;
+				l.destroyed(this);
+			}
 		}
 	}
 }
@@ -0,0 +1,385 @@
+package us.kbase.workspace.database;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import us.kbase.typedobj.core.TempFilesManager;
+import us.kbase.workspace.database.exceptions.NoSuchUploadException;
+
+/** Stages object data that is uploaded in fixed size chunks, so that very
+ * large objects never need to be held in memory in their entirety.
+ *
+ * A client starts an upload, specifying the chunk size, and then sends the
+ * chunks in any order, each with its MD5 checksum. Each chunk is written
+ * directly to its position in a temporary file. Any chunk may be resent,
+ * for example after a network failure, and the chunks received so far can be
+ * listed so an interrupted upload can be resumed. Every chunk except the last
+ * must be exactly the chunk size.
+ *
+ * Once all the chunks are received the upload can be claimed, at which point
+ * no more chunks are accepted, and the temporary file can be read by the save
+ * pipeline. A claimed upload is either removed, which deletes the file, or
+ * released, which allows the upload to be claimed again.
+ *
+ * Uploads that are not accessed for longer than the timeout are deleted.
+ * Since every upload holds a temporary file, the number of uploads in
+ * progress is limited, both per user and in total.
+ *
+ * Uploads are only tracked in memory, so an upload can only be resumed on the
+ * same server process that started it.
+ * @author gaprice@lbl.gov
+ *
+ */
+public class ChunkedUploadManager {
+
+	/** The maximum size of an upload chunk in bytes. */
+	public static final int MAX_CHUNK_SIZE = 50000000;
+	/** The default time after which an idle upload is deleted, in
+	 * milliseconds.
+	 */
+	public static final long DEFAULT_TIMEOUT = 24 * 60 * 60 * 1000L;
+	/** The default maximum number of uploads in progress per user. */
+	public static final int DEFAULT_MAX_UPLOADS_PER_USER = 10;
+	/** The default maximum number of uploads in progress for all users. */
+	public static final int DEFAULT_MAX_UPLOADS = 100;
+
+	private final TempFilesManager tfm;
+	private final long timeout;
+	private final int maxUploadsPerUser;
+	private final int maxUploads;
+	private final Map<String, Upload> uploads = new HashMap<String, Upload>();
+
+	/** Create a new upload manager with the default timeout.
+	 * @param tfm the temporary file manager in which to store uploads.
+	 */
+	public ChunkedUploadManager(final TempFilesManager tfm) {
+		this(tfm, DEFAULT_TIMEOUT);
+	}
+
+	/** Create a new upload manager.
+	 * @param tfm the temporary file manager in which to store uploads.
+	 * @param timeout the time after which an idle upload is deleted, in
+	 * milliseconds.
+	 */
+	public ChunkedUploadManager(final TempFilesManager tfm,
+			final long timeout) {
+		this(tfm, timeout, DEFAULT_MAX_UPLOADS_PER_USER, DEFAULT_MAX_UPLOADS);
+	}
+
+	/** Create a new upload manager.
+	 * @param tfm the temporary file manager in which to store uploads.
+	 * @param timeout the time after which an idle upload is deleted, in
+	 * milliseconds.
+	 * @param maxUploadsPerUser the maximum number of uploads a user may have
+	 * in progress.
+	 * @param maxUploads the maximum number of uploads in progress for all
+	 * users.
+	 */
+	public ChunkedUploadManager(final TempFilesManager tfm,
+			final long timeout, final int maxUploadsPerUser,
+			final int maxUploads) {
+		if (tfm == null) {
+			throw new NullPointerException("tfm cannot be null");
+		}
+		if (timeout < 1) {
+			throw new IllegalArgumentException(
+					"timeout must be greater than zero");
+		}
+		if (maxUploadsPerUser < 1 || maxUploads < 1) {
+			throw new IllegalArgumentException(
+					"upload limits must be greater than zero");
+		}
+		this.tfm = tfm;
+		this.timeout = timeout;
+		this.maxUploadsPerUser = maxUploadsPerUser;
+		this.maxUploads = maxUploads;
+	}
+
+	/** Start a new upload.
+	 * @param user the user performing the upload.
+	 * @param chunkSize the size of each chunk, other than the last chunk.
+	 * @return the id of the upload.
+	 * @throws IllegalArgumentException if the user or the server already
+	 * has the maximum number of uploads in progress.
+	 */
+	public String startUpload(final WorkspaceUser user, final long chunkSize) {
+		if (user == null) {
+			throw new NullPointerException("user cannot be null");
+		}
+		if (chunkSize < 1 || chunkSize > MAX_CHUNK_SIZE) {
+			throw new IllegalArgumentException(String.format(
+					"Chunk size must be between 1 and %s bytes",
+					MAX_CHUNK_SIZE));
+		}
+		final String id = UUID.randomUUID().toString();
+		synchronized (this) {
+			expireUploads();
+			if (uploads.size() >= maxUploads) {
+				throw new IllegalArgumentException(String.format(
+						"The server already has the maximum of %s uploads " +
+						"in progress. Please try again later", maxUploads));
+			}
+			int userUploads = 0;
+			for (final Upload u: uploads.values()) {
+				if (u.user.equals(user)) {
+					userUploads++;
+				}
+			}
+			if (userUploads >= maxUploadsPerUser) {
+				throw new IllegalArgumentException(String.format(
+						"User %s already has the maximum of %s uploads in " +
+						"progress. Complete or abort an upload before " +
+						"starting another", user.getUser(),
+						maxUploadsPerUser));
+			}
+			uploads.put(id, new Upload(user, (int) chunkSize,
+					tfm.generateTempFile("upload", "json")));
+		}
+		return id;
+	}
+
+	/** Add a chunk to an upload. If the chunk has already been received, it
+	 * is overwritten.
+	 * @param user the user performing the upload.
+	 * @param uploadID the id of the upload.
+	 * @param chunk the number of the chunk, starting at 0.
+	 * @param data the chunk data.
+	 * @param md5 the hex encoded MD5 checksum of the chunk data.
+	 * @param maxSize the maximum size of the uploaded data.
+	 * @throws NoSuchUploadException if the upload does not exist.
+	 * @throws IOException if the chunk could not be written.
+	 */
+	public void addChunk(
+			final WorkspaceUser user,
+			final String uploadID,
+			final long chunk,
+			final byte[] data,
+			final String md5,
+			final long maxSize)
+			throws NoSuchUploadException, IOException {
+		if (data == null || md5 == null) {
+			throw new NullPointerException("data and md5 cannot be null");
+		}
+		if (!DigestUtils.md5Hex(data).equalsIgnoreCase(md5)) {
+			throw new IllegalArgumentException(String.format(
+					"Checksum mismatch for chunk %s of upload %s",
+					chunk, uploadID));
+		}
+		final Upload u = getUpload(user, uploadID);
+		synchronized (u) {
+			checkNotClaimed(u, uploadID);
+			if (chunk < 0) {
+				throw new IllegalArgumentException(
+						"Chunk number cannot be negative");
+			}
+			if (data.length < 1 || data.length > u.chunkSize) {
+				throw new IllegalArgumentException(String.format(
+						"Chunk %s of upload %s must be between 1 and %s bytes",
+						chunk, uploadID, u.chunkSize));
+			}
+			final Long lastShort = u.shortChunk;
+			if (data.length < u.chunkSize) {
+				if (lastShort != null && lastShort != chunk) {
+					throw new IllegalArgumentException(String.format(
+							"Only the last chunk of upload %s may be " +
+							"shorter than the chunk size, and chunk %s " +
+							"already is", uploadID, lastShort));
+				}
+				if (!u.chunks.isEmpty() && u.chunks.lastKey() > chunk) {
+					throw new IllegalArgumentException(String.format(
+							"Only the last chunk of upload %s may be " +
+							"shorter than the chunk size", uploadID));
+				}
+			} else if (lastShort != null && chunk > lastShort) {
+				throw new IllegalArgumentException(String.format(
+						"Chunk %s of upload %s is past the last chunk, %s",
+						chunk, uploadID, lastShort));
+			}
+			final long offset = chunk * u.chunkSize;
+			if (offset + data.length > maxSize) {
+				throw new IllegalArgumentException(String.format(
+						"Upload %s exceeds the maximum size of %s bytes",
+						uploadID, maxSize));
+			}
+			final RandomAccessFile raf = new RandomAccessFile(u.file, "rw");
+			try {
+				raf.seek(offset);
+				raf.write(data);
+			} finally {
+				raf.close();
+			}
+			u.chunks.put(chunk, data.length);
+			if (data.length < u.chunkSize) {
+				u.shortChunk = chunk;
+			} else if (lastShort != null && lastShort == chunk) {
+				u.shortChunk = null;
+			}
+			u.touch();
+		}
+	}
+
+	/** Get the numbers of the chunks received so far for an upload.
+	 * @param user the user performing the upload.
+	 * @param uploadID the id of the upload.
+	 * @return the chunk numbers, in ascending order.
+	 * @throws NoSuchUploadException if the upload does not exist.
+	 */
+	public List<Long> getReceivedChunks(
+			final WorkspaceUser user,
+			final String uploadID)
+			throws NoSuchUploadException {
+		final Upload u = getUpload(user, uploadID);
+		synchronized (u) {
+			u.touch();
+			return new ArrayList<Long>(u.chunks.keySet());
+		}
+	}
+
+	/** Claim a completed upload for saving. No further chunks are accepted
+	 * and the upload cannot be claimed again until it is released.
+	 * @param user the user performing the upload.
+	 * @param uploadID the id of the upload.
+	 * @return the file containing the uploaded data.
+	 * @throws NoSuchUploadException if the upload does not exist.
+	 * @throws IOException if the upload file could not be truncated.
+	 */
+	public File claimUpload(final WorkspaceUser user, final String uploadID)
+			throws NoSuchUploadException, IOException {
+		final Upload u = getUpload(user, uploadID);
+		synchronized (u) {
+			checkNotClaimed(u, uploadID);
+			if (u.chunks.isEmpty() ||
+					u.chunks.lastKey() != u.chunks.size() - 1) {
+				throw new IllegalArgumentException(String.format(
+						"Upload %s is incomplete", uploadID));
+			}
+			// a resent last chunk may be shorter than the original
+			long size = 0;
+			for (final Integer length: u.chunks.values()) {
+				size += length;
+			}
+			final RandomAccessFile raf = new RandomAccessFile(u.file, "rw");
+			try {
+				raf.setLength(size);
+			} finally {
+				raf.close();
+			}
+			u.claimed = true;
+			u.touch();
+			return u.file;
+		}
+	}
+
+	/** Release a claimed upload so that it may be claimed again, for example
+	 * after a failed save.
+	 * @param user the user performing the upload.
+	 * @param uploadID the id of the upload.
+	 * @throws NoSuchUploadException if the upload does not exist.
+	 */
+	public void releaseUpload(final WorkspaceUser user, final String uploadID)
+			throws NoSuchUploadException {
+		final Upload u = getUpload(user, uploadID);
+		synchronized (u) {
+			u.claimed = false;
+			u.touch();
+		}
+	}
+
+	/** Delete an upload, whether or not it is claimed.
+	 * @param user the user performing the upload.
+	 * @param uploadID the id of the upload.
+	 * @throws NoSuchUploadException if the upload does not exist.
+	 */
+	public void removeUpload(final WorkspaceUser user, final String uploadID)
+			throws NoSuchUploadException {
+		final Upload u = getUpload(user, uploadID);
+		synchronized (this) {
+			uploads.remove(uploadID);
+		}
+		u.file.delete();
+	}
+
+	/** Returns the number of uploads in progress.
+	 * @return the number of uploads.
+	 */
+	public synchronized int getUploadCount() {
+		expireUploads();
+		return uploads.size();
+	}
+
+	private Upload getUpload(final WorkspaceUser user, final String uploadID)
+			throws NoSuchUploadException {
+		if (user == null) {
+			throw new NullPointerException("user cannot be null");
+		}
+		final Upload u;
+		synchronized (this) {
+			expireUploads();
+			u = uploads.get(uploadID);
+		}
+		// don't leak the existence of other users' uploads
+		if (u == null || !u.user.equals(user)) {
+			throw new NoSuchUploadException(String.format(
+					"No upload with id %s exists", uploadID));
+		}
+		return u;
+	}
+
+	private void checkNotClaimed(final Upload u, final String uploadID) {
+		if (u.claimed) {
+			throw new IllegalArgumentException(String.format(
+					"Upload %s is currently being saved", uploadID));
+		}
+	}
+
+	// must hold the lock
+	private void expireUploads() {
+		final long now = System.currentTimeMillis();
+		final Iterator<Upload> iter = uploads.values().iterator();
+		while (iter.hasNext()) {
+			final Upload u = iter.next();
+			synchronized (u) {
+				if (!u.claimed && now - u.lastAccess > timeout) {
+					iter.remove();
+					u.file.delete();
+				}
+			}
+		}
+	}
+
+	private static class Upload {
+
+		private final WorkspaceUser user;
+		private final int chunkSize;
+		private final File file;
+		// chunk number -> chunk size
+		private final TreeMap<Long, Integer> chunks =
+				new TreeMap<Long, Integer>();
+		// the number of the chunk that is shorter than the chunk size
+		private Long shortChunk = null;
+		private boolean claimed = false;
+		private long lastAccess;
+
+		private Upload(final WorkspaceUser user, final int chunkSize,
+				final File file) {
+			this.user = user;
+			this.chunkSize = chunkSize;
+			this.file = file;
+			touch();
+		}
+
+		private void touch() {
+			lastAccess = System.currentTimeMillis();
+		}
+	}
+}
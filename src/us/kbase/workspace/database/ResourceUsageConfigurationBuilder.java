@@ -14,12 +14,25 @@ public class ResourceUsageConfigurationBuilder {
 			200000000; // must be at least 1x max data
 	final public static int DEFAULT_MAX_RETURNED_DATA_MEMORY_USAGE = 300000000;
 	final public static long DEFAULT_MAX_RETURNED_DATA_SIZE = 1000000000L;
+	// the shared blob cache is off unless configured
+	final public static int DEFAULT_BLOB_CACHE_MEMORY_USAGE = 0;
+	final public static long DEFAULT_BLOB_CACHE_DISK_USAGE = 0L;
+	final public static int DEFAULT_BLOB_FETCH_THREADS = 10;
+	final public static int DEFAULT_VALIDATION_THREADS =
+			Math.max(1, Runtime.getRuntime().availableProcessors());
+	// permissions are read from the database on every call unless configured
+	final public static int DEFAULT_PERMISSION_CACHE_TTL = 0;
 	
 	private int maxObjectSize;
 	private int maxIncomingDataMemoryUsage;
 	private int maxRelabelAndSortMemoryUsage;
 	private int maxReturnedDataMemoryUsage;
 	private long maxReturnedDataSize;
+	private int blobCacheMemoryUsage;
+	private long blobCacheDiskUsage;
+	private int blobFetchThreads;
+	private int validationThreads;
+	private int permissionCacheTTL;
 	
 	public ResourceUsageConfigurationBuilder() {
 		maxObjectSize = DEFAULT_MAX_OBJECT_SIZE;
@@ -27,6 +40,11 @@ public class ResourceUsageConfigurationBuilder {
 		maxRelabelAndSortMemoryUsage = DEFAULT_MAX_RELABEL_AND_SORT_MEMORY_USAGE;
 		maxReturnedDataMemoryUsage = DEFAULT_MAX_RETURNED_DATA_MEMORY_USAGE;
 		maxReturnedDataSize = DEFAULT_MAX_RETURNED_DATA_SIZE;
+		blobCacheMemoryUsage = DEFAULT_BLOB_CACHE_MEMORY_USAGE;
+		blobCacheDiskUsage = DEFAULT_BLOB_CACHE_DISK_USAGE;
+		blobFetchThreads = DEFAULT_BLOB_FETCH_THREADS;
+		validationThreads = DEFAULT_VALIDATION_THREADS;
+		permissionCacheTTL = DEFAULT_PERMISSION_CACHE_TTL;
 	}
 	
 	public ResourceUsageConfigurationBuilder(ResourceUsageConfiguration cfg) {
@@ -35,6 +53,11 @@ public class ResourceUsageConfigurationBuilder {
 		maxRelabelAndSortMemoryUsage = cfg.getMaxRelabelAndSortMemoryUsage();
 		maxReturnedDataMemoryUsage = cfg.getMaxReturnedDataMemoryUsage();
 		maxReturnedDataSize = cfg.getMaxReturnedDataSize();
+		blobCacheMemoryUsage = cfg.getBlobCacheMemoryUsage();
+		blobCacheDiskUsage = cfg.getBlobCacheDiskUsage();
+		blobFetchThreads = cfg.getBlobFetchThreads();
+		validationThreads = cfg.getValidationThreads();
+		permissionCacheTTL = cfg.getPermissionCacheTTL();
 	}
 	
 	public ResourceUsageConfigurationBuilder withMaxObjectSize(int maxObjectSize) {
@@ -66,10 +89,42 @@ public class ResourceUsageConfigurationBuilder {
 		return this;
 	}
 
+	public ResourceUsageConfigurationBuilder withBlobCacheMemoryUsage(
+			int blobCacheMemoryUsage) {
+		this.blobCacheMemoryUsage = blobCacheMemoryUsage;
+		return this;
+	}
+
+	public ResourceUsageConfigurationBuilder withBlobCacheDiskUsage(
+			long blobCacheDiskUsage) {
+		this.blobCacheDiskUsage = blobCacheDiskUsage;
+		return this;
+	}
+
+	public ResourceUsageConfigurationBuilder withBlobFetchThreads(
+			int blobFetchThreads) {
+		this.blobFetchThreads = blobFetchThreads;
+		return this;
+	}
+
+	public ResourceUsageConfigurationBuilder withValidationThreads(
+			int validationThreads) {
+		this.validationThreads = validationThreads;
+		return this;
+	}
+
+	public ResourceUsageConfigurationBuilder withPermissionCacheTTL(
+			int permissionCacheTTL) {
+		this.permissionCacheTTL = permissionCacheTTL;
+		return this;
+	}
+
 	public ResourceUsageConfiguration build() {
 		return new ResourceUsageConfiguration(maxObjectSize, 
 				maxIncomingDataMemoryUsage, maxRelabelAndSortMemoryUsage,
-				maxReturnedDataMemoryUsage, maxReturnedDataSize);
+				maxReturnedDataMemoryUsage, maxReturnedDataSize,
+				blobCacheMemoryUsage, blobCacheDiskUsage, blobFetchThreads,
+				validationThreads, permissionCacheTTL);
 	}
 
 	public class ResourceUsageConfiguration {
@@ -79,12 +134,22 @@ public class ResourceUsageConfigurationBuilder {
 		final private int maxRelabelAndSortMemoryUsage;
 		final private int maxReturnedDataMemoryUsage;
 		final private long maxReturnedDataSize;
+		final private int blobCacheMemoryUsage;
+		final private long blobCacheDiskUsage;
+		final private int blobFetchThreads;
+		final private int validationThreads;
+		final private int permissionCacheTTL;
 
 		private ResourceUsageConfiguration(final int maxObjectSize,
 				final int maxIncomingDataMemoryUsage,
 				final int maxRelabelAndSortMemoryUsage,
 				final int maxReturnedDataMemoryUsage,
-				final long maxReturnedDataSize) {
+				final long maxReturnedDataSize,
+				final int blobCacheMemoryUsage,
+				final long blobCacheDiskUsage,
+				final int blobFetchThreads,
+				final int validationThreads,
+				final int permissionCacheTTL) {
 			checkGTZero(maxObjectSize, "Maximum object size");
 			checkGTZero(maxIncomingDataMemoryUsage, "Maximum incoming data memory usage ");
 			checkGTZero(maxRelabelAndSortMemoryUsage, "Relabel and sort memory usage");
@@ -104,6 +169,16 @@ public class ResourceUsageConfigurationBuilder {
 						"Max returned data size must be greater than the max object size");
 			}
 			this.maxReturnedDataSize = maxReturnedDataSize;
+			checkNotNegative(blobCacheMemoryUsage, "Blob cache memory usage");
+			checkNotNegative(blobCacheDiskUsage, "Blob cache disk usage");
+			this.blobCacheMemoryUsage = blobCacheMemoryUsage;
+			this.blobCacheDiskUsage = blobCacheDiskUsage;
+			checkGTZero(blobFetchThreads, "Blob fetch thread count");
+			this.blobFetchThreads = blobFetchThreads;
+			checkGTZero(validationThreads, "Validation thread count");
+			this.validationThreads = validationThreads;
+			checkNotNegative(permissionCacheTTL, "Permission cache TTL");
+			this.permissionCacheTTL = permissionCacheTTL;
 		}
 
 		private void checkGTZero(long maxReturnedDataDiskUsage, String name) {
@@ -111,6 +186,12 @@ public class ResourceUsageConfigurationBuilder {
 				throw new IllegalArgumentException(name + " must be greater than zero");
 			}
 		}
+		
+		private void checkNotNegative(long value, String name) {
+			if (value < 0) {
+				throw new IllegalArgumentException(name + " cannot be negative");
+			}
+		}
 
 		/** The maximum object size allowed. Typed objects greater than this
 		 * size will cause an error to be thrown.
@@ -164,6 +245,53 @@ public class ResourceUsageConfigurationBuilder {
 		public long getMaxReturnedDataSize() {
 			return maxReturnedDataSize;
 		}
+		
+		/** The maximum memory to use for the server wide cache of typed
+		 * object data shared between method calls. Zero disables the memory
+		 * tier of the cache.
+		 * @return the maximum memory allowed for cached typed objects.
+		 */
+		public int getBlobCacheMemoryUsage() {
+			return blobCacheMemoryUsage;
+		}
+		
+		/** The maximum disk space to use for the server wide cache of typed
+		 * object data shared between method calls. Cached data is stored in
+		 * the temporary file directory. Zero disables the disk tier of the
+		 * cache.
+		 * @return the maximum disk space allowed for cached typed objects.
+		 */
+		public long getBlobCacheDiskUsage() {
+			return blobCacheDiskUsage;
+		}
+		
+		/** The number of threads, shared by all method calls, used to
+		 * fetch typed object data from the backend concurrently. Returned
+		 * data still counts against the per call memory and disk limits.
+		 * @return the number of threads used to fetch data.
+		 */
+		public int getBlobFetchThreads() {
+			return blobFetchThreads;
+		}
+		
+		/** The number of threads, shared by all method calls, used to
+		 * validate and sort the objects in a single save call concurrently.
+		 * @return the number of threads used to validate objects.
+		 */
+		public int getValidationThreads() {
+			return validationThreads;
+		}
+		
+		/** The time, in seconds, for which workspace permissions and
+		 * administrator status are cached. Changes made through this server
+		 * take effect immediately, but changes made through other servers
+		 * using the same database may take this long to be seen. Zero
+		 * disables the cache.
+		 * @return the time permissions are cached.
+		 */
+		public int getPermissionCacheTTL() {
+			return permissionCacheTTL;
+		}
 	}
 
 }
@@ -14,6 +14,13 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -67,6 +74,8 @@ import us.kbase.workspace.database.exceptions.WorkspaceCommunicationException;
 import us.kbase.workspace.exceptions.WorkspaceAuthorizationException;
 
 import com.fasterxml.jackson.core.JsonParseException;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 public class Workspace {
 	
@@ -87,6 +96,7 @@ public class Workspace {
 	
 	private final static int MAX_WS_DESCRIPTION = 1000;
 	private final static int MAX_INFO_COUNT = 10000;
+	private final static int MAX_REFERENCE_DEPTH = 100;
 	
 	private final static IdReferenceType WS_ID_TYPE = new IdReferenceType("ws");
 	
@@ -95,6 +105,13 @@ public class Workspace {
 	private final TempFilesManager tfm;
 	private ResourceUsageConfiguration rescfg;
 	private final ReferenceParser parser;
+	// shared by all calls, sized by the resource usage configuration
+	private final ThreadPoolExecutor validator = new ThreadPoolExecutor(
+			ResourceUsageConfigurationBuilder.DEFAULT_VALIDATION_THREADS,
+			ResourceUsageConfigurationBuilder.DEFAULT_VALIDATION_THREADS,
+			60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+			new ThreadFactoryBuilder().setDaemon(true)
+					.setNameFormat("validate-%d").build());
 	
 	public Workspace(
 			final WorkspaceDatabase db,
@@ -115,6 +132,7 @@ public class Workspace {
 		rescfg = cfg;
 		this.parser = parser;
 		db.setResourceUsageConfiguration(rescfg);
+		setValidationThreads(rescfg.getValidationThreads());
 	}
 	
 	public ResourceUsageConfiguration getResourceConfig() {
@@ -127,12 +145,28 @@ public class Workspace {
 		}
 		this.rescfg = rescfg;
 		db.setResourceUsageConfiguration(rescfg);
+		setValidationThreads(rescfg.getValidationThreads());
+	}
+	
+	private void setValidationThreads(final int threads) {
+		// the core size can't exceed the max size
+		if (threads > validator.getMaximumPoolSize()) {
+			validator.setMaximumPoolSize(threads);
+			validator.setCorePoolSize(threads);
+		} else {
+			validator.setCorePoolSize(threads);
+			validator.setMaximumPoolSize(threads);
+		}
 	}
 	
 	public TempFilesManager getTempFilesManager() {
 		return tfm;
 	}
 	
+	public Map<String, Map<String, Long>> getCacheStatistics() {
+		return db.getCacheStatistics();
+	}
+	
 	private void comparePermission(final WorkspaceUser user,
 			final Permission required, final Permission available,
 			final ObjectIdentifier oi, final String operation) throws
@@ -255,7 +289,9 @@ public class Workspace {
 					obj.getIdentifierString(), nswe.getLocalizedMessage()),
 					obj, nswe);
 		}
-		final PermissionSet perms = db.getPermissions(user,
+		//any user has no permission, so there's nothing to look up
+		final PermissionSet perms = Permission.NONE.equals(perm) ? null :
+				db.getPermissions(user,
 						new HashSet<ResolvedWorkspaceID>(rwsis.values()));
 		final Map<ObjectIdentifier, ObjectIDResolvedWS> ret =
 				new HashMap<ObjectIdentifier, ObjectIDResolvedWS>();
@@ -266,8 +302,10 @@ public class Workspace {
 			final ResolvedWorkspaceID r = rwsis.get(o.getWorkspaceIdentifier());
 			try {
 				checkLocked(perm, r);
-				comparePermission(user, perm, perms.getPermission(r, true), o,
-						operation);
+				if (perms != null) {
+					comparePermission(user, perm, perms.getPermission(r, true),
+							o, operation);
+				}
 			} catch (WorkspaceAuthorizationException wae) {
 				if (allowInaccessible) {
 					continue;
@@ -571,7 +609,8 @@ public class Workspace {
 				idHandlerFac.createHandlers(IDAssociation.class);
 		
 		final Map<WorkspaceSaveObject, TypedObjectValidationReport> reports = 
-				validateObjectsAndExtractReferences(objects, idhandler);
+				validateObjectsAndExtractReferences(objects, idHandlerFac,
+						idhandler);
 		
 		processIds(objects, idhandler, reports);
 		
@@ -633,44 +672,249 @@ public class Workspace {
 		} else {
 			tempTFM = null;
 		}
-		final UTF8JsonSorterFactory fac = new UTF8JsonSorterFactory(
-				rescfg.getMaxRelabelAndSortMemoryUsage());
-		for (ResolvedSaveObject ro: saveobjs) {
-			try {
-				//modifies object in place
-				ro.getRep().sort(fac, tempTFM);
-			} catch (KeyDuplicationException kde) {
-				/* this occurs when two references in the same hash resolve
-				 * to the same reference, so one value would be lost
-				 */
-				throw new TypedObjectValidationException(String.format(
-						"Object %s: Two references in a single hash are identical when resolved, resulting in a loss of data: ",
-						getObjectErrorId(ro.getObjectIdentifier(), objcount))
-						+ kde.getLocalizedMessage(), kde);
-			} catch (TooManyKeysException tmke) {
-				throw new TypedObjectValidationException(String.format(
-						"Object %s: ",
-						getObjectErrorId(ro.getObjectIdentifier(), objcount))
-						+ tmke.getLocalizedMessage(), tmke);
+		final int sortMem = rescfg.getMaxRelabelAndSortMemoryUsage();
+		/* Sorting in memory is bounded by the total incoming data size, so
+		 * the objects can be sorted concurrently. Sorting from disk may use
+		 * up to the sort memory limit per object, so sort serially.
+		 */
+		if (tempTFM != null || saveobjs.size() < 2 ||
+				validator.getMaximumPoolSize() < 2) {
+			final UTF8JsonSorterFactory fac =
+					new UTF8JsonSorterFactory(sortMem);
+			for (ResolvedSaveObject ro: saveobjs) {
+				sortObject(ro, fac, tempTFM, objcount);
+				objcount++;
+			}
+			return;
+		}
+		final List<Future<Void>> sorts = new LinkedList<Future<Void>>();
+		try {
+			for (final ResolvedSaveObject ro: saveobjs) {
+				final int count = objcount;
+				sorts.add(validator.submit(new Callable<Void>() {
+
+					@Override
+					public Void call() throws Exception {
+						sortObject(ro, new UTF8JsonSorterFactory(sortMem),
+								null, count);
+						return null;
+					}
+				}));
+				objcount++;
+			}
+			// report the error from the first failed object, as if serial
+			for (final Future<Void> f: sorts) {
+				try {
+					Uninterruptibles.getUninterruptibly(f);
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException) {
+						throw (IOException) e.getCause();
+					}
+					if (e.getCause() instanceof
+							TypedObjectValidationException) {
+						throw (TypedObjectValidationException) e.getCause();
+					}
+					throw rethrowUnchecked(e.getCause());
+				}
+			}
+		} finally {
+			cancelAndWait(sorts);
+		}
+	}
+	
+	private void sortObject(
+			final ResolvedSaveObject ro,
+			final UTF8JsonSorterFactory fac,
+			final TempFilesManager tempTFM,
+			final int objcount)
+			throws IOException, TypedObjectValidationException {
+		try {
+			//modifies object in place
+			ro.getRep().sort(fac, tempTFM);
+		} catch (KeyDuplicationException kde) {
+			/* this occurs when two references in the same hash resolve
+			 * to the same reference, so one value would be lost
+			 */
+			throw new TypedObjectValidationException(String.format(
+					"Object %s: Two references in a single hash are identical when resolved, resulting in a loss of data: ",
+					getObjectErrorId(ro.getObjectIdentifier(), objcount))
+					+ kde.getLocalizedMessage(), kde);
+		} catch (TooManyKeysException tmke) {
+			throw new TypedObjectValidationException(String.format(
+					"Object %s: ",
+					getObjectErrorId(ro.getObjectIdentifier(), objcount))
+					+ tmke.getLocalizedMessage(), tmke);
+		}
+	}
+	
+	/* Cancels any tasks that have not started and waits for running tasks
+	 * to finish, so no task outlives the method call that started it.
+	 */
+	private void cancelAndWait(final List<? extends Future<?>> tasks) {
+		for (final Future<?> f: tasks) {
+			if (!f.cancel(false)) {
+				try {
+					Uninterruptibles.getUninterruptibly(f);
+				} catch (ExecutionException e) {
+					//already reported or irrelevant
+				} catch (RuntimeException e) {
+					//cancelled
+				}
 			}
-			objcount++;
 		}
 	}
+	
+	private RuntimeException rethrowUnchecked(final Throwable t) {
+		if (t instanceof RuntimeException) {
+			throw (RuntimeException) t;
+		}
+		if (t instanceof Error) {
+			throw (Error) t;
+		}
+		throw new RuntimeException("Unexpected error processing objects", t);
+	}
 
+	/* Objects are validated concurrently, each against its own ID handler
+	 * set. The results are then merged into the main ID handler set in object
+	 * order, so errors and ID ordering are the same as when validating
+	 * serially.
+	 * The per object handler sets share one unique ID count, so together they
+	 * hold no more IDs than the maximum for the whole save. Which object
+	 * exceeds the shared count depends on timing, so an object that fails
+	 * that way is validated again against the main handler set, which
+	 * reports the same object as serial validation.
+	 */
 	private Map<WorkspaceSaveObject, TypedObjectValidationReport>
 			validateObjectsAndExtractReferences(
 			final List<WorkspaceSaveObject> objects,
+			final IdReferenceHandlerSetFactory idHandlerFac,
 			final IdReferenceHandlerSet<IDAssociation> idhandler)
 			throws TypeStorageException, TypedObjectSchemaException,
 			TypedObjectValidationException {
 		final TypedObjectValidator val = db.getTypeValidator();
+		final List<PendingValidation> pending;
+		if (objects.size() < 2 || validator.getMaximumPoolSize() < 2) {
+			pending = null;
+		} else {
+			pending = startValidation(objects, val, idHandlerFac);
+		}
+		try {
+			return validateObjectsAndExtractReferences(
+					objects, val, idhandler, pending);
+		} finally {
+			if (pending != null) {
+				final List<Future<TypedObjectValidationReport>> tasks =
+						new LinkedList<Future<TypedObjectValidationReport>>();
+				for (final PendingValidation pv: pending) {
+					tasks.add(pv.report);
+				}
+				cancelAndWait(tasks);
+			}
+		}
+	}
+	
+	private static class PendingValidation {
+		private final IdReferenceHandlerSet<IDAssociation> idhandler;
+		private final Future<TypedObjectValidationReport> report;
+		
+		private PendingValidation(
+				final IdReferenceHandlerSet<IDAssociation> idhandler,
+				final Future<TypedObjectValidationReport> report) {
+			this.idhandler = idhandler;
+			this.report = report;
+		}
+	}
+	
+	private List<PendingValidation> startValidation(
+			final List<WorkspaceSaveObject> objects,
+			final TypedObjectValidator val,
+			final IdReferenceHandlerSetFactory idHandlerFac) {
+		final List<PendingValidation> pending =
+				new ArrayList<PendingValidation>();
+		final AtomicInteger idcount = new AtomicInteger();
+		int objcount = 1;
+		for (final WorkspaceSaveObject wo: objects) {
+			final int count = objcount;
+			final IdReferenceHandlerSet<IDAssociation> objhandler =
+					idHandlerFac.createHandlers(IDAssociation.class)
+					.recordIds().shareIdCount(idcount);
+			objhandler.associateObject(new IDAssociation(count, false));
+			pending.add(new PendingValidation(objhandler, validator.submit(
+					new Callable<TypedObjectValidationReport>() {
+
+						@Override
+						public TypedObjectValidationReport call()
+								throws Exception {
+							return validate(wo, val, objhandler, count);
+						}
+					})));
+			objcount++;
+		}
+		return pending;
+	}
+	
+	private TypedObjectValidationReport mergeValidation(
+			final PendingValidation pv,
+			final TypedObjectValidator val,
+			final IdReferenceHandlerSet<IDAssociation> idhandler,
+			final WorkspaceSaveObject wo,
+			final int objcount)
+			throws TypeStorageException, TypedObjectSchemaException,
+			TypedObjectValidationException {
+		final TypedObjectValidationReport rep;
+		try {
+			rep = Uninterruptibles.getUninterruptibly(pv.report);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof TypeStorageException) {
+				throw (TypeStorageException) e.getCause();
+			}
+			if (e.getCause() instanceof TypedObjectSchemaException) {
+				throw (TypedObjectSchemaException) e.getCause();
+			}
+			if (e.getCause() instanceof TypedObjectValidationException) {
+				if (e.getCause().getCause() instanceof TooManyIdsException) {
+					return validate(wo, val, idhandler, objcount);
+				}
+				throw (TypedObjectValidationException) e.getCause();
+			}
+			throw rethrowUnchecked(e.getCause());
+		}
+		try {
+			idhandler.addStringIds(pv.idhandler);
+		} catch (TooManyIdsException tmie) {
+			throw wrapTooManyIDsException(objcount, idhandler, tmie);
+		} catch (IdReferenceHandlerException ihre) {
+			//shouldn't happen, an identical handler accepted the ID
+			throw new TypedObjectValidationException(String.format(
+					"Object %s failed type checking:\n",
+					getObjectErrorId(wo, objcount))
+					+ ihre.getLocalizedMessage(), ihre);
+		}
+		rep.setIdHandler(idhandler);
+		return rep;
+	}
+
+	private Map<WorkspaceSaveObject, TypedObjectValidationReport>
+			validateObjectsAndExtractReferences(
+			final List<WorkspaceSaveObject> objects,
+			final TypedObjectValidator val,
+			final IdReferenceHandlerSet<IDAssociation> idhandler,
+			final List<PendingValidation> pending)
+			throws TypeStorageException, TypedObjectSchemaException,
+			TypedObjectValidationException {
 		final Map<WorkspaceSaveObject, TypedObjectValidationReport> reports = 
 				new HashMap<WorkspaceSaveObject, TypedObjectValidationReport>();
 		int objcount = 1;
 		for (final WorkspaceSaveObject wo: objects) {
 			idhandler.associateObject(new IDAssociation(objcount, false));
-			final TypedObjectValidationReport rep = validate(wo, val,
-					idhandler, objcount);
+			final TypedObjectValidationReport rep;
+			if (pending == null) {
+				rep = validate(wo, val, idhandler, objcount);
+			} else {
+				rep = mergeValidation(pending.get(objcount - 1), val,
+						idhandler, wo, objcount);
+			}
+			checkValid(rep, wo, objcount);
 			reports.put(wo, rep);
 			idhandler.associateObject(new IDAssociation(objcount, true));
 			try {
@@ -796,6 +1040,14 @@ public class Workspace {
 					"A fatal IO error occured while type checking object %s: ",
 					getObjectErrorId(wo, objcount)) + ioe.getMessage(), ioe);
 		}
+		return rep;
+	}
+	
+	private void checkValid(
+			final TypedObjectValidationReport rep,
+			final WorkspaceSaveObject wo,
+			final int objcount)
+			throws TypedObjectValidationException {
 		if (!rep.isInstanceValid()) {
 			final List<String> e = rep.getErrorMessages();
 			final String err = StringUtils.join(e, "\n");
@@ -803,7 +1055,6 @@ public class Workspace {
 					"Object %s failed type checking:\n",
 					getObjectErrorId(wo, objcount)) + err);
 		}
-		return rep;
 	}
 	
 	private TypedObjectValidationException wrapTooManyIDsException(
@@ -849,6 +1100,37 @@ public class Workspace {
 			int skip, int limit)
 			throws CorruptWorkspaceDBException, NoSuchWorkspaceException,
 			WorkspaceCommunicationException, WorkspaceAuthorizationException {
+		return listObjects(user, wsis, type, minPerm, savers, meta, after,
+				before, showHidden, showDeleted, showOnlyDeleted, showAllVers,
+				includeMetaData, excludeGlobal, skip, limit, null);
+	}
+	
+	/* startAfter must be an absolute reference. If provided objects are
+	 * listed in order of workspace id, object id and version starting after
+	 * the reference, and limit applies to the filtered objects.
+	 */
+	public List<ObjectInformation> listObjects(final WorkspaceUser user,
+			final List<WorkspaceIdentifier> wsis, final TypeDefId type,
+			Permission minPerm, final List<WorkspaceUser> savers,
+			final Map<String, String> meta, final Date after, final Date before,
+			final boolean showHidden, final boolean showDeleted,
+			final boolean showOnlyDeleted, final boolean showAllVers,
+			final boolean includeMetaData, final boolean excludeGlobal,
+			int skip, int limit, final ObjectIdentifier startAfter)
+			throws CorruptWorkspaceDBException, NoSuchWorkspaceException,
+			WorkspaceCommunicationException, WorkspaceAuthorizationException {
+		if (startAfter != null) {
+			if (startAfter.getWorkspaceIdentifier().getId() == null ||
+					startAfter.getId() == null ||
+					startAfter.getVersion() == null) {
+				throw new IllegalArgumentException(
+						"The object to start after must be specified by an absolute reference");
+			}
+			if (skip > 0) {
+				throw new IllegalArgumentException(
+						"Cannot specify both skip and an object to start after");
+			}
+		}
 		if (skip < 0) {
 			skip = 0;
 		}
@@ -878,7 +1160,7 @@ public class Workspace {
 		}
 		return db.getObjectInformation(pset, type, savers, meta, after, before,
 				showHidden, showDeleted, showOnlyDeleted, showAllVers,
-				includeMetaData, skip, limit);
+				includeMetaData, skip, limit, startAfter);
 	}
 	
 	public List<WorkspaceObjectInformation> getObjectProvenance(
@@ -920,6 +1202,31 @@ public class Workspace {
 		return ret;
 	}
 	
+	/** Fetches the data of an object given the information returned for the
+	 * object by getObjectProvenance(). Allows checking permissions and
+	 * resolving versions for many objects at once and then fetching the data
+	 * one object at a time.
+	 * @param info the information for the object, as returned by
+	 * getObjectProvenance().
+	 * @param paths the paths to extract from the object, or null to get the
+	 * entire object.
+	 * @return the object data.
+	 */
+	public WorkspaceObjectData getObjectData(
+			final WorkspaceObjectInformation info, final ObjectPaths paths)
+			throws CorruptWorkspaceDBException,
+			WorkspaceCommunicationException, TypedObjectExtractionException {
+		final WorkspaceObjectData ret = new WorkspaceObjectData(
+				db.getObjectData(info.getObjectInfo(), paths),
+				info.getObjectInfo(), info.getProvenance(),
+				info.getReferences(), info.getCopyReference(),
+				info.getExtractedIds());
+		if (info.isCopySourceInaccessible()) {
+			ret.setCopySourceInaccessible();
+		}
+		return ret;
+	}
+	
 	public List<WorkspaceObjectData> getObjectsSubSet(final WorkspaceUser user,
 			final List<SubObjectIdentifier> loi) throws
 			CorruptWorkspaceDBException, WorkspaceCommunicationException,
@@ -974,6 +1281,7 @@ public class Workspace {
 		Map<ObjectIdentifier, ObjectIDResolvedWS> reschains =
 				new HashMap<ObjectIdentifier, ObjectIDResolvedWS>();
 		if (!rest.isEmpty()) {
+			//chain objects only need to exist, access comes from the head
 			reschains = checkPerms(user, rest, Permission.NONE, "foo", true);
 		}
 		final Map<ObjectChain, ObjectChainResolvedWS> objs =
@@ -1105,6 +1413,44 @@ public class Workspace {
 		return ret;
 	}
 	
+	public List<Set<ObjectInformation>> getTransitiveReferences(
+			final WorkspaceUser user, final List<ObjectIdentifier> loi,
+			final boolean downstream, final int maxDepth, final int maxObjects)
+			throws WorkspaceCommunicationException, InaccessibleObjectException,
+			CorruptWorkspaceDBException {
+		if (maxDepth < 1 || maxDepth > MAX_REFERENCE_DEPTH) {
+			throw new IllegalArgumentException(String.format(
+					"Maximum depth must be between 1 and %s",
+					MAX_REFERENCE_DEPTH));
+		}
+		if (maxObjects < 1 || maxObjects > MAX_INFO_COUNT) {
+			throw new IllegalArgumentException(String.format(
+					"Maximum number of objects must be between 1 and %s",
+					MAX_INFO_COUNT));
+		}
+		final Map<ObjectIdentifier, ObjectIDResolvedWS> ws = 
+				checkPerms(user, loi, Permission.READ, "read");
+		return db.getTransitiveReferences(user,
+				new HashSet<ObjectIDResolvedWS>(ws.values()), downstream,
+				maxDepth, maxObjects);
+	}
+	
+	public Map<String, Object> buildReferenceIndex(final boolean start) {
+		return db.buildReferenceIndex(start);
+	}
+	
+	public Map<String, Object> recompressBlobs(final boolean start) {
+		return db.recompressBlobs(start);
+	}
+	
+	public Map<String, Object> getBlobReplicationStatus() {
+		return db.getBlobReplicationStatus();
+	}
+	
+	public Map<String, Object> getBlobTransferStatistics() {
+		return db.getBlobTransferStatistics();
+	}
+	
 	public List<Integer> getReferencingObjectCounts(
 			final WorkspaceUser user, final List<ObjectIdentifier> loi)
 			throws WorkspaceCommunicationException, InaccessibleObjectException,
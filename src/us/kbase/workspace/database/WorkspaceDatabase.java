@@ -10,6 +10,7 @@ import us.kbase.typedobj.core.TempFilesManager;
 import us.kbase.typedobj.core.TypeDefId;
 import us.kbase.typedobj.core.TypedObjectValidator;
 import us.kbase.typedobj.exceptions.TypedObjectExtractionException;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
 import us.kbase.workspace.database.ResourceUsageConfigurationBuilder.ResourceUsageConfiguration;
 import us.kbase.workspace.database.exceptions.CorruptWorkspaceDBException;
 import us.kbase.workspace.database.exceptions.NoSuchObjectException;
@@ -124,6 +125,19 @@ public interface WorkspaceDatabase {
 			throws NoSuchObjectException, WorkspaceCommunicationException,
 			CorruptWorkspaceDBException, TypedObjectExtractionException;
 	
+	/** Fetches the data of a single object, given object information
+	 * previously retrieved from the database. Allows fetching the data of
+	 * several objects one at a time after resolving them all at once.
+	 * @param info the information for the object.
+	 * @param paths the paths to extract from the object, or null to get
+	 * the entire object.
+	 * @return the object data, which the caller must destroy.
+	 */
+	public ByteArrayFileCache getObjectData(ObjectInformation info,
+			ObjectPaths paths)
+			throws WorkspaceCommunicationException,
+			CorruptWorkspaceDBException, TypedObjectExtractionException;
+	
 	public Map<ObjectChainResolvedWS, WorkspaceObjectData> getReferencedObjects(
 			Set<ObjectChainResolvedWS> values)
 			throws NoSuchObjectException, WorkspaceCommunicationException,
@@ -138,6 +152,36 @@ public interface WorkspaceDatabase {
 			Set<ObjectIDResolvedWS> objects)
 			throws WorkspaceCommunicationException, NoSuchObjectException;
 	
+	/** Walks the reference graph from a set of objects, one level at a time.
+	 * Only objects the user can read are returned or followed.
+	 * @param user the user walking the graph. May be null for an anonymous
+	 * user.
+	 * @param objs the objects at which to start.
+	 * @param downstream true to follow the objects that reference the
+	 * objects, false to follow the objects the objects reference, including
+	 * provenance references.
+	 * @param maxDepth the maximum number of levels to walk.
+	 * @param maxObjects the maximum number of objects to return.
+	 * @return the objects found at each level, starting with the objects
+	 * adjacent to the starting objects.
+	 */
+	public List<Set<ObjectInformation>> getTransitiveReferences(
+			WorkspaceUser user, Set<ObjectIDResolvedWS> objs,
+			boolean downstream, int maxDepth, int maxObjects)
+			throws NoSuchObjectException, WorkspaceCommunicationException,
+			CorruptWorkspaceDBException;
+	
+	/** Adds the references of every object version to the reverse reference
+	 * index, in the background. Only necessary for objects saved before the
+	 * index existed. Only one build runs at a time.
+	 * @param start true to start a build if one is not already running,
+	 * false to only get the status.
+	 * @return the status of the build. running is true if a build is in
+	 * progress. indexed is the number of object versions processed by the
+	 * last completed build, or error the reason it failed.
+	 */
+	public Map<String, Object> buildReferenceIndex(boolean start);
+	
 	public Map<ObjectIDResolvedWS, ObjectInformation> getObjectInformation(
 			Set<ObjectIDResolvedWS> objectIDs, boolean includeMetadata,
 			boolean ignoreMissingAndDeleted)
@@ -191,7 +235,8 @@ public interface WorkspaceDatabase {
 			PermissionSet pset, TypeDefId type, List<WorkspaceUser> savers,
 			Map<String, String> meta, Date after, Date before,
 			boolean showHidden, boolean showDeleted, boolean showOnlyDeleted,
-			boolean showAllVers, boolean includeMetaData, int skip, int limit)
+			boolean showAllVers, boolean includeMetaData, int skip, int limit,
+			ObjectIdentifier startAfter)
 			throws WorkspaceCommunicationException;
 
 	public Map<ObjectIDResolvedWS, Boolean> getObjectExists(
@@ -220,4 +265,38 @@ public interface WorkspaceDatabase {
 	public TempFilesManager getTempFilesManager();
 
 	public void setResourceUsageConfiguration(ResourceUsageConfiguration rescfg);
+	
+	/** Returns statistics for the caches maintained by the database.
+	 * @return a mapping of cache name to a mapping of statistic name to value.
+	 */
+	public Map<String, Map<String, Long>> getCacheStatistics();
+	
+	/** Rewrites blobs that were not written with the blob codec in the
+	 * database settings, in the background. Only one rewrite runs at a time.
+	 * @param start true to start a rewrite if one is not already running,
+	 * false to only get the status.
+	 * @return the status of the rewrite. running is true if a rewrite is in
+	 * progress. recompressed is the number of blobs rewritten by the last
+	 * completed rewrite, or error the reason it failed.
+	 */
+	public Map<String, Object> recompressBlobs(boolean start);
+	
+	/** Returns the state of replication from the local blob tier to the
+	 * backend.
+	 * @return the replication status. tiered is false if there is no local
+	 * tier, in which case no other statistics are included. queued is the
+	 * number of blobs waiting for replication and lag the age in
+	 * milliseconds of the oldest of them. replicated is the number of blobs
+	 * replicated since startup, and error the reason the last replication
+	 * attempt failed, if it did.
+	 */
+	public Map<String, Object> getBlobReplicationStatus();
+	
+	/** Returns statistics for blob downloads from the backend.
+	 * @return the download statistics. shock is false if the backend is not
+	 * Shock, in which case no other statistics are included. Otherwise the
+	 * statistics include the total number, size, time and throughput of
+	 * downloads and the same for each of the most recent downloads.
+	 */
+	public Map<String, Object> getBlobTransferStatistics();
 }
@@ -0,0 +1,16 @@
+package us.kbase.workspace.database.exceptions;
+
+/**
+ * Thrown when the requested chunked upload doesn't exist, has expired, or
+ * belongs to another user.
+ * @author gaprice@lbl.gov
+ *
+ */
+public class NoSuchUploadException extends WorkspaceDBException {
+
+	private static final long serialVersionUID = 1L;
+
+	public NoSuchUploadException(final String message) {
+		super(message);
+	}
+}
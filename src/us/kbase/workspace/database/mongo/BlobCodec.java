@@ -0,0 +1,225 @@
+package us.kbase.workspace.database.mongo;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import us.kbase.typedobj.core.Writable;
+
+/** A codec used to encode blobs before they are written to a blob store
+ * backend and to decode them when they are read.
+ *
+ * Encoded blobs start with a header that identifies the codec, so a blob
+ * can always be read no matter which codec the blob store is currently
+ * using. Blobs without a header, including all blobs written before codecs
+ * were added, are unencoded JSON, which can never start with the header.
+ *
+ * The MD5 of a blob is always the MD5 of the decoded data.
+ * @author gaprice@lbl.gov
+ *
+ */
+public abstract class BlobCodec {
+
+	private static final byte[] MAGIC = {0, 'W', 'S', 'B'};
+	static final int HEADER_SIZE = MAGIC.length + 1;
+	private static final int BUFFER_SIZE = 65536;
+
+	/** Writes blobs as is, without a header. */
+	public static final BlobCodec NONE = new BlobCodec("none", 0) {
+
+		@Override
+		OutputStream wrap(final OutputStream os) {
+			return os;
+		}
+
+		@Override
+		void finish(final OutputStream wrapped) {}
+
+		@Override
+		InputStream unwrap(final InputStream is) {
+			return is;
+		}
+	};
+
+	/** Compresses blobs with gzip. */
+	public static final BlobCodec GZIP = new BlobCodec("gzip", 1) {
+
+		@Override
+		OutputStream wrap(final OutputStream os) throws IOException {
+			return new GZIPOutputStream(os, BUFFER_SIZE);
+		}
+
+		@Override
+		void finish(final OutputStream wrapped) throws IOException {
+			((GZIPOutputStream) wrapped).finish();
+		}
+
+		@Override
+		InputStream unwrap(final InputStream is) throws IOException {
+			return new GZIPInputStream(is, BUFFER_SIZE);
+		}
+	};
+
+	private static final Map<String, BlobCodec> BY_NAME =
+			new HashMap<String, BlobCodec>();
+	private static final Map<Integer, BlobCodec> BY_ID =
+			new HashMap<Integer, BlobCodec>();
+	static {
+		for (final BlobCodec c: Arrays.asList(NONE, GZIP)) {
+			BY_NAME.put(c.getName(), c);
+			BY_ID.put(c.id, c);
+		}
+	}
+
+	private final String name;
+	private final int id;
+
+	private BlobCodec(final String name, final int id) {
+		this.name = name;
+		this.id = id;
+	}
+
+	/** Get a codec by name.
+	 * @param name the name of the codec. If null, the NONE codec is
+	 * returned.
+	 * @return the codec.
+	 * @throws IllegalArgumentException if there is no codec with the name.
+	 */
+	public static BlobCodec getCodec(final String name) {
+		if (name == null) {
+			return NONE;
+		}
+		final BlobCodec c = BY_NAME.get(name);
+		if (c == null) {
+			throw new IllegalArgumentException("No such blob codec: " + name);
+		}
+		return c;
+	}
+
+	/** Returns the name of this codec.
+	 * @return the codec name.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	abstract OutputStream wrap(OutputStream os) throws IOException;
+
+	abstract void finish(OutputStream wrapped) throws IOException;
+
+	abstract InputStream unwrap(InputStream is) throws IOException;
+
+	/** Encode data and write it to a stream. The stream is not closed.
+	 * @param data the data to encode.
+	 * @param os the stream to which the encoded data will be written.
+	 * @throws IOException if an IO error occurs.
+	 */
+	public void write(final Writable data, final OutputStream os)
+			throws IOException {
+		if (id != NONE.id) {
+			os.write(MAGIC);
+			os.write(id);
+		}
+		final OutputStream wrapped = wrap(os);
+		// writers may close the stream, which would prevent finishing it
+		data.write(new FilterOutputStream(wrapped) {
+
+			@Override
+			public void write(final byte[] b, final int off, final int len)
+					throws IOException {
+				out.write(b, off, len);
+			}
+
+			@Override
+			public void close() throws IOException {
+				flush();
+			}
+		});
+		finish(wrapped);
+	}
+
+	/** Get a stream of the decoded data in a blob, regardless of which codec
+	 * the blob was written with.
+	 * @param blob a stream of the blob as stored in the backend.
+	 * @return a stream of the decoded blob.
+	 * @throws IOException if an IO error occurs or the blob was written with
+	 * an unknown codec.
+	 */
+	public static InputStream decode(final InputStream blob)
+			throws IOException {
+		final PushbackInputStream pis =
+				new PushbackInputStream(blob, HEADER_SIZE);
+		final byte[] header = new byte[HEADER_SIZE];
+		int read = 0;
+		while (read < HEADER_SIZE) {
+			final int r = pis.read(header, read, HEADER_SIZE - read);
+			if (r < 0) {
+				break;
+			}
+			read += r;
+		}
+		final BlobCodec c = getCodec(header, read);
+		if (c == null) {
+			pis.unread(header, 0, read);
+			return pis;
+		}
+		return c.unwrap(pis);
+	}
+
+	/** Get the codec with which a blob was written from the start of the
+	 * blob.
+	 * @param header the first bytes of the blob.
+	 * @param len the number of bytes in the header, at most HEADER_SIZE.
+	 * Fewer bytes may be provided if the blob is shorter than the header.
+	 * @return the codec, or null if the blob has no header.
+	 * @throws IOException if the blob was written with an unknown codec.
+	 */
+	static BlobCodec getCodec(final byte[] header, final int len)
+			throws IOException {
+		if (len < HEADER_SIZE || !Arrays.equals(MAGIC,
+				Arrays.copyOf(header, MAGIC.length))) {
+			return null;
+		}
+		final BlobCodec c = BY_ID.get((int) header[MAGIC.length]);
+		if (c == null) {
+			throw new IOException("Blob was written with an unknown codec: "
+					+ header[MAGIC.length]);
+		}
+		return c;
+	}
+
+	/** Get a writable that writes the decoded data in a blob. Used to rewrite
+	 * a blob with a different codec.
+	 * @param blob a stream of the blob as stored in the backend.
+	 * @return the decoded blob.
+	 */
+	static Writable getDecodedWritable(final InputStream blob) {
+		return new Writable() {
+
+			@Override
+			public void write(final OutputStream os) throws IOException {
+				final InputStream is = decode(blob);
+				final byte[] buf = new byte[BUFFER_SIZE];
+				int read;
+				while ((read = is.read(buf)) > 0) {
+					os.write(buf, 0, read);
+				}
+			}
+
+			@Override
+			public void releaseResources() {}
+		};
+	}
+
+	@Override
+	public String toString() {
+		return "BlobCodec [name=" + name + "]";
+	}
+}
@@ -47,5 +47,17 @@ public interface BlobStore {
 	public String getExternalIdentifier(MD5 md5) throws
 		BlobStoreCommunicationException, NoSuchBlobException;
 	
+	/** Rewrite the blobs in the blob store that were not written with the
+	 * store's current codec, for example to compress blobs saved before
+	 * compression was enabled. Stores that do not encode blobs do nothing.
+	 * @return the number of blobs rewritten.
+	 * @throws BlobStoreAuthorizationException if the blobstore is not
+	 * authorized to write to the blob store backend.
+	 * @throws BlobStoreCommunicationException if a communication error with
+	 * the blob store backend occurs.
+	 */
+	public long recodeBlobs() throws BlobStoreAuthorizationException,
+		BlobStoreCommunicationException;
+	
 	public String getStoreType();
 }
@@ -0,0 +1,342 @@
+package us.kbase.workspace.database.mongo;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import us.kbase.typedobj.core.MD5;
+import us.kbase.typedobj.core.TempFilesManager;
+import us.kbase.typedobj.core.Writable;
+import us.kbase.workspace.database.ByteArrayFileCacheManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.DestroyListener;
+import us.kbase.workspace.database.exceptions.FileCacheIOException;
+import us.kbase.workspace.database.exceptions.FileCacheLimitExceededException;
+import us.kbase.workspace.database.mongo.exceptions.BlobStoreAuthorizationException;
+import us.kbase.workspace.database.mongo.exceptions.BlobStoreCommunicationException;
+import us.kbase.workspace.database.mongo.exceptions.NoSuchBlobException;
+
+/** A read through cache in front of another BlobStore, shared by all method
+ * calls to the server. Since blobs are immutable and addressed by their MD5,
+ * a blob fetched for one call can be served to any later call without
+ * contacting the backend.
+ *
+ * The cache has a memory tier and a disk tier, each of which is limited in
+ * size and evicts the least recently used blobs when full. Blobs that fit in
+ * the memory tier are kept in memory, larger blobs are kept in the temporary
+ * file directory, which ideally is on an SSD.
+ *
+ * Cached blobs are returned as ByteArrayFileCaches that share the cached
+ * data. A blob that is evicted while such caches are outstanding is not
+ * deleted until the last of them is destroyed. Every blob returned counts
+ * against the limits of the caller's ByteArrayFileCacheManager, as if the
+ * caller had fetched it from the backend.
+ *
+ * If both tiers are set to zero size the cache passes all calls through to
+ * the backend.
+ * @author gaprice@lbl.gov
+ *
+ */
+public class CachingBlobStore implements BlobStore {
+
+	private final BlobStore blob;
+	private final TempFilesManager tfm;
+
+	// access ordered maps, so the eldest entry is the least recently used
+	private final LinkedHashMap<String, CacheEntry> memTier =
+			new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+	private final LinkedHashMap<String, CacheEntry> diskTier =
+			new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+
+	private int maxMem;
+	private long maxDisk;
+	private long memUsed = 0;
+	private long diskUsed = 0;
+
+	private long hits = 0;
+	private long misses = 0;
+	private long uncacheable = 0;
+	private long evictions = 0;
+
+	/** Create a new cache.
+	 * @param blob the blob store to cache.
+	 * @param tfm the temporary file manager used to store the disk tier.
+	 * @param maxMem the maximum size of the memory tier in bytes.
+	 * @param maxDisk the maximum size of the disk tier in bytes.
+	 */
+	public CachingBlobStore(final BlobStore blob, final TempFilesManager tfm,
+			final int maxMem, final long maxDisk) {
+		if (blob == null || tfm == null) {
+			throw new NullPointerException("Arguments cannot be null");
+		}
+		this.blob = blob;
+		this.tfm = tfm;
+		setLimits(maxMem, maxDisk);
+	}
+
+	/** Change the sizes of the cache tiers. Blobs are evicted as necessary
+	 * to fit the new sizes.
+	 * @param maxMem the maximum size of the memory tier in bytes.
+	 * @param maxDisk the maximum size of the disk tier in bytes.
+	 */
+	public void setLimits(final int maxMem, final long maxDisk) {
+		if (maxMem < 0 || maxDisk < 0) {
+			throw new IllegalArgumentException(
+					"Cache limits cannot be negative");
+		}
+		final List<CacheEntry> destroy;
+		synchronized (this) {
+			this.maxMem = maxMem;
+			this.maxDisk = maxDisk;
+			destroy = evict();
+		}
+		destroyAll(destroy);
+	}
+
+	/** Returns the wrapped blob store.
+	 * @return the wrapped blob store.
+	 */
+	public BlobStore getBlobStore() {
+		return blob;
+	}
+
+	@Override
+	public void saveBlob(final MD5 md5, final Writable data,
+			final boolean sorted)
+			throws BlobStoreAuthorizationException,
+			BlobStoreCommunicationException {
+		blob.saveBlob(md5, data, sorted);
+	}
+
+	@Override
+	public ByteArrayFileCache getBlob(final MD5 md5,
+			final ByteArrayFileCacheManager bafcMan)
+			throws BlobStoreAuthorizationException,
+			BlobStoreCommunicationException, NoSuchBlobException,
+			FileCacheLimitExceededException, FileCacheIOException {
+		final int mem;
+		final long disk;
+		final CacheEntry cached;
+		synchronized (this) {
+			mem = maxMem;
+			disk = maxDisk;
+			if (mem < 1 && disk < 1) {
+				cached = null;
+			} else {
+				cached = acquire(md5.getMD5());
+				if (cached != null) {
+					hits++;
+				} else {
+					misses++;
+				}
+			}
+		}
+		if (mem < 1 && disk < 1) {
+			return blob.getBlob(md5, bafcMan);
+		}
+		if (cached != null) {
+			return share(cached, bafcMan);
+		}
+		/* The cache's memory limit decides whether the blob is fetched into
+		 * memory or onto disk, and the caller's manager how much the caller
+		 * may fetch. The blob is then counted against the caller, so it is
+		 * not counted again when it is shared with the caller.
+		 */
+		final ByteArrayFileCache fetched = blob.getBlob(md5,
+				new ByteArrayFileCacheManager(bafcMan, mem,
+						bafcMan.getMaxSizeOnDisk(), tfm));
+		if (fetched.isOnDisk() && fetched.getSize() > disk) {
+			// too big for the cache, return it directly
+			synchronized (this) {
+				uncacheable++;
+			}
+			return fetched;
+		}
+		return share(insert(md5.getMD5(), fetched), bafcMan);
+	}
+
+	@Override
+	public void removeBlob(final MD5 md5)
+			throws BlobStoreAuthorizationException,
+			BlobStoreCommunicationException {
+		final List<CacheEntry> destroy = new ArrayList<CacheEntry>();
+		synchronized (this) {
+			CacheEntry e = memTier.remove(md5.getMD5());
+			if (e != null) {
+				memUsed -= e.data.getSize();
+			} else {
+				e = diskTier.remove(md5.getMD5());
+				if (e != null) {
+					diskUsed -= e.data.getSize();
+				}
+			}
+			if (e != null) {
+				discard(e, destroy);
+			}
+		}
+		destroyAll(destroy);
+		blob.removeBlob(md5);
+	}
+
+	@Override
+	public String getExternalIdentifier(final MD5 md5)
+			throws BlobStoreCommunicationException, NoSuchBlobException {
+		return blob.getExternalIdentifier(md5);
+	}
+
+	// cached blobs are decoded, so they stay valid
+	@Override
+	public long recodeBlobs() throws BlobStoreAuthorizationException,
+			BlobStoreCommunicationException {
+		return blob.recodeBlobs();
+	}
+
+	@Override
+	public String getStoreType() {
+		return blob.getStoreType();
+	}
+
+	/** Returns statistics about the cache. The statistics are the number of
+	 * cache hits, misses, blobs that were too large to cache, and
+	 * evictions, and the number of blobs, number of bytes, and size limit
+	 * of each tier.
+	 * @return a mapping of statistic name to value.
+	 */
+	public synchronized Map<String, Long> getStatistics() {
+		final Map<String, Long> ret = new LinkedHashMap<String, Long>();
+		ret.put("hits", hits);
+		ret.put("misses", misses);
+		ret.put("uncacheable", uncacheable);
+		ret.put("evictions", evictions);
+		ret.put("memoryblobs", (long) memTier.size());
+		ret.put("memorybytes", memUsed);
+		ret.put("memorylimit", (long) maxMem);
+		ret.put("diskblobs", (long) diskTier.size());
+		ret.put("diskbytes", diskUsed);
+		ret.put("disklimit", maxDisk);
+		return ret;
+	}
+
+	private ByteArrayFileCache share(final CacheEntry entry,
+			final ByteArrayFileCacheManager bafcMan)
+			throws FileCacheIOException, FileCacheLimitExceededException {
+		try {
+			return bafcMan.createSharedBAFC(entry.data, new DestroyListener() {
+
+				@Override
+				public void destroyed(final ByteArrayFileCache bafc) {
+					release(entry);
+				}
+			});
+		} catch (FileCacheIOException e) {
+			release(entry);
+			throw e;
+		} catch (FileCacheLimitExceededException e) {
+			release(entry);
+			throw e;
+		} catch (RuntimeException e) {
+			release(entry);
+			throw e;
+		}
+	}
+
+	// must hold the lock
+	private CacheEntry acquire(final String md5) {
+		CacheEntry e = memTier.get(md5);
+		if (e == null) {
+			e = diskTier.get(md5);
+		}
+		if (e != null) {
+			e.refs++;
+		}
+		return e;
+	}
+
+	private CacheEntry insert(final String md5,
+			final ByteArrayFileCache data) {
+		final List<CacheEntry> destroy;
+		final CacheEntry ret;
+		synchronized (this) {
+			final CacheEntry existing = acquire(md5);
+			if (existing != null) {
+				// another thread fetched the same blob concurrently
+				destroy = new ArrayList<CacheEntry>();
+				destroy.add(new CacheEntry(data));
+				ret = existing;
+			} else {
+				ret = new CacheEntry(data);
+				ret.refs++;
+				if (data.isOnDisk()) {
+					diskTier.put(md5, ret);
+					diskUsed += data.getSize();
+				} else {
+					memTier.put(md5, ret);
+					memUsed += data.getSize();
+				}
+				destroy = evict();
+			}
+		}
+		destroyAll(destroy);
+		return ret;
+	}
+
+	private void release(final CacheEntry entry) {
+		final boolean destroy;
+		synchronized (this) {
+			entry.refs--;
+			destroy = entry.evicted && entry.refs < 1;
+		}
+		if (destroy) {
+			entry.data.destroy();
+		}
+	}
+
+	// must hold the lock
+	private List<CacheEntry> evict() {
+		final List<CacheEntry> destroy = new ArrayList<CacheEntry>();
+		memUsed = evict(memTier, memUsed, maxMem, destroy);
+		diskUsed = evict(diskTier, diskUsed, maxDisk, destroy);
+		return destroy;
+	}
+
+	// must hold the lock
+	private long evict(final LinkedHashMap<String, CacheEntry> tier,
+			long used, final long max, final List<CacheEntry> destroy) {
+		final Iterator<CacheEntry> iter = tier.values().iterator();
+		while (used > max && iter.hasNext()) {
+			final CacheEntry e = iter.next();
+			iter.remove();
+			used -= e.data.getSize();
+			evictions++;
+			discard(e, destroy);
+		}
+		return used;
+	}
+
+	// must hold the lock
+	private void discard(final CacheEntry e, final List<CacheEntry> destroy) {
+		e.evicted = true;
+		if (e.refs < 1) {
+			destroy.add(e);
+		}
+	}
+
+	private void destroyAll(final List<CacheEntry> entries) {
+		for (final CacheEntry e: entries) {
+			e.data.destroy();
+		}
+	}
+
+	private static class CacheEntry {
+
+		private final ByteArrayFileCache data;
+		private int refs = 0;
+		private boolean evicted = false;
+
+		private CacheEntry(final ByteArrayFileCache data) {
+			this.data = data;
+		}
+	}
+}
@@ -11,6 +11,11 @@ public class Fields {
 	public static final String SET_BACKEND = "backend";
 	public static final String SET_SHOCK_USER = "shock_user";
 	public static final String SET_SHOCK_LOC = "shock_location";
+	public static final String SET_FS_LOC = "fs_location";
+	// if missing assume no fsync
+	public static final String SET_FS_SYNC = "fs_sync";
+	// if missing assume no codec
+	public static final String SET_BLOB_CODEC = "blob_codec";
 
 	// workspace counter fields
 	public static final String CNT_ID = "id";
@@ -62,6 +67,12 @@ public class Fields {
 	//in 0.3.0, if missing assume no external IDs
 	public static final String VER_EXT_IDS = "extids";
 	
+	// object reference index fields
+	public static final String REF_TARGET = "ref";
+	public static final String REF_WS_ID = "ws";
+	public static final String REF_ID = "id";
+	public static final String REF_VER = "ver";
+	
 	// meta document key & value
 	public static final String META_KEY = "k";
 	public static final String META_VALUE = "v";
@@ -72,16 +83,24 @@ public class Fields {
 	public static final String TYPE_SUBDATA = "subdata";
 	public static final String TYPE_TYPE = "type";
 
+	// blob offset index fields
+	public static final String BLOB_IDX_CHKSUM = "chksum";
+	public static final String BLOB_IDX_INDEX = "idx";
+
 	// shock fields
 	public static final String SHOCK_CHKSUM = "chksum";
 	public static final String SHOCK_NODE = "node";
 	public static final String SHOCK_VER = "ver";
 	// since 0.2.0, if missing assume false
 	public static final String SHOCK_SORTED = "sorted";
+	// if missing assume no codec
+	public static final String SHOCK_CODEC = "codec";
 	
 	// GridFS fields
 	// since 0.2.0, if missing assume false
 	public static final String GFS_SORTED = "sorted";
+	// if missing assume no codec
+	public static final String GFS_CODEC = "codec";
 		
 	
 	// admin fields
@@ -0,0 +1,407 @@
+package us.kbase.workspace.database.mongo;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import us.kbase.typedobj.core.MD5;
+import us.kbase.typedobj.core.Writable;
+import us.kbase.workspace.database.ByteArrayFileCacheManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.exceptions.FileCacheIOException;
+import us.kbase.workspace.database.exceptions.FileCacheLimitExceededException;
+import us.kbase.workspace.database.mongo.exceptions.BlobStoreAuthorizationException;
+import us.kbase.workspace.database.mongo.exceptions.BlobStoreCommunicationException;
+import us.kbase.workspace.database.mongo.exceptions.NoSuchBlobException;
+
+/** A blob store that keeps blobs in a directory on the local filesystem.
+ *
+ * Blobs are content addressed and stored in a two level directory tree
+ * keyed by the MD5, e.g. the blob with MD5 abcdef... is stored at
+ * root/ab/cd/abcdef.... Unsorted blobs have the suffix .unsorted.
+ *
+ * Blobs are written to a temporary file under the root directory and
+ * renamed into place, so a blob is either absent or complete. The root
+ * directory must therefore be on a single filesystem.
+ * @author gaprice@lbl.gov
+ *
+ */
+public class FileSystemBackend implements BlobStore {
+
+	private static final String TEMP_DIR = "tmp";
+	private static final String UNSORTED = ".unsorted";
+	private static final int BUFFER_SIZE = 65536;
+
+	/** When blob files are synced to the storage device. */
+	public static enum FsyncPolicy {
+
+		/** Never sync, leaving writes to the operating system. Blobs may be
+		 * lost or truncated if the host crashes.
+		 */
+		NONE ("none"),
+
+		/** Sync each blob file before it is renamed into place. */
+		FILE ("file");
+
+		private final String name;
+
+		private FsyncPolicy(final String name) {
+			this.name = name;
+		}
+
+		/** Returns the name of the policy.
+		 * @return the policy name.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/** Get a policy by name.
+		 * @param name the name of the policy. If null, the NONE policy is
+		 * returned.
+		 * @return the policy.
+		 * @throws IllegalArgumentException if there is no policy with the
+		 * name.
+		 */
+		public static FsyncPolicy getPolicy(final String name) {
+			if (name == null) {
+				return NONE;
+			}
+			for (final FsyncPolicy p: values()) {
+				if (p.name.equals(name)) {
+					return p;
+				}
+			}
+			throw new IllegalArgumentException("No such fsync policy: " +
+					name);
+		}
+	}
+
+	private final File root;
+	private final File tempDir;
+	private final FsyncPolicy fsync;
+	private final BlobCodec codec;
+
+	public FileSystemBackend(final File root)
+			throws BlobStoreCommunicationException {
+		this(root, FsyncPolicy.NONE, BlobCodec.NONE);
+	}
+
+	/** Create a filesystem backend.
+	 * @param root the directory in which to store blobs. Created if it does
+	 * not exist.
+	 * @param fsync when to sync blob files to the storage device.
+	 * @param codec the codec with which to encode new blobs.
+	 * @throws BlobStoreCommunicationException if the directory cannot be
+	 * created or is not writable.
+	 */
+	public FileSystemBackend(final File root, final FsyncPolicy fsync,
+			final BlobCodec codec) throws BlobStoreCommunicationException {
+		if (root == null || fsync == null || codec == null) {
+			throw new NullPointerException("Arguments cannot be null");
+		}
+		this.root = root;
+		this.fsync = fsync;
+		this.codec = codec;
+		tempDir = new File(root, TEMP_DIR);
+		tempDir.mkdirs();
+		if (!tempDir.isDirectory() || !tempDir.canWrite()) {
+			throw new BlobStoreCommunicationException(
+					"Could not write to the blob directory " + root);
+		}
+	}
+
+	private File getDir(final MD5 md5) {
+		final String md = md5.getMD5();
+		return new File(new File(root, md.substring(0, 2)),
+				md.substring(2, 4));
+	}
+
+	private File getFile(final MD5 md5, final boolean sorted) {
+		return new File(getDir(md5), md5.getMD5() + (sorted ? "" : UNSORTED));
+	}
+
+	// returns null if the blob doesn't exist
+	private File findFile(final MD5 md5) {
+		for (final boolean sorted: new boolean[] {true, false}) {
+			final File f = getFile(md5, sorted);
+			if (f.isFile()) {
+				return f;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void saveBlob(final MD5 md5, final Writable data,
+			final boolean sorted)
+			throws BlobStoreCommunicationException {
+		if(data == null || md5 == null) {
+			throw new NullPointerException("Arguments cannot be null");
+		}
+		if (findFile(md5) != null) {
+			return; //already exists
+		}
+		write(getFile(md5, sorted), data);
+	}
+
+	// writes the data to a temp file and renames it to the target file,
+	// replacing the target if it exists.
+	private void write(final File target, final Writable data)
+			throws BlobStoreCommunicationException {
+		File temp = null;
+		try {
+			temp = File.createTempFile(target.getName() + ".", ".tmp",
+					tempDir);
+			final FileOutputStream fos = new FileOutputStream(temp);
+			try {
+				final BufferedOutputStream os = new BufferedOutputStream(
+						fos, BUFFER_SIZE);
+				//writes in UTF8
+				codec.write(data, os);
+				os.flush();
+				if (fsync == FsyncPolicy.FILE) {
+					fos.getFD().sync();
+				}
+			} finally {
+				fos.close();
+			}
+			target.getParentFile().mkdirs();
+			if (!temp.renameTo(target)) {
+				throw new IOException("Could not move blob file to " +
+						target);
+			}
+			temp = null;
+		} catch (IOException ioe) {
+			throw new BlobStoreCommunicationException(
+					"Could not write to the blob directory: " +
+					ioe.getLocalizedMessage(), ioe);
+		} finally {
+			if (temp != null) {
+				temp.delete();
+			}
+		}
+	}
+
+	/* Blob files without a header are passed to the file cache as the file
+	 * stream, so data that doesn't fit in memory is copied from file to file
+	 * by the OS.
+	 */
+	@Override
+	public ByteArrayFileCache getBlob(final MD5 md5,
+			final ByteArrayFileCacheManager bafcMan)
+			throws NoSuchBlobException, BlobStoreCommunicationException,
+			FileCacheIOException, FileCacheLimitExceededException {
+		final String noBlob =
+				"Attempt to retrieve non-existant blob with chksum " +
+						md5.getMD5();
+		final File f = findFile(md5);
+		if (f == null) {
+			throw new NoSuchBlobException(noBlob);
+		}
+		final FileInputStream fis;
+		try {
+			fis = new FileInputStream(f);
+		} catch (FileNotFoundException fnfe) {
+			// removed since it was found
+			throw new NoSuchBlobException(noBlob);
+		}
+		try {
+			final boolean sorted = !f.getName().endsWith(UNSORTED);
+			return bafcMan.createBAFC(openDecoded(fis), true, sorted);
+		} catch (IOException ioe) {
+			throw new BlobStoreCommunicationException(
+					"Could not read from the blob directory: " +
+					ioe.getLocalizedMessage(), ioe);
+		} finally {
+			try {
+				fis.close();
+			} catch (IOException ioe) {
+				throw new RuntimeException("Something is broken", ioe);
+			}
+		}
+	}
+
+	private InputStream openDecoded(final FileInputStream fis)
+			throws IOException {
+		final BlobCodec c = readCodec(fis);
+		if (c == null) {
+			fis.getChannel().position(0);
+			return fis;
+		}
+		return c.unwrap(fis);
+	}
+
+	// returns null if the blob has no header
+	private static BlobCodec readCodec(final FileInputStream fis)
+			throws IOException {
+		final byte[] header = new byte[BlobCodec.HEADER_SIZE];
+		int read = 0;
+		while (read < header.length) {
+			final int r = fis.read(header, read, header.length - read);
+			if (r < 0) {
+				break;
+			}
+			read += r;
+		}
+		return BlobCodec.getCodec(header, read);
+	}
+
+	@Override
+	public void removeBlob(final MD5 md5) {
+		getFile(md5, true).delete();
+		getFile(md5, false).delete();
+	}
+
+	/* Recoded blobs are renamed over the existing blob, so the blob is always
+	 * available and reads in progress continue with the old file.
+	 */
+	@Override
+	public long recodeBlobs() throws BlobStoreCommunicationException {
+		long count = 0;
+		for (final File blob: listFiles()) {
+			if (recode(blob)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private List<File> listFiles() {
+		final List<File> ret = new LinkedList<File>();
+		for (final File dir1: listDirs(root)) {
+			if (dir1.getName().equals(TEMP_DIR)) {
+				continue;
+			}
+			for (final File dir2: listDirs(dir1)) {
+				final File[] blobs = dir2.listFiles();
+				if (blobs != null) { // null if removed since listed
+					ret.addAll(Arrays.asList(blobs));
+				}
+			}
+		}
+		return ret;
+	}
+
+	/** Returns the MD5s of all the blobs in the store. Files that are not
+	 * named as blobs are ignored.
+	 * @return the blob MD5s.
+	 */
+	List<MD5> listBlobs() {
+		final List<MD5> ret = new LinkedList<MD5>();
+		for (final File f: listFiles()) {
+			final String name = f.getName();
+			try {
+				ret.add(new MD5(name.endsWith(UNSORTED) ?
+						name.substring(0, name.length() - UNSORTED.length()) :
+						name));
+			} catch (IllegalArgumentException iae) {
+				// not a blob
+			}
+		}
+		return ret;
+	}
+
+	/** Check whether a blob is in the store.
+	 * @param md5 the MD5 of the blob.
+	 * @return true if the blob exists.
+	 */
+	boolean hasBlob(final MD5 md5) {
+		return findFile(md5) != null;
+	}
+
+	/** Save a copy of a blob to another blob store.
+	 * @param md5 the MD5 of the blob to copy.
+	 * @param target the blob store in which to save the copy.
+	 * @throws NoSuchBlobException if the blob does not exist in this store.
+	 * @throws BlobStoreAuthorizationException if the target store is not
+	 * authorized to write to its backend.
+	 * @throws BlobStoreCommunicationException if a communication error occurs
+	 * with either store.
+	 */
+	void copyBlob(final MD5 md5, final BlobStore target)
+			throws NoSuchBlobException, BlobStoreAuthorizationException,
+			BlobStoreCommunicationException {
+		final String noBlob = "Attempt to copy non-existant blob with chksum " +
+				md5.getMD5();
+		final File f = findFile(md5);
+		if (f == null) {
+			throw new NoSuchBlobException(noBlob);
+		}
+		final FileInputStream fis;
+		try {
+			fis = new FileInputStream(f);
+		} catch (FileNotFoundException fnfe) {
+			// removed since it was found
+			throw new NoSuchBlobException(noBlob);
+		}
+		try {
+			target.saveBlob(md5, BlobCodec.getDecodedWritable(fis),
+					!f.getName().endsWith(UNSORTED));
+		} finally {
+			try {
+				fis.close();
+			} catch (IOException ioe) {
+				throw new RuntimeException("Something is broken", ioe);
+			}
+		}
+	}
+
+	private File[] listDirs(final File dir) {
+		final File[] ret = dir.listFiles(new FileFilter() {
+
+			@Override
+			public boolean accept(final File f) {
+				return f.isDirectory();
+			}
+		});
+		return ret == null ? new File[0] : ret;
+	}
+
+	private boolean recode(final File blob)
+			throws BlobStoreCommunicationException {
+		final FileInputStream fis;
+		try {
+			fis = new FileInputStream(blob);
+		} catch (FileNotFoundException fnfe) {
+			return false; // removed since listed
+		}
+		try {
+			final BlobCodec c = readCodec(fis);
+			if ((c == null ? BlobCodec.NONE : c) == codec) {
+				return false;
+			}
+			fis.getChannel().position(0);
+			write(blob, BlobCodec.getDecodedWritable(fis));
+			return true;
+		} catch (IOException ioe) {
+			throw new BlobStoreCommunicationException(
+					"Could not read from the blob directory: " +
+					ioe.getLocalizedMessage(), ioe);
+		} finally {
+			try {
+				fis.close();
+			} catch (IOException ioe) {
+				throw new RuntimeException("Something is broken", ioe);
+			}
+		}
+	}
+
+	@Override
+	public String getExternalIdentifier(final MD5 md5) {
+		return null;
+	}
+
+	@Override
+	public String getStoreType() {
+		return "FileSystem";
+	}
+}
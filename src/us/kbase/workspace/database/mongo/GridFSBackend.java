@@ -14,7 +14,9 @@ import us.kbase.workspace.database.mongo.exceptions.NoSuchBlobException;
 
 import com.gc.iotools.stream.os.OutputStreamToInputStream;
 import com.mongodb.BasicDBObject;
+import com.mongodb.Bytes;
 import com.mongodb.DB;
+import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
 import com.mongodb.MongoException;
 import com.mongodb.gridfs.GridFS;
@@ -23,10 +25,27 @@ import com.mongodb.gridfs.GridFSInputFile;
 
 public class GridFSBackend implements BlobStore {
 	
+	// blobs are found by file name, since blobs that have been recoded
+	// don't have the MD5 as their ID
+	private static final String FILENAME = "filename";
+	
 	private final GridFS gfs;
+	private final BlobCodec codec;
 	
 	public GridFSBackend(DB mongodb) {
+		this(mongodb, BlobCodec.NONE);
+	}
+	
+	/** Create a GridFS backend.
+	 * @param mongodb the database in which to store blobs.
+	 * @param codec the codec with which to encode new blobs.
+	 */
+	public GridFSBackend(final DB mongodb, final BlobCodec codec) {
+		if (mongodb == null || codec == null) {
+			throw new NullPointerException("Arguments cannot be null");
+		}
 		gfs = new GridFS(mongodb);
+		this.codec = codec;
 	}
 
 	@Override
@@ -39,15 +58,21 @@ public class GridFSBackend implements BlobStore {
 		if (getFile(md5) != null) {
 			return; //already exists
 		}
+		save(md5.getMD5(), md5, data, sorted);
+	}
+	
+	private void save(final String id, final MD5 md5, final Writable data,
+			final boolean sorted) throws BlobStoreCommunicationException {
 		final OutputStreamToInputStream<String> osis =
 				new OutputStreamToInputStream<String>() {
 					
 			@Override
 			protected String doRead(InputStream is) throws Exception {
 				final GridFSInputFile gif = gfs.createFile(is, true);
-				gif.setId(md5.getMD5());
+				gif.setId(id);
 				gif.setFilename(md5.getMD5());
 				gif.put(Fields.GFS_SORTED, sorted);
+				gif.put(Fields.GFS_CODEC, codec.getName());
 				try {
 					gif.save();
 				} catch (MongoException.DuplicateKey dk) {
@@ -62,7 +87,7 @@ public class GridFSBackend implements BlobStore {
 		};
 		try {
 			//writes in UTF8
-			data.write(osis);
+			codec.write(data, osis);
 		} catch (IOException ioe) {
 			throw new RuntimeException("Something is broken", ioe);
 		} finally {
@@ -95,7 +120,7 @@ public class GridFSBackend implements BlobStore {
 			}
 			final InputStream file = out.getInputStream();
 			try {
-				return bafcMan.createBAFC(file, true, sorted);
+				return bafcMan.createBAFC(BlobCodec.decode(file), true, sorted);
 			} finally {
 				try {
 					file.close();
@@ -112,7 +137,7 @@ public class GridFSBackend implements BlobStore {
 	private GridFSDBFile getFile(final MD5 md5) {
 		final GridFSDBFile out;
 		final DBObject query = new BasicDBObject();
-		query.put(Fields.MONGO_ID, md5.getMD5());
+		query.put(FILENAME, md5.getMD5());
 		out = gfs.findOne(query);
 		return out;
 	}
@@ -120,7 +145,7 @@ public class GridFSBackend implements BlobStore {
 	@Override
 	public void removeBlob(MD5 md5) throws BlobStoreCommunicationException {
 		final DBObject query = new BasicDBObject();
-		query.put(Fields.MONGO_ID, md5.getMD5());
+		query.put(FILENAME, md5.getMD5());
 		try {
 			gfs.remove(query);
 		} catch (MongoException me) {
@@ -129,6 +154,59 @@ public class GridFSBackend implements BlobStore {
 		}
 	}
 
+	/* The recoded blob is saved under a new ID before the old one is removed,
+	 * so the blob is always available. A read of the old blob that is in
+	 * progress when it is removed may fail.
+	 */
+	@Override
+	public long recodeBlobs() throws BlobStoreCommunicationException {
+		final DBObject notCodec = new BasicDBObject("$ne", codec.getName());
+		if (codec == BlobCodec.NONE) {
+			notCodec.put("$exists", true); // no codec means unencoded
+		}
+		final DBObject query = new BasicDBObject(Fields.GFS_CODEC, notCodec);
+		long count = 0;
+		try {
+			final DBCursor cur = gfs.getFileList(query);
+			// recoding a blob can take longer than the idle cursor timeout
+			cur.addOption(Bytes.QUERYOPTION_NOTIMEOUT);
+			try {
+				for (final DBObject f: cur) {
+					final GridFSDBFile old = gfs.findOne(
+							new BasicDBObject(Fields.MONGO_ID,
+									f.get(Fields.MONGO_ID)));
+					if (old == null) {
+						continue; // removed since the query started
+					}
+					final MD5 md5 = new MD5(old.getFilename());
+					final Boolean sorted = (Boolean) old.get(Fields.GFS_SORTED);
+					final InputStream is = old.getInputStream();
+					try {
+						save(md5.getMD5() + "." + codec.getName(), md5,
+								BlobCodec.getDecodedWritable(is),
+								sorted == null ? false : sorted);
+					} finally {
+						try {
+							is.close();
+						} catch (IOException ioe) {
+							throw new RuntimeException(
+									"Something is broken", ioe);
+						}
+					}
+					gfs.remove(new BasicDBObject(Fields.MONGO_ID,
+							old.getId()));
+					count++;
+				}
+			} finally {
+				cur.close();
+			}
+		} catch (MongoException me) {
+			throw new BlobStoreCommunicationException(
+					"Could not read from the mongo database", me);
+		}
+		return count;
+	}
+
 	@Override
 	public String getExternalIdentifier(MD5 md5) {
 		return null;
@@ -4,6 +4,7 @@ import static us.kbase.workspace.database.Util.checkSize;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.UnknownHostException;
@@ -15,11 +16,20 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.StringUtils;
 import org.bson.types.ObjectId;
@@ -27,6 +37,8 @@ import org.jongo.FindAndModify;
 import org.jongo.Jongo;
 import org.jongo.MongoCollection;
 import org.jongo.marshall.MarshallingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import us.kbase.common.mongo.GetMongoDB;
 import us.kbase.common.mongo.exceptions.InvalidHostException;
@@ -34,11 +46,14 @@ import us.kbase.common.mongo.exceptions.MongoAuthException;
 import us.kbase.common.utils.CountingOutputStream;
 import us.kbase.typedobj.core.AbsoluteTypeDefId;
 import us.kbase.typedobj.core.ExtractedSubsetAndMetadata;
+import us.kbase.typedobj.core.JsonOffsetIndex;
+import us.kbase.typedobj.core.JsonOffsetIndexer;
 import us.kbase.typedobj.core.MD5;
 import us.kbase.typedobj.core.ObjectPaths;
 import us.kbase.typedobj.core.TempFilesManager;
 import us.kbase.typedobj.core.TypeDefId;
 import us.kbase.typedobj.core.TypedObjectValidator;
+import us.kbase.typedobj.core.Writable;
 import us.kbase.typedobj.db.MongoTypeStorage;
 import us.kbase.typedobj.db.TypeDefinitionDB;
 import us.kbase.typedobj.exceptions.ExceededMaxMetadataSizeException;
@@ -54,6 +69,7 @@ import us.kbase.workspace.database.ByteArrayFileCacheManager;
 import us.kbase.workspace.database.ObjectChainResolvedWS;
 import us.kbase.workspace.database.ObjectIDNoWSNoVer;
 import us.kbase.workspace.database.ObjectIDResolvedWS;
+import us.kbase.workspace.database.ObjectIdentifier;
 import us.kbase.workspace.database.ObjectInformation;
 import us.kbase.workspace.database.Permission;
 import us.kbase.workspace.database.PermissionSet;
@@ -88,7 +104,13 @@ import us.kbase.workspace.database.mongo.exceptions.NoSuchBlobException;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.mongodb.BasicDBObject;
+import com.mongodb.Bytes;
 import com.mongodb.DB;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
@@ -97,6 +119,9 @@ import com.mongodb.WriteResult;
 
 public class MongoWorkspaceDB implements WorkspaceDatabase {
 
+	private final static Logger LOGGER =
+			LoggerFactory.getLogger(MongoWorkspaceDB.class);
+	
 	//TODO save set of objects with same provenance if they were generated by same fn
 	
 	private static final String COL_ADMINS = "admins";
@@ -107,6 +132,8 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 	private static final String COL_WORKSPACE_OBJS = "workspaceObjects";
 	private static final String COL_WORKSPACE_VERS = "workspaceObjVersions";
 	private static final String COL_PROVENANCE = "provenance";
+	private static final String COL_OBJ_REFS = "workspaceObjRefs";
+	private static final String COL_BLOB_INDEX = "blobOffsetIndexes";
 	private static final String COL_SHOCK_PREFIX = "shock_";
 	private static final User ALL_USERS = new AllUsers('*');
 	
@@ -114,17 +141,62 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 
 	private static final long MAX_SUBDATA_SIZE = 15000000;
 	private static final long MAX_PROV_SIZE = 1000000;
+	// stay under the 16MB BSON document limit
+	private static final int MAX_OFFSET_INDEX_SIZE = 15000000;
 	private static final int MAX_WS_META_SIZE = 16000;
+	private static final int MAX_TYPE_CACHE_SIZE = 50000;
+	private static final int MAX_PERM_CACHE_SIZE = 100000;
 	
 	private final DB wsmongo;
 	private final Jongo wsjongo;
 	private final BlobStore blob;
+	private final CachingBlobStore blobCache;
+	// null if blobs are written directly to the backend
+	private TieredBlobStore tieredBlob = null;
+	// null if the backend is not Shock
+	private ShockBackend shockBlob = null;
 	private final QueryMethods query;
 	private final FindAndModify updateWScounter;
 	private final TypedObjectValidator typeValidator;
 	
 	private final Set<String> typeIndexEnsured = new HashSet<String>();
 	private final TempFilesManager tfm;
+	// shared by all calls, sized by the resource usage configuration
+	private final ThreadPoolExecutor blobFetcher = new ThreadPoolExecutor(
+			ResourceUsageConfigurationBuilder.DEFAULT_BLOB_FETCH_THREADS,
+			ResourceUsageConfigurationBuilder.DEFAULT_BLOB_FETCH_THREADS,
+			60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+			new ThreadFactoryBuilder().setDaemon(true)
+					.setNameFormat("blob-fetch-%d").build());
+	// rewrites blobs with the current codec in the background
+	private final ThreadPoolExecutor blobRecoder = new ThreadPoolExecutor(
+			1, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+			new ThreadFactoryBuilder().setDaemon(true)
+					.setNameFormat("blob-recode-%d").build());
+	private Future<Long> blobRecoding = null;
+	// builds the reverse reference index in the background
+	private final ThreadPoolExecutor refIndexer = new ThreadPoolExecutor(
+			1, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+			new ThreadFactoryBuilder().setDaemon(true)
+					.setNameFormat("ref-index-%d").build());
+	private Future<Long> refIndexing = null;
+	// the type of an object version never changes, so absolute references
+	// can be mapped to types across calls. Permissions and deletion state
+	// are still checked on every call.
+	private final Cache<String, AbsoluteTypeDefId> typeCache =
+			CacheBuilder.newBuilder()
+				.maximumSize(MAX_TYPE_CACHE_SIZE)
+				.recordStats()
+				.build();
+	// permissions and admin status rarely change, so they may be cached for
+	// a short time. Null if the cache is disabled.
+	private volatile Cache<String, Permission> permCache = null;
+	private volatile Cache<String, Boolean> adminCache = null;
+	private int permCacheTTL = 0;
+	// incremented whenever permissions change so that permissions read
+	// before the change are never cached after it
+	private long permGeneration = 0;
+	private final Object permLock = new Object();
 	
 	//TODO constants class
 
@@ -186,6 +258,22 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		wsVer.put(Arrays.asList(Fields.VER_META), Arrays.asList(IDX_SPARSE));
 		INDEXES.put(COL_WORKSPACE_VERS, wsVer);
 		
+		//object reference indexes
+		Map<List<String>, List<String>> objRefs = new HashMap<List<String>, List<String>>();
+		//find objects that reference an object, index covers queries
+		objRefs.put(Arrays.asList(Fields.REF_TARGET, Fields.REF_WS_ID,
+				Fields.REF_ID, Fields.REF_VER), Arrays.asList(IDX_UNIQ));
+		//find the objects an object references, index covers queries
+		objRefs.put(Arrays.asList(Fields.REF_WS_ID, Fields.REF_ID,
+				Fields.REF_VER, Fields.REF_TARGET), Arrays.asList(""));
+		INDEXES.put(COL_OBJ_REFS, objRefs);
+		
+		//blob offset indexes
+		Map<List<String>, List<String>> blobIdx = new HashMap<List<String>, List<String>>();
+		//find the offset index for a blob
+		blobIdx.put(Arrays.asList(Fields.BLOB_IDX_CHKSUM), Arrays.asList(IDX_UNIQ));
+		INDEXES.put(COL_BLOB_INDEX, blobIdx);
+		
 		//no indexes needed for provenance since all lookups are by _id
 		
 		//admin indexes
@@ -195,9 +283,14 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		INDEXES.put(COL_ADMINS, admin);
 	}
 
+	/* localTier is the directory of the local tier of a TieredBlobStore in
+	 * front of the backend, or null to write blobs directly to the backend.
+	 * It is specific to this server and so is not part of the settings
+	 * document.
+	 */
 	public MongoWorkspaceDB(final String host, final String database,
 			final String backendSecret, final TempFilesManager tfm, 
-			final int mongoRetryCount)
+			final int mongoRetryCount, final File localTier)
 			throws UnknownHostException, IOException, InvalidHostException,
 			WorkspaceDBException, TypeStorageException, InterruptedException {
 		rescfg = new ResourceUsageConfigurationBuilder().build();
@@ -207,7 +300,11 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		query = new QueryMethods(wsmongo, (AllUsers) ALL_USERS, COL_WORKSPACES,
 				COL_WORKSPACE_OBJS, COL_WORKSPACE_VERS, COL_WS_ACLS);
 		final Settings settings = getSettings();
-		blob = setupBlobStore(settings, backendSecret);
+		blobCache = new CachingBlobStore(
+				setupBlobStore(settings, backendSecret, localTier), tfm,
+				rescfg.getBlobCacheMemoryUsage(),
+				rescfg.getBlobCacheDiskUsage());
+		blob = blobCache;
 		updateWScounter = buildCounterQuery(wsjongo);
 		//TODO check a few random types and make sure they exist
 		this.typeValidator = new TypedObjectValidator(
@@ -221,7 +318,7 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 	public MongoWorkspaceDB(final String host, final String database,
 			final String backendSecret, final String user,
 			final String password, final TempFilesManager tfm,
-			final int mongoRetryCount)
+			final int mongoRetryCount, final File localTier)
 			throws UnknownHostException, WorkspaceDBException,
 			TypeStorageException, IOException, InvalidHostException,
 			MongoAuthException, InterruptedException {
@@ -233,7 +330,11 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		query = new QueryMethods(wsmongo, (AllUsers) ALL_USERS, COL_WORKSPACES,
 				COL_WORKSPACE_OBJS, COL_WORKSPACE_VERS, COL_WS_ACLS);
 		final Settings settings = getSettings();
-		blob = setupBlobStore(settings, backendSecret);
+		blobCache = new CachingBlobStore(
+				setupBlobStore(settings, backendSecret, localTier), tfm,
+				rescfg.getBlobCacheMemoryUsage(),
+				rescfg.getBlobCacheDiskUsage());
+		blob = blobCache;
 		updateWScounter = buildCounterQuery(wsjongo);
 		this.typeValidator = new TypedObjectValidator(
 				new TypeDefinitionDB(
@@ -260,7 +361,11 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 				COL_WORKSPACE_OBJS, COL_WORKSPACE_VERS, COL_WS_ACLS);
 		final Settings settings = getSettings();
 		//TODO 2 factor blob store creation out, BlobStore should be passed into the constructor
-		blob = setupBlobStore(settings, backendSecret);
+		blobCache = new CachingBlobStore(
+				setupBlobStore(settings, backendSecret, null), tfm,
+				rescfg.getBlobCacheMemoryUsage(),
+				rescfg.getBlobCacheDiskUsage());
+		blob = blobCache;
 		updateWScounter = buildCounterQuery(wsjongo);
 		this.typeValidator = new TypedObjectValidator(
 				new TypeDefinitionDB(
@@ -275,6 +380,149 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 	@Override
 	public void setResourceUsageConfiguration(ResourceUsageConfiguration rescfg) {
 		this.rescfg = rescfg;
+		blobCache.setLimits(rescfg.getBlobCacheMemoryUsage(),
+				rescfg.getBlobCacheDiskUsage());
+		final int threads = rescfg.getBlobFetchThreads();
+		// the core size can't exceed the max size
+		if (threads > blobFetcher.getMaximumPoolSize()) {
+			blobFetcher.setMaximumPoolSize(threads);
+			blobFetcher.setCorePoolSize(threads);
+		} else {
+			blobFetcher.setCorePoolSize(threads);
+			blobFetcher.setMaximumPoolSize(threads);
+		}
+		setPermissionCacheTTL(rescfg.getPermissionCacheTTL());
+	}
+	
+	private void setPermissionCacheTTL(final int ttl) {
+		synchronized (permLock) {
+			if (ttl == permCacheTTL) {
+				return;
+			}
+			permCacheTTL = ttl;
+			permGeneration++;
+			if (ttl < 1) {
+				permCache = null;
+				adminCache = null;
+				return;
+			}
+			permCache = CacheBuilder.newBuilder()
+					.expireAfterWrite(ttl, TimeUnit.SECONDS)
+					.maximumSize(MAX_PERM_CACHE_SIZE)
+					.recordStats()
+					.<String, Permission>build();
+			adminCache = CacheBuilder.newBuilder()
+					.expireAfterWrite(ttl, TimeUnit.SECONDS)
+					.maximumSize(MAX_PERM_CACHE_SIZE)
+					.<String, Boolean>build();
+		}
+	}
+	
+	private long getPermissionGeneration() {
+		synchronized (permLock) {
+			return permGeneration;
+		}
+	}
+	
+	private void invalidatePermissions(final ResolvedMongoWSID rwsi) {
+		synchronized (permLock) {
+			permGeneration++;
+			final Cache<String, Permission> cache = permCache;
+			if (cache == null) {
+				return;
+			}
+			final String prefix = rwsi.getID() + ":";
+			final Iterator<String> iter = cache.asMap().keySet().iterator();
+			while (iter.hasNext()) {
+				if (iter.next().startsWith(prefix)) {
+					iter.remove();
+				}
+			}
+		}
+	}
+	
+	private void invalidateAdmin(final WorkspaceUser user) {
+		synchronized (permLock) {
+			permGeneration++;
+			final Cache<String, Boolean> cache = adminCache;
+			if (cache != null) {
+				cache.invalidate(user.getUser());
+			}
+		}
+	}
+	
+	@Override
+	public Map<String, Map<String, Long>> getCacheStatistics() {
+		final Map<String, Map<String, Long>> ret =
+				new TreeMap<String, Map<String, Long>>();
+		ret.put("blobs", blobCache.getStatistics());
+		final CacheStats types = typeCache.stats();
+		final Map<String, Long> typestats = new LinkedHashMap<String, Long>();
+		typestats.put("hits", types.hitCount());
+		typestats.put("misses", types.missCount());
+		typestats.put("evictions", types.evictionCount());
+		typestats.put("entries", typeCache.size());
+		ret.put("types", typestats);
+		final Cache<String, Permission> pcache = permCache;
+		final CacheStats perms = pcache == null ? new CacheStats(
+				0, 0, 0, 0, 0, 0) : pcache.stats();
+		final Map<String, Long> permstats = new LinkedHashMap<String, Long>();
+		permstats.put("hits", perms.hitCount());
+		permstats.put("misses", perms.missCount());
+		permstats.put("evictions", perms.evictionCount());
+		permstats.put("entries", pcache == null ? 0L : pcache.size());
+		ret.put("permissions", permstats);
+		ret.put("typelocks", typeValidator.getDB().getLockStatistics());
+		return ret;
+	}
+	
+	@Override
+	public synchronized Map<String, Object> recompressBlobs(
+			final boolean start) {
+		final Map<String, Object> ret = new LinkedHashMap<String, Object>();
+		final Future<Long> job = blobRecoding;
+		if (job != null && job.isDone()) {
+			try {
+				ret.put("recompressed", Uninterruptibles.getUninterruptibly(job));
+			} catch (ExecutionException e) {
+				ret.put("error", e.getCause().getLocalizedMessage());
+			}
+		}
+		if (start && (job == null || job.isDone())) {
+			blobRecoding = blobRecoder.submit(new Callable<Long>() {
+
+				@Override
+				public Long call() throws Exception {
+					final long count = blob.recodeBlobs();
+					LOGGER.info("Recompressed {} blobs", count);
+					return count;
+				}
+			});
+		}
+		ret.put("running", blobRecoding != null && !blobRecoding.isDone());
+		return ret;
+	}
+	
+	@Override
+	public Map<String, Object> getBlobReplicationStatus() {
+		final Map<String, Object> ret = new LinkedHashMap<String, Object>();
+		final TieredBlobStore tiered = tieredBlob;
+		ret.put("tiered", tiered != null);
+		if (tiered != null) {
+			ret.putAll(tiered.getReplicationStatus());
+		}
+		return ret;
+	}
+	
+	@Override
+	public Map<String, Object> getBlobTransferStatistics() {
+		final Map<String, Object> ret = new LinkedHashMap<String, Object>();
+		final ShockBackend shock = shockBlob;
+		ret.put("shock", shock != null);
+		if (shock != null) {
+			ret.putAll(shock.getDownloadStatistics());
+		}
+		return ret;
 	}
 	
 	@Override
@@ -372,10 +620,28 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 	}
 
 	private BlobStore setupBlobStore(final Settings settings,
+			final String backendSecret, final File localTier)
+			throws CorruptWorkspaceDBException, DBAuthorizationException,
+			WorkspaceDBInitializationException {
+		final BlobStore backend = setupBackend(settings, backendSecret);
+		if (localTier == null) {
+			return backend;
+		}
+		try {
+			tieredBlob = new TieredBlobStore(localTier, backend);
+		} catch (BlobStoreException e) {
+			throw new WorkspaceDBInitializationException(
+					"The database could not be initialized: " +
+					e.getLocalizedMessage(), e);
+		}
+		return tieredBlob;
+	}
+	
+	private BlobStore setupBackend(final Settings settings,
 			final String backendSecret) throws CorruptWorkspaceDBException,
 			DBAuthorizationException, WorkspaceDBInitializationException {
 		if (settings.isGridFSBackend()) {
-			return new GridFSBackend(wsmongo);
+			return new GridFSBackend(wsmongo, settings.getBlobCodec());
 		}
 		if (settings.isShockBackend()) {
 			URL shockurl = null;
@@ -386,10 +652,11 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 						"Settings has bad shock url: "
 								+ settings.getShockUrl(), mue);
 			}
-			BlobStore bs;
+			final ShockBackend bs;
 			try {
 				bs = new ShockBackend(wsmongo, COL_SHOCK_PREFIX,
-						shockurl, settings.getShockUser(), backendSecret);
+						shockurl, settings.getShockUser(), backendSecret,
+						settings.getBlobCodec());
 			} catch (BlobStoreAuthorizationException e) {
 				throw new DBAuthorizationException(
 						"Not authorized to access the blob store database: "
@@ -401,8 +668,24 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			}
 			// TODO if shock, check a few random nodes to make sure they match
 			// the internal representation, die otherwise
+			shockBlob = bs;
 			return bs;
 		}
+		if (settings.isFileSystemBackend()) {
+			if (settings.getFileSystemLocation() == null) {
+				throw new CorruptWorkspaceDBException(
+						"Settings has no filesystem location");
+			}
+			try {
+				return new FileSystemBackend(
+						new File(settings.getFileSystemLocation()),
+						settings.getFsyncPolicy(), settings.getBlobCodec());
+			} catch (BlobStoreException e) {
+				throw new WorkspaceDBInitializationException(
+						"The database could not be initialized: " +
+						e.getLocalizedMessage(), e);
+			}
+		}
 		throw new RuntimeException("Something's real broke y'all");
 	}
 	
@@ -609,6 +892,9 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			newHashSet(Fields.OBJ_ID, Fields.OBJ_NAME, Fields.OBJ_DEL,
 					Fields.OBJ_HIDE);
 	
+	// the number of objects copied per batch when cloning a workspace
+	private static final int CLONE_BATCH_SIZE = 1000;
+	
 	@Override
 	public WorkspaceInformation cloneWorkspace(final WorkspaceUser user,
 			final ResolvedWorkspaceID wsid, final String newname,
@@ -628,24 +914,59 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		//or worse the db went down post version increment pre version save
 		//need to move to transactional backend or relationless schema
 		q.put(Fields.OBJ_VCNT, new BasicDBObject("$gt", 0));
-		final List<Map<String, Object>> wsobjects =
-				query.queryCollection(COL_WORKSPACE_OBJS, q, FLDS_CLONE_WS);
-		for (Map<String, Object> o: wsobjects) {
-			if ((Boolean) o.get(Fields.OBJ_DEL)) {
-				continue;
+		q.put(Fields.OBJ_DEL, false);
+		final List<Map<String, Object>> wsobjects = query.queryCollection(
+				COL_WORKSPACE_OBJS, q, FLDS_CLONE_WS,
+				new BasicDBObject(Fields.OBJ_ID, 1), -1, -1);
+		if (wsobjects.isEmpty()) {
+			return getWorkspaceInformation(user, toWS);
+		}
+		/* reserve all the ids up front. If some objects turn out to have no
+		 * versions the last few ids go unused, which is fine since the object
+		 * count is approximate anyway
+		 */
+		long nextid = incrementWorkspaceCounter(toWS, wsobjects.size());
+		for (int i = 0; i < wsobjects.size(); i += CLONE_BATCH_SIZE) {
+			final int cloned = Math.min(i + CLONE_BATCH_SIZE, wsobjects.size());
+			nextid = cloneObjects(user, fromWS, toWS,
+					wsobjects.subList(i, cloned), nextid);
+			if (wsobjects.size() > CLONE_BATCH_SIZE) {
+				LOGGER.info("Cloned {} of {} objects from workspace {} to " +
+						"workspace {}", cloned, wsobjects.size(),
+						fromWS.getID(), toWS.getID());
 			}
-			final long oldid = (Long) o.get(Fields.OBJ_ID);
-			final String name = (String) o.get(Fields.OBJ_NAME);
-			final boolean hidden = (Boolean) o.get(Fields.OBJ_HIDE);
-			final ResolvedMongoObjectIDNoVer roi = 
-					new ResolvedMongoObjectIDNoVer(fromWS, name, oldid);
-			final List<Map<String, Object>> versions;
-			try {
-				versions = queryAllVersions(
-						new HashSet<ResolvedMongoObjectIDNoVer>(
-								Arrays.asList(roi)),
-						FLDS_VER_COPYOBJ).get(roi);
-			} catch (NoSuchObjectException nsoe) {
+		}
+		return getWorkspaceInformation(user, toWS);
+	}
+	
+	/* clones a batch of objects. The object ids starting at nextid must
+	 * already be reserved in the target workspace. Returns the next unused id.
+	 */
+	private long cloneObjects(final WorkspaceUser user,
+			final ResolvedMongoWSID fromWS, final ResolvedMongoWSID toWS,
+			final List<Map<String, Object>> wsobjects, long nextid)
+			throws WorkspaceCommunicationException {
+		final Map<ResolvedMongoObjectIDNoVer, Map<String, Object>> objs =
+				new LinkedHashMap<ResolvedMongoObjectIDNoVer,
+						Map<String, Object>>();
+		for (final Map<String, Object> o: wsobjects) {
+			objs.put(new ResolvedMongoObjectIDNoVer(fromWS,
+					(String) o.get(Fields.OBJ_NAME),
+					(Long) o.get(Fields.OBJ_ID)), o);
+		}
+		final Map<ResolvedMongoObjectIDNoVer, List<Map<String, Object>>> vers =
+				query.queryAllVersions(
+						new HashSet<ResolvedMongoObjectIDNoVer>(objs.keySet()),
+						FLDS_VER_COPYOBJ);
+		final Map<Long, String> names = new LinkedHashMap<Long, String>();
+		final Map<Long, List<Map<String, Object>>> newvers =
+				new HashMap<Long, List<Map<String, Object>>>();
+		final Map<Long, Boolean> hidden = new HashMap<Long, Boolean>();
+		final List<Map<String, Object>> allvers =
+				new LinkedList<Map<String, Object>>();
+		for (final ResolvedMongoObjectIDNoVer roi: objs.keySet()) {
+			final List<Map<String, Object>> versions = vers.get(roi);
+			if (versions.isEmpty()) {
 				//The object was saved to the objects collections and the
 				//version was incremented at least once. However, no versions
 				//exist in the version collection. So either a race condition
@@ -660,14 +981,91 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 				v.put(Fields.VER_SAVEDBY, user.getUser());
 				v.put(Fields.VER_RVRT, null);
 				v.put(Fields.VER_COPIED, new MongoReference(
-						fromWS.getID(), oldid, ver).toString());
+						fromWS.getID(), roi.getId(), ver).toString());
 			}
-			updateReferenceCountsForVersions(versions);
-			final long newid = incrementWorkspaceCounter(toWS, 1);
-			final long objid = saveWorkspaceObject(toWS, newid, name).id;
-			saveObjectVersions(user, toWS, objid, versions, hidden);
+			final long newid = nextid++;
+			names.put(newid, roi.getName());
+			newvers.put(newid, versions);
+			hidden.put(newid, (Boolean) objs.get(roi).get(Fields.OBJ_HIDE));
+			allvers.addAll(versions);
 		}
-		return getWorkspaceInformation(user, toWS);
+		if (names.isEmpty()) {
+			return nextid;
+		}
+		// one multi-update per version / count combination for the batch
+		updateReferenceCountsForVersions(allvers);
+		final Date saved = new Date();
+		final List<DBObject> objdocs = new LinkedList<DBObject>();
+		for (final Entry<Long, String> e: names.entrySet()) {
+			final int count = newvers.get(e.getKey()).size();
+			final List<Integer> zeros = new LinkedList<Integer>();
+			for (int i = 0; i < count; i++) {
+				zeros.add(0);
+			}
+			final DBObject o = new BasicDBObject();
+			o.put(Fields.OBJ_WS_ID, toWS.getID());
+			o.put(Fields.OBJ_ID, e.getKey());
+			o.put(Fields.OBJ_VCNT, count); //Integer
+			o.put(Fields.OBJ_REFCOUNTS, zeros);
+			o.put(Fields.OBJ_NAME, e.getValue());
+			o.put(Fields.OBJ_MODDATE, saved);
+			o.put(Fields.OBJ_LATEST, null);
+			o.put(Fields.OBJ_DEL, false);
+			o.put(Fields.OBJ_HIDE, hidden.get(e.getKey()));
+			objdocs.add(o);
+		}
+		final Set<Long> batched = insertClonedObjects(toWS, objdocs,
+				names.keySet());
+		final List<DBObject> verdocs = new LinkedList<DBObject>();
+		for (final Entry<Long, String> e: names.entrySet()) {
+			final long id = e.getKey();
+			if (batched.contains(id)) {
+				addVersionDocuments(toWS, id, newvers.get(id), 1, saved,
+						verdocs);
+			} else {
+				//the user saved an object with this name to the new workspace
+				//mid clone, so add the versions to that object
+				final long objid =
+						saveWorkspaceObject(toWS, id, e.getValue()).id;
+				saveObjectVersions(user, toWS, objid, newvers.get(id),
+						hidden.get(id));
+			}
+		}
+		insertVersions(verdocs);
+		return nextid;
+	}
+	
+	//returns the ids of the objects that were saved in the batch
+	private Set<Long> insertClonedObjects(final ResolvedMongoWSID toWS,
+			final List<DBObject> objdocs, final Set<Long> ids)
+			throws WorkspaceCommunicationException {
+		try {
+			wsmongo.getCollection(COL_WORKSPACE_OBJS).insert(objdocs);
+			return ids;
+		} catch (MongoException.DuplicateKey dk) {
+			//someone else just saved an object with one of the names to the
+			//new workspace. The batch stops at the failed document, so
+			//figure out which objects made it in
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		}
+		final Set<Long> batched = new HashSet<Long>();
+		try {
+			@SuppressWarnings("rawtypes")
+			final Iterable<Map> saved = wsjongo.getCollection(
+					COL_WORKSPACE_OBJS)
+					.find(M_SAVED_OBJS_QRY, toWS.getID(),
+							new ArrayList<Long>(ids))
+					.projection(M_SAVED_OBJS_PROJ).as(Map.class);
+			for (@SuppressWarnings("rawtypes") Map m: saved) {
+				batched.add(((Number) m.get(Fields.OBJ_ID)).longValue());
+			}
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		}
+		return batched;
 	}
 	
 	private final static String M_LOCK_WS_WTH = String.format("{$set: {%s: #}}",
@@ -966,6 +1364,11 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 					"Permission cannot be null or NONE");
 		}
 		Set<ResolvedMongoWSID> rmwsis = query.convertResolvedWSID(rwsis);
+		final Cache<String, Permission> cache = permCache;
+		if (cache != null && !rmwsis.isEmpty()) {
+			return getCachedPermissions(cache, user, rmwsis, perm,
+					excludeGlobalRead);
+		}
 		final Map<ResolvedMongoWSID, Map<User, Permission>> userperms;
 		if (user != null) {
 			userperms = query.queryPermissions(rmwsis, 
@@ -1008,6 +1411,77 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		return pset;
 	}
 	
+	// produces the same permission set as the uncached version of
+	// getPermissions for a specified set of workspaces
+	private PermissionSet getCachedPermissions(
+			final Cache<String, Permission> cache,
+			final WorkspaceUser user,
+			final Set<ResolvedMongoWSID> rmwsis,
+			final Permission perm,
+			final boolean excludeGlobalRead)
+			throws WorkspaceCommunicationException,
+			CorruptWorkspaceDBException {
+		final MongoPermissionSet pset = new MongoPermissionSet(user, ALL_USERS);
+		if (user == null &&
+				(excludeGlobalRead || perm.compareTo(Permission.WRITE) >= 0)) {
+			return pset;
+		}
+		final Set<User> users = new HashSet<User>(Arrays.asList(ALL_USERS));
+		if (user != null) {
+			users.add(user);
+		}
+		final Map<ResolvedMongoWSID, Map<User, Permission>> perms =
+				new HashMap<ResolvedMongoWSID, Map<User,Permission>>();
+		final Set<ResolvedMongoWSID> misses = new HashSet<ResolvedMongoWSID>();
+		for (final ResolvedMongoWSID rwsi: rmwsis) {
+			final Map<User, Permission> p = new HashMap<User, Permission>();
+			for (final User u: users) {
+				final Permission cached = cache.getIfPresent(
+						getPermissionKey(rwsi, u));
+				if (cached == null) {
+					misses.add(rwsi);
+					break;
+				}
+				p.put(u, cached);
+			}
+			perms.put(rwsi, p);
+		}
+		if (!misses.isEmpty()) {
+			final long gen = getPermissionGeneration();
+			final Map<ResolvedMongoWSID, Map<User, Permission>> dbperms =
+					query.queryPermissions(misses, users);
+			synchronized (permLock) {
+				for (final ResolvedMongoWSID rwsi: misses) {
+					final Map<User, Permission> p = perms.get(rwsi);
+					for (final User u: users) {
+						final Permission dbp = dbperms.get(rwsi).get(u);
+						p.put(u, dbp == null ? Permission.NONE : dbp);
+						if (gen == permGeneration) {
+							cache.put(getPermissionKey(rwsi, u), p.get(u));
+						}
+					}
+				}
+			}
+		}
+		for (final ResolvedMongoWSID rwsi: rmwsis) {
+			final Permission gl = perms.get(rwsi).get(ALL_USERS);
+			Permission p = user == null ? Permission.NONE :
+				perms.get(rwsi).get(user);
+			if (p.compareTo(perm) < 0) {
+				p = Permission.NONE;
+			}
+			if (!p.equals(Permission.NONE) || !gl.equals(Permission.NONE)) {
+				pset.setPermission(rwsi, p, gl);
+			}
+		}
+		return pset;
+	}
+	
+	private static String getPermissionKey(final ResolvedMongoWSID rwsi,
+			final User user) {
+		return rwsi.getID() + ":" + user.getUser();
+	}
+	
 	private static String getWSErrorId(final WorkspaceIdentifier wsi) {
 		if (wsi.getId() == null) {
 			return "name " + wsi.getName();
@@ -1111,23 +1585,28 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		} else {
 			owner = null;
 		}
-		for (User user: users) {
-			if (owner != null && owner.getUser().equals(user.getUser())) {
-				continue; // can't change owner permissions
-			}
-			try {
-				if (perm.equals(Permission.NONE)) {
-					wsjongo.getCollection(COL_WS_ACLS).remove(
-							M_PERMS_QRY, wsid.getID(), user.getUser());
-				} else {
-					wsjongo.getCollection(COL_WS_ACLS).update(
-							M_PERMS_QRY, wsid.getID(), user.getUser())
-							.upsert().with(M_PERMS_UPD, perm.getPermission());
+		try {
+			for (User user: users) {
+				if (owner != null && owner.getUser().equals(user.getUser())) {
+					continue; // can't change owner permissions
+				}
+				try {
+					if (perm.equals(Permission.NONE)) {
+						wsjongo.getCollection(COL_WS_ACLS).remove(
+								M_PERMS_QRY, wsid.getID(), user.getUser());
+					} else {
+						wsjongo.getCollection(COL_WS_ACLS).update(
+								M_PERMS_QRY, wsid.getID(), user.getUser())
+								.upsert().with(M_PERMS_UPD, perm.getPermission());
+					}
+				} catch (MongoException me) {
+					throw new WorkspaceCommunicationException(
+							"There was a problem communicating with the database", me);
 				}
-			} catch (MongoException me) {
-				throw new WorkspaceCommunicationException(
-						"There was a problem communicating with the database", me);
 			}
+		} finally {
+			// some permissions may have changed even if an update failed
+			invalidatePermissions(wsid);
 		}
 	}
 	
@@ -1309,11 +1788,10 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		return ret;
 	}
 	
-	// save object in preexisting object container
-	private ObjectInformation saveObjectVersion(final WorkspaceUser user,
-			final ResolvedMongoWSID wsid, final long objectid,
-			final ObjectSavePackage pkg)
-			throws WorkspaceCommunicationException {
+	// create the version document for a save package, less the fields set
+	// when the version is saved
+	private Map<String, Object> createVersion(final WorkspaceUser user,
+			final ObjectSavePackage pkg) {
 		final Map<String, Object> version = new HashMap<String, Object>();
 		version.put(Fields.VER_SAVEDBY, user.getUser());
 		version.put(Fields.VER_CHKSUM, pkg.td.getChksum());
@@ -1329,11 +1807,14 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		version.put(Fields.VER_COPIED, null);
 		version.put(Fields.VER_EXT_IDS, extractedIDsToStrings(
 				pkg.wo.getExtractedIDs()));
-		
-		saveObjectVersions(user, wsid, objectid, Arrays.asList(version),
-				pkg.wo.isHidden());
-		
-		return new MongoObjectInfo(objectid, pkg.name,
+		return version;
+	}
+	
+	private ObjectInformation createObjectInfo(final WorkspaceUser user,
+			final ResolvedMongoWSID wsid, final ObjectSavePackage pkg,
+			final Map<String, Object> version) {
+		return new MongoObjectInfo((Long) version.get(Fields.VER_ID),
+				pkg.name,
 				pkg.wo.getRep().getValidationTypeDefId().getTypeString(),
 				(Date) version.get(Fields.VER_SAVEDATE),
 				(Integer) version.get(Fields.VER_VER),
@@ -1387,7 +1868,6 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			final ResolvedMongoWSID wsid, final long objectid,
 			final List<Map<String, Object>> versions, final Boolean hidden)
 			throws WorkspaceCommunicationException {
-		// collection objects might be batchable if saves are slow
 		/* TODO deal with rare failure modes below as much as possible at some point. Not high prio since rare
 		 * 1) save an object, crash w/ 0 versions. 2) increment versions, crash w/o saving
 		 * check all places counter incremented (ws, obj, ver) to see if any other problems
@@ -1400,33 +1880,46 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		 * None of the above addresses the object w/ 0 versions failure. Not sure what to do about that.
 		 * 
 		*/
-		int ver;
+		final Date saved = new Date();
+		final int ver = incrementVersionCount(wsid, objectid, versions.size(),
+				hidden, saved);
+		final List<DBObject> dbo = new LinkedList<DBObject>();
+		addVersionDocuments(wsid, objectid, versions, ver, saved, dbo);
+		insertVersions(dbo);
+	}
+	
+	//returns the number of the first of the new versions
+	private int incrementVersionCount(final ResolvedMongoWSID wsid,
+			final long objectid, final int count, final Boolean hidden,
+			final Date saved)
+			throws WorkspaceCommunicationException {
 		final List<Integer> zeros = new LinkedList<Integer>();
-		for (int i = 0; i < versions.size(); i++) {
+		for (int i = 0; i < count; i++) {
 			zeros.add(0);
 		}
-		final Date saved = new Date();
 		try {
 			FindAndModify q = wsjongo.getCollection(COL_WORKSPACE_OBJS)
 					.findAndModify(M_SAVEINS_QRY, wsid.getID(), objectid)
 					.returnNew();
 			if (hidden == null) {
-				q = q.with(M_SAVEINS_NO_HIDE_WTH, versions.size(),
-						saved, zeros);
+				q = q.with(M_SAVEINS_NO_HIDE_WTH, count, saved, zeros);
 			} else {
-				q = q.with(M_SAVEINS_WTH, versions.size(), saved,
-						hidden, zeros);
+				q = q.with(M_SAVEINS_WTH, count, saved, hidden, zeros);
 			}
-			ver = (Integer) q
+			return (Integer) q
 					.projection(M_SAVEINS_PROJ).as(DBObject.class)
 					.get(Fields.OBJ_VCNT)
-					- versions.size() + 1;
+					- count + 1;
 		} catch (MongoException me) {
 			throw new WorkspaceCommunicationException(
 					"There was a problem communicating with the database", me);
 		}
+	}
+	
+	private void addVersionDocuments(final ResolvedMongoWSID wsid,
+			final long objectid, final List<Map<String, Object>> versions,
+			int ver, final Date saved, final List<DBObject> dbo) {
 		//TODO look into why saving array of maps via List.ToArray() /w Jongo makes Lazy?Objects return, which screw up everything
-		final List<DBObject> dbo = new LinkedList<DBObject>();
 		for (final Map<String, Object> v: versions) {
 			v.put(Fields.VER_SAVEDATE, saved);
 			v.put(Fields.VER_WS_ID, wsid.getID());
@@ -1438,13 +1931,122 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			}
 			dbo.add(d);
 		}
-
+	}
+	
+	private void insertVersions(final List<DBObject> dbo)
+			throws WorkspaceCommunicationException {
+		if (dbo.isEmpty()) {
+			return;
+		}
 		try {
 			wsmongo.getCollection(COL_WORKSPACE_VERS).insert(dbo);
 		} catch (MongoException me) {
 			throw new WorkspaceCommunicationException(
 					"There was a problem communicating with the database", me);
 		}
+		insertReferences(dbo);
+	}
+	
+	//adds the references and provenance references of the versions to the
+	//reverse reference index. References already in the index are ignored.
+	private void insertReferences(final List<DBObject> versions)
+			throws WorkspaceCommunicationException {
+		final List<DBObject> refs = new LinkedList<DBObject>();
+		for (final DBObject v: versions) {
+			final Set<String> targets = new HashSet<String>();
+			@SuppressWarnings("unchecked")
+			final List<String> r = (List<String>) v.get(Fields.VER_REF);
+			@SuppressWarnings("unchecked")
+			final List<String> pr = (List<String>) v.get(Fields.VER_PROVREF);
+			if (r != null) {
+				targets.addAll(r);
+			}
+			if (pr != null) {
+				targets.addAll(pr);
+			}
+			for (final String t: targets) {
+				final DBObject ref = new BasicDBObject(Fields.REF_TARGET, t);
+				ref.put(Fields.REF_WS_ID, v.get(Fields.VER_WS_ID));
+				ref.put(Fields.REF_ID, v.get(Fields.VER_ID));
+				ref.put(Fields.REF_VER, v.get(Fields.VER_VER));
+				refs.add(ref);
+			}
+		}
+		if (refs.isEmpty()) {
+			return;
+		}
+		try {
+			wsmongo.getCollection(COL_OBJ_REFS).insert(refs,
+					wsmongo.getWriteConcern().continueOnErrorForInsert(true));
+		} catch (MongoException.DuplicateKey dk) {
+			//the rest of the batch is still inserted
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		}
+	}
+	
+	private static final int REF_INDEX_BATCH_SIZE = 1000;
+	
+	@Override
+	public synchronized Map<String, Object> buildReferenceIndex(
+			final boolean start) {
+		final Map<String, Object> ret = new LinkedHashMap<String, Object>();
+		final Future<Long> job = refIndexing;
+		if (job != null && job.isDone()) {
+			try {
+				ret.put("indexed", Uninterruptibles.getUninterruptibly(job));
+			} catch (ExecutionException e) {
+				ret.put("error", e.getCause().getLocalizedMessage());
+			}
+		}
+		if (start && (job == null || job.isDone())) {
+			refIndexing = refIndexer.submit(new Callable<Long>() {
+
+				@Override
+				public Long call() throws Exception {
+					return indexReferences();
+				}
+			});
+		}
+		ret.put("running", refIndexing != null && !refIndexing.isDone());
+		return ret;
+	}
+	
+	private long indexReferences() throws WorkspaceCommunicationException {
+		final DBObject fields = new BasicDBObject(Fields.VER_WS_ID, 1);
+		fields.put(Fields.VER_ID, 1);
+		fields.put(Fields.VER_VER, 1);
+		fields.put(Fields.VER_REF, 1);
+		fields.put(Fields.VER_PROVREF, 1);
+		fields.put(Fields.MONGO_ID, 0);
+		final List<DBObject> batch = new LinkedList<DBObject>();
+		long count = 0;
+		try {
+			final DBCursor cur = wsmongo.getCollection(COL_WORKSPACE_VERS)
+					.find(new BasicDBObject(), fields);
+			// indexing a large collection can leave the cursor idle between
+			// batches for longer than the cursor timeout
+			cur.addOption(Bytes.QUERYOPTION_NOTIMEOUT);
+			try {
+				while (cur.hasNext()) {
+					batch.add(cur.next());
+					count++;
+					if (batch.size() >= REF_INDEX_BATCH_SIZE) {
+						insertReferences(batch);
+						batch.clear();
+					}
+				}
+			} finally {
+				cur.close();
+			}
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		}
+		insertReferences(batch);
+		LOGGER.info("Indexed the references of {} object versions", count);
+		return count;
 	}
 	
 	//TODO make all projections not include _id unless specified
@@ -1513,9 +2115,9 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		dbo.put(Fields.OBJ_DEL, false);
 		dbo.put(Fields.OBJ_HIDE, false);
 		try {
-			//maybe could speed things up with batch inserts but dealing with
-			//errors would really suck
-			//do this later if it becomes a bottleneck
+			//saveObjects() saves new objects in batches via
+			//saveWorkspaceObjects() and only falls back to this method when
+			//the batch fails
 			wsmongo.getCollection(COL_WORKSPACE_OBJS).insert(dbo);
 		} catch (MongoException.DuplicateKey dk) {
 			//ok, someone must've just this second added this name to an object
@@ -1544,6 +2146,139 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		return new IDName(objectid, newName);
 	}
 	
+	private static final String M_AUTO_NAMES_QRY = String.format(
+			"{%s: #, %s: {$in: #}}", Fields.OBJ_WS_ID, Fields.OBJ_NAME);
+	
+	//generates names for the objects with null names in one query, falling
+	//back to generateUniqueNameForObject() for any name that is in use
+	private Map<Long, String> generateUniqueNamesForObjects(
+			final ResolvedWorkspaceID wsid, final Map<Long, String> objects)
+			throws WorkspaceCommunicationException {
+		final Map<Long, String> ret = new LinkedHashMap<Long, String>();
+		final List<String> prefixes = new LinkedList<String>();
+		for (final Entry<Long, String> e: objects.entrySet()) {
+			if (e.getValue() == null) {
+				prefixes.add("auto" + e.getKey());
+			}
+		}
+		final Set<String> inuse = new HashSet<String>();
+		if (!prefixes.isEmpty()) {
+			try {
+				@SuppressWarnings("rawtypes")
+				final Iterable<Map> names = wsjongo.getCollection(
+						COL_WORKSPACE_OBJS)
+						.find(M_AUTO_NAMES_QRY, wsid.getID(), prefixes)
+						.projection(M_UNIQ_NAME_PROJ).as(Map.class);
+				for (@SuppressWarnings("rawtypes") Map m: names) {
+					inuse.add((String) m.get(Fields.OBJ_NAME));
+				}
+			} catch (MongoException me) {
+				throw new WorkspaceCommunicationException(
+						"There was a problem communicating with the database",
+						me);
+			}
+		}
+		for (final Entry<Long, String> e: objects.entrySet()) {
+			final String prefix = "auto" + e.getKey();
+			if (e.getValue() != null) {
+				ret.put(e.getKey(), e.getValue());
+			} else if (inuse.contains(prefix)) {
+				ret.put(e.getKey(),
+						generateUniqueNameForObject(wsid, e.getKey()));
+			} else {
+				ret.put(e.getKey(), prefix);
+			}
+		}
+		return ret;
+	}
+	
+	private static final String M_SAVED_OBJS_QRY = String.format(
+			"{%s: #, %s: {$in: #}}", Fields.OBJ_WS_ID, Fields.OBJ_ID);
+	private static final String M_SAVED_OBJS_PROJ = String.format(
+			"{%s: 1, %s: 0}", Fields.OBJ_ID, Fields.MONGO_ID);
+	
+	//save brand new objects - create containers - in one batch, with the
+	//version counts already set for the versions in the save packages.
+	//objects that can't be saved in the batch, most likely because their name
+	//was just taken by another save, are saved one at a time via
+	//saveWorkspaceObject() and added to the unbatched map. The caller must
+	//increment the version counts of those objects.
+	//the object ids *must not exist* in the workspace
+	//returns the objects saved in the batch
+	private Map<Long, IDName> saveWorkspaceObjects(
+			final ResolvedMongoWSID wsid, final Map<Long, String> objects,
+			final Map<Long, List<ObjectSavePackage>> packages,
+			final Date saved, final Map<Long, IDName> unbatched)
+			throws WorkspaceCommunicationException {
+		final Map<Long, IDName> ret = new HashMap<Long, IDName>();
+		if (objects.isEmpty()) {
+			return ret;
+		}
+		final Map<Long, String> names =
+				generateUniqueNamesForObjects(wsid, objects);
+		final List<DBObject> dbo = new LinkedList<DBObject>();
+		for (final Entry<Long, String> e: names.entrySet()) {
+			final List<ObjectSavePackage> pkgs = packages.get(e.getKey());
+			final List<Integer> zeros = new LinkedList<Integer>();
+			for (int i = 0; i < pkgs.size(); i++) {
+				zeros.add(0);
+			}
+			final DBObject o = new BasicDBObject();
+			o.put(Fields.OBJ_WS_ID, wsid.getID());
+			o.put(Fields.OBJ_ID, e.getKey());
+			o.put(Fields.OBJ_VCNT, pkgs.size()); //Integer
+			o.put(Fields.OBJ_REFCOUNTS, zeros);
+			o.put(Fields.OBJ_NAME, e.getValue());
+			o.put(Fields.OBJ_MODDATE, saved);
+			o.put(Fields.OBJ_LATEST, null);
+			o.put(Fields.OBJ_DEL, false);
+			o.put(Fields.OBJ_HIDE, pkgs.get(pkgs.size() - 1).wo.isHidden());
+			dbo.add(o);
+		}
+		boolean allsaved = true;
+		try {
+			wsmongo.getCollection(COL_WORKSPACE_OBJS).insert(dbo);
+		} catch (MongoException.DuplicateKey dk) {
+			//someone else just saved an object with one of the names. The
+			//batch stops at the failed document, so the remaining objects
+			//are saved one at a time below
+			allsaved = false;
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		}
+		final Set<Long> batched = new HashSet<Long>();
+		if (allsaved) {
+			batched.addAll(names.keySet());
+		} else {
+			try {
+				@SuppressWarnings("rawtypes")
+				final Iterable<Map> ids = wsjongo.getCollection(
+						COL_WORKSPACE_OBJS)
+						.find(M_SAVED_OBJS_QRY, wsid.getID(),
+								new ArrayList<Long>(names.keySet()))
+						.projection(M_SAVED_OBJS_PROJ).as(Map.class);
+				for (@SuppressWarnings("rawtypes") Map m: ids) {
+					batched.add(((Number) m.get(Fields.OBJ_ID)).longValue());
+				}
+			} catch (MongoException me) {
+				throw new WorkspaceCommunicationException(
+						"There was a problem communicating with the database",
+						me);
+			}
+		}
+		for (final Entry<Long, String> e: names.entrySet()) {
+			if (batched.contains(e.getKey())) {
+				ret.put(e.getKey(), new IDName(e.getKey(), e.getValue()));
+			} else {
+				//use the original name so autogenerated names are regenerated
+				unbatched.put(e.getKey(), saveWorkspaceObject(wsid,
+						e.getKey(), objects.get(e.getKey())));
+			}
+		}
+		return ret;
+	}
+	
 	private static final ObjectMapper MAPPER = new ObjectMapper();
 	
 	private static String getObjectErrorId(final ObjectIDNoWSNoVer oi,
@@ -1607,8 +2342,10 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 //					o.getObjectIdentifier(), objnum, "subdata");
 			//could save time by making type->data->TypeData map and reusing
 			//already calced TDs, but hardly seems worth it - unlikely event
+			//the MD5 and size were calculated when sorting the object
 			pkg.td = new TypeData(o.getRep().createJsonWritable(),
-					o.getRep().getValidationTypeDefId(), subdata);
+					o.getRep().getValidationTypeDefId(), subdata,
+					o.getRep().getMD5(), o.getRep().getSortedSize());
 			if (pkg.td.getSize() > rescfg.getMaxObjectSize()) {
 				throw new IllegalArgumentException(String.format(
 						"Object %s data size %s exceeds limit of %s",
@@ -1813,50 +2550,90 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		saveProvenance(packages);
 		updateReferenceCounts(packages);
 		long newid = incrementWorkspaceCounter(wsidmongo, newobjects);
-		/*  alternate impl: 1) make all save objects 2) increment all version
-		 *  counters 3) batch save versions
-		 *  This probably won't help much. Firstly, saving the same object
-		 *  multiple times (e.g. save over the same object in the same
-		 *  saveObjects call) is going to be a rare op - who wants to do that?
-		 *  Hence batching up the version increments is probably not going to
-		 *  help much.
-		 *  Secondly, the write lock is on a per document basis, so batching
-		 *  writes has no effect on write locking.
-		 *  That means that the gain from batching writes is removal of the 
-		 *  flight time to/from the server between each object. This may
-		 *  be significant for many small objects, but is probably
-		 *  insignificant for a few objects, or many large objects.
-		 *  Summary: probably not worth the trouble and increase in code
-		 *  complexity.
-		 */
-		final List<ObjectInformation> ret = new ArrayList<ObjectInformation>();
+		
+		//assign an object id to each package and list the new objects
+		final Map<Long, List<ObjectSavePackage>> idToVers =
+				new LinkedHashMap<Long, List<ObjectSavePackage>>();
+		final Map<Long, String> newObjs = new LinkedHashMap<Long, String>();
 		final Map<String, Long> seenNames = new HashMap<String, Long>();
 		for (final ObjectSavePackage p: packages) {
 			final ObjectIDNoWSNoVer oi = p.wo.getObjectIdentifier();
+			final long objid;
 			if (oi == null) { //no name given, need to generate one
-				final IDName obj = saveWorkspaceObject(wsidmongo, newid++,
-						null);
-				p.name = obj.name;
-				ret.add(saveObjectVersion(user, wsidmongo, obj.id, p));
+				objid = newid++;
+				newObjs.put(objid, null);
 			} else if (oi.getId() != null) { //confirmed ok id
-				ret.add(saveObjectVersion(user, wsidmongo, oi.getId(), p));
+				objid = oi.getId();
 			} else if (objIDs.get(oi) != null) {//given name translated to id
-				ret.add(saveObjectVersion(user, wsidmongo, objIDs.get(oi).getId(), p));
+				objid = objIDs.get(oi).getId();
 			} else if (seenNames.containsKey(oi.getName())) {
 				//we've already generated an id for this name
-				ret.add(saveObjectVersion(user, wsidmongo, seenNames.get(oi.getName()), p));
+				objid = seenNames.get(oi.getName());
 			} else {//new name, need to generate new id
-				final IDName obj = saveWorkspaceObject(wsidmongo, newid++,
-						oi.getName());
-				p.name = obj.name;
-				seenNames.put(obj.name, obj.id);
-				ret.add(saveObjectVersion(user, wsidmongo, obj.id, p));
+				objid = newid++;
+				newObjs.put(objid, oi.getName());
+				seenNames.put(oi.getName(), objid);
+			}
+			if (!idToVers.containsKey(objid)) {
+				idToVers.put(objid, new LinkedList<ObjectSavePackage>());
+			}
+			idToVers.get(objid).add(p);
+		}
+		
+		/* New objects are saved in one batch with their version counts
+		 * already set. The version counts of preexisting objects, and of any
+		 * new objects that couldn't be saved in the batch, are incremented
+		 * once per object rather than once per version. Finally all the
+		 * versions are saved in one batch.
+		 */
+		final Date saved = new Date();
+		final Map<Long, IDName> unbatched = new HashMap<Long, IDName>();
+		final Map<Long, IDName> batched = saveWorkspaceObjects(wsidmongo,
+				newObjs, idToVers, saved, unbatched);
+		final Map<ObjectSavePackage, Map<String, Object>> pkgToVer =
+				new HashMap<ObjectSavePackage, Map<String, Object>>();
+		final List<DBObject> dbo = new LinkedList<DBObject>();
+		for (final Entry<Long, List<ObjectSavePackage>> e:
+				idToVers.entrySet()) {
+			final List<ObjectSavePackage> pkgs = e.getValue();
+			final List<Map<String, Object>> versions =
+					new LinkedList<Map<String, Object>>();
+			for (final ObjectSavePackage p: pkgs) {
+				final Map<String, Object> v = createVersion(user, p);
+				versions.add(v);
+				pkgToVer.put(p, v);
+			}
+			long objid = e.getKey();
+			final int ver;
+			if (batched.containsKey(objid)) {
+				setName(pkgs, batched.get(objid).name);
+				ver = 1;
+			} else {
+				if (unbatched.containsKey(objid)) {
+					setName(pkgs, unbatched.get(objid).name);
+					objid = unbatched.get(objid).id;
+				}
+				ver = incrementVersionCount(wsidmongo, objid, pkgs.size(),
+						pkgs.get(pkgs.size() - 1).wo.isHidden(), saved);
 			}
+			addVersionDocuments(wsidmongo, objid, versions, ver, saved, dbo);
+		}
+		insertVersions(dbo);
+		final List<ObjectInformation> ret = new ArrayList<ObjectInformation>();
+		for (final ObjectSavePackage p: packages) {
+			ret.add(createObjectInfo(user, wsidmongo, p, pkgToVer.get(p)));
 		}
 		updateWorkspaceModifiedDate(wsidmongo);
 		return ret;
 	}
 
+	private void setName(final List<ObjectSavePackage> packages,
+			final String name) {
+		for (final ObjectSavePackage p: packages) {
+			p.name = name;
+		}
+	}
+
 	//returns starting object number
 	private long incrementWorkspaceCounter(final ResolvedMongoWSID wsidmongo,
 			final int newobjects) throws WorkspaceCommunicationException {
@@ -2098,10 +2875,12 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 						continue;
 					}
 					newdata.add(chksum.get(md5));
+					final IndexingWritable indexed = new IndexingWritable(
+							chksum.get(md5).getData());
 					try {
 						//this is kind of stupid, but no matter how you slice
 						//it you have to calc md5s before you save the data
-						blob.saveBlob(new MD5(md5), chksum.get(md5).getData(),
+						blob.saveBlob(new MD5(md5), indexed,
 								true); //always sorted in 0.2.0+
 					} catch (BlobStoreCommunicationException e) {
 						throw new WorkspaceCommunicationException(
@@ -2111,6 +2890,7 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 								"Authorization error communicating with the backend storage system",
 								e);
 					}
+					saveOffsetIndex(md5, indexed.getIndex());
 				}
 				for (final TypeData td: newdata) {
 					try {
@@ -2137,6 +2917,97 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		}
 	}
 
+	/* Builds an offset index of the data as it is written to the blob store,
+	 * so the data is only serialized once.
+	 */
+	private static class IndexingWritable implements Writable {
+		
+		private final Writable data;
+		private JsonOffsetIndex index = null;
+		
+		private IndexingWritable(final Writable data) {
+			this.data = data;
+		}
+
+		@Override
+		public void write(final OutputStream os) throws IOException {
+			final JsonOffsetIndexer indexer = new JsonOffsetIndexer(os);
+			data.write(indexer);
+			index = indexer.getIndex();
+		}
+
+		@Override
+		public void releaseResources() throws IOException {
+			data.releaseResources();
+		}
+		
+		private JsonOffsetIndex getIndex() {
+			return index;
+		}
+	}
+	
+	/* The index is only an optimization and the blob is already saved, so
+	 * indexes that are too large or fail to save are skipped and the data is
+	 * scanned in full when subsetting.
+	 */
+	private void saveOffsetIndex(final String md5, final JsonOffsetIndex index) {
+		if (index == null) {
+			return; // not written by this blob store or not a JSON object
+		}
+		final byte[] bytes = index.toBytes();
+		if (bytes.length > MAX_OFFSET_INDEX_SIZE) {
+			LOGGER.info("Skipped the offset index for data {}: the index " +
+					"size of {} bytes exceeds the limit of {} bytes", md5,
+					bytes.length, MAX_OFFSET_INDEX_SIZE);
+			return;
+		}
+		final DBObject idx = new BasicDBObject(Fields.BLOB_IDX_CHKSUM, md5);
+		idx.put(Fields.BLOB_IDX_INDEX, bytes);
+		try {
+			wsmongo.getCollection(COL_BLOB_INDEX).insert(idx);
+		} catch (MongoException.DuplicateKey dk) {
+			//already indexed by another thread, which is fine
+		} catch (MongoException me) {
+			LOGGER.error(String.format(
+					"Failed to save the offset index for data %s", md5), me);
+		}
+	}
+	
+	/* Returns the offset indexes for the data with the given checksums. Data
+	 * saved before indexes were added, or that could not be indexed, has no
+	 * index and is scanned in full when subsetting.
+	 */
+	private Map<String, JsonOffsetIndex> getOffsetIndexes(
+			final Set<String> md5s) throws WorkspaceCommunicationException {
+		final Map<String, JsonOffsetIndex> ret =
+				new HashMap<String, JsonOffsetIndex>();
+		if (md5s.isEmpty()) {
+			return ret;
+		}
+		final DBObject query = new BasicDBObject(Fields.BLOB_IDX_CHKSUM,
+				new BasicDBObject("$in", new ArrayList<String>(md5s)));
+		final DBObject proj = new BasicDBObject(Fields.BLOB_IDX_CHKSUM, 1);
+		proj.put(Fields.BLOB_IDX_INDEX, 1);
+		proj.put(Fields.MONGO_ID, 0);
+		try {
+			final DBCursor cur = wsmongo.getCollection(COL_BLOB_INDEX)
+					.find(query, proj);
+			try {
+				for (final DBObject dbo: cur) {
+					ret.put((String) dbo.get(Fields.BLOB_IDX_CHKSUM),
+							JsonOffsetIndex.fromBytes((byte[])
+									dbo.get(Fields.BLOB_IDX_INDEX)));
+				}
+			} finally {
+				cur.close();
+			}
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		}
+		return ret;
+	}
+
 	private Set<String> getExistingMD5sInCollection(final String col,
 			Set<String> md5s) throws WorkspaceCommunicationException {
 		final DBObject query = new BasicDBObject(Fields.TYPE_CHKSUM,
@@ -2329,6 +3200,36 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 				//summing to 1G to 1G objects, since the 1G originals will be discarded
 				rescfg.getMaxReturnedDataSize() * 2L,
 				tfm);
+		final Map<String, MongoObjectInfo> toFetch =
+				new HashMap<String, MongoObjectInfo>();
+		final Set<String> toSubset = new HashSet<String>();
+		for (final ObjectIDResolvedWS o: paths.keySet()) {
+			final MongoObjectInfo info = generateObjectInfo(resobjs.get(o),
+					vers.get(resobjs.get(o)));
+			if (!toFetch.containsKey(info.getCheckSum())) {
+				toFetch.put(info.getCheckSum(), info);
+			}
+			if (paths.get(o) != null && !paths.get(o).isEmpty()) {
+				toSubset.add(info.getCheckSum());
+			}
+		}
+		final Map<String, JsonOffsetIndex> indexes =
+				getOffsetIndexes(toSubset);
+		try {
+			fetchBlobs(toFetch, chksumToData, bafcMan);
+		} catch (WorkspaceCommunicationException e) {
+			cleanUpTempObjectFiles(chksumToData, ret);
+			throw e;
+		} catch (CorruptWorkspaceDBException e) {
+			cleanUpTempObjectFiles(chksumToData, ret);
+			throw e;
+		} catch (RuntimeException e) {
+			cleanUpTempObjectFiles(chksumToData, ret);
+			throw e;
+		} catch (Error e) {
+			cleanUpTempObjectFiles(chksumToData, ret);
+			throw e;
+		}
 		for (final ObjectIDResolvedWS o: paths.keySet()) {
 			final ResolvedMongoObjectID roi = resobjs.get(o);
 			final MongoProvenance prov = provs.get((ObjectId) vers.get(roi)
@@ -2348,12 +3249,12 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 					roi, vers.get(roi));
 			try {
 				if (paths.get(o) == null || paths.get(o).isEmpty()) {
-					buildReturnedObjectData(chksumToData, ret, o, prov, refs,
-							copied, extIDs, info, null, bafcMan);
+					buildReturnedObjectData(chksumToData, indexes, ret, o,
+							prov, refs, copied, extIDs, info, null, bafcMan);
 				} else {
 					for (final ObjectPaths op: paths.get(o)) {
-						buildReturnedObjectData(chksumToData, ret, o, prov,
-								refs, copied, extIDs, info, op, bafcMan);
+						buildReturnedObjectData(chksumToData, indexes, ret, o,
+								prov, refs, copied, extIDs, info, op, bafcMan);
 					}
 				}
 			} catch (TypedObjectExtractionException e) {
@@ -2392,6 +3293,10 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			size += mult * (Long) vers.get(resobjs.get(o))
 					.get(Fields.VER_SIZE);
 		}
+		checkReturnedDataSize(size);
+	}
+	
+	private void checkReturnedDataSize(final long size) {
 		if (size > rescfg.getMaxReturnedDataSize()) {
 			throw new IllegalArgumentException(String.format(
 					"Too much data requested from the workspace at once; " +
@@ -2419,6 +3324,7 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 	//yuck. Think more about the interface here
 	private void buildReturnedObjectData(
 			final Map<String, ByteArrayFileCache> chksumToData,
+			final Map<String, JsonOffsetIndex> indexes,
 			final Map<ObjectIDResolvedWS, Map<ObjectPaths, WorkspaceObjectData>> ret,
 			final ObjectIDResolvedWS o,
 			final MongoProvenance prov,
@@ -2432,55 +3338,124 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		if (!ret.containsKey(o)) {
 			ret.put(o, new HashMap<ObjectPaths, WorkspaceObjectData>());
 		}
+		final JsonOffsetIndex index = indexes.get(info.getCheckSum());
 		if (chksumToData.containsKey(info.getCheckSum())) {
 			/* might be subsetting the same object the same way multiple
 			 * times, but probably unlikely. If it becomes a problem
 			 * memoize the subset
 			 */
 			ret.get(o).put(op, new WorkspaceObjectData(getDataSubSet(
-					chksumToData.get(info.getCheckSum()), op, bafcMan),
+					chksumToData.get(info.getCheckSum()), index, op, bafcMan),
 					info, prov, refs, copied, extIDs));
 		} else {
-			final ByteArrayFileCache data;
-			try {
-				data = blob.getBlob(new MD5(info.getCheckSum()), bafcMan);
-			} catch (FileCacheIOException e) {
-				throw new WorkspaceCommunicationException(
-						e.getLocalizedMessage(), e);
-			} catch (FileCacheLimitExceededException e) {
-				throw new IllegalArgumentException( //shouldn't happen if size was checked correctly beforehand
-						"Too much data requested from the workspace at once; " +
-						"data requested including subsets exceeds maximum of "
-						+ bafcMan.getMaxSizeOnDisk());
-			} catch (BlobStoreCommunicationException e) {
-				throw new WorkspaceCommunicationException(
-						e.getLocalizedMessage(), e);
-			} catch (BlobStoreAuthorizationException e) {
-				throw new WorkspaceCommunicationException(
-						"Authorization error communicating with the backend storage system",
-						e);
-			} catch (NoSuchBlobException e) {
-				throw new CorruptWorkspaceDBException(String.format(
-						"No data present for valid object %s.%s.%s",
-						info.getWorkspaceId(), info.getObjectId(),
-						info.getVersion()), e);
-			}
+			final ByteArrayFileCache data = fetchBlob(info, bafcMan);
 			chksumToData.put(info.getCheckSum(), data);
 			ret.get(o).put(op, new WorkspaceObjectData(
-					getDataSubSet(data, op, bafcMan),
+					getDataSubSet(data, index, op, bafcMan),
 					info, prov, refs, copied, extIDs));
 		}
 	}
 	
+	/* Fetches the data for each checksum concurrently, waiting until all the
+	 * fetches are complete. On failure the data that was successfully fetched
+	 * is still in chksumToData so it can be cleaned up.
+	 */
+	private void fetchBlobs(
+			final Map<String, MongoObjectInfo> toFetch,
+			final Map<String, ByteArrayFileCache> chksumToData,
+			final ByteArrayFileCacheManager bafcMan)
+			throws WorkspaceCommunicationException,
+			CorruptWorkspaceDBException {
+		if (toFetch.size() < 2 || blobFetcher.getMaximumPoolSize() < 2) {
+			for (final String chksum: toFetch.keySet()) {
+				chksumToData.put(chksum, fetchBlob(toFetch.get(chksum),
+						bafcMan));
+			}
+			return;
+		}
+		final Map<String, Future<ByteArrayFileCache>> fetches =
+				new HashMap<String, Future<ByteArrayFileCache>>();
+		for (final String chksum: toFetch.keySet()) {
+			final MongoObjectInfo info = toFetch.get(chksum);
+			fetches.put(chksum, blobFetcher.submit(
+					new Callable<ByteArrayFileCache>() {
+
+						@Override
+						public ByteArrayFileCache call() throws Exception {
+							return fetchBlob(info, bafcMan);
+						}
+					}));
+		}
+		Throwable err = null;
+		for (final String chksum: fetches.keySet()) {
+			final Future<ByteArrayFileCache> f = fetches.get(chksum);
+			if (err != null && f.cancel(false)) {
+				continue; // never started, so nothing to clean up
+			}
+			try {
+				chksumToData.put(chksum, Uninterruptibles.getUninterruptibly(f));
+			} catch (ExecutionException e) {
+				if (err == null) {
+					err = e.getCause();
+				}
+			}
+		}
+		if (err instanceof WorkspaceCommunicationException) {
+			throw (WorkspaceCommunicationException) err;
+		}
+		if (err instanceof CorruptWorkspaceDBException) {
+			throw (CorruptWorkspaceDBException) err;
+		}
+		if (err instanceof RuntimeException) {
+			throw (RuntimeException) err;
+		}
+		if (err instanceof Error) {
+			throw (Error) err;
+		}
+		if (err != null) {
+			throw new RuntimeException("Unexpected error fetching data", err);
+		}
+	}
+	
+	private ByteArrayFileCache fetchBlob(final ObjectInformation info,
+			final ByteArrayFileCacheManager bafcMan)
+			throws WorkspaceCommunicationException,
+			CorruptWorkspaceDBException {
+		try {
+			return blob.getBlob(new MD5(info.getCheckSum()), bafcMan);
+		} catch (FileCacheIOException e) {
+			throw new WorkspaceCommunicationException(
+					e.getLocalizedMessage(), e);
+		} catch (FileCacheLimitExceededException e) {
+			throw new IllegalArgumentException( //shouldn't happen if size was checked correctly beforehand
+					"Too much data requested from the workspace at once; " +
+					"data requested including subsets exceeds maximum of "
+					+ bafcMan.getMaxSizeOnDisk());
+		} catch (BlobStoreCommunicationException e) {
+			throw new WorkspaceCommunicationException(
+					e.getLocalizedMessage(), e);
+		} catch (BlobStoreAuthorizationException e) {
+			throw new WorkspaceCommunicationException(
+					"Authorization error communicating with the backend storage system",
+					e);
+		} catch (NoSuchBlobException e) {
+			throw new CorruptWorkspaceDBException(String.format(
+					"No data present for valid object %s.%s.%s",
+					info.getWorkspaceId(), info.getObjectId(),
+					info.getVersion()), e);
+		}
+	}
+	
 	private ByteArrayFileCache getDataSubSet(final ByteArrayFileCache data,
-			final ObjectPaths paths, final ByteArrayFileCacheManager bafcMan)
+			final JsonOffsetIndex index, final ObjectPaths paths,
+			final ByteArrayFileCacheManager bafcMan)
 			throws TypedObjectExtractionException,
 			WorkspaceCommunicationException {
 		if (paths == null || paths.isEmpty()) {
 			return data;
 		}
 		try {
-			return bafcMan.getSubdataExtraction(data, paths);
+			return bafcMan.getSubdataExtraction(data, paths, index);
 		} catch (FileCacheIOException e) {
 			throw new WorkspaceCommunicationException(
 					e.getLocalizedMessage(), e);
@@ -2492,6 +3467,41 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		}
 	}
 
+	@Override
+	public ByteArrayFileCache getObjectData(final ObjectInformation info,
+			final ObjectPaths paths)
+			throws WorkspaceCommunicationException,
+			CorruptWorkspaceDBException, TypedObjectExtractionException {
+		checkReturnedDataSize(info.getSize());
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(
+				rescfg.getMaxReturnedDataMemoryUsage(),
+				rescfg.getMaxReturnedDataSize() * 2L, tfm);
+		final JsonOffsetIndex index;
+		if (paths == null || paths.isEmpty()) {
+			index = null;
+		} else {
+			index = getOffsetIndexes(new HashSet<String>(Arrays.asList(
+					info.getCheckSum()))).get(info.getCheckSum());
+		}
+		final ByteArrayFileCache data = fetchBlob(info, bafcMan);
+		// a subset holds the original data and destroys it when destroyed
+		try {
+			return getDataSubSet(data, index, paths, bafcMan);
+		} catch (TypedObjectExtractionException e) {
+			data.destroy();
+			throw e;
+		} catch (WorkspaceCommunicationException e) {
+			data.destroy();
+			throw e;
+		} catch (RuntimeException e) {
+			data.destroy();
+			throw e;
+		} catch (Error e) {
+			data.destroy();
+			throw e;
+		}
+	}
+
 	private static final Set<String> FLDS_GETOBJREF = newHashSet(
 			Fields.VER_WS_ID, Fields.VER_PROVREF, Fields.VER_REF);
 
@@ -2513,28 +3523,62 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		final Map<ObjectIDResolvedWS, ResolvedMongoObjectID> resall =
 				new HashMap<ObjectIDResolvedWS, ResolvedMongoObjectID>(resheads);
 		resall.putAll(reschains);
-		final Map<ResolvedMongoObjectID, Map<String, Object>> foo =
-				queryVersions(
-						new HashSet<ResolvedMongoObjectID>(resall.values()),
-						FLDS_GETOBJREF, false);
-		final Map<ObjectIDResolvedWS, Set<String>> refs =
-				setUpRefs(resall, foo);
-		final Map<ObjectIDResolvedWS, ResolvedMongoObjectID> toGet =
-				new HashMap<ObjectIDResolvedWS, ResolvedMongoObjectID>();
-		for (final ObjectChainResolvedWS chain: chains) {
-			ObjectIDResolvedWS pos = chain.getHead();
-			final List<ObjectIDResolvedWS> lch = chain.getChain();
-			for (final ObjectIDResolvedWS oi: lch) {
-				final String ref = resall.get(oi).getReference().toString();
-				if (!refs.get(pos).contains(ref)) {
+		verifyVersions(new HashSet<ResolvedMongoObjectID>(resall.values()));
+		/* check the chains one level at a time so deep chains need one query
+		 * per level. Chains that share a prefix share links, and each
+		 * distinct link is only checked once.
+		 * A chain stops at its first broken link. Once all the chains are
+		 * checked, the first broken chain in iteration order is reported,
+		 * the same link as checking each chain in full in turn.
+		 */
+		final Map<ObjectChainResolvedWS, ChainLink> broken =
+				new HashMap<ObjectChainResolvedWS, ChainLink>();
+		final List<ObjectChainResolvedWS> remaining =
+				new LinkedList<ObjectChainResolvedWS>(chains);
+		for (int level = 0; !remaining.isEmpty(); level++) {
+			final Map<ObjectChainResolvedWS, ChainLink> links =
+					new LinkedHashMap<ObjectChainResolvedWS, ChainLink>();
+			final Iterator<ObjectChainResolvedWS> iter = remaining.iterator();
+			while (iter.hasNext()) {
+				final ObjectChainResolvedWS chain = iter.next();
+				final List<ObjectIDResolvedWS> lch = chain.getChain();
+				if (level >= lch.size()) {
+					iter.remove();
+					continue;
+				}
+				final ObjectIDResolvedWS from = level == 0 ? chain.getHead() :
+					lch.get(level - 1);
+				final ObjectIDResolvedWS to = lch.get(level);
+				links.put(chain, new ChainLink(resall.get(from), from,
+						resall.get(to).getReference(), to));
+			}
+			final Set<ChainLink> missing = getMissingLinks(
+					new LinkedHashSet<ChainLink>(links.values()));
+			if (!missing.isEmpty()) {
+				for (final Entry<ObjectChainResolvedWS, ChainLink> e:
+						links.entrySet()) {
+					if (missing.contains(e.getValue())) {
+						broken.put(e.getKey(), e.getValue());
+						remaining.remove(e.getKey());
+					}
+				}
+			}
+		}
+		if (!broken.isEmpty()) {
+			for (final ObjectChainResolvedWS chain: chains) {
+				final ChainLink l = broken.get(chain);
+				if (l != null) {
 					throw new NoSuchReferenceException(String.format(
 							"The object %s in workspace %s does not contain the reference %s",
-							pos.getIdentifierString(),
-							pos.getWorkspaceIdentifier().getName(), ref),
-							pos, oi);
+							l.fromID.getIdentifierString(),
+							l.fromID.getWorkspaceIdentifier().getName(), l.to),
+							l.fromID, l.toID);
 				}
-				pos = oi;
 			}
+		}
+		final Map<ObjectIDResolvedWS, ResolvedMongoObjectID> toGet =
+				new HashMap<ObjectIDResolvedWS, ResolvedMongoObjectID>();
+		for (final ObjectChainResolvedWS chain: chains) {
 			toGet.put(chain.getLast(), resall.get(chain.getLast()));
 		}
 		final Map<ObjectIDResolvedWS, Map<ObjectPaths, WorkspaceObjectData>> res;
@@ -2551,23 +3595,125 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		}
 		return ret;
 	}
-
-	private Map<ObjectIDResolvedWS, Set<String>> setUpRefs(
-			final Map<ObjectIDResolvedWS, ResolvedMongoObjectID> objs,
-			final Map<ResolvedMongoObjectID, Map<String, Object>> refs)
-			throws NoSuchObjectException {
+	
+	/* A link from one object version to another in a reference chain. Links
+	 * are equal if they join the same object versions, however the objects
+	 * were specified.
+	 */
+	private static class ChainLink {
+		
+		private final ResolvedMongoObjectID from;
+		private final MongoReference fromRef;
+		private final ObjectIDResolvedWS fromID;
+		private final MongoReference to;
+		private final ObjectIDResolvedWS toID;
+		
+		private ChainLink(final ResolvedMongoObjectID from,
+				final ObjectIDResolvedWS fromID, final MongoReference to,
+				final ObjectIDResolvedWS toID) {
+			this.from = from;
+			this.fromRef = from.getReference();
+			this.fromID = fromID;
+			this.to = to;
+			this.toID = toID;
+		}
 		
-		final Map<ObjectIDResolvedWS, Set<String>> ret =
-				new HashMap<ObjectIDResolvedWS, Set<String>>();
-		for (final ObjectIDResolvedWS oi: objs.keySet()) {
-			final Map<String, Object> m = refs.get(objs.get(oi));
+		// for lookups only
+		private ChainLink(final MongoReference from, final MongoReference to) {
+			this.from = null;
+			this.fromRef = from;
+			this.fromID = null;
+			this.to = to;
+			this.toID = null;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + fromRef.hashCode();
+			result = prime * result + to.hashCode();
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			ChainLink other = (ChainLink) obj;
+			if (!fromRef.equals(other.fromRef))
+				return false;
+			if (!to.equals(other.to))
+				return false;
+			return true;
+		}
+	}
+	
+	//returns the links where the from object doesn't contain the reference
+	private Set<ChainLink> getMissingLinks(final Set<ChainLink> links)
+			throws WorkspaceCommunicationException, NoSuchObjectException {
+		//the reverse reference index answers most links with a covered query
+		final Map<Long, Set<Long>> ids = new HashMap<Long, Set<Long>>();
+		final Map<Long, Set<Integer>> vers = new HashMap<Long, Set<Integer>>();
+		final Map<Long, Set<String>> targets = new HashMap<Long, Set<String>>();
+		for (final ChainLink l: links) {
+			final long ws = l.fromRef.getWorkspaceID();
+			if (!ids.containsKey(ws)) {
+				ids.put(ws, new HashSet<Long>());
+				vers.put(ws, new HashSet<Integer>());
+				targets.put(ws, new HashSet<String>());
+			}
+			ids.get(ws).add(l.fromRef.getObjectID());
+			vers.get(ws).add(l.fromRef.getVersion());
+			targets.get(ws).add(l.to.toString());
+		}
+		final Set<ChainLink> found = new HashSet<ChainLink>();
+		for (final Long ws: ids.keySet()) {
+			final DBObject q = new BasicDBObject(Fields.REF_WS_ID, ws);
+			q.put(Fields.REF_ID, new BasicDBObject("$in", ids.get(ws)));
+			q.put(Fields.REF_VER, new BasicDBObject("$in", vers.get(ws)));
+			q.put(Fields.REF_TARGET, new BasicDBObject("$in", targets.get(ws)));
+			for (final Map<String, Object> m: query.queryCollection(
+					COL_OBJ_REFS, q, FLDS_OBJ_REFS)) {
+				found.add(new ChainLink(new MongoReference(ws,
+						(Long) m.get(Fields.REF_ID),
+						(Integer) m.get(Fields.REF_VER)),
+						new MongoReference((String) m.get(Fields.REF_TARGET))));
+			}
+		}
+		final Set<ChainLink> unindexed = new HashSet<ChainLink>();
+		for (final ChainLink l: links) {
+			if (!found.contains(l)) {
+				unindexed.add(l);
+			}
+		}
+		if (unindexed.isEmpty()) {
+			return unindexed;
+		}
+		//either the link is broken or the object was saved before the index
+		//existed, so check the object itself
+		final Set<ResolvedMongoObjectID> objs =
+				new HashSet<ResolvedMongoObjectID>();
+		for (final ChainLink l: unindexed) {
+			objs.add(l.from);
+		}
+		final Map<ResolvedMongoObjectID, Map<String, Object>> refs =
+				queryVersions(objs, FLDS_GETOBJREF, false);
+		final Set<ChainLink> ret = new HashSet<ChainLink>();
+		for (final ChainLink l: unindexed) {
+			final Map<String, Object> m = refs.get(l.from);
 			@SuppressWarnings("unchecked")
 			final List<String> r = (List<String>) m.get(Fields.VER_REF);
 			@SuppressWarnings("unchecked")
 			final List<String> pr = (List<String>) m.get(Fields.VER_PROVREF);
-			final Set<String> s = new HashSet<String>(r);
-			s.addAll(pr);
-			ret.put(oi, s);
+			final String to = l.to.toString();
+			if (!r.contains(to) && !pr.contains(to)) {
+				ret.add(l);
+			}
 		}
 		return ret;
 	}
@@ -2637,6 +3783,181 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		return ret;
 	}
 	
+	@Override
+	public List<Set<ObjectInformation>> getTransitiveReferences(
+			final WorkspaceUser user, final Set<ObjectIDResolvedWS> objs,
+			final boolean downstream, final int maxDepth,
+			final int maxObjects)
+			throws NoSuchObjectException, WorkspaceCommunicationException,
+			CorruptWorkspaceDBException {
+		final Map<ObjectIDResolvedWS, ResolvedMongoObjectID> resobjs =
+				resolveObjectIDs(objs);
+		verifyVersions(new HashSet<ResolvedMongoObjectID>(resobjs.values()));
+		Set<String> frontier = new HashSet<String>();
+		for (final ResolvedMongoObjectID r: resobjs.values()) {
+			frontier.add(r.getReference().toString());
+		}
+		final Set<String> seen = new HashSet<String>(frontier);
+		final List<Set<ObjectInformation>> ret =
+				new LinkedList<Set<ObjectInformation>>();
+		int count = 0;
+		/* expand the entire frontier at each level in one set of queries.
+		 * Objects the user can't read, or that are deleted, are neither
+		 * returned nor expanded.
+		 */
+		while (ret.size() < maxDepth && count < maxObjects &&
+				!frontier.isEmpty()) {
+			final Set<String> next = new HashSet<String>();
+			for (final String ref: getAdjacentReferences(frontier,
+					downstream)) {
+				if (seen.add(ref)) {
+					next.add(ref);
+				}
+			}
+			final Map<String, ObjectInformation> infos =
+					getReadableObjectInformation(user, next);
+			final Set<ObjectInformation> level =
+					new HashSet<ObjectInformation>();
+			frontier = new HashSet<String>();
+			for (final Entry<String, ObjectInformation> e: infos.entrySet()) {
+				if (count >= maxObjects) {
+					break;
+				}
+				level.add(e.getValue());
+				frontier.add(e.getKey());
+				count++;
+			}
+			if (!level.isEmpty()) {
+				ret.add(level);
+			}
+		}
+		return ret;
+	}
+	
+	private static final int MAX_REFS_PER_QUERY = 1000;
+	
+	private static final Set<String> FLDS_OBJ_REFS = newHashSet(
+			Fields.REF_TARGET, Fields.REF_WS_ID, Fields.REF_ID,
+			Fields.REF_VER);
+	
+	/* returns the references of the objects that reference the given
+	 * objects, or, if downstream is false, the references the given objects
+	 * contain. Uses the reverse reference index in both cases since the
+	 * queries are covered by the index.
+	 */
+	private Set<String> getAdjacentReferences(final Set<String> refs,
+			final boolean downstream)
+			throws WorkspaceCommunicationException {
+		final Set<String> ret = new HashSet<String>();
+		if (downstream) {
+			final List<String> targets = new ArrayList<String>(refs);
+			for (int i = 0; i < targets.size(); i += MAX_REFS_PER_QUERY) {
+				final DBObject q = new BasicDBObject(Fields.REF_TARGET,
+						new BasicDBObject("$in", targets.subList(i, Math.min(
+								i + MAX_REFS_PER_QUERY, targets.size()))));
+				for (final Map<String, Object> m: query.queryCollection(
+						COL_OBJ_REFS, q, FLDS_OBJ_REFS)) {
+					ret.add(new MongoReference(
+							(Long) m.get(Fields.REF_WS_ID),
+							(Long) m.get(Fields.REF_ID),
+							(Integer) m.get(Fields.REF_VER)).toString());
+				}
+			}
+			return ret;
+		}
+		//$or queries are slow, so query each workspace with $in and throw
+		//away any object / version combinations that weren't requested
+		final Map<Long, Set<Long>> ids = new HashMap<Long, Set<Long>>();
+		final Map<Long, Set<Integer>> vers = new HashMap<Long, Set<Integer>>();
+		for (final String r: refs) {
+			final MongoReference mr = new MongoReference(r);
+			if (!ids.containsKey(mr.getWorkspaceID())) {
+				ids.put(mr.getWorkspaceID(), new HashSet<Long>());
+				vers.put(mr.getWorkspaceID(), new HashSet<Integer>());
+			}
+			ids.get(mr.getWorkspaceID()).add(mr.getObjectID());
+			vers.get(mr.getWorkspaceID()).add(mr.getVersion());
+		}
+		for (final Long ws: ids.keySet()) {
+			final DBObject q = new BasicDBObject(Fields.REF_WS_ID, ws);
+			q.put(Fields.REF_ID, new BasicDBObject("$in", ids.get(ws)));
+			q.put(Fields.REF_VER, new BasicDBObject("$in", vers.get(ws)));
+			for (final Map<String, Object> m: query.queryCollection(
+					COL_OBJ_REFS, q, FLDS_OBJ_REFS)) {
+				final String referrer = new MongoReference(ws,
+						(Long) m.get(Fields.REF_ID),
+						(Integer) m.get(Fields.REF_VER)).toString();
+				if (refs.contains(referrer)) {
+					ret.add((String) m.get(Fields.REF_TARGET));
+				}
+			}
+		}
+		return ret;
+	}
+	
+	//returns the information for the objects the user can read, skipping
+	//objects that are deleted or in deleted workspaces
+	private Map<String, ObjectInformation> getReadableObjectInformation(
+			final WorkspaceUser user, final Set<String> refs)
+			throws WorkspaceCommunicationException,
+			CorruptWorkspaceDBException {
+		final Map<String, ObjectInformation> ret =
+				new HashMap<String, ObjectInformation>();
+		if (refs.isEmpty()) {
+			return ret;
+		}
+		final Set<WorkspaceIdentifier> wsis = new HashSet<WorkspaceIdentifier>();
+		for (final String r: refs) {
+			wsis.add(new WorkspaceIdentifier(
+					new MongoReference(r).getWorkspaceID()));
+		}
+		final Map<WorkspaceIdentifier, ResolvedWorkspaceID> rwsis;
+		try {
+			rwsis = resolveWorkspaces(wsis, true, true);
+		} catch (NoSuchWorkspaceException nswe) {
+			throw new RuntimeException(
+					"Resolving workspaces threw an exception despite allowing missing workspaces",
+					nswe);
+		}
+		final Set<ResolvedWorkspaceID> live = new HashSet<ResolvedWorkspaceID>();
+		for (final ResolvedWorkspaceID rwsi: rwsis.values()) {
+			if (!rwsi.isDeleted()) {
+				live.add(rwsi);
+			}
+		}
+		// an empty set would get the permissions for every workspace
+		if (live.isEmpty()) {
+			return ret;
+		}
+		final PermissionSet perms = getPermissions(user, live);
+		final Map<ObjectIDResolvedWS, String> oids =
+				new HashMap<ObjectIDResolvedWS, String>();
+		for (final String r: refs) {
+			final MongoReference mr = new MongoReference(r);
+			final ResolvedWorkspaceID rwsi = rwsis.get(
+					new WorkspaceIdentifier(mr.getWorkspaceID()));
+			if (rwsi != null && perms.hasWorkspace(rwsi)) {
+				oids.put(new ObjectIDResolvedWS(rwsi, mr.getObjectID(),
+						mr.getVersion()), r);
+			}
+		}
+		final Map<ObjectIDResolvedWS, ObjectInformation> infos;
+		try {
+			infos = getObjectInformation(oids.keySet(), false, true);
+		} catch (NoSuchObjectException nsoe) {
+			throw new RuntimeException(
+					"Getting object information threw an exception despite ignoring missing objects",
+					nsoe);
+		}
+		for (final Entry<ObjectIDResolvedWS, String> e: oids.entrySet()) {
+			final ObjectInformation oi = infos.get(e.getKey());
+			if (oi != null) {
+				ret.put(e.getValue(), oi);
+			}
+		}
+		return ret;
+	}
+	
 	private static final Set<String> FLDS_REF_CNT = newHashSet(
 			Fields.OBJ_ID, Fields.OBJ_NAME, Fields.OBJ_DEL,
 			Fields.OBJ_LATEST, Fields.OBJ_VCNT, Fields.OBJ_REFCOUNTS);
@@ -2743,24 +4064,45 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		//this method is a pattern - generalize somehow?
 		final Map<ObjectIDResolvedWS, ResolvedMongoObjectID> oids =
 				resolveObjectIDs(objectIDs);
-		final Map<ResolvedMongoObjectID, Map<String, Object>> vers = 
-				queryVersions(
-						new HashSet<ResolvedMongoObjectID>(oids.values()),
-						FLDS_VER_TYPE, false);
+		final Map<ResolvedMongoObjectID, AbsoluteTypeDefId> types =
+				new HashMap<ResolvedMongoObjectID, AbsoluteTypeDefId>();
+		final Set<ResolvedMongoObjectID> misses =
+				new HashSet<ResolvedMongoObjectID>();
+		for (final ResolvedMongoObjectID roi: oids.values()) {
+			final AbsoluteTypeDefId type = typeCache.getIfPresent(
+					toReference(roi).toString());
+			if (type == null) {
+				misses.add(roi);
+			} else {
+				types.put(roi, type);
+			}
+		}
+		if (!misses.isEmpty()) {
+			final Map<ResolvedMongoObjectID, Map<String, Object>> vers = 
+					queryVersions(misses, FLDS_VER_TYPE, false);
+			for (final ResolvedMongoObjectID roi: misses) {
+				final AbsoluteTypeDefId type =
+						AbsoluteTypeDefId.fromAbsoluteTypeString(
+								(String) vers.get(roi).get(Fields.VER_TYPE));
+				typeCache.put(toReference(roi).toString(), type);
+				types.put(roi, type);
+			}
+		}
 		final Map<ObjectIDResolvedWS, TypeAndReference> ret =
 				new HashMap<ObjectIDResolvedWS, TypeAndReference>();
 		for (ObjectIDResolvedWS o: objectIDs) {
 			final ResolvedMongoObjectID roi = oids.get(o);
-			ret.put(o, new TypeAndReference(
-					AbsoluteTypeDefId.fromAbsoluteTypeString(
-							(String) vers.get(roi).get(Fields.VER_TYPE)),
-					new MongoReference(roi.getWorkspaceIdentifier().getID(),
-							roi.getId(),
-							(Integer) vers.get(roi).get(Fields.VER_VER))));
+			ret.put(o, new TypeAndReference(types.get(roi), toReference(roi)));
 		}
 		return ret;
 	}
 	
+	private static MongoReference toReference(
+			final ResolvedMongoObjectID roi) {
+		return new MongoReference(roi.getWorkspaceIdentifier().getID(),
+				roi.getId(), roi.getVersion());
+	}
+	
 	private static final Set<String> FLDS_LIST_OBJ_VER = newHashSet(
 			Fields.VER_VER, Fields.VER_TYPE, Fields.VER_SAVEDATE,
 			Fields.VER_SAVEDBY, Fields.VER_VER, Fields.VER_CHKSUM,
@@ -2779,7 +4121,8 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			final Date after, final Date before,
 			final boolean showHidden, final boolean showDeleted,
 			final boolean showOnlyDeleted, final boolean showAllVers,
-			final boolean includeMetadata, final int skip, final int limit)
+			final boolean includeMetadata, final int skip, final int limit,
+			final ObjectIdentifier startAfter)
 			throws WorkspaceCommunicationException {
 		/* Could make this method more efficient by doing different queries
 		 * based on the filters. If there's no filters except the workspace,
@@ -2801,7 +4144,6 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			ids.add(rwsi.getID());
 		}
 		final DBObject verq = new BasicDBObject();
-		verq.put(Fields.VER_WS_ID, new BasicDBObject("$in", ids));
 		if (type != null) {
 			verq.put(Fields.VER_TYPE,
 					new BasicDBObject("$regex", "^" + type.getTypePrefix()));
@@ -2837,6 +4179,12 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		} else {
 			fields = FLDS_LIST_OBJ_VER;
 		}
+		if (startAfter != null) {
+			return getObjectInformationAfter(pset, ids, verq, fields,
+					startAfter, showHidden, showDeleted, showOnlyDeleted,
+					showAllVers, limit);
+		}
+		verq.put(Fields.VER_WS_ID, new BasicDBObject("$in", ids));
 		//querying on versions directly so no need to worry about race 
 		//condition where the workspace object was saved but no versions
 		//were saved yet
@@ -2849,6 +4197,78 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 				generateObjectInfo(pset, verobjs, showHidden, showDeleted,
 				showOnlyDeleted, showAllVers).values());
 	}
+	
+	private static final int MAX_LIST_BATCH_SIZE = 10000;
+	
+	/* Lists objects in (workspace, object, version) order starting after
+	 * the given object version. Each workspace is read separately in batches
+	 * of versions using the (ws, id, ver) index, starting from the last
+	 * version read, until limit objects pass the filters. Unlike skip, the
+	 * cost of a page doesn't depend on how deep it is.
+	 * Batches start at limit versions. Each time every version in a batch is
+	 * filtered out the batch size doubles, up to MAX_LIST_BATCH_SIZE, so long
+	 * runs of hidden, deleted or old versions take few queries.
+	 */
+	private List<ObjectInformation> getObjectInformationAfter(
+			final PermissionSet pset, final Set<Long> wsids,
+			final DBObject verq, final Set<String> fields,
+			final ObjectIdentifier startAfter, final boolean showHidden,
+			final boolean showDeleted, final boolean showOnlyDeleted,
+			final boolean showAllVers, final int limit)
+			throws WorkspaceCommunicationException {
+		final List<ObjectInformation> ret = new LinkedList<ObjectInformation>();
+		final long startws = startAfter.getWorkspaceIdentifier().getId();
+		final DBObject sort = new BasicDBObject(Fields.VER_ID, 1);
+		sort.put(Fields.VER_VER, 1);
+		int batch = limit;
+		for (final Long wsid: new TreeSet<Long>(wsids).tailSet(startws)) {
+			long lastid = wsid == startws ? startAfter.getId() : 0;
+			int lastver = wsid == startws ? startAfter.getVersion() : 0;
+			// whether versions of the last object may remain
+			boolean inObject = wsid == startws;
+			while (true) {
+				final DBObject q = new BasicDBObject(verq.toMap());
+				q.put(Fields.VER_WS_ID, wsid);
+				if (inObject) {
+					q.put(Fields.VER_ID, lastid);
+					q.put(Fields.VER_VER, new BasicDBObject("$gt", lastver));
+				} else {
+					q.put(Fields.VER_ID, new BasicDBObject("$gt", lastid));
+				}
+				final List<Map<String, Object>> verobjs = query.queryCollection(
+						COL_WORKSPACE_VERS, q, fields, sort, -1, batch);
+				final Map<Map<String, Object>, ObjectInformation> infos =
+						generateObjectInfo(pset, verobjs, showHidden,
+								showDeleted, showOnlyDeleted, showAllVers);
+				for (final Map<String, Object> vo: verobjs) {
+					final ObjectInformation oi = infos.get(vo);
+					if (oi != null) {
+						ret.add(oi);
+						if (ret.size() >= limit) {
+							return ret;
+						}
+					}
+				}
+				if (verobjs.size() < batch) {
+					if (!inObject) {
+						break;
+					}
+					inObject = false;
+				} else {
+					final Map<String, Object> last =
+							verobjs.get(verobjs.size() - 1);
+					lastid = (Long) last.get(Fields.VER_ID);
+					lastver = (Integer) last.get(Fields.VER_VER);
+					inObject = true;
+				}
+				if (infos.isEmpty()) {
+					batch = Math.max(batch,
+							Math.min(batch * 2, MAX_LIST_BATCH_SIZE));
+				}
+			}
+		}
+		return ret;
+	}
 
 	private Map<Map<String, Object>, ObjectInformation> generateObjectInfo(
 			final PermissionSet pset, final List<Map<String, Object>> verobjs,
@@ -3382,6 +4802,7 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			throw new WorkspaceCommunicationException(
 					"There was a problem communicating with the database", me);
 		}
+		invalidatePermissions(mrwsi);
 		setObjectsDeleted(mrwsi, new ArrayList<Long>(), delete);
 	}
 	
@@ -3409,13 +4830,30 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 	@Override
 	public boolean isAdmin(WorkspaceUser putativeAdmin)
 			throws WorkspaceCommunicationException {
+		final Cache<String, Boolean> cache = adminCache;
+		if (cache != null) {
+			final Boolean admin = cache.getIfPresent(putativeAdmin.getUser());
+			if (admin != null) {
+				return admin;
+			}
+		}
+		final long gen = getPermissionGeneration();
+		final boolean admin;
 		try {
-			return wsjongo.getCollection(COL_ADMINS).count(M_ADMIN_QRY,
+			admin = wsjongo.getCollection(COL_ADMINS).count(M_ADMIN_QRY,
 					putativeAdmin.getUser()) > 0;
 		} catch (MongoException me) {
 			throw new WorkspaceCommunicationException(
 					"There was a problem communicating with the database", me);
 		}
+		if (cache != null) {
+			synchronized (permLock) {
+				if (gen == permGeneration) {
+					cache.put(putativeAdmin.getUser(), admin);
+				}
+			}
+		}
+		return admin;
 	}
 	
 
@@ -3445,6 +4883,8 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		} catch (MongoException me) {
 			throw new WorkspaceCommunicationException(
 					"There was a problem communicating with the database", me);
+		} finally {
+			invalidateAdmin(user);
 		}
 	}
 
@@ -3457,6 +4897,8 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		} catch (MongoException me) {
 			throw new WorkspaceCommunicationException(
 					"There was a problem communicating with the database", me);
+		} finally {
+			invalidateAdmin(user);
 		}
 	}
 }
@@ -2,7 +2,9 @@ package us.kbase.workspace.database.mongo;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -12,6 +14,8 @@ import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
 import org.jongo.Jongo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import us.kbase.workspace.database.AllUsers;
 import us.kbase.workspace.database.Permission;
@@ -30,6 +34,17 @@ import com.mongodb.MongoException;
 
 public class QueryMethods {
 	
+	private final static Logger LOGGER =
+			LoggerFactory.getLogger(QueryMethods.class);
+	
+	/* The maximum number of objects included in a single version query. */
+	private static final int MAX_OBJECTS_PER_VERSION_QUERY = 1000;
+	/* When objects with different versions are queried together, unrequested
+	 * versions may match as well. Limit the number of possible matches in a
+	 * query to this multiple of the number of requested versions.
+	 */
+	private static final int MAX_VERSION_OVERFETCH = 4;
+	
 	private final DB wsmongo;
 	private final Jongo wsjongo;
 	private final AllUsers allUsers;
@@ -324,42 +339,132 @@ public class QueryMethods {
 			final Set<String> fields) throws WorkspaceCommunicationException {
 		fields.add(Fields.VER_ID);
 		fields.add(Fields.VER_VER);
-		//disgusting. need to do better.
-		//nested or queries are slow per the mongo docs so just query one
-		//workspace at a time. If profiling shows this is slow investigate
-		//further
-		//actually, $or queries just suck it seems. Way faster to do single queries
+		//$or queries are slow, so query batches of objects in a single
+		//workspace with $in on the object ids and versions and throw away any
+		//versions that weren't requested
 		final Map<ResolvedMongoWSID, Map<Long, Map<Integer, Map<String, Object>>>>
 			ret = new HashMap<ResolvedMongoWSID, Map<Long,Map<Integer,Map<String,Object>>>>();
+		int queries = 0;
+		int objects = 0;
 		for (final ResolvedMongoWSID rwsi: ids.keySet()) {
-			ret.put(rwsi, new HashMap<Long, Map<Integer, Map<String,Object>>>());
-			for (final Long objectID: ids.get(rwsi).keySet()) {
-				ret.get(rwsi).put(objectID,
-						new HashMap<Integer, Map<String, Object>>());
-				final DBObject q;
-				if (ids.get(rwsi).get(objectID).size() == 0) {
-					q = new BasicDBObject();
-				} else if (ids.get(rwsi).get(objectID).size() == 1) {
-					q = new BasicDBObject(Fields.VER_VER,
-							ids.get(rwsi).get(objectID).get(0));
-				} else {
-					q = new BasicDBObject(Fields.VER_VER,
-						new BasicDBObject("$in", ids.get(rwsi).get(objectID)));
-				}
-				q.put(Fields.VER_ID, objectID);
-				q.put(Fields.VER_WS_ID, rwsi.getID());
+			final Map<Long, List<Integer>> objvers = ids.get(rwsi);
+			final Map<Long, Map<Integer, Map<String, Object>>> wsret =
+					new HashMap<Long, Map<Integer, Map<String,Object>>>();
+			ret.put(rwsi, wsret);
+			for (final Long objectID: objvers.keySet()) {
+				wsret.put(objectID, new HashMap<Integer, Map<String, Object>>());
+			}
+			for (final VersionQueryBatch b: planVersionQueries(objvers)) {
 				final List<Map<String, Object>> res = queryCollection(
-						versionCollection, q, fields);
+						versionCollection, b.toQuery(rwsi), fields);
 				for (final Map<String, Object> r: res) {
 					final Long id = (Long) r.get(Fields.VER_ID);
 					final Integer ver = (Integer) r.get(Fields.VER_VER);
-					ret.get(rwsi).get(id).put(ver, r);
+					final List<Integer> vers = objvers.get(id);
+					if (vers.isEmpty() || vers.contains(ver)) {
+						wsret.get(id).put(ver, r);
+					}
 				}
+				queries++;
 			}
+			objects += objvers.size();
+		}
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("Queried versions of {} objects in {} workspaces " +
+					"with {} queries", objects, ids.size(), queries);
 		}
 		return ret;
 	}
 	
+	/* Groups objects into batches that can be fetched with a single query.
+	 * Objects where all versions are requested are batched by themselves.
+	 * Otherwise, objects are sorted by version so that objects requesting
+	 * the same versions end up in the same batch, and a batch is closed
+	 * when it would match too many versions that weren't requested.
+	 */
+	private List<VersionQueryBatch> planVersionQueries(
+			final Map<Long, List<Integer>> objvers) {
+		final List<VersionQueryBatch> batches =
+				new LinkedList<VersionQueryBatch>();
+		final List<Long> versioned = new ArrayList<Long>();
+		VersionQueryBatch all = new VersionQueryBatch();
+		for (final Long id: objvers.keySet()) {
+			if (!objvers.get(id).isEmpty()) {
+				versioned.add(id);
+			} else {
+				if (all.ids.size() >= MAX_OBJECTS_PER_VERSION_QUERY) {
+					batches.add(all);
+					all = new VersionQueryBatch();
+				}
+				all.ids.add(id);
+			}
+		}
+		if (!all.ids.isEmpty()) {
+			batches.add(all);
+		}
+		final Map<Long, Integer> minVer = new HashMap<Long, Integer>();
+		for (final Long id: versioned) {
+			minVer.put(id, Collections.min(objvers.get(id)));
+		}
+		Collections.sort(versioned, new Comparator<Long>() {
+			
+			@Override
+			public int compare(final Long id1, final Long id2) {
+				final int c = minVer.get(id1).compareTo(minVer.get(id2));
+				return c != 0 ? c : id1.compareTo(id2);
+			}
+		});
+		VersionQueryBatch b = new VersionQueryBatch();
+		for (final Long id: versioned) {
+			final List<Integer> vers = objvers.get(id);
+			final Set<Integer> newvers = new HashSet<Integer>(b.versions);
+			newvers.addAll(vers);
+			final long matches = (long) (b.ids.size() + 1) * newvers.size();
+			if (!b.ids.isEmpty() &&
+					(b.ids.size() >= MAX_OBJECTS_PER_VERSION_QUERY ||
+					matches > MAX_VERSION_OVERFETCH *
+						(b.requested + vers.size()))) {
+				batches.add(b);
+				b = new VersionQueryBatch();
+				newvers.clear();
+				newvers.addAll(vers);
+			}
+			b.ids.add(id);
+			b.versions.clear();
+			b.versions.addAll(newvers);
+			b.requested += vers.size();
+		}
+		if (!b.ids.isEmpty()) {
+			batches.add(b);
+		}
+		return batches;
+	}
+	
+	private static class VersionQueryBatch {
+		
+		private final List<Long> ids = new ArrayList<Long>();
+		// empty for all versions
+		private final Set<Integer> versions = new HashSet<Integer>();
+		private int requested = 0;
+		
+		private DBObject toQuery(final ResolvedMongoWSID rwsi) {
+			final DBObject q = new BasicDBObject(Fields.VER_WS_ID,
+					rwsi.getID());
+			q.put(Fields.VER_ID, inOrEquals(ids));
+			if (!versions.isEmpty()) {
+				q.put(Fields.VER_VER, inOrEquals(versions));
+			}
+			return q;
+		}
+		
+		private static Object inOrEquals(final Collection<?> vals) {
+			if (vals.size() == 1) {
+				return vals.iterator().next();
+			}
+			return new BasicDBObject("$in", vals);
+		}
+	}
+	
 	List<Map<String, Object>> queryCollection(final String collection,
 			final String query, final Set<String> fields) throws
 			WorkspaceCommunicationException {
@@ -396,6 +501,13 @@ public class QueryMethods {
 			final DBObject query, final Set<String> fields, final int skip,
 			final int limit)
 			throws WorkspaceCommunicationException {
+		return queryCollection(collection, query, fields, null, skip, limit);
+	}
+	
+	List<Map<String, Object>> queryCollection(final String collection,
+			final DBObject query, final Set<String> fields,
+			final DBObject sort, final int skip, final int limit)
+			throws WorkspaceCommunicationException {
 		final DBObject projection = new BasicDBObject();
 		for (final String field: fields) {
 			projection.put(field, 1);
@@ -405,6 +517,9 @@ public class QueryMethods {
 		try {
 			final DBCursor im = wsmongo.getCollection(collection)
 					.find(query, projection);
+			if (sort != null) {
+				im.sort(sort);
+			}
 			if (skip > -1) {
 				im.skip(skip);
 			}
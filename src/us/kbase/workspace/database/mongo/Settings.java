@@ -9,26 +9,47 @@ public class Settings {
 	
 	private String shockUrl;
 	private String shockUser;
+	private String fsLocation;
+	private FileSystemBackend.FsyncPolicy fsync;
 	private String backendType;
 	private String typeDatabase;
+	private BlobCodec blobCodec;
 	
 	private static final String SHOCK = "shock";
 	private static final String GFS = "gridFS";
+	private static final String FS = "filesystem";
 
 	@JsonCreator
 	private Settings(@JsonProperty(Fields.SET_SHOCK_LOC) final String shockUrl,
 			@JsonProperty(Fields.SET_SHOCK_USER) final String shockUser,
+			@JsonProperty(Fields.SET_FS_LOC) final String fsLocation,
+			@JsonProperty(Fields.SET_FS_SYNC) final String fsync,
 			@JsonProperty(Fields.SET_BACKEND) final String backendType,
-			@JsonProperty(Fields.SET_TYPE_DB) final String typeDatabase) throws 
+			@JsonProperty(Fields.SET_TYPE_DB) final String typeDatabase,
+			@JsonProperty(Fields.SET_BLOB_CODEC) final String blobCodec) throws 
 			CorruptWorkspaceDBException {
 		this.shockUrl = shockUrl;
 		this.shockUser = shockUser;
-		if(!(backendType.equals(SHOCK) || backendType.equals(GFS))) {
+		this.fsLocation = fsLocation;
+		if(!(backendType.equals(SHOCK) || backendType.equals(GFS) ||
+				backendType.equals(FS))) {
 			throw new CorruptWorkspaceDBException(
 					"Illegal backend type: " + backendType);
 		}
 		this.backendType = backendType;
 		this.typeDatabase = typeDatabase;
+		try {
+			this.fsync = FileSystemBackend.FsyncPolicy.getPolicy(fsync);
+		} catch (IllegalArgumentException iae) {
+			throw new CorruptWorkspaceDBException(
+					"Illegal fsync policy: " + fsync);
+		}
+		try {
+			this.blobCodec = BlobCodec.getCodec(blobCodec);
+		} catch (IllegalArgumentException iae) {
+			throw new CorruptWorkspaceDBException(
+					"Illegal blob codec: " + blobCodec);
+		}
 	}
 	
 	public String getShockUrl() {
@@ -38,6 +59,17 @@ public class Settings {
 		return shockUser;
 	}
 	
+	public String getFileSystemLocation() {
+		return fsLocation;
+	}
+	
+	/** Returns when the filesystem backend syncs blob files to disk.
+	 * @return the fsync policy.
+	 */
+	public FileSystemBackend.FsyncPolicy getFsyncPolicy() {
+		return fsync;
+	}
+	
 	public boolean isShockBackend() {
 		return backendType.equals(SHOCK);
 	}
@@ -46,15 +78,27 @@ public class Settings {
 		return backendType.equals(GFS);
 	}
 	
+	public boolean isFileSystemBackend() {
+		return backendType.equals(FS);
+	}
+	
 	public String getTypeDatabase() {
 		return typeDatabase;
 	}
+	
+	/** Returns the codec with which new blobs are written.
+	 * @return the blob codec.
+	 */
+	public BlobCodec getBlobCodec() {
+		return blobCodec;
+	}
 
 	@Override
 	public String toString() {
 		return "Settings [shockUrl=" + shockUrl + ", shockUser=" + shockUser
+				+ ", fsLocation=" + fsLocation + ", fsync=" + fsync.getName()
 				+ ", backendType=" + backendType + ", typeDatabase="
-				+ typeDatabase + "]";
+				+ typeDatabase + ", blobCodec=" + blobCodec.getName() + "]";
 	}
 
 }
@@ -3,6 +3,7 @@ package us.kbase.workspace.database.mongo;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 
 import us.kbase.auth.AuthException;
@@ -27,10 +28,9 @@ import us.kbase.workspace.database.mongo.exceptions.BlobStoreException;
 import us.kbase.workspace.database.mongo.exceptions.NoSuchBlobException;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.gc.iotools.stream.base.ExecutionModel;
-import com.gc.iotools.stream.base.ExecutorServiceFactory;
 import com.gc.iotools.stream.os.OutputStreamToInputStream;
 import com.mongodb.BasicDBObject;
+import com.mongodb.Bytes;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
@@ -44,6 +44,8 @@ public class ShockBackend implements BlobStore {
 	private final BasicShockClient client;
 	private final DBCollection mongoCol;
 	private final RefreshingToken token;
+	private final BlobCodec codec;
+	private final ShockDownloader downloader;
 	
 	private static final int TOKEN_REFRESH_INTERVAL = 24 * 60 * 60;
 	private static final String IDX_UNIQ = "unique";
@@ -52,11 +54,33 @@ public class ShockBackend implements BlobStore {
 			final URL url, final String user, final String password)
 			throws BlobStoreAuthorizationException,
 			BlobStoreException {
+		this(mongoDB, collectionPrefix, url, user, password, BlobCodec.NONE);
+	}
+	
+	/** Create a Shock backend.
+	 * @param mongoDB the database in which to store the mapping of blobs to
+	 * Shock nodes.
+	 * @param collectionPrefix the prefix of the mapping collection name.
+	 * @param url the url of the Shock server.
+	 * @param user the Shock user name.
+	 * @param password the Shock user's password.
+	 * @param codec the codec with which to encode new blobs.
+	 * @throws BlobStoreAuthorizationException if the user could not be
+	 * authenticated.
+	 * @throws BlobStoreException if the backend could not be initialized.
+	 */
+	public ShockBackend(final DB mongoDB, final String collectionPrefix,
+			final URL url, final String user, final String password,
+			final BlobCodec codec)
+			throws BlobStoreAuthorizationException,
+			BlobStoreException {
 		if (collectionPrefix == null || mongoDB == null || url == null
-				|| user == null || password == null) {
+				|| user == null || password == null || codec == null) {
 			throw new NullPointerException(
 					"Arguments cannot be null");
 		}
+		this.codec = codec;
+		downloader = new ShockDownloader(url);
 		this.mongoCol = mongoDB.getCollection(collectionPrefix +
 				COLLECTION_SUFFIX);
 		final DBObject dbo = new BasicDBObject();
@@ -143,7 +167,27 @@ public class ShockBackend implements BlobStore {
 			//go ahead, need to save
 		}
 		updateAuth();
-		final ShockNode sn;
+		final ShockNode sn = addNode(md5, data);
+		final DBObject dbo = new BasicDBObject();
+		dbo.put(Fields.SHOCK_CHKSUM, md5.getMD5());
+		dbo.put(Fields.SHOCK_NODE, sn.getId().getId());
+		dbo.put(Fields.SHOCK_VER, sn.getVersion().getVersion());
+		dbo.put(Fields.SHOCK_SORTED, sorted);
+		dbo.put(Fields.SHOCK_CODEC, codec.getName());
+		final DBObject query = new BasicDBObject();
+		query.put(Fields.SHOCK_CHKSUM, md5.getMD5());
+		try {
+			//possible that this was inserted just prior to saving the object
+			//so do update vs. insert since the data must be the same
+			mongoCol.update(query, dbo, true, false);
+		} catch (MongoException me) {
+			throw new BlobStoreCommunicationException(
+					"Could not write to the mongo database", me);
+		}
+	}
+	
+	private ShockNode addNode(final MD5 md5, final Writable data)
+			throws BlobStoreCommunicationException {
 		final OutputStreamToInputStream<ShockNode> osis =
 				new OutputStreamToInputStream<ShockNode>() {
 					
@@ -152,7 +196,7 @@ public class ShockBackend implements BlobStore {
 				final ShockNode sn;
 				try {
 					sn = client.addNode(is, "workspace_" + md5.getMD5(),
-							"JSON");
+							codec == BlobCodec.NONE ? "JSON" : codec.getName());
 				} catch (TokenExpiredException ete) {
 					//this should be impossible
 					throw new RuntimeException("Token magically expired: "
@@ -176,7 +220,7 @@ public class ShockBackend implements BlobStore {
 		};
 		try {
 			//writes in UTF8
-			data.write(osis);
+			codec.write(data, osis);
 		} catch (IOException ioe) {
 			//no way to test this easily, manually tested for now.
 			//be sure to test manually if making changes
@@ -203,7 +247,7 @@ public class ShockBackend implements BlobStore {
 			}
 		}
 		try {
-			sn = osis.getResult();
+			return osis.getResult();
 		} catch (InterruptedException ie) {
 			throw new RuntimeException(
 					"Interrupt trying to retrieve ShockNode from EasyStream instance: "
@@ -213,21 +257,6 @@ public class ShockBackend implements BlobStore {
 					"Excecution error trying to retrieve ShockNode from EasyStream instance: "
 					+ ee.getLocalizedMessage(), ee);
 		}
-		final DBObject dbo = new BasicDBObject();
-		dbo.put(Fields.SHOCK_CHKSUM, md5.getMD5());
-		dbo.put(Fields.SHOCK_NODE, sn.getId().getId());
-		dbo.put(Fields.SHOCK_VER, sn.getVersion().getVersion());
-		dbo.put(Fields.SHOCK_SORTED, sorted);
-		final DBObject query = new BasicDBObject();
-		query.put(Fields.SHOCK_CHKSUM, md5.getMD5());
-		try {
-			//possible that this was inserted just prior to saving the object
-			//so do update vs. insert since the data must be the same
-			mongoCol.update(query, dbo, true, false);
-		} catch (MongoException me) {
-			throw new BlobStoreCommunicationException(
-					"Could not write to the mongo database", me);
-		}
 	}
 	
 	private String getNode(final MD5 md5) throws
@@ -259,7 +288,6 @@ public class ShockBackend implements BlobStore {
 			throws BlobStoreAuthorizationException,
 			BlobStoreCommunicationException, NoSuchBlobException,
 			FileCacheLimitExceededException, FileCacheIOException {
-		updateAuth();
 		final DBObject entry = getBlobEntry(md5);
 		final String node = (String)entry.get(Fields.SHOCK_NODE);
 		final boolean sorted;
@@ -269,79 +297,158 @@ public class ShockBackend implements BlobStore {
 			sorted = (Boolean)entry.get(Fields.SHOCK_SORTED);
 		}
 		
-		final OutputStreamToInputStream<ByteArrayFileCache> osis =
-				new OutputStreamToInputStream<ByteArrayFileCache>(true,
-						ExecutorServiceFactory.getExecutor(
-								ExecutionModel.THREAD_PER_INSTANCE), 10000000) { //speeds up by 2-3x
-					
-			@Override
-			protected ByteArrayFileCache doRead(InputStream is) throws Exception {
-				return bafcMan.createBAFC(is, true, sorted);
-			}
-		};
+		final String nodeCodec = (String) entry.get(Fields.SHOCK_CODEC);
+		final boolean encoded = nodeCodec != null &&
+				!nodeCodec.equals(BlobCodec.NONE.getName());
+		return downloader.download(node, getToken().toString(), encoded,
+				sorted, bafcMan);
+	}
+	
+	/** Returns statistics for downloads from Shock.
+	 * @return the download statistics.
+	 * @see ShockDownloader#getStatistics()
+	 */
+	public Map<String, Object> getDownloadStatistics() {
+		return downloader.getStatistics();
+	}
+
+	@Override
+	public void removeBlob(final MD5 md5)
+			throws BlobStoreAuthorizationException,
+			BlobStoreCommunicationException {
+		updateAuth();
+		final String node;
 		try {
-			client.getFile(new ShockNodeId(node), osis);
+			node = getNode(md5);
+		} catch (NoSuchBlobException nb) {
+			return; //already gone
+		}
+		deleteNode(node);
+		final DBObject query = new BasicDBObject();
+		query.put(Fields.SHOCK_CHKSUM, md5.getMD5());
+		mongoCol.remove(query);
+	}
+
+	private void deleteNode(final String node)
+			throws BlobStoreCommunicationException {
+		try {
+			client.deleteNode(new ShockNodeId(node));
 		} catch (TokenExpiredException ete) {
 			//this should be impossible
 			throw new RuntimeException("Things are broke", ete);
 		} catch (IOException ioe) {
-			if (ioe.getCause() instanceof FileCacheLimitExceededException) {
-				throw (FileCacheLimitExceededException) ioe.getCause();
-			}
-			if (ioe.getCause() instanceof FileCacheIOException) {
-				throw (FileCacheIOException) ioe.getCause();
-			}
 			throw new BlobStoreCommunicationException(
 					"Could not connect to the shock backend: " +
 					ioe.getLocalizedMessage(), ioe);
 		} catch (ShockHttpException she) {
 			throw new BlobStoreCommunicationException(
-					"Failed to retrieve shock node: " +
+					"Failed to delete shock node: " +
 					she.getLocalizedMessage(), she);
 		}
+	}
+	
+	/* The blob is mapped to the recoded node before the old node is deleted,
+	 * so the blob is always available. A read of the old node that is in
+	 * progress when it is deleted may fail.
+	 */
+	@Override
+	public long recodeBlobs() throws BlobStoreAuthorizationException,
+			BlobStoreCommunicationException {
+		final DBObject notCodec = new BasicDBObject("$ne", codec.getName());
+		if (codec == BlobCodec.NONE) {
+			notCodec.put("$exists", true); // no codec means unencoded
+		}
+		long count = 0;
+		final DBCursor cur;
 		try {
-			osis.close();
-		} catch (IOException ioe) {
-			throw new RuntimeException("Something is broken", ioe);
+			cur = mongoCol.find(new BasicDBObject(Fields.SHOCK_CODEC,
+					notCodec));
+			// recoding a blob can take longer than the idle cursor timeout
+			cur.addOption(Bytes.QUERYOPTION_NOTIMEOUT);
+		} catch (MongoException me) {
+			throw new BlobStoreCommunicationException(
+					"Could not read from the mongo database", me);
 		}
 		try {
-			return osis.getResult();
-		} catch (InterruptedException ie) {
-			throw new RuntimeException("Something is broken", ie);
-		} catch (ExecutionException ee) {
-			throw new RuntimeException("Something is broken", ee);
+			while (cur.hasNext()) {
+				if (recodeBlob(cur.next())) {
+					count++;
+				}
+			}
+		} catch (MongoException me) {
+			throw new BlobStoreCommunicationException(
+					"Could not read from the mongo database", me);
+		} finally {
+			cur.close();
 		}
+		return count;
 	}
-
-	@Override
-	public void removeBlob(final MD5 md5)
+	
+	private boolean recodeBlob(final DBObject entry)
 			throws BlobStoreAuthorizationException,
 			BlobStoreCommunicationException {
 		updateAuth();
-		final String node;
-		try {
-			node = getNode(md5);
-		} catch (NoSuchBlobException nb) {
-			return; //already gone
-		}
-		
+		final MD5 md5 = new MD5((String) entry.get(Fields.SHOCK_CHKSUM));
+		final String oldNode = (String) entry.get(Fields.SHOCK_NODE);
+		final OutputStreamToInputStream<ShockNode> osis =
+				new OutputStreamToInputStream<ShockNode>() {
+					
+			@Override
+			protected ShockNode doRead(InputStream is) throws Exception {
+				return addNode(md5, BlobCodec.getDecodedWritable(is));
+			}
+		};
 		try {
-			client.deleteNode(new ShockNodeId(node));
+			client.getFile(new ShockNodeId(oldNode), osis);
+			osis.close();
 		} catch (TokenExpiredException ete) {
 			//this should be impossible
 			throw new RuntimeException("Things are broke", ete);
 		} catch (IOException ioe) {
+			if (ioe.getCause() instanceof BlobStoreCommunicationException) {
+				throw (BlobStoreCommunicationException) ioe.getCause();
+			}
 			throw new BlobStoreCommunicationException(
 					"Could not connect to the shock backend: " +
 					ioe.getLocalizedMessage(), ioe);
 		} catch (ShockHttpException she) {
 			throw new BlobStoreCommunicationException(
-					"Failed to delete shock node: " +
+					"Failed to retrieve shock node: " +
 					she.getLocalizedMessage(), she);
 		}
-		final DBObject query = new BasicDBObject();
-		query.put(Fields.SHOCK_CHKSUM, md5.getMD5());
-		mongoCol.remove(query);
+		final ShockNode sn;
+		try {
+			sn = osis.getResult();
+		} catch (InterruptedException ie) {
+			throw new RuntimeException("Something is broken", ie);
+		} catch (ExecutionException ee) {
+			if (ee.getCause() instanceof BlobStoreCommunicationException) {
+				throw (BlobStoreCommunicationException) ee.getCause();
+			}
+			throw new RuntimeException("Something is broken", ee);
+		}
+		final DBObject query = new BasicDBObject(Fields.SHOCK_CHKSUM,
+				md5.getMD5());
+		query.put(Fields.SHOCK_NODE, oldNode);
+		final DBObject set = new BasicDBObject(Fields.SHOCK_NODE,
+				sn.getId().getId());
+		set.put(Fields.SHOCK_VER, sn.getVersion().getVersion());
+		set.put(Fields.SHOCK_CODEC, codec.getName());
+		final int updated;
+		try {
+			updated = mongoCol.update(query, new BasicDBObject("$set", set))
+					.getN();
+		} catch (MongoException me) {
+			throw new BlobStoreCommunicationException(
+					"Could not write to the mongo database", me);
+		}
+		if (updated < 1) {
+			// the blob was removed or recoded elsewhere in the meantime
+			deleteNode(sn.getId().getId());
+			return false;
+		}
+		deleteNode(oldNode);
+		return true;
 	}
 	
 	/**
@@ -0,0 +1,470 @@
+package us.kbase.workspace.database.mongo;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import us.kbase.workspace.database.ByteArrayFileCacheManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.FileFiller;
+import us.kbase.workspace.database.exceptions.FileCacheIOException;
+import us.kbase.workspace.database.exceptions.FileCacheLimitExceededException;
+import us.kbase.workspace.database.mongo.exceptions.BlobStoreAuthorizationException;
+import us.kbase.workspace.database.mongo.exceptions.BlobStoreCommunicationException;
+
+/** Downloads Shock nodes into ByteArrayFileCaches. All downloads share a
+ * bounded pool of HTTP connections and a bounded pool of threads.
+ *
+ * Small nodes and encoded nodes are streamed into the cache in the calling
+ * thread. Large unencoded nodes, as determined by the size in the node
+ * metadata, are split into ranges that are downloaded concurrently by the
+ * thread pool and written directly to their position in the cache file. If
+ * the Shock server does not support ranges, all later downloads are
+ * streamed.
+ *
+ * A request that cannot get a connection from the pool within
+ * {@link #CONNECTION_REQUEST_TIMEOUT_MS} fails rather than waiting forever.
+ *
+ * Statistics for recent downloads are kept so that throughput can be
+ * monitored.
+ * @author gaprice@lbl.gov
+ *
+ */
+public class ShockDownloader {
+
+	private final static Logger LOGGER =
+			LoggerFactory.getLogger(ShockDownloader.class);
+
+	/** The default number of threads used for ranged downloads. */
+	public static final int DEFAULT_THREADS = 8;
+	/** The default size of the ranges large nodes are split into. */
+	public static final long DEFAULT_RANGE_SIZE = 32 * 1024 * 1024;
+	/** The time to wait for a connection from the pool before failing. */
+	public static final int CONNECTION_REQUEST_TIMEOUT_MS = 60 * 1000;
+
+	private static final int MAX_CONNECTIONS_PER_THREAD = 4;
+	private static final int BUFFER_SIZE = 65536;
+	private static final int RECENT_TRANSFERS = 20;
+	private static final String AUTH_HEADER = "Authorization";
+	private static final String OAUTH = "OAuth ";
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final String nodeUrl;
+	private final long rangeSize;
+	private final CloseableHttpClient client;
+	private final ThreadPoolExecutor executor;
+	private volatile boolean rangesSupported = true;
+
+	private long transfers = 0;
+	private long rangedTransfers = 0;
+	private long bytes = 0;
+	private long millis = 0;
+	private final LinkedList<Map<String, Object>> recent =
+			new LinkedList<Map<String, Object>>();
+
+	public ShockDownloader(final URL shockUrl) {
+		this(shockUrl, DEFAULT_THREADS, DEFAULT_RANGE_SIZE);
+	}
+
+	/** Create a downloader.
+	 * @param shockUrl the url of the Shock server.
+	 * @param threads the number of threads to use for ranged downloads.
+	 * The connection pool is sized relative to the thread count, since
+	 * streamed downloads use the calling thread.
+	 * @param rangeSize the size of the ranges to split large nodes into.
+	 * Nodes smaller than twice the range size are streamed.
+	 */
+	public ShockDownloader(final URL shockUrl, final int threads,
+			final long rangeSize) {
+		if (shockUrl == null) {
+			throw new NullPointerException("shockUrl");
+		}
+		if (threads < 1 || rangeSize < 1) {
+			throw new IllegalArgumentException(
+					"threads and rangeSize must be at least 1");
+		}
+		final String url = shockUrl.toExternalForm();
+		nodeUrl = (url.endsWith("/") ? url : url + "/") + "node/";
+		this.rangeSize = rangeSize;
+		final PoolingHttpClientConnectionManager cm =
+				new PoolingHttpClientConnectionManager();
+		cm.setMaxTotal(threads * MAX_CONNECTIONS_PER_THREAD);
+		cm.setDefaultMaxPerRoute(threads * MAX_CONNECTIONS_PER_THREAD);
+		client = HttpClients.custom().setConnectionManager(cm)
+				.setDefaultRequestConfig(RequestConfig.custom()
+						.setConnectionRequestTimeout(
+								CONNECTION_REQUEST_TIMEOUT_MS)
+						.build())
+				.build();
+		executor = new ThreadPoolExecutor(threads, threads, 60L,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactoryBuilder().setDaemon(true)
+						.setNameFormat("shock-download-%d").build());
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/** Download a Shock node into a file cache.
+	 * @param node the ID of the node.
+	 * @param token the token with which to authenticate to Shock.
+	 * @param encoded true if the node was written with a codec other than
+	 * {@link BlobCodec#NONE}. Encoded nodes are decoded as they are streamed
+	 * and are never downloaded in ranges.
+	 * @param sorted true if the node data is sorted.
+	 * @param bafcMan the manager with which to create the cache.
+	 * @return the cache containing the decoded node data.
+	 * @throws BlobStoreAuthorizationException if Shock refused the token.
+	 * @throws BlobStoreCommunicationException if the node could not be
+	 * downloaded.
+	 * @throws FileCacheLimitExceededException if the node is too large for
+	 * the cache.
+	 * @throws FileCacheIOException if the cache could not be written.
+	 */
+	public ByteArrayFileCache download(final String node, final String token,
+			final boolean encoded, final boolean sorted,
+			final ByteArrayFileCacheManager bafcMan)
+			throws BlobStoreAuthorizationException,
+			BlobStoreCommunicationException, FileCacheLimitExceededException,
+			FileCacheIOException {
+		final long start = System.nanoTime();
+		if (!encoded && rangesSupported) {
+			final long size = getSize(node, token);
+			if (size >= 2 * rangeSize) {
+				try {
+					final ByteArrayFileCache bafc = downloadRanges(
+							node, token, size, sorted, bafcMan);
+					record(node, size, (size + rangeSize - 1) / rangeSize,
+							start);
+					return bafc;
+				} catch (RangesUnsupportedException rue) {
+					rangesSupported = false;
+					LOGGER.warn("The Shock server at {} does not support " +
+							"ranged downloads, streaming all downloads",
+							nodeUrl);
+				}
+			}
+		}
+		final HttpGet get = new HttpGet(nodeUrl + node + "?download");
+		final CloseableHttpResponse res = execute(get, token);
+		try {
+			final HttpEntity entity = res.getEntity();
+			final long size = entity.getContentLength();
+			final InputStream is = new ShockInputStream(entity.getContent());
+			try {
+				final ByteArrayFileCache bafc = bafcMan.createBAFC(
+						BlobCodec.decode(is), true, sorted);
+				record(node, size < 0 ? bafc.getSize() : size, 1, start);
+				return bafc;
+			} catch (FileCacheIOException e) {
+				if (e.getCause() instanceof ShockReadException) {
+					throw new BlobStoreCommunicationException(
+							"Could not download shock node " + node + ": " +
+							e.getCause().getLocalizedMessage(), e);
+				}
+				throw e;
+			} finally {
+				is.close();
+			}
+		} catch (IOException ioe) {
+			throw new BlobStoreCommunicationException(
+					"Could not connect to the shock backend: " +
+					ioe.getLocalizedMessage(), ioe);
+		} finally {
+			try {
+				res.close();
+			} catch (IOException ioe) {
+				// nothing to be done
+			}
+		}
+	}
+
+	/* Returns the size of the node's file from the node metadata, or -1 if
+	 * the metadata has no size.
+	 */
+	private long getSize(final String node, final String token)
+			throws BlobStoreAuthorizationException,
+			BlobStoreCommunicationException {
+		final CloseableHttpResponse res = execute(
+				new HttpGet(nodeUrl + node), token);
+		try {
+			final JsonNode size = MAPPER.readTree(
+					res.getEntity().getContent())
+					.path("data").path("file").path("size");
+			return size.isIntegralNumber() ? size.asLong() : -1;
+		} catch (IOException ioe) {
+			throw new BlobStoreCommunicationException(
+					"Could not read shock node metadata: " +
+					ioe.getLocalizedMessage(), ioe);
+		} finally {
+			try {
+				res.close();
+			} catch (IOException ioe) {
+				// nothing to be done
+			}
+		}
+	}
+
+	private CloseableHttpResponse execute(final HttpGet get,
+			final String token)
+			throws BlobStoreAuthorizationException,
+			BlobStoreCommunicationException {
+		get.setHeader(AUTH_HEADER, OAUTH + token);
+		final CloseableHttpResponse res;
+		try {
+			res = client.execute(get);
+		} catch (IOException ioe) {
+			throw new BlobStoreCommunicationException(
+					"Could not connect to the shock backend: " +
+					ioe.getLocalizedMessage(), ioe);
+		}
+		final int code = res.getStatusLine().getStatusCode();
+		if (code == HttpStatus.SC_OK) {
+			return res;
+		}
+		final String err = getError(res);
+		if (code == HttpStatus.SC_UNAUTHORIZED ||
+				code == HttpStatus.SC_FORBIDDEN) {
+			throw new BlobStoreAuthorizationException(
+					"Shock refused access to the node: " + err);
+		}
+		throw new BlobStoreCommunicationException(
+				"Failed to retrieve shock node: " + err);
+	}
+
+	// Shock errors are JSON with a list of error strings
+	private String getError(final CloseableHttpResponse res) {
+		final String status = res.getStatusLine().toString();
+		try {
+			final JsonNode err = MAPPER.readTree(EntityUtils.toString(
+					res.getEntity(), "UTF-8")).path("error");
+			return err.size() > 0 ? err.get(0).asText() : status;
+		} catch (Exception e) {
+			return status;
+		} finally {
+			try {
+				res.close();
+			} catch (IOException ioe) {
+				// nothing to be done
+			}
+		}
+	}
+
+	private ByteArrayFileCache downloadRanges(final String node,
+			final String token, final long size, final boolean sorted,
+			final ByteArrayFileCacheManager bafcMan)
+			throws RangesUnsupportedException, BlobStoreAuthorizationException,
+			BlobStoreCommunicationException, FileCacheLimitExceededException,
+			FileCacheIOException {
+		try {
+			return bafcMan.createBAFC(size, new FileFiller() {
+
+				@Override
+				public void fill(final FileChannel file) throws IOException {
+					fillRanges(node, token, size, file);
+				}
+			}, true, sorted);
+		} catch (FileCacheIOException e) {
+			final Throwable cause = e.getCause() == null ? null :
+				e.getCause().getCause();
+			if (cause instanceof RangesUnsupportedException) {
+				throw (RangesUnsupportedException) cause;
+			}
+			if (cause instanceof BlobStoreAuthorizationException) {
+				throw (BlobStoreAuthorizationException) cause;
+			}
+			if (cause instanceof BlobStoreCommunicationException) {
+				throw (BlobStoreCommunicationException) cause;
+			}
+			throw e;
+		}
+	}
+
+	/* Failures are wrapped in an IOException so they can pass through the
+	 * file cache manager.
+	 */
+	private void fillRanges(final String node, final String token,
+			final long size, final FileChannel file) throws IOException {
+		final List<Future<Void>> ranges = new ArrayList<Future<Void>>();
+		for (long pos = 0; pos < size; pos += rangeSize) {
+			final long rangeStart = pos;
+			final long length = Math.min(rangeSize, size - pos);
+			ranges.add(executor.submit(new Callable<Void>() {
+
+				@Override
+				public Void call() throws Exception {
+					downloadRange(node, token, rangeStart, length, file);
+					return null;
+				}
+			}));
+		}
+		try {
+			for (final Future<Void> f: ranges) {
+				Uninterruptibles.getUninterruptibly(f);
+			}
+		} catch (ExecutionException e) {
+			for (final Future<Void> f: ranges) {
+				f.cancel(true);
+			}
+			throw new IOException("Ranged download of shock node " + node +
+					" failed: " + e.getCause().getLocalizedMessage(),
+					e.getCause());
+		}
+	}
+
+	private void downloadRange(final String node, final String token,
+			final long start, final long length, final FileChannel file)
+			throws RangesUnsupportedException, BlobStoreAuthorizationException,
+			BlobStoreCommunicationException, IOException {
+		final HttpGet get = new HttpGet(nodeUrl + node + "?download&seek=" +
+				start + "&length=" + length);
+		final CloseableHttpResponse res = execute(get, token);
+		try {
+			final long resLength = res.getEntity().getContentLength();
+			if (resLength >= 0 && resLength != length) {
+				get.abort();
+				throw new RangesUnsupportedException();
+			}
+			final InputStream is = res.getEntity().getContent();
+			final byte[] buf = new byte[BUFFER_SIZE];
+			long pos = start;
+			int read;
+			while ((read = is.read(buf)) > 0) {
+				if (pos + read > start + length) {
+					get.abort();
+					throw new RangesUnsupportedException();
+				}
+				final ByteBuffer bb = ByteBuffer.wrap(buf, 0, read);
+				while (bb.hasRemaining()) {
+					pos += file.write(bb, pos);
+				}
+			}
+			if (pos != start + length) {
+				throw new IOException(String.format(
+						"Expected %s bytes from shock node %s at %s, got %s",
+						length, node, start, pos - start));
+			}
+		} finally {
+			res.close();
+		}
+	}
+
+	private synchronized void record(final String node, final long size,
+			final long ranges, final long startNanos) {
+		final long ms = TimeUnit.NANOSECONDS.toMillis(
+				System.nanoTime() - startNanos);
+		transfers++;
+		if (ranges > 1) {
+			rangedTransfers++;
+		}
+		bytes += size;
+		millis += ms;
+		final Map<String, Object> t = new LinkedHashMap<String, Object>();
+		t.put("node", node);
+		t.put("bytes", size);
+		t.put("ranges", ranges);
+		t.put("millis", ms);
+		t.put("bytespersec", getBytesPerSec(size, ms));
+		recent.addFirst(t);
+		if (recent.size() > RECENT_TRANSFERS) {
+			recent.removeLast();
+		}
+	}
+
+	private static long getBytesPerSec(final long size, final long ms) {
+		return ms < 1 ? size * 1000 : size * 1000 / ms;
+	}
+
+	/** Returns download statistics. transfers is the number of completed
+	 * downloads, of which ranged were split into ranges. bytes and millis
+	 * are the total size and time of the downloads, and bytespersec the
+	 * overall throughput. recent lists the most recent downloads, newest
+	 * first, with the node ID, size, number of ranges, time and throughput
+	 * of each.
+	 * @return the download statistics.
+	 */
+	public synchronized Map<String, Object> getStatistics() {
+		final Map<String, Object> ret = new LinkedHashMap<String, Object>();
+		ret.put("transfers", transfers);
+		ret.put("ranged", rangedTransfers);
+		ret.put("bytes", bytes);
+		ret.put("millis", millis);
+		ret.put("bytespersec", getBytesPerSec(bytes, millis));
+		ret.put("rangessupported", rangesSupported);
+		final List<Map<String, Object>> rec =
+				new LinkedList<Map<String, Object>>();
+		for (final Map<String, Object> t: recent) {
+			rec.add(new LinkedHashMap<String, Object>(t));
+		}
+		ret.put("recent", rec);
+		return ret;
+	}
+
+	@SuppressWarnings("serial")
+	private static class RangesUnsupportedException extends Exception {}
+	
+	@SuppressWarnings("serial")
+	private static class ShockReadException extends IOException {
+		
+		private ShockReadException(final IOException cause) {
+			super(cause.getLocalizedMessage(), cause);
+		}
+	}
+	
+	// marks errors reading from Shock so they can be distinguished from
+	// errors writing the file cache
+	private static class ShockInputStream extends FilterInputStream {
+		
+		private ShockInputStream(final InputStream in) {
+			super(in);
+		}
+		
+		@Override
+		public int read() throws IOException {
+			try {
+				return super.read();
+			} catch (IOException ioe) {
+				throw new ShockReadException(ioe);
+			}
+		}
+		
+		@Override
+		public int read(final byte[] b, final int off, final int len)
+				throws IOException {
+			try {
+				return super.read(b, off, len);
+			} catch (IOException ioe) {
+				throw new ShockReadException(ioe);
+			}
+		}
+	}
+}
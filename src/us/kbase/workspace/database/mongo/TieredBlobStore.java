@@ -0,0 +1,366 @@
+package us.kbase.workspace.database.mongo;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import us.kbase.typedobj.core.MD5;
+import us.kbase.typedobj.core.Writable;
+import us.kbase.workspace.database.ByteArrayFileCacheManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.exceptions.FileCacheIOException;
+import us.kbase.workspace.database.exceptions.FileCacheLimitExceededException;
+import us.kbase.workspace.database.mongo.FileSystemBackend.FsyncPolicy;
+import us.kbase.workspace.database.mongo.exceptions.BlobStoreAuthorizationException;
+import us.kbase.workspace.database.mongo.exceptions.BlobStoreCommunicationException;
+import us.kbase.workspace.database.mongo.exceptions.NoSuchBlobException;
+
+/** A write behind blob store with a local filesystem tier, ideally on an
+ * SSD, in front of a durable blob store. Saves return as soon as the blob is
+ * synced to the local tier, and the blob is replicated to the durable store
+ * in the background. Once a blob is replicated the local copy is removed.
+ *
+ * Blobs waiting for replication are recorded in a queue directory next to
+ * the local tier, so replication resumes when the server restarts. Local
+ * blobs that are missing from the queue, for example because the server
+ * stopped between saving a blob and queuing it, are queued on startup.
+ *
+ * Reads are served from the local tier if the blob is there and from the
+ * durable store otherwise. Blobs that have not been replicated are only
+ * available from this store, so the local tier must not be shared by, and
+ * blobs must not be read from, other servers using the same database until
+ * the queue is empty.
+ *
+ * When the JVM shuts down replication stops after the blob being copied, if
+ * any, and resumes from the queue when the server restarts.
+ * @author gaprice@lbl.gov
+ *
+ */
+public class TieredBlobStore implements BlobStore {
+
+	private final static Logger LOGGER =
+			LoggerFactory.getLogger(TieredBlobStore.class);
+
+	private static final String LOCAL_DIR = "blobs";
+	private static final String QUEUE_DIR = "queue";
+	private static final long RETRY_DELAY_SEC = 60;
+	private static final long SHUTDOWN_WAIT_SEC = 60;
+	private static final int LOCK_STRIPES = 64;
+	private static final Pattern QUEUE_ENTRY = Pattern.compile("[\\da-f]{32}");
+
+	private final FileSystemBackend local;
+	private final BlobStore durable;
+	private final File queue;
+	private final long retryDelaySec;
+	// held while a blob and its queue entry are written or removed
+	private final Striped<Lock> locks = Striped.lock(LOCK_STRIPES);
+
+	private final ScheduledThreadPoolExecutor replicator =
+			new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+					.setDaemon(true).setNameFormat("blob-replicate-%d")
+					.build());
+	// true if a replication pass is scheduled but has not started
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	private final AtomicLong replicated = new AtomicLong();
+	private volatile String lastError = null;
+
+	/** Create a tiered blob store and start replicating any blobs left in the
+	 * queue.
+	 * @param root the directory in which to store the local tier and the
+	 * replication queue. Created if it does not exist.
+	 * @param durable the blob store to which blobs are replicated.
+	 * @throws BlobStoreCommunicationException if the directory cannot be
+	 * created or is not writable.
+	 */
+	public TieredBlobStore(final File root, final BlobStore durable)
+			throws BlobStoreCommunicationException {
+		this(root, durable, RETRY_DELAY_SEC);
+	}
+
+	/** Create a tiered blob store and start replicating any blobs left in the
+	 * queue.
+	 * @param root the directory in which to store the local tier and the
+	 * replication queue. Created if it does not exist.
+	 * @param durable the blob store to which blobs are replicated.
+	 * @param retryDelaySec the time in seconds to wait before retrying
+	 * replication after a failure.
+	 * @throws BlobStoreCommunicationException if the directory cannot be
+	 * created or is not writable.
+	 */
+	public TieredBlobStore(final File root, final BlobStore durable,
+			final long retryDelaySec)
+			throws BlobStoreCommunicationException {
+		if (root == null || durable == null) {
+			throw new NullPointerException("Arguments cannot be null");
+		}
+		if (retryDelaySec < 0) {
+			throw new IllegalArgumentException(
+					"retryDelaySec must be at least 0");
+		}
+		this.durable = durable;
+		this.retryDelaySec = retryDelaySec;
+		// the durable store has no copy of a local blob, so always sync
+		local = new FileSystemBackend(new File(root, LOCAL_DIR),
+				FsyncPolicy.FILE, BlobCodec.NONE);
+		queue = new File(root, QUEUE_DIR);
+		queue.mkdirs();
+		if (!queue.isDirectory() || !queue.canWrite()) {
+			throw new BlobStoreCommunicationException(
+					"Could not write to the replication queue directory " +
+					queue);
+		}
+		for (final MD5 md5: local.listBlobs()) {
+			enqueue(md5);
+		}
+		final File[] entries = queue.listFiles();
+		for (final File entry: entries == null ? new File[0] : entries) {
+			if (!isValidEntry(entry)) {
+				LOGGER.error(String.format(
+						"Ignoring invalid replication queue entry %s",
+						entry));
+			}
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				shutdown();
+			}
+		}, "blob-replicate-shutdown"));
+		scheduleReplication(0);
+	}
+
+	// lets a copy in progress finish so it isn't repeated on restart
+	private void shutdown() {
+		replicator.shutdown();
+		try {
+			replicator.awaitTermination(SHUTDOWN_WAIT_SEC, TimeUnit.SECONDS);
+		} catch (InterruptedException ie) {
+			// exiting anyway
+		}
+	}
+
+	private void enqueue(final MD5 md5)
+			throws BlobStoreCommunicationException {
+		try {
+			new File(queue, md5.getMD5()).createNewFile();
+		} catch (IOException ioe) {
+			throw new BlobStoreCommunicationException(
+					"Could not write to the replication queue: " +
+					ioe.getLocalizedMessage(), ioe);
+		}
+	}
+
+	private static boolean isValidEntry(final File entry) {
+		return entry.isFile() &&
+				QUEUE_ENTRY.matcher(entry.getName()).matches();
+	}
+
+	/* Oldest first. Entry names are used as MD5s and so as paths in the
+	 * local tier, so any file that isn't named as an MD5 is skipped.
+	 */
+	private File[] getQueue() {
+		final File[] entries = queue.listFiles();
+		if (entries == null) {
+			return new File[0];
+		}
+		final List<File> valid = new LinkedList<File>();
+		for (final File entry: entries) {
+			if (isValidEntry(entry)) {
+				valid.add(entry);
+			}
+		}
+		final File[] ret = valid.toArray(new File[valid.size()]);
+		Arrays.sort(ret, new Comparator<File>() {
+
+			@Override
+			public int compare(final File f1, final File f2) {
+				return Long.valueOf(f1.lastModified()).compareTo(
+						f2.lastModified());
+			}
+		});
+		return ret;
+	}
+
+	private void scheduleReplication(final long delaySec) {
+		if (replicator.isShutdown()) {
+			return;
+		}
+		if (scheduled.compareAndSet(false, true)) {
+			replicator.schedule(new Runnable() {
+
+				@Override
+				public void run() {
+					replicate();
+				}
+			}, delaySec, TimeUnit.SECONDS);
+		}
+	}
+
+	/* The blob is copied without holding its lock, so it may be saved or
+	 * removed during the copy. The local blob and queue entry are only
+	 * removed after checking them again under the lock. A blob that is saved
+	 * during the copy has the same content, since the MD5 is the same, so the
+	 * copy is good and the local blob can be removed.
+	 */
+	private void replicate() {
+		scheduled.set(false);
+		for (final File entry: getQueue()) {
+			if (replicator.isShutdown()) {
+				return;
+			}
+			final MD5 md5 = new MD5(entry.getName());
+			try {
+				local.copyBlob(md5, durable);
+				if (removeReplicated(md5, entry)) {
+					replicated.incrementAndGet();
+				}
+			} catch (NoSuchBlobException nsbe) {
+				// already replicated or removed
+				removeEntryIfNoBlob(md5, entry);
+			} catch (Exception e) {
+				lastError = e.getLocalizedMessage();
+				LOGGER.error(String.format(
+						"Could not replicate blob %s, retrying in %s seconds",
+						md5.getMD5(), retryDelaySec), e);
+				scheduleReplication(retryDelaySec);
+				return;
+			}
+		}
+		lastError = null;
+	}
+
+	// returns false if the blob was removed from the store during the copy
+	private boolean removeReplicated(final MD5 md5, final File entry)
+			throws BlobStoreAuthorizationException,
+			BlobStoreCommunicationException {
+		final Lock lock = locks.get(md5.getMD5());
+		lock.lock();
+		try {
+			if (!entry.isFile()) {
+				// removeBlob ran during the copy, so remove the copy too
+				durable.removeBlob(md5);
+				return false;
+			}
+			// the local blob is removed before the queue entry, so a local
+			// blob is never left without a queue entry unless it has been
+			// replicated.
+			local.removeBlob(md5);
+			entry.delete();
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void removeEntryIfNoBlob(final MD5 md5, final File entry) {
+		final Lock lock = locks.get(md5.getMD5());
+		lock.lock();
+		try {
+			if (!local.hasBlob(md5)) {
+				entry.delete();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void saveBlob(final MD5 md5, final Writable data,
+			final boolean sorted)
+			throws BlobStoreCommunicationException {
+		final Lock lock = locks.get(md5.getMD5());
+		lock.lock();
+		try {
+			local.saveBlob(md5, data, sorted);
+			enqueue(md5);
+		} finally {
+			lock.unlock();
+		}
+		scheduleReplication(0);
+	}
+
+	@Override
+	public ByteArrayFileCache getBlob(final MD5 md5,
+			final ByteArrayFileCacheManager bafcMan)
+			throws BlobStoreAuthorizationException,
+			BlobStoreCommunicationException, NoSuchBlobException,
+			FileCacheLimitExceededException, FileCacheIOException {
+		try {
+			return local.getBlob(md5, bafcMan);
+		} catch (NoSuchBlobException nsbe) {
+			return durable.getBlob(md5, bafcMan);
+		}
+	}
+
+	@Override
+	public void removeBlob(final MD5 md5)
+			throws BlobStoreAuthorizationException,
+			BlobStoreCommunicationException {
+		final Lock lock = locks.get(md5.getMD5());
+		lock.lock();
+		try {
+			new File(queue, md5.getMD5()).delete();
+			local.removeBlob(md5);
+			durable.removeBlob(md5);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public String getExternalIdentifier(final MD5 md5)
+			throws BlobStoreCommunicationException, NoSuchBlobException {
+		return durable.getExternalIdentifier(md5);
+	}
+
+	/* Only the durable store is recoded, local blobs are never encoded. */
+	@Override
+	public long recodeBlobs() throws BlobStoreAuthorizationException,
+			BlobStoreCommunicationException {
+		return durable.recodeBlobs();
+	}
+
+	@Override
+	public String getStoreType() {
+		return durable.getStoreType();
+	}
+
+	/** Returns the state of replication to the durable store.
+	 * @return the replication status. queued is the number of blobs waiting
+	 * for replication and lag the age in milliseconds of the oldest of them,
+	 * or 0 if there are none. replicated is the number of blobs replicated
+	 * since the store was created. error is present if the last replication
+	 * attempt failed and contains the reason.
+	 */
+	public Map<String, Object> getReplicationStatus() {
+		final File[] q = getQueue();
+		final Map<String, Object> ret = new LinkedHashMap<String, Object>();
+		ret.put("queued", q.length);
+		ret.put("lag", q.length == 0 ? 0L :
+			Math.max(0L, System.currentTimeMillis() - q[0].lastModified()));
+		ret.put("replicated", replicated.get());
+		final String err = lastError;
+		if (err != null) {
+			ret.put("error", err);
+		}
+		return ret;
+	}
+}
@@ -7,6 +7,8 @@ import java.util.Map;
 import org.apache.commons.codec.digest.DigestUtils;
 
 import us.kbase.typedobj.core.AbsoluteTypeDefId;
+import us.kbase.typedobj.core.MD5;
+import us.kbase.typedobj.core.MD5DigestOutputStream;
 import us.kbase.typedobj.core.TypeDefId;
 import us.kbase.typedobj.core.Writable;
 
@@ -38,6 +40,48 @@ public class TypeData {
 	
 	public TypeData(final Writable data, final AbsoluteTypeDefId type,
 			final Map<String,Object> subdata)  {
+		init(data, type, subdata);
+		final MD5DigestOutputStream md5 = new MD5DigestOutputStream();
+		try {
+			//writes in UTF8
+			data.write(md5);
+		} catch (IOException ioe) {
+			throw new RuntimeException("something is broken here", ioe);
+		} finally {
+			try {
+				md5.close();
+			} catch (IOException ioe) {
+				throw new RuntimeException("something is broken here", ioe);
+			}
+		}
+		this.size = md5.getSize();
+		this.chksum = md5.getMD5().getMD5();
+	}
+	
+	/** Create type data for which the MD5 and size of the data are already
+	 * known, avoiding writing the data to calculate them.
+	 * @param data the data.
+	 * @param type the type of the data.
+	 * @param subdata the subdata extracted from the data.
+	 * @param md5 the MD5 of the data.
+	 * @param size the size of the data in bytes.
+	 */
+	public TypeData(final Writable data, final AbsoluteTypeDefId type,
+			final Map<String,Object> subdata, final MD5 md5,
+			final long size)  {
+		init(data, type, subdata);
+		if (md5 == null) {
+			throw new IllegalArgumentException("md5 may not be null");
+		}
+		if (size < 0) {
+			throw new IllegalArgumentException("size may not be negative");
+		}
+		this.size = size;
+		this.chksum = md5.getMD5();
+	}
+	
+	private void init(final Writable data, final AbsoluteTypeDefId type,
+			final Map<String,Object> subdata) {
 		if (data == null) {
 			throw new IllegalArgumentException("data may not be null");
 		}
@@ -56,21 +100,6 @@ public class TypeData {
 		this.type = type.getType().getTypeString() +
 				AbsoluteTypeDefId.TYPE_VER_SEP + type.getMajorVersion();
 		this.subdata = subdata;
-		final MD5DigestOutputStream md5 = new MD5DigestOutputStream();
-		try {
-			//writes in UTF8
-			data.write(md5);
-		} catch (IOException ioe) {
-			throw new RuntimeException("something is broken here", ioe);
-		} finally {
-			try {
-				md5.close();
-			} catch (IOException ioe) {
-				throw new RuntimeException("something is broken here", ioe);
-			}
-		}
-		this.size = md5.getSize();
-		this.chksum = md5.getMD5().getMD5();
 	}
 	
 	public String getTypeCollection() {
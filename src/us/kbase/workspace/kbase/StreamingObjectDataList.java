@@ -0,0 +1,210 @@
+package us.kbase.workspace.kbase;
+
+import static us.kbase.workspace.kbase.ArgUtils.translateObjectData;
+
+import java.net.URL;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import us.kbase.auth.RefreshingToken;
+import us.kbase.typedobj.core.ObjectPaths;
+import us.kbase.workspace.ObjectData;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.ObjectIdentifier;
+import us.kbase.workspace.database.SubObjectIdentifier;
+import us.kbase.workspace.database.Workspace;
+import us.kbase.workspace.database.WorkspaceObjectData;
+import us.kbase.workspace.database.WorkspaceObjectInformation;
+import us.kbase.workspace.database.WorkspaceUser;
+import us.kbase.workspace.database.exceptions.CorruptWorkspaceDBException;
+import us.kbase.workspace.database.exceptions.InaccessibleObjectException;
+import us.kbase.workspace.database.exceptions.WorkspaceCommunicationException;
+
+/** A list of object data that fetches the data of each object from the
+ * workspace only when the object is requested, and destroys the data of the
+ * previously requested object at the same time. When the list is serialized
+ * in order, as the JSON-RPC server does when writing a response, the data of
+ * at most one object is held in memory or temporary files at any time.
+ *
+ * Permissions, versions, and the remaining object information are resolved
+ * for all the objects when the list is created, so inaccessible objects
+ * cause an error before the response is started. Only the data is fetched
+ * per object.
+ *
+ * The data of an object that has been fetched but not yet destroyed is held
+ * in the resource set provided to the list, which the caller must destroy
+ * when the list is no longer needed.
+ *
+ * Errors that occur when fetching the data of an object are thrown as
+ * ObjectStreamingExceptions, and thus may not occur until the response is
+ * being written.
+ *
+ * not thread safe
+ * @author gaprice@lbl.gov
+ *
+ */
+public class StreamingObjectDataList extends AbstractList<ObjectData> {
+
+	private final Workspace ws;
+	private final WorkspaceUser user;
+	private final List<WorkspaceObjectInformation> info;
+	// null entries get the entire object
+	private final List<ObjectPaths> paths;
+	private final Set<ByteArrayFileCache> resources;
+	private final URL handleManagerURL;
+	private final RefreshingToken handleManagerToken;
+
+	private int currentIndex = -1;
+	private ObjectData current = null;
+	private ByteArrayFileCache currentResource = null;
+
+	/** Create a list that streams the data of entire objects.
+	 * @param ws the workspace from which to fetch the objects.
+	 * @param user the user fetching the objects.
+	 * @param loi the objects to fetch.
+	 * @param resources the set in which to hold the data of the object
+	 * currently in use.
+	 * @param handleManagerURL the url of the handle manager.
+	 * @param handleManagerToken the token to use with the handle manager.
+	 * @return a new list.
+	 * @throws InaccessibleObjectException if an object is not readable by
+	 * the user.
+	 * @throws CorruptWorkspaceDBException if the database is corrupt.
+	 * @throws WorkspaceCommunicationException if the database could not be
+	 * contacted.
+	 */
+	public static StreamingObjectDataList streamObjects(
+			final Workspace ws,
+			final WorkspaceUser user,
+			final List<ObjectIdentifier> loi,
+			final Set<ByteArrayFileCache> resources,
+			final URL handleManagerURL,
+			final RefreshingToken handleManagerToken)
+			throws InaccessibleObjectException, CorruptWorkspaceDBException,
+			WorkspaceCommunicationException {
+		final List<ObjectPaths> paths = new ArrayList<ObjectPaths>();
+		for (int i = 0; i < loi.size(); i++) {
+			paths.add(null);
+		}
+		return new StreamingObjectDataList(ws, user,
+				ws.getObjectProvenance(user, loi), paths, resources,
+				handleManagerURL, handleManagerToken);
+	}
+
+	/** Create a list that streams the data of object subsets.
+	 * @param ws the workspace from which to fetch the objects.
+	 * @param user the user fetching the objects.
+	 * @param loi the object subsets to fetch.
+	 * @param resources the set in which to hold the data of the object
+	 * currently in use.
+	 * @param handleManagerURL the url of the handle manager.
+	 * @param handleManagerToken the token to use with the handle manager.
+	 * @return a new list.
+	 * @throws InaccessibleObjectException if an object is not readable by
+	 * the user.
+	 * @throws CorruptWorkspaceDBException if the database is corrupt.
+	 * @throws WorkspaceCommunicationException if the database could not be
+	 * contacted.
+	 */
+	public static StreamingObjectDataList streamObjectSubsets(
+			final Workspace ws,
+			final WorkspaceUser user,
+			final List<SubObjectIdentifier> loi,
+			final Set<ByteArrayFileCache> resources,
+			final URL handleManagerURL,
+			final RefreshingToken handleManagerToken)
+			throws InaccessibleObjectException, CorruptWorkspaceDBException,
+			WorkspaceCommunicationException {
+		final List<ObjectIdentifier> objs = new ArrayList<ObjectIdentifier>();
+		final List<ObjectPaths> paths = new ArrayList<ObjectPaths>();
+		for (final SubObjectIdentifier soi: loi) {
+			objs.add(soi.getObjectIdentifer());
+			paths.add(soi.getPaths());
+		}
+		return new StreamingObjectDataList(ws, user,
+				ws.getObjectProvenance(user, objs), paths, resources,
+				handleManagerURL, handleManagerToken);
+	}
+
+	private StreamingObjectDataList(
+			final Workspace ws,
+			final WorkspaceUser user,
+			final List<WorkspaceObjectInformation> info,
+			final List<ObjectPaths> paths,
+			final Set<ByteArrayFileCache> resources,
+			final URL handleManagerURL,
+			final RefreshingToken handleManagerToken) {
+		if (user == null || info == null || resources == null) {
+			throw new NullPointerException(
+					"user, info, and resources cannot be null");
+		}
+		this.ws = ws;
+		this.user = user;
+		this.info = info;
+		this.paths = paths;
+		this.resources = resources;
+		this.handleManagerURL = handleManagerURL;
+		this.handleManagerToken = handleManagerToken;
+	}
+
+	@Override
+	public ObjectData get(final int index) {
+		if (index < 0 || index >= info.size()) {
+			throw new IndexOutOfBoundsException("Index: " + index +
+					", Size: " + info.size());
+		}
+		if (index == currentIndex) {
+			return current;
+		}
+		release();
+		final WorkspaceObjectData wod;
+		try {
+			wod = ws.getObjectData(info.get(index), paths.get(index));
+		} catch (Exception e) {
+			throw new ObjectStreamingException(String.format(
+					"Error retrieving object #%s: %s", index + 1,
+					e.getLocalizedMessage()), e);
+		}
+		final List<WorkspaceObjectData> l =
+				new ArrayList<WorkspaceObjectData>(1);
+		l.add(wod);
+		currentResource = wod.getDataAsTokens();
+		current = translateObjectData(l, user, resources, handleManagerURL,
+				handleManagerToken, true).get(0);
+		currentIndex = index;
+		return current;
+	}
+
+	/** Destroy the data of the object currently in use, if any.
+	 */
+	public void release() {
+		if (currentResource != null) {
+			resources.remove(currentResource);
+			currentResource.destroy();
+		}
+		currentResource = null;
+		current = null;
+		currentIndex = -1;
+	}
+
+	@Override
+	public int size() {
+		return info.size();
+	}
+
+	/** Thrown when an object could not be fetched while streaming.
+	 * @author gaprice@lbl.gov
+	 *
+	 */
+	public static class ObjectStreamingException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		public ObjectStreamingException(final String message,
+				final Throwable cause) {
+			super(message, cause);
+		}
+	}
+}
@@ -155,6 +155,27 @@ public class WorkspaceAdministration {
 			final ListWorkspaceInfoParams params = getParams(cmd, ListWorkspaceInfoParams.class);
 			return wsmeth.listWorkspaceInfo(params, getUser(cmd, token));
 		}
+		if ("getCacheStatistics".equals(fn)) {
+			return ws.getCacheStatistics();
+		}
+		if ("buildReferenceIndex".equals(fn)) {
+			return ws.buildReferenceIndex(true);
+		}
+		if ("getReferenceIndexStatus".equals(fn)) {
+			return ws.buildReferenceIndex(false);
+		}
+		if ("recompressBlobs".equals(fn)) {
+			return ws.recompressBlobs(true);
+		}
+		if ("getBlobRecompressionStatus".equals(fn)) {
+			return ws.recompressBlobs(false);
+		}
+		if ("getBlobReplicationStatus".equals(fn)) {
+			return ws.getBlobReplicationStatus();
+		}
+		if ("getBlobTransferStatistics".equals(fn)) {
+			return ws.getBlobTransferStatistics();
+		}
 		if ("listWorkspaceOwners".equals(fn)) {
 			return usersToStrings(ws.getAllWorkspaceOwners());
 		}
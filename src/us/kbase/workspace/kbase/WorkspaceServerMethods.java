@@ -10,20 +10,26 @@ import static us.kbase.workspace.kbase.ArgUtils.parseDate;
 import static us.kbase.workspace.kbase.KBaseIdentifierFactory.processWorkspaceIdentifier;
 import static us.kbase.workspace.kbase.KBasePermissions.translatePermission;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.net.UnknownHostException;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.codec.binary.Base64;
+
 import us.kbase.auth.AuthException;
 import us.kbase.auth.AuthToken;
 import us.kbase.auth.ConfigurableAuthService;
+import us.kbase.common.service.JsonTokenStream;
 import us.kbase.common.service.Tuple11;
 import us.kbase.common.service.Tuple9;
+import us.kbase.common.service.UObject;
 import us.kbase.typedobj.core.TypeDefId;
 import us.kbase.typedobj.exceptions.NoSuchPrivilegeException;
 import us.kbase.typedobj.exceptions.TypeStorageException;
@@ -39,6 +45,7 @@ import us.kbase.workspace.SaveObjectsParams;
 import us.kbase.workspace.SetGlobalPermissionsParams;
 import us.kbase.workspace.SetPermissionsParams;
 import us.kbase.workspace.WorkspaceIdentity;
+import us.kbase.workspace.database.ChunkedUploadManager;
 import us.kbase.workspace.database.ObjectIDNoWSNoVer;
 import us.kbase.workspace.database.ObjectInformation;
 import us.kbase.workspace.database.Permission;
@@ -51,6 +58,7 @@ import us.kbase.workspace.database.WorkspaceSaveObject;
 import us.kbase.workspace.database.WorkspaceUser;
 import us.kbase.workspace.database.exceptions.CorruptWorkspaceDBException;
 import us.kbase.workspace.database.exceptions.NoSuchObjectException;
+import us.kbase.workspace.database.exceptions.NoSuchUploadException;
 import us.kbase.workspace.database.exceptions.NoSuchWorkspaceException;
 import us.kbase.workspace.database.exceptions.PreExistingWorkspaceException;
 import us.kbase.workspace.database.exceptions.WorkspaceCommunicationException;
@@ -62,6 +70,7 @@ public class WorkspaceServerMethods {
 	final private URL handleServiceUrl;
 	final private int maximumIDCount;
 	final private ConfigurableAuthService auth;
+	final private ChunkedUploadManager uploads;
 	
 	public WorkspaceServerMethods(
 			final Workspace ws,
@@ -72,6 +81,7 @@ public class WorkspaceServerMethods {
 		this.handleServiceUrl = handleServiceUrl;
 		this.maximumIDCount = maximumIDCount;
 		this.auth = auth;
+		uploads = new ChunkedUploadManager(ws.getTempFilesManager());
 	}
 
 	public Tuple9<Long, String, String, String, Long, String, String, String, Map<String, String>>
@@ -165,7 +175,7 @@ public class WorkspaceServerMethods {
 			WorkspaceAuthorizationException, NoSuchObjectException,
 			CorruptWorkspaceDBException, NoSuchWorkspaceException,
 			TypedObjectValidationException, TypeStorageException,
-			IOException, TypedObjectSchemaException {
+			IOException, TypedObjectSchemaException, NoSuchUploadException {
 
 		checkAddlArgs(params.getAdditionalProperties(), params.getClass());
 		final WorkspaceIdentifier wsi = processWorkspaceIdentifier(
@@ -175,54 +185,133 @@ public class WorkspaceServerMethods {
 		if (params.getObjects().isEmpty()) {
 			throw new IllegalArgumentException("No data provided");
 		}
-		for (ObjectSaveData d: params.getObjects()) {
-			checkAddlArgs(d.getAdditionalProperties(), d.getClass());
-			ObjectIDNoWSNoVer oi = null;
-			if (d.getName() != null || d.getObjid() != null) {
-				 oi = ObjectIDNoWSNoVer.create(d.getName(), d.getObjid());
-			}
-			String errprefix = "Object ";
-			if (oi == null) {
-				errprefix += count;
-			} else {
-				errprefix += count + ", " + oi.getIdentifierString() + ",";
-			}
-			if (d.getData() == null) {
-				throw new IllegalArgumentException(errprefix + " has no data");
+		// uploads claimed for this save and the streams reading them
+		final List<String> claimed = new LinkedList<String>();
+		final List<JsonTokenStream> uploadStreams =
+				new LinkedList<JsonTokenStream>();
+		boolean saved = false;
+		try {
+			for (ObjectSaveData d: params.getObjects()) {
+				checkAddlArgs(d.getAdditionalProperties(), d.getClass());
+				ObjectIDNoWSNoVer oi = null;
+				if (d.getName() != null || d.getObjid() != null) {
+					 oi = ObjectIDNoWSNoVer.create(d.getName(), d.getObjid());
+				}
+				String errprefix = "Object ";
+				if (oi == null) {
+					errprefix += count;
+				} else {
+					errprefix += count + ", " + oi.getIdentifierString() + ",";
+				}
+				if (d.getData() == null && d.getUploadId() == null) {
+					throw new IllegalArgumentException(errprefix + " has no data");
+				}
+				if (d.getData() != null && d.getUploadId() != null) {
+					throw new IllegalArgumentException(errprefix +
+							" has both data and an upload id");
+				}
+				TypeDefId t;
+				try {
+					t = TypeDefId.fromTypeString(d.getType());
+				} catch (IllegalArgumentException iae) {
+					throw new IllegalArgumentException(errprefix + " type error: "
+							+ iae.getLocalizedMessage(), iae);
+				}
+				final Provenance p = processProvenance(user,
+						d.getProvenance());
+				final boolean hidden = longToBoolean(d.getHidden());
+				final UObject data;
+				if (d.getUploadId() != null) {
+					final File f;
+					try {
+						f = uploads.claimUpload(user, d.getUploadId());
+					} catch (IllegalArgumentException iae) {
+						throw new IllegalArgumentException(errprefix +
+								" upload error: " + iae.getLocalizedMessage(),
+								iae);
+					}
+					claimed.add(d.getUploadId());
+					final JsonTokenStream jts = new JsonTokenStream(f);
+					uploadStreams.add(jts);
+					data = new UObject(jts, null);
+				} else {
+					data = d.getData();
+				}
+				try {
+					if (oi == null) {
+						woc.add(new WorkspaceSaveObject(data,
+								t, d.getMeta(), p, hidden));
+					} else {
+						woc.add(new WorkspaceSaveObject(oi,
+								data, t, d.getMeta(), p,
+								hidden));
+					}
+				} catch (IllegalArgumentException iae) {
+					throw new IllegalArgumentException(errprefix + " save error: "
+							+ iae.getLocalizedMessage(), iae);
+				}
+				count++;
 			}
-			TypeDefId t;
-			try {
-				t = TypeDefId.fromTypeString(d.getType());
-			} catch (IllegalArgumentException iae) {
-				throw new IllegalArgumentException(errprefix + " type error: "
-						+ iae.getLocalizedMessage(), iae);
+			params.setObjects(null); 
+			final IdReferenceHandlerSetFactory fac =
+					new IdReferenceHandlerSetFactory(maximumIDCount);
+			fac.addFactory(new HandleIdHandlerFactory(handleServiceUrl,
+					token));
+			
+			final List<ObjectInformation> meta = ws.saveObjects(user, wsi, woc, fac);
+			saved = true;
+			return objInfoToTuple(meta, true);
+		} finally {
+			for (final JsonTokenStream jts: uploadStreams) {
+				try {
+					jts.close();
+				} catch (IOException ioe) {
+					//nothing to be done
+				}
 			}
-			final Provenance p = processProvenance(user,
-					d.getProvenance());
-			final boolean hidden = longToBoolean(d.getHidden());
-			try {
-				if (oi == null) {
-					woc.add(new WorkspaceSaveObject(d.getData(),
-							t, d.getMeta(), p, hidden));
+			// a failed save leaves the uploads available for another try
+			for (final String id: claimed) {
+				if (saved) {
+					uploads.removeUpload(user, id);
 				} else {
-					woc.add(new WorkspaceSaveObject(oi,
-							d.getData(), t, d.getMeta(), p,
-							hidden));
+					uploads.releaseUpload(user, id);
 				}
-			} catch (IllegalArgumentException iae) {
-				throw new IllegalArgumentException(errprefix + " save error: "
-						+ iae.getLocalizedMessage(), iae);
 			}
-			count++;
 		}
-		params.setObjects(null); 
-		final IdReferenceHandlerSetFactory fac =
-				new IdReferenceHandlerSetFactory(maximumIDCount);
-		fac.addFactory(new HandleIdHandlerFactory(handleServiceUrl,
-				token));
-		
-		final List<ObjectInformation> meta = ws.saveObjects(user, wsi, woc, fac); 
-		return objInfoToTuple(meta, true);
+	}
+	
+	public String startUpload(final Long chunkSize, final WorkspaceUser user) {
+		if (chunkSize == null) {
+			throw new IllegalArgumentException("chunk_size cannot be null");
+		}
+		return uploads.startUpload(user, chunkSize);
+	}
+	
+	public void uploadChunk(
+			final String uploadID,
+			final Long chunk,
+			final String data,
+			final String md5,
+			final WorkspaceUser user)
+			throws NoSuchUploadException, IOException {
+		if (uploadID == null || chunk == null || data == null || md5 == null) {
+			throw new IllegalArgumentException(
+					"id, chunk, data, and md5 cannot be null");
+		}
+		uploads.addChunk(user, uploadID, chunk, Base64.decodeBase64(data),
+				md5, ws.getResourceConfig().getMaxObjectSize());
+	}
+	
+	public List<Long> getUploadChunks(
+			final String uploadID,
+			final WorkspaceUser user)
+			throws NoSuchUploadException {
+		return uploads.getReceivedChunks(user, uploadID);
+	}
+	
+	public void abortUpload(final String uploadID, final WorkspaceUser user)
+			throws NoSuchUploadException {
+		uploads.removeUpload(user, uploadID);
 	}
 	
 	public void grantModuleOwnership(final GrantModuleOwnershipParams params,
@@ -0,0 +1,106 @@
+package us.kbase.workspace.test.database;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import us.kbase.typedobj.core.TempFilesManager;
+import us.kbase.workspace.database.ChunkedUploadManager;
+import us.kbase.workspace.database.WorkspaceUser;
+import us.kbase.workspace.test.WorkspaceTestCommon;
+
+public class ChunkedUploadManagerTest {
+
+	private static final WorkspaceUser USER1 = new WorkspaceUser("user1");
+	private static final WorkspaceUser USER2 = new WorkspaceUser("user2");
+	private static final WorkspaceUser USER3 = new WorkspaceUser("user3");
+
+	private static TempFilesManager tfm;
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		final File tempDir = new File(WorkspaceTestCommon.getTempDir());
+		tempDir.mkdirs();
+		tfm = new TempFilesManager(tempDir);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		tfm.cleanup();
+	}
+
+	@Test
+	public void userLimit() throws Exception {
+		ChunkedUploadManager cum = new ChunkedUploadManager(tfm,
+				ChunkedUploadManager.DEFAULT_TIMEOUT, 2, 10);
+		String id = cum.startUpload(USER1, 10);
+		cum.startUpload(USER1, 10);
+		failStartUpload(cum, USER1, "User user1 already has the maximum " +
+				"of 2 uploads in progress. Complete or abort an upload " +
+				"before starting another");
+		assertThat("no temp file for failed upload",
+				tfm.getTempFileList().size(), is(2));
+
+		cum.startUpload(USER2, 10); // other users are unaffected
+		cum.removeUpload(USER1, id);
+		cum.startUpload(USER1, 10);
+		assertThat("correct upload count", cum.getUploadCount(), is(3));
+	}
+
+	@Test
+	public void serverLimit() throws Exception {
+		ChunkedUploadManager cum = new ChunkedUploadManager(tfm,
+				ChunkedUploadManager.DEFAULT_TIMEOUT, 2, 3);
+		cum.startUpload(USER1, 10);
+		cum.startUpload(USER1, 10);
+		String id = cum.startUpload(USER2, 10);
+		failStartUpload(cum, USER3, "The server already has the maximum " +
+				"of 3 uploads in progress. Please try again later");
+		cum.removeUpload(USER2, id);
+		cum.startUpload(USER3, 10);
+		assertThat("correct upload count", cum.getUploadCount(), is(3));
+	}
+
+	@Test
+	public void expiredUploadsNotCounted() throws Exception {
+		ChunkedUploadManager cum = new ChunkedUploadManager(tfm, 1, 1, 1);
+		cum.startUpload(USER1, 10);
+		Thread.sleep(10);
+		cum.startUpload(USER1, 10); // the first upload expired
+	}
+
+	@Test
+	public void badLimits() throws Exception {
+		try {
+			new ChunkedUploadManager(tfm, 1, 0, 1);
+			fail("created manager with bad limits");
+		} catch (IllegalArgumentException e) {
+			assertThat("correct exception message", e.getLocalizedMessage(),
+					is("upload limits must be greater than zero"));
+		}
+		try {
+			new ChunkedUploadManager(tfm, 1, 1, 0);
+			fail("created manager with bad limits");
+		} catch (IllegalArgumentException e) {
+			assertThat("correct exception message", e.getLocalizedMessage(),
+					is("upload limits must be greater than zero"));
+		}
+	}
+
+	private void failStartUpload(ChunkedUploadManager cum, WorkspaceUser user,
+			String exp) {
+		try {
+			cum.startUpload(user, 10);
+			fail("started upload over the limit");
+		} catch (IllegalArgumentException e) {
+			assertThat("correct exception message", e.getLocalizedMessage(),
+					is(exp));
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package us.kbase.workspace.test.database.mongo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import us.kbase.typedobj.core.Writable;
+import us.kbase.workspace.database.mongo.BlobCodec;
+
+public class BlobCodecTest {
+
+	private static final String DATA =
+			"{\"this is a blob\":\"yo yo yo yo yo yo yo yo yo yo\"}";
+
+	@Test
+	public void getCodec() throws Exception {
+		assertThat("null is no codec", BlobCodec.getCodec(null),
+				is(BlobCodec.NONE));
+		assertThat("got codec", BlobCodec.getCodec("none"),
+				is(BlobCodec.NONE));
+		assertThat("got codec", BlobCodec.getCodec("gzip"),
+				is(BlobCodec.GZIP));
+		try {
+			BlobCodec.getCodec("lzma");
+			fail("got non-existant codec");
+		} catch (IllegalArgumentException iae) {
+			assertThat("incorrect exception message",
+					iae.getLocalizedMessage(), is("No such blob codec: lzma"));
+		}
+	}
+
+	@Test
+	public void roundTrip() throws Exception {
+		byte[] raw = encode(BlobCodec.NONE, DATA);
+		assertThat("blob is not encoded", new String(raw, "UTF-8"), is(DATA));
+		assertThat("incorrect decoded data", decode(raw), is(DATA));
+
+		raw = encode(BlobCodec.GZIP, DATA);
+		assertThat("blob is encoded", raw[0], is((byte) 0));
+		assertThat("incorrect decoded data", decode(raw), is(DATA));
+	}
+
+	@Test
+	public void shortBlobs() throws Exception {
+		// blobs shorter than the header are unencoded
+		for (String s: Arrays.asList("", "{", "{}", "[1]")) {
+			assertThat("incorrect decoded data",
+					decode(encode(BlobCodec.NONE, s)), is(s));
+		}
+		assertThat("incorrect decoded data",
+				decode(encode(BlobCodec.GZIP, "")), is(""));
+	}
+
+	@Test
+	public void truncatedGzip() throws Exception {
+		final byte[] raw = encode(BlobCodec.GZIP, DATA);
+		// truncate in the trailer, the data, and the gzip header
+		for (int len: Arrays.asList(raw.length - 1, raw.length / 2, 7)) {
+			try {
+				decode(Arrays.copyOf(raw, len));
+				fail("decoded truncated blob");
+			} catch (EOFException eofe) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void unknownCodec() throws Exception {
+		final byte[] raw = encode(BlobCodec.GZIP, DATA);
+		raw[4] = 42;
+		try {
+			BlobCodec.decode(new ByteArrayInputStream(raw));
+			fail("decoded blob with unknown codec");
+		} catch (IOException ioe) {
+			assertThat("incorrect exception message",
+					ioe.getLocalizedMessage(),
+					is("Blob was written with an unknown codec: 42"));
+		}
+	}
+
+	private static byte[] encode(final BlobCodec codec, final String data)
+			throws IOException {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		codec.write(stringToWriteable(data), baos);
+		return baos.toByteArray();
+	}
+
+	private static String decode(final byte[] raw) throws IOException {
+		return IOUtils.toString(BlobCodec.decode(
+				new ByteArrayInputStream(raw)), "UTF-8");
+	}
+
+	private static Writable stringToWriteable(final String s) {
+		return new Writable() {
+			@Override
+			public void write(OutputStream w) throws IOException {
+				w.write(s.getBytes("UTF-8"));
+			}
+			@Override
+			public void releaseResources() throws IOException {
+			}
+		};
+	}
+}
@@ -0,0 +1,295 @@
+package us.kbase.workspace.test.database.mongo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import us.kbase.typedobj.core.MD5;
+import us.kbase.typedobj.core.TempFilesManager;
+import us.kbase.typedobj.core.Writable;
+import us.kbase.workspace.database.ByteArrayFileCacheManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.exceptions.FileCacheIOException;
+import us.kbase.workspace.database.exceptions.FileCacheLimitExceededException;
+import us.kbase.workspace.database.mongo.BlobStore;
+import us.kbase.workspace.database.mongo.CachingBlobStore;
+import us.kbase.workspace.database.mongo.exceptions.NoSuchBlobException;
+import us.kbase.workspace.test.WorkspaceTestCommon;
+
+public class CachingBlobStoreTest {
+
+	private static TempFilesManager tfm;
+
+	private static final MD5 MD1 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa1");
+	private static final MD5 MD2 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa2");
+	private static final MD5 MD3 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa3");
+
+	private CountingBlobStore backend;
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		tfm = new TempFilesManager(new File(WorkspaceTestCommon.getTempDir()));
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		tfm.cleanup();
+		backend = new CountingBlobStore();
+		backend.saveBlob(MD1, stringToWriteable("\"0123456789\""), true);
+		backend.saveBlob(MD2, stringToWriteable("\"abcdefghij\""), false);
+		backend.saveBlob(MD3, stringToWriteable("\"ABCDEFGHIJ\""), true);
+	}
+
+	@Test
+	public void disabled() throws Exception {
+		CachingBlobStore cbs = new CachingBlobStore(backend, tfm, 0, 0);
+		assertThat("correct store type", cbs.getStoreType(), is("Counting"));
+		checkBlob(cbs.getBlob(MD1, newBAFCMan()), "\"0123456789\"", true);
+		checkBlob(cbs.getBlob(MD1, newBAFCMan()), "\"0123456789\"", true);
+		assertThat("backend called twice", backend.gets, is(2));
+		assertThat("no hits recorded", cbs.getStatistics().get("hits"), is(0L));
+	}
+
+	@Test
+	public void memoryHit() throws Exception {
+		CachingBlobStore cbs = new CachingBlobStore(backend, tfm, 100, 0);
+		ByteArrayFileCache b1 = cbs.getBlob(MD1, newBAFCMan());
+		ByteArrayFileCache b2 = cbs.getBlob(MD1, newBAFCMan());
+		checkBlob(b1, "\"0123456789\"", true);
+		checkBlob(b2, "\"0123456789\"", true);
+		assertThat("backend called once", backend.gets, is(1));
+		Map<String, Long> stats = cbs.getStatistics();
+		assertThat("correct hits", stats.get("hits"), is(1L));
+		assertThat("correct misses", stats.get("misses"), is(1L));
+		assertThat("correct mem blobs", stats.get("memoryblobs"), is(1L));
+		assertThat("correct mem bytes", stats.get("memorybytes"), is(12L));
+		b1.destroy();
+		checkBlob(cbs.getBlob(MD1, newBAFCMan()), "\"0123456789\"", true);
+		assertThat("backend called once", backend.gets, is(1));
+	}
+
+	@Test
+	public void evictLeastRecentlyUsed() throws Exception {
+		CachingBlobStore cbs = new CachingBlobStore(backend, tfm, 24, 0);
+		cbs.getBlob(MD1, newBAFCMan()).destroy();
+		cbs.getBlob(MD2, newBAFCMan()).destroy();
+		cbs.getBlob(MD1, newBAFCMan()).destroy();
+		cbs.getBlob(MD3, newBAFCMan()).destroy(); // evicts MD2
+		assertThat("backend calls", backend.gets, is(3));
+		cbs.getBlob(MD1, newBAFCMan()).destroy();
+		assertThat("backend calls", backend.gets, is(3));
+		checkBlob(cbs.getBlob(MD2, newBAFCMan()), "\"abcdefghij\"", false);
+		assertThat("backend calls", backend.gets, is(4));
+		assertThat("correct evictions", cbs.getStatistics().get("evictions"),
+				is(2L));
+	}
+
+	@Test
+	public void diskTier() throws Exception {
+		CachingBlobStore cbs = new CachingBlobStore(backend, tfm, 5, 12);
+		ByteArrayFileCache b1 = cbs.getBlob(MD1, newBAFCMan());
+		assertThat("on disk", b1.isOnDisk(), is(true));
+		assertThat("one temp file", tfm.getTempFileList().size(), is(1));
+		ByteArrayFileCache b2 = cbs.getBlob(MD1, newBAFCMan());
+		checkBlob(b1, "\"0123456789\"", true);
+		checkBlob(b2, "\"0123456789\"", true);
+		assertThat("backend called once", backend.gets, is(1));
+
+		// MD1 evicted but still in use
+		cbs.getBlob(MD2, newBAFCMan()).destroy();
+		assertThat("two temp files", tfm.getTempFileList().size(), is(2));
+		b1.destroy();
+		assertThat("two temp files", tfm.getTempFileList().size(), is(2));
+		b2.destroy();
+		assertThat("one temp file", tfm.getTempFileList().size(), is(1));
+
+		cbs.setLimits(5, 0);
+		assertThat("no temp files", tfm.isEmpty(), is(true));
+		assertThat("no disk bytes", cbs.getStatistics().get("diskbytes"),
+				is(0L));
+	}
+
+	@Test
+	public void tooBigToCache() throws Exception {
+		CachingBlobStore cbs = new CachingBlobStore(backend, tfm, 11, 0);
+		checkBlob(cbs.getBlob(MD1, newBAFCMan()), "\"0123456789\"", true);
+		checkBlob(cbs.getBlob(MD1, newBAFCMan()), "\"0123456789\"", true);
+		assertThat("correct uncacheable",
+				cbs.getStatistics().get("uncacheable"), is(2L));
+		assertThat("nothing cached", cbs.getStatistics().get("memoryblobs"),
+				is(0L));
+		assertThat("fetched once per call", backend.gets, is(2));
+	}
+
+	@Test
+	public void countedAgainstCaller() throws Exception {
+		CachingBlobStore cbs = new CachingBlobStore(backend, tfm, 100, 0);
+		ByteArrayFileCacheManager man = newBAFCMan();
+		cbs.getBlob(MD1, man).destroy();
+		assertThat("miss counted once", man.getSizeInMem(), is(12));
+		man = newBAFCMan();
+		cbs.getBlob(MD1, man).destroy();
+		assertThat("hit counted", man.getSizeInMem(), is(12));
+		assertThat("hit not counted on disk", man.getSizeOnDisk(), is(0L));
+		
+		// a hit that doesn't fit in memory is counted as if spilled to disk
+		man = new ByteArrayFileCacheManager(11, 100, tfm);
+		cbs.getBlob(MD1, man).destroy();
+		assertThat("hit not counted in memory", man.getSizeInMem(), is(0));
+		assertThat("hit counted on disk", man.getSizeOnDisk(), is(12L));
+		
+		try {
+			cbs.getBlob(MD1, new ByteArrayFileCacheManager(11, 11, tfm));
+			fail("got blob larger than limits");
+		} catch (FileCacheLimitExceededException e) {
+			assertThat("correct exception message", e.getLocalizedMessage(),
+					is("Disk limit exceeded for file cache: 11"));
+		}
+		assertThat("backend called once", backend.gets, is(1));
+		assertThat("correct hits", cbs.getStatistics().get("hits"), is(3L));
+		cbs.setLimits(0, 0);
+		assertThat("all shared caches released",
+				cbs.getStatistics().get("memorybytes"), is(0L));
+	}
+
+	@Test
+	public void missLimitedByCaller() throws Exception {
+		CachingBlobStore cbs = new CachingBlobStore(backend, tfm, 100, 100);
+		try {
+			cbs.getBlob(MD1, new ByteArrayFileCacheManager(11, 11, tfm));
+			fail("got blob larger than limits");
+		} catch (FileCacheLimitExceededException e) {
+			assertThat("correct exception message", e.getLocalizedMessage(),
+					is("Disk limit exceeded for file cache: 11"));
+		}
+		assertThat("nothing cached", cbs.getStatistics().get("memoryblobs"),
+				is(0L));
+		assertThat("no temp files", tfm.isEmpty(), is(true));
+		
+		// the blob doesn't fit in the caller's memory, so it's fetched to disk
+		final ByteArrayFileCacheManager man =
+				new ByteArrayFileCacheManager(11, 100, tfm);
+		checkBlob(cbs.getBlob(MD1, man), "\"0123456789\"", true);
+		assertThat("miss not counted in memory", man.getSizeInMem(), is(0));
+		assertThat("miss counted on disk", man.getSizeOnDisk(), is(12L));
+		assertThat("cached on disk", cbs.getStatistics().get("diskblobs"),
+				is(1L));
+	}
+
+	@Test
+	public void removeBlob() throws Exception {
+		CachingBlobStore cbs = new CachingBlobStore(backend, tfm, 100, 0);
+		cbs.getBlob(MD1, newBAFCMan()).destroy();
+		cbs.removeBlob(MD1);
+		assertThat("no mem bytes", cbs.getStatistics().get("memorybytes"),
+				is(0L));
+		try {
+			cbs.getBlob(MD1, newBAFCMan());
+			fail("got removed blob");
+		} catch (NoSuchBlobException nsbe) {
+			assertThat("correct exception message",
+					nsbe.getLocalizedMessage(), is("No blob " + MD1.getMD5()));
+		}
+	}
+
+	@Test
+	public void badLimits() throws Exception {
+		try {
+			new CachingBlobStore(backend, tfm, -1, 0);
+			fail("created cache with bad limits");
+		} catch (IllegalArgumentException iae) {
+			assertThat("correct exception message",
+					iae.getLocalizedMessage(),
+					is("Cache limits cannot be negative"));
+		}
+	}
+
+	private ByteArrayFileCacheManager newBAFCMan() {
+		return new ByteArrayFileCacheManager(16000000, 2000000000L, tfm);
+	}
+
+	private void checkBlob(ByteArrayFileCache d, String expected,
+			boolean sorted) throws Exception {
+		assertThat("correct sort", d.isSorted(), is(sorted));
+		assertThat("correct data", IOUtils.toString(d.getJSON()),
+				is(expected));
+	}
+
+	private static Writable stringToWriteable(final String s) {
+		return new Writable() {
+			@Override
+			public void write(OutputStream w) throws IOException {
+				w.write(s.getBytes("UTF-8"));
+			}
+			@Override
+			public void releaseResources() throws IOException {
+			}
+		};
+	}
+
+	private static class CountingBlobStore implements BlobStore {
+
+		private final Map<String, byte[]> data = new HashMap<String, byte[]>();
+		private final Map<String, Boolean> sorted =
+				new HashMap<String, Boolean>();
+		private int gets = 0;
+
+		@Override
+		public void saveBlob(MD5 md5, Writable d, boolean sort) {
+			final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			try {
+				d.write(baos);
+			} catch (IOException ioe) {
+				throw new RuntimeException(ioe);
+			}
+			data.put(md5.getMD5(), baos.toByteArray());
+			sorted.put(md5.getMD5(), sort);
+		}
+
+		@Override
+		public ByteArrayFileCache getBlob(MD5 md5,
+				ByteArrayFileCacheManager bafcMan)
+				throws NoSuchBlobException, FileCacheLimitExceededException,
+				FileCacheIOException {
+			gets++;
+			if (!data.containsKey(md5.getMD5())) {
+				throw new NoSuchBlobException("No blob " + md5.getMD5());
+			}
+			return bafcMan.createBAFC(new ByteArrayInputStream(
+					data.get(md5.getMD5())), true, sorted.get(md5.getMD5()));
+		}
+
+		@Override
+		public void removeBlob(MD5 md5) {
+			data.remove(md5.getMD5());
+		}
+
+		@Override
+		public String getExternalIdentifier(MD5 md5) {
+			return null;
+		}
+
+		@Override
+		public long recodeBlobs() {
+			return 0;
+		}
+
+		@Override
+		public String getStoreType() {
+			return "Counting";
+		}
+	}
+}
@@ -0,0 +1,207 @@
+package us.kbase.workspace.test.database.mongo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import us.kbase.typedobj.core.MD5;
+import us.kbase.typedobj.core.TempFilesManager;
+import us.kbase.typedobj.core.Writable;
+import us.kbase.workspace.database.ByteArrayFileCacheManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.mongo.BlobCodec;
+import us.kbase.workspace.database.mongo.FileSystemBackend;
+import us.kbase.workspace.database.mongo.FileSystemBackend.FsyncPolicy;
+import us.kbase.workspace.database.mongo.exceptions.BlobStoreException;
+import us.kbase.workspace.test.WorkspaceTestCommon;
+
+public class FileSystemBackendTest {
+
+
+	private static FileSystemBackend fsb;
+	private static File root;
+	private static TempFilesManager tfm;
+
+	private static final String a32 = "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa";
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		final File tempDir = new File(WorkspaceTestCommon.getTempDir());
+		tempDir.mkdirs();
+		tfm = new TempFilesManager(tempDir);
+		root = Files.createTempDirectory(tempDir.toPath(),
+				"FileSystemBackendTest").toFile();
+		System.out.println("Using blob directory " + root);
+		fsb = new FileSystemBackend(root);
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception {
+		if (root != null && WorkspaceTestCommon.getDeleteTempFiles()) {
+			FileUtils.deleteDirectory(root);
+		}
+	}
+
+	@Test
+	public void storetype() throws Exception {
+		assertThat("correct store type", fsb.getStoreType(),
+				is("FileSystem"));
+	}
+
+	@Test
+	public void badInput() throws Exception {
+		try {
+			fsb.saveBlob(new MD5(a32), null, true);
+			fail("saved bad input");
+		} catch (NullPointerException npe) {
+			assertThat("correct excepction message", npe.getLocalizedMessage(),
+					is("Arguments cannot be null"));
+		}
+
+		try {
+			fsb.saveBlob(null, stringToWriteable("foo"), true);
+			fail("saved bad input");
+		} catch (NullPointerException npe) {
+			assertThat("correct excepction message", npe.getLocalizedMessage(),
+					is("Arguments cannot be null"));
+		}
+	}
+
+	@Test
+	public void saveAndGetBlob() throws Exception {
+		MD5 md1 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa1");
+		String data = "this is a blob yo";
+		fsb.saveBlob(md1, stringToWriteable(data), true);
+		assertThat("blob stored in fan out directory", FileUtils.readFileToString(
+				new File(root, "aa/aa/" + md1.getMD5())), is(data));
+		assertThat("no temp files left", new File(root, "tmp").list().length,
+				is(0));
+		MD5 md1copy = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa1");
+		ByteArrayFileCache d = fsb.getBlob(md1copy,
+				new ByteArrayFileCacheManager(16000000, 2000000000L, tfm));
+		assertThat("data returned marked as sorted", d.isSorted(), is(true));
+		String returned = IOUtils.toString(d.getJSON());
+		assertThat("Didn't get same data back from store", returned, is(data));
+		assertTrue("Filesystem has no external ID", fsb.getExternalIdentifier(md1copy) == null);
+		fsb.saveBlob(md1, stringToWriteable(data), true); //should be able to save the same thing twice with no error
+
+		fsb.saveBlob(md1, stringToWriteable(data), false); //this should do nothing
+		assertThat("sorted still true", fsb.getBlob(md1copy,
+				new ByteArrayFileCacheManager(16000000, 2000000000L, tfm))
+					.isSorted(), is(true));
+
+		MD5 md2 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa2");
+		String data2 = "this is also a blob yo";
+		fsb.saveBlob(md2, stringToWriteable(data2), false);
+		d = fsb.getBlob(md2,
+				new ByteArrayFileCacheManager(16000000, 2000000000L, tfm));
+		assertThat("data returned marked as unsorted", d.isSorted(), is(false));
+		assertThat("Didn't get same data back from store",
+				IOUtils.toString(d.getJSON()), is(data2));
+
+		fsb.removeBlob(md1);
+		fsb.removeBlob(md2);
+		assertThat("blob removed", new File(root, "aa/aa/" + md1.getMD5())
+				.exists(), is(false));
+		assertThat("blob removed", new File(root, "aa/aa/" + md2.getMD5() +
+				".unsorted").exists(), is(false));
+	}
+
+	@Test
+	public void getBlobOnDisk() throws Exception {
+		MD5 md1 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa4");
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			sb.append("this is a large blob yo");
+		}
+		String data = sb.toString();
+		FileSystemBackend synced = new FileSystemBackend(root,
+				FsyncPolicy.FILE, BlobCodec.NONE);
+		synced.saveBlob(md1, stringToWriteable(data), true);
+		for (FileSystemBackend b: Arrays.asList(synced, fsb)) {
+			ByteArrayFileCache d = b.getBlob(md1,
+					new ByteArrayFileCacheManager(1000, 2000000000L, tfm));
+			assertThat("data stored on disk", d.isOnDisk(), is(true));
+			assertThat("Didn't get same data back from store",
+					IOUtils.toString(d.getJSON()), is(data));
+			d.destroy();
+		}
+		fsb.removeBlob(md1);
+	}
+
+	@Test
+	public void saveAndGetCompressedBlob() throws Exception {
+		FileSystemBackend gz = new FileSystemBackend(root, FsyncPolicy.NONE,
+				BlobCodec.GZIP);
+		MD5 md1 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa3");
+		File f = new File(root, "aa/aa/" + md1.getMD5());
+		String data = "{\"this is a blob\":\"yo yo yo yo yo yo yo yo yo yo\"}";
+		gz.saveBlob(md1, stringToWriteable(data), true);
+		byte[] raw = FileUtils.readFileToByteArray(f);
+		assertThat("blob is encoded", raw[0], is((byte) 0));
+		// blobs are readable regardless of the current codec
+		for (FileSystemBackend b: Arrays.asList(gz, fsb)) {
+			ByteArrayFileCache d = b.getBlob(md1,
+					new ByteArrayFileCacheManager(16000000, 2000000000L, tfm));
+			assertThat("data returned marked as sorted", d.isSorted(), is(true));
+			String returned = IOUtils.toString(d.getJSON());
+			assertThat("Didn't get same data back from store", returned, is(data));
+		}
+
+		assertThat("nothing to recode", gz.recodeBlobs(), is(0L));
+		assertThat("recoded blob", fsb.recodeBlobs(), is(1L));
+		assertThat("blob is not encoded", FileUtils.readFileToString(f),
+				is(data));
+		ByteArrayFileCache d = gz.getBlob(md1,
+				new ByteArrayFileCacheManager(16000000, 2000000000L, tfm));
+		assertThat("data returned marked as sorted", d.isSorted(), is(true));
+		assertThat("Didn't get same data back from store",
+				IOUtils.toString(d.getJSON()), is(data));
+		assertThat("nothing to recode", fsb.recodeBlobs(), is(0L));
+
+		gz.removeBlob(md1);
+		assertThat("blob removed", f.exists(), is(false));
+	}
+
+	@Test
+	public void getNonExistantBlob() throws Exception {
+		try {
+			fsb.getBlob(new MD5(a32),
+					new ByteArrayFileCacheManager(16000000, 2000000000L, tfm));
+			fail("getblob should throw exception");
+		} catch (BlobStoreException wbe) {
+			assertThat("wrong exception message from failed getblob",
+					wbe.getLocalizedMessage(), is("Attempt to retrieve non-existant blob with chksum " + a32));
+		}
+	}
+
+	@Test
+	public void removeNonExistantBlob() throws Exception {
+		fsb.removeBlob(new MD5(a32)); //should silently not remove anything
+	}
+
+	private static Writable stringToWriteable(final String s) {
+		return new Writable() {
+			@Override
+			public void write(OutputStream w) throws IOException {
+				w.write(s.getBytes("UTF-8"));
+			}
+			@Override
+			public void releaseResources() throws IOException {
+			}
+		};
+	}
+}
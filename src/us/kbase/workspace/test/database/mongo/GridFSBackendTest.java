@@ -9,6 +9,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Paths;
+import java.util.Arrays;
 
 import org.apache.commons.io.IOUtils;
 import org.junit.AfterClass;
@@ -26,6 +27,7 @@ import us.kbase.typedobj.core.TempFilesManager;
 import us.kbase.typedobj.core.Writable;
 import us.kbase.workspace.database.ByteArrayFileCacheManager;
 import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.mongo.BlobCodec;
 import us.kbase.workspace.database.mongo.GridFSBackend;
 import us.kbase.workspace.database.mongo.exceptions.BlobStoreException;
 import us.kbase.workspace.test.WorkspaceTestCommon;
@@ -34,6 +36,7 @@ public class GridFSBackendTest {
 	
 	
 	private static GridFSBackend gfsb;
+	private static DB db;
 	private static GridFS gfs;
 	private static MongoController mongo;
 	private static TempFilesManager tfm;
@@ -49,7 +52,7 @@ public class GridFSBackendTest {
 				mongo.getTempDir());
 		WorkspaceTestCommon.stfuLoggers();
 		MongoClient mongoClient = new MongoClient("localhost:" + mongo.getServerPort());
-		DB db = mongoClient.getDB("GridFSBackendTest");
+		db = mongoClient.getDB("GridFSBackendTest");
 		gfs = new GridFS(db);
 		gfsb = new GridFSBackend(db);
 		
@@ -131,6 +134,38 @@ public class GridFSBackendTest {
 		gfsb.removeBlob(md2);
 	}
 	
+	@Test
+	public void saveAndGetCompressedBlob() throws Exception {
+		GridFSBackend gz = new GridFSBackend(db, BlobCodec.GZIP);
+		MD5 md1 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa3");
+		String data = "{\"this is a blob\":\"yo yo yo yo yo yo yo yo yo yo\"}";
+		gz.saveBlob(md1, stringToWriteable(data), true);
+		byte[] raw = IOUtils.toByteArray(gfs.findOne(md1.getMD5()).getInputStream());
+		assertThat("blob is encoded", raw[0], is((byte) 0));
+		// blobs are readable regardless of the current codec
+		for (GridFSBackend b: Arrays.asList(gz, gfsb)) {
+			ByteArrayFileCache d = b.getBlob(md1,
+					new ByteArrayFileCacheManager(16000000, 2000000000L, tfm));
+			assertThat("data returned marked as sorted", d.isSorted(), is(true));
+			String returned = IOUtils.toString(d.getJSON());
+			assertThat("Didn't get same data back from store", returned, is(data));
+		}
+		
+		assertThat("nothing to recode", gz.recodeBlobs(), is(0L));
+		assertThat("recoded blob", gfsb.recodeBlobs(), is(1L));
+		raw = IOUtils.toByteArray(gfs.findOne(md1.getMD5()).getInputStream());
+		assertThat("blob is not encoded", new String(raw, "UTF-8"), is(data));
+		ByteArrayFileCache d = gz.getBlob(md1,
+				new ByteArrayFileCacheManager(16000000, 2000000000L, tfm));
+		assertThat("data returned marked as sorted", d.isSorted(), is(true));
+		assertThat("Didn't get same data back from store",
+				IOUtils.toString(d.getJSON()), is(data));
+		assertThat("nothing to recode", gfsb.recodeBlobs(), is(0L));
+		
+		gz.removeBlob(md1);
+		assertThat("blob removed", gfs.findOne(md1.getMD5()) == null, is(true));
+	}
+	
 	@Test
 	public void getNonExistantBlob() throws Exception {
 		try {
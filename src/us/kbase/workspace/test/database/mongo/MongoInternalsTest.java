@@ -15,6 +15,8 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -29,6 +31,8 @@ import org.junit.Test;
 import us.kbase.common.service.UObject;
 import us.kbase.common.test.controllers.mongo.MongoController;
 import us.kbase.typedobj.core.AbsoluteTypeDefId;
+import us.kbase.typedobj.core.JsonOffsetIndex;
+import us.kbase.typedobj.core.JsonOffsetIndexer;
 import us.kbase.typedobj.core.TempFilesManager;
 import us.kbase.typedobj.core.TypeDefId;
 import us.kbase.typedobj.core.TypeDefName;
@@ -37,10 +41,13 @@ import us.kbase.typedobj.idref.IdReferenceType;
 import us.kbase.typedobj.idref.RemappedId;
 import us.kbase.typedobj.test.DummyTypedObjectValidationReport;
 import us.kbase.workspace.database.DefaultReferenceParser;
+import us.kbase.workspace.database.ObjectChain;
+import us.kbase.workspace.database.ObjectChainResolvedWS;
 import us.kbase.workspace.database.ObjectIDNoWSNoVer;
 import us.kbase.workspace.database.ObjectIDResolvedWS;
 import us.kbase.workspace.database.ObjectIdentifier;
 import us.kbase.workspace.database.ObjectInformation;
+import us.kbase.workspace.database.Permission;
 import us.kbase.workspace.database.Provenance;
 import us.kbase.workspace.database.Reference;
 import us.kbase.workspace.database.ResolvedSaveObject;
@@ -48,9 +55,11 @@ import us.kbase.workspace.database.ResolvedWorkspaceID;
 import us.kbase.workspace.database.ResourceUsageConfigurationBuilder;
 import us.kbase.workspace.database.Workspace;
 import us.kbase.workspace.database.WorkspaceIdentifier;
+import us.kbase.workspace.database.WorkspaceObjectData;
 import us.kbase.workspace.database.WorkspaceSaveObject;
 import us.kbase.workspace.database.WorkspaceUser;
 import us.kbase.workspace.database.exceptions.NoSuchObjectException;
+import us.kbase.workspace.database.exceptions.NoSuchReferenceException;
 import us.kbase.workspace.database.mongo.IDName;
 import us.kbase.workspace.database.mongo.MongoWorkspaceDB;
 import us.kbase.workspace.database.mongo.ObjectSavePackage;
@@ -837,6 +846,383 @@ public class MongoInternalsTest {
 		assertDateisRecent(undelete);
 	}
 
+	@Test
+	public void permissionCache() throws Exception {
+		WorkspaceUser userfoo = new WorkspaceUser("foo");
+		WorkspaceUser userbar = new WorkspaceUser("bar");
+		WorkspaceUser userbaz = new WorkspaceUser("baz");
+		WorkspaceIdentifier permcache = new WorkspaceIdentifier("permcache");
+		ws.createWorkspace(userfoo, permcache.getName(), false, null, null);
+		mwdb.setResourceUsageConfiguration(new ResourceUsageConfigurationBuilder()
+				.withPermissionCacheTTL(600).build());
+		try {
+			ResolvedWorkspaceID rwsi = mwdb.resolveWorkspace(permcache);
+			assertThat("incorrect perm", mwdb.getPermission(userbar, rwsi),
+					is(Permission.NONE));
+			mwdb.setPermissions(rwsi, Arrays.asList(userbar), Permission.WRITE);
+			assertThat("cached perm not invalidated",
+					mwdb.getPermission(userbar, rwsi), is(Permission.WRITE));
+			long hits = mwdb.getCacheStatistics().get("permissions").get("hits");
+			assertThat("incorrect perm", mwdb.getPermission(userbar, rwsi),
+					is(Permission.WRITE));
+			assertThat("perm not cached", mwdb.getCacheStatistics()
+					.get("permissions").get("hits"), is(hits + 2));
+			
+			assertThat("incorrect perm", mwdb.getPermission(userbaz, rwsi),
+					is(Permission.NONE));
+			mwdb.setGlobalPermission(rwsi, Permission.READ);
+			assertThat("cached global perm not invalidated",
+					mwdb.getPermission(userbaz, rwsi), is(Permission.READ));
+			
+			assertThat("incorrect admin", mwdb.isAdmin(userbar), is(false));
+			mwdb.addAdmin(userbar);
+			assertThat("cached admin not invalidated", mwdb.isAdmin(userbar),
+					is(true));
+			mwdb.removeAdmin(userbar);
+			assertThat("cached admin not invalidated", mwdb.isAdmin(userbar),
+					is(false));
+		} finally {
+			mwdb.setResourceUsageConfiguration(
+					new ResourceUsageConfigurationBuilder().build());
+		}
+	}
+
+	@Test
+	public void oversizedOffsetIndex() throws Exception {
+		Method saveOffsetIndex = mwdb.getClass().getDeclaredMethod(
+				"saveOffsetIndex", String.class, JsonOffsetIndex.class);
+		saveOffsetIndex.setAccessible(true);
+		
+		// long keys make an index bigger than a mongo document allows
+		StringBuilder key = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			key.append("k");
+		}
+		JsonOffsetIndexer indexer = new JsonOffsetIndexer();
+		indexer.write("{\"map\":{".getBytes("UTF-8"));
+		for (int i = 0; i < 100000; i++) {
+			indexer.write(((i == 0 ? "" : ",") + "\"" + key + i + "\":" + i)
+					.getBytes("UTF-8"));
+		}
+		indexer.write("}}".getBytes("UTF-8"));
+		JsonOffsetIndex big = indexer.getIndex();
+		assertTrue("index not oversized", big.toBytes().length > 16000000);
+		
+		String bigmd5 = "a7a8d51a1e2fa4a2bd7f9f6fcd5d4d5b";
+		saveOffsetIndex.invoke(mwdb, bigmd5, big);
+		assertThat("oversized index saved", jdb.getCollection(
+				"blobOffsetIndexes").count("{chksum: #}", bigmd5), is(0L));
+		
+		indexer = new JsonOffsetIndexer();
+		indexer.write("{\"map\":{\"a\":1}}".getBytes("UTF-8"));
+		String smallmd5 = "0f7d2f7fdc7bd2b0a2db3ca5a3a3f5d2";
+		saveOffsetIndex.invoke(mwdb, smallmd5, indexer.getIndex());
+		assertThat("index not saved", jdb.getCollection(
+				"blobOffsetIndexes").count("{chksum: #}", smallmd5), is(1L));
+	}
+
+	@Test
+	public void cloneNameCollision() throws Exception {
+		/* simulates another user saving an object to the new workspace
+		 * between the workspace creation and the object batch insert
+		 */
+		WorkspaceUser user = new WorkspaceUser("u");
+		WorkspaceIdentifier src = new WorkspaceIdentifier("clonecollidesrc");
+		WorkspaceIdentifier target = new WorkspaceIdentifier("clonecollidetarget");
+		ws.createWorkspace(user, src.getName(), false, null, null);
+		long targetid = ws.createWorkspace(user, target.getName(), false, null, null)
+				.getId();
+		Map<String, Object> data = new HashMap<String, Object>();
+		Provenance p = new Provenance(user);
+		ws.saveObjects(user, src, Arrays.asList(
+				new WorkspaceSaveObject(new ObjectIDNoWSNoVer("a"), data, SAFE_TYPE, null, p, false),
+				new WorkspaceSaveObject(new ObjectIDNoWSNoVer("b"), data, SAFE_TYPE, null, p, false),
+				new WorkspaceSaveObject(new ObjectIDNoWSNoVer("c"), data, SAFE_TYPE, null, p, false)),
+				fac);
+		ws.saveObjects(user, src, Arrays.asList(
+				new WorkspaceSaveObject(new ObjectIDNoWSNoVer("b"), data, SAFE_TYPE, null, p, false)),
+				fac);
+		ws.saveObjects(user, target, Arrays.asList(
+				new WorkspaceSaveObject(new ObjectIDNoWSNoVer("b"), data, SAFE_TYPE, null, p, false)),
+				fac);
+
+		ResolvedMongoWSID srcws = (ResolvedMongoWSID) mwdb.resolveWorkspace(src);
+		ResolvedMongoWSID targetws = (ResolvedMongoWSID) mwdb.resolveWorkspace(target);
+		List<Map<String, Object>> objs = new LinkedList<Map<String, Object>>();
+		long id = 1;
+		for (String name: Arrays.asList("a", "b", "c")) {
+			Map<String, Object> o = new HashMap<String, Object>();
+			o.put("id", id++);
+			o.put("name", name);
+			o.put("del", false);
+			o.put("hide", false);
+			objs.add(o);
+		}
+
+		Method incrementWorkspaceCounter = mwdb.getClass()
+				.getDeclaredMethod("incrementWorkspaceCounter", ResolvedMongoWSID.class,
+						int.class);
+		incrementWorkspaceCounter.setAccessible(true);
+		Method cloneObjects = mwdb.getClass()
+				.getDeclaredMethod("cloneObjects", WorkspaceUser.class,
+						ResolvedMongoWSID.class, ResolvedMongoWSID.class, List.class,
+						long.class);
+		cloneObjects.setAccessible(true);
+		long nextid = (Long) incrementWorkspaceCounter.invoke(mwdb, targetws, objs.size());
+		assertThat("incorrect first id", nextid, is(2L));
+		nextid = (Long) cloneObjects.invoke(mwdb, user, srcws, targetws, objs, nextid);
+		assertThat("incorrect next id", nextid, is(5L));
+
+		/* the ordered insert stops at b, so a is inserted in the batch and
+		 * c is inserted after re-querying the saved objects. The versions of
+		 * b are added to the existing object and its reserved id goes unused,
+		 * as with cloning one object at a time.
+		 */
+		List<ObjectInformation> info = ws.getObjectInformation(user, Arrays.asList(
+				new ObjectIdentifier(target, "a"), new ObjectIdentifier(target, "b"),
+				new ObjectIdentifier(target, "c")), false, false);
+		assertThat("incorrect id", info.get(0).getObjectId(), is(2L));
+		assertThat("incorrect version", info.get(0).getVersion(), is(1));
+		assertThat("incorrect id", info.get(1).getObjectId(), is(1L));
+		assertThat("incorrect version", info.get(1).getVersion(), is(3));
+		assertThat("incorrect id", info.get(2).getObjectId(), is(4L));
+		assertThat("incorrect version", info.get(2).getVersion(), is(1));
+		assertThat("reserved id used", jdb.getCollection("workspaceObjects")
+				.count("{ws: #, id: #}", targetid, 3), is(0L));
+		checkRefCntInit(targetid, 1, 3);
+		checkRefCntInit(targetid, 2, 1);
+		checkRefCntInit(targetid, 4, 1);
+
+		// the counter covers every id handed out, so new objects get new ids
+		assertThat("incorrect object count", ws.getWorkspaceInformation(user, target)
+				.getApproximateObjects(), is(4L));
+		ObjectInformation newobj = ws.saveObjects(user, target, Arrays.asList(
+				new WorkspaceSaveObject(data, SAFE_TYPE, null, p, false)), fac).get(0);
+		assertThat("incorrect id", newobj.getObjectId(), is(5L));
+	}
+
+	@Test
+	public void saveBatchNameCollision() throws Exception {
+		/* simulates another user saving an object with one of the names
+		 * between resolving the names and the object batch insert
+		 */
+		WorkspaceUser user = new WorkspaceUser("u");
+		WorkspaceIdentifier wsi = new WorkspaceIdentifier("savebatchcollide");
+		long wsid = ws.createWorkspace(user, wsi.getName(), false, null, null).getId();
+		Map<String, Object> data = new HashMap<String, Object>();
+		Provenance p = new Provenance(user);
+		ws.saveObjects(user, wsi, Arrays.asList(
+				new WorkspaceSaveObject(new ObjectIDNoWSNoVer("b"), data, SAFE_TYPE, null, p, false)),
+				fac);
+		ResolvedMongoWSID rwsi = (ResolvedMongoWSID) mwdb.resolveWorkspace(wsi);
+
+		Method incrementWorkspaceCounter = mwdb.getClass()
+				.getDeclaredMethod("incrementWorkspaceCounter", ResolvedMongoWSID.class,
+						int.class);
+		incrementWorkspaceCounter.setAccessible(true);
+		long id = (Long) incrementWorkspaceCounter.invoke(mwdb, rwsi, 3);
+		assertThat("incorrect first id", id, is(2L));
+
+		Constructor<ObjectSavePackage> objConst =
+				ObjectSavePackage.class.getDeclaredConstructor();
+		objConst.setAccessible(true);
+		Field wo = ObjectSavePackage.class.getDeclaredField("wo");
+		wo.setAccessible(true);
+		Map<Long, String> objects = new LinkedHashMap<Long, String>();
+		Map<Long, List<ObjectSavePackage>> pkgs =
+				new HashMap<Long, List<ObjectSavePackage>>();
+		for (String name: Arrays.asList("a", "b", "c")) {
+			ObjectSavePackage pkg = objConst.newInstance();
+			wo.set(pkg, createResolvedWSObj(name, data, p, SAFE_TYPE,
+					new AbsoluteTypeDefId(new TypeDefName("SomeModule", "AType"), 0, 1)));
+			objects.put(id, name);
+			pkgs.put(id, Arrays.asList(pkg));
+			id++;
+		}
+
+		Method saveWorkspaceObjects = mwdb.getClass()
+				.getDeclaredMethod("saveWorkspaceObjects", ResolvedMongoWSID.class,
+						Map.class, Map.class, Date.class, Map.class);
+		saveWorkspaceObjects.setAccessible(true);
+		Map<Long, IDName> unbatched = new HashMap<Long, IDName>();
+		@SuppressWarnings("unchecked")
+		Map<Long, IDName> batched = (Map<Long, IDName>) saveWorkspaceObjects
+				.invoke(mwdb, rwsi, objects, pkgs, new Date(), unbatched);
+
+		/* the ordered insert stops at b, so only a is saved in the batch. b
+		 * resolves to the existing object and c is saved on its own, the
+		 * same ids saving the objects one at a time would produce.
+		 */
+		assertThat("incorrect batched objects", batched.keySet(),
+				is((Set<Long>) new HashSet<Long>(Arrays.asList(2L))));
+		assertThat("incorrect batched object", batched.get(2L).toString(),
+				is("IDName [id=2, name=a]"));
+		assertThat("incorrect unbatched objects", unbatched.keySet(),
+				is((Set<Long>) new HashSet<Long>(Arrays.asList(3L, 4L))));
+		assertThat("incorrect unbatched object", unbatched.get(3L).toString(),
+				is("IDName [id=1, name=b]"));
+		assertThat("incorrect unbatched object", unbatched.get(4L).toString(),
+				is("IDName [id=4, name=c]"));
+		checkRefCntInit(wsid, 2, 1);
+		// unbatched objects are created without versions for the caller to increment
+		checkRefCntInit(wsid, 4, 0);
+		assertThat("reserved id used", jdb.getCollection("workspaceObjects")
+				.count("{ws: #, id: #}", wsid, 3), is(0L));
+	}
+
+	@Test
+	public void referenceChains() throws Exception {
+		final String refchainspec =
+				"module RefChain {" +
+					"/* @id ws */" +
+					"typedef string reference;" +
+					"/* @optional refs */" +
+					"typedef structure {" +
+						"list<reference> refs;" +
+					"} RefType;" +
+				"};";
+		String mod = "RefChain";
+		WorkspaceUser user = new WorkspaceUser("foo");
+		ws.requestModuleRegistration(user, mod);
+		ws.resolveModuleRegistration(mod, true);
+		ws.compileNewTypeSpec(user, refchainspec, Arrays.asList("RefType"), null, null, false, null);
+		TypeDefId reftype = new TypeDefId(new TypeDefName(mod, "RefType"), 0, 1);
+
+		WorkspaceIdentifier wsi = new WorkspaceIdentifier("refchain");
+		long wsid = ws.createWorkspace(user, wsi.getName(), false, null, null).getId();
+		Provenance p = new Provenance(user);
+		Map<String, Object> mid = new HashMap<String, Object>();
+		mid.put("refs", Arrays.asList("refchain/leaf1", "refchain/leaf2"));
+		Map<String, Object> head = new HashMap<String, Object>();
+		head.put("refs", Arrays.asList("refchain/mid"));
+		ws.saveObjects(user, wsi, Arrays.asList(
+				new WorkspaceSaveObject(new ObjectIDNoWSNoVer("leaf1"),
+						new HashMap<String, Object>(), SAFE_TYPE, null, p, false),
+				new WorkspaceSaveObject(new ObjectIDNoWSNoVer("leaf2"),
+						new HashMap<String, Object>(), SAFE_TYPE, null, p, false),
+				new WorkspaceSaveObject(new ObjectIDNoWSNoVer("mid"),
+						mid, reftype, null, p, false),
+				new WorkspaceSaveObject(new ObjectIDNoWSNoVer("head"),
+						head, reftype, null, p, false),
+				new WorkspaceSaveObject(new ObjectIDNoWSNoVer("lonely"),
+						new HashMap<String, Object>(), SAFE_TYPE, null, p, false)),
+				fac);
+		ResolvedWorkspaceID rwsi = mwdb.resolveWorkspace(wsi);
+
+		checkReferenceChains(rwsi);
+
+		// objects saved before the reference index existed have no entries
+		jdb.getCollection("workspaceObjRefs").remove("{ws: #}", wsid);
+		assertThat("index entries not removed", jdb.getCollection(
+				"workspaceObjRefs").count("{ws: #}", wsid), is(0L));
+		checkReferenceChains(rwsi);
+	}
+
+	private void checkReferenceChains(ResolvedWorkspaceID rwsi)
+			throws Exception {
+		long wsid = rwsi.getID();
+		// chains sharing a prefix, specified both by name and by id
+		ObjectChainResolvedWS c1 = new ObjectChainResolvedWS(
+				new ObjectIDResolvedWS(rwsi, "head"), Arrays.asList(
+						new ObjectIDResolvedWS(rwsi, "mid"),
+						new ObjectIDResolvedWS(rwsi, "leaf1")));
+		ObjectChainResolvedWS c2 = new ObjectChainResolvedWS(
+				new ObjectIDResolvedWS(rwsi, 4L, 1), Arrays.asList(
+						new ObjectIDResolvedWS(rwsi, 3L),
+						new ObjectIDResolvedWS(rwsi, "leaf2")));
+		ObjectChainResolvedWS c3 = new ObjectChainResolvedWS(
+				new ObjectIDResolvedWS(rwsi, "head"), Arrays.asList(
+						new ObjectIDResolvedWS(rwsi, "mid")));
+		Map<ObjectChainResolvedWS, WorkspaceObjectData> res =
+				mwdb.getReferencedObjects(new LinkedHashSet<ObjectChainResolvedWS>(
+						Arrays.asList(c1, c2, c3)));
+		assertThat("incorrect result count", res.size(), is(3));
+		assertThat("incorrect object", res.get(c1).getObjectInfo().getObjectId(), is(1L));
+		assertThat("incorrect object", res.get(c2).getObjectInfo().getObjectId(), is(2L));
+		assertThat("incorrect object", res.get(c3).getObjectInfo().getObjectId(), is(3L));
+		for (WorkspaceObjectData wod: res.values()) {
+			wod.getDataAsTokens().destroy();
+		}
+
+		/* several broken chains report the first broken link of the first
+		 * broken chain, even if a later chain breaks nearer its head
+		 */
+		ObjectChainResolvedWS deep = new ObjectChainResolvedWS(
+				new ObjectIDResolvedWS(rwsi, "head"), Arrays.asList(
+						new ObjectIDResolvedWS(rwsi, "mid"),
+						new ObjectIDResolvedWS(rwsi, "lonely")));
+		ObjectChainResolvedWS deepid = new ObjectChainResolvedWS(
+				new ObjectIDResolvedWS(rwsi, 4L), Arrays.asList(
+						new ObjectIDResolvedWS(rwsi, 3L),
+						new ObjectIDResolvedWS(rwsi, 5L)));
+		ObjectChainResolvedWS shallow = new ObjectChainResolvedWS(
+				new ObjectIDResolvedWS(rwsi, "lonely"), Arrays.asList(
+						new ObjectIDResolvedWS(rwsi, "leaf1")));
+		String deepmsg = "The object mid in workspace refchain does not contain the reference " +
+				wsid + "/5/1";
+		String shallowmsg = "The object lonely in workspace refchain does not contain the reference " +
+				wsid + "/1/1";
+		failGetReferencedObjects(Arrays.asList(c1, deep, shallow), deepmsg);
+		failGetReferencedObjects(Arrays.asList(shallow, c1, deep), shallowmsg);
+		// the shared broken link is reported as specified in the first chain
+		failGetReferencedObjects(Arrays.asList(deepid, deep),
+				"The object 3 in workspace refchain does not contain the reference " +
+				wsid + "/5/1");
+		failGetReferencedObjects(Arrays.asList(deep, deepid), deepmsg);
+	}
+
+	private void failGetReferencedObjects(List<ObjectChainResolvedWS> chains,
+			String exp) throws Exception {
+		try {
+			mwdb.getReferencedObjects(new LinkedHashSet<ObjectChainResolvedWS>(
+					chains));
+			fail("got referenced objects from broken chain");
+		} catch (NoSuchReferenceException nsre) {
+			assertThat("correct exception message", nsre.getMessage(),
+					is(exp));
+		}
+	}
+
+	@Test
+	public void referenceChainPermissions() throws Exception {
+		WorkspaceUser userfoo = new WorkspaceUser("foo");
+		WorkspaceUser userbar = new WorkspaceUser("bar");
+		WorkspaceIdentifier headws = new WorkspaceIdentifier("chainpermhead");
+		WorkspaceIdentifier leafws = new WorkspaceIdentifier("chainpermleaf");
+		ws.createWorkspace(userfoo, headws.getName(), false, null, null);
+		ws.createWorkspace(userbar, leafws.getName(), false, null, null);
+		Provenance p = new Provenance(userbar);
+		ws.saveObjects(userbar, leafws, Arrays.asList(new WorkspaceSaveObject(
+				new ObjectIDNoWSNoVer("leaf"), new HashMap<String, Object>(),
+				SAFE_TYPE, null, p, false)), fac);
+		ws.setPermissions(userbar, leafws, Arrays.asList(userfoo), Permission.READ);
+		// the chain object is only referenced from foo's workspace
+		ws.saveObjects(userfoo, headws, Arrays.asList(new WorkspaceSaveObject(
+				new ObjectIDNoWSNoVer("head"), new HashMap<String, Object>(),
+				SAFE_TYPE, null, new Provenance(userfoo).addAction(
+						new Provenance.ProvenanceAction().withWorkspaceObjects(
+								Arrays.asList("chainpermleaf/leaf"))), false)),
+				fac);
+		ws.setPermissions(userbar, leafws, Arrays.asList(userfoo), Permission.NONE);
+
+		mwdb.setResourceUsageConfiguration(new ResourceUsageConfigurationBuilder()
+				.withPermissionCacheTTL(599).build());
+		try {
+			WorkspaceObjectData wod = ws.getReferencedObjects(userfoo, Arrays.asList(
+					new ObjectChain(new ObjectIdentifier(headws, "head"), Arrays.asList(
+							new ObjectIdentifier(leafws, "leaf"))))).get(0);
+			assertThat("incorrect object", wod.getObjectInfo().getWorkspaceName(),
+					is("chainpermleaf"));
+			wod.getDataAsTokens().destroy();
+			// only the permissions for the head workspace are looked up
+			assertThat("chain workspace permissions looked up", mwdb.getCacheStatistics()
+					.get("permissions").get("entries"), is(2L));
+		} finally {
+			mwdb.setResourceUsageConfiguration(
+					new ResourceUsageConfigurationBuilder().build());
+		}
+	}
+
 	private Date getDate(long wsid, int id) {
 		@SuppressWarnings("rawtypes")
 		Map obj = jdb.getCollection("workspaceObjects")
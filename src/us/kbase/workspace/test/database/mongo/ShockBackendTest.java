@@ -6,11 +6,13 @@ import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URL;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.regex.Pattern;
 
 import org.apache.commons.io.IOUtils;
@@ -30,11 +32,13 @@ import us.kbase.common.test.controllers.shock.ShockController;
 import us.kbase.shock.client.BasicShockClient;
 import us.kbase.shock.client.ShockNode;
 import us.kbase.shock.client.ShockNodeId;
+import us.kbase.shock.client.exceptions.ShockHttpException;
 import us.kbase.typedobj.core.MD5;
 import us.kbase.typedobj.core.TempFilesManager;
 import us.kbase.typedobj.core.Writable;
 import us.kbase.workspace.database.ByteArrayFileCacheManager;
 import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.mongo.BlobCodec;
 import us.kbase.workspace.database.mongo.Fields;
 import us.kbase.workspace.database.mongo.ShockBackend;
 import us.kbase.workspace.database.mongo.exceptions.BlobStoreAuthorizationException;
@@ -49,6 +53,9 @@ public class ShockBackendTest {
 	private static ShockController shock;
 	private static MongoController mongoCon;
 	private static TempFilesManager tfm;
+	private static URL url;
+	private static String user;
+	private static String pwd;
 	
 	private static final Pattern UUID =
 			Pattern.compile("[\\da-f]{8}-[\\da-f]{4}-[\\da-f]{4}-[\\da-f]{4}-[\\da-f]{12}");
@@ -59,6 +66,8 @@ public class ShockBackendTest {
 	public static void setUpClass() throws Exception {
 		String u1 = System.getProperty("test.user1");
 		String p1 = System.getProperty("test.pwd1");
+		user = u1;
+		pwd = p1;
 		
 		tfm = new TempFilesManager(new File(WorkspaceTestCommon.getTempDir()));
 		WorkspaceTestCommon.stfuLoggers();
@@ -79,7 +88,7 @@ public class ShockBackendTest {
 				"foo",
 				"foo");
 		System.out.println("Using Shock temp dir " + shock.getTempDir());
-		URL url = new URL("http://localhost:" + shock.getServerPort());
+		url = new URL("http://localhost:" + shock.getServerPort());
 		WorkspaceTestCommon.initializeShockWorkspaceDB(mongo, u1, url,
 				"ShockBackendTest_types");
 		System.out.println("Testing workspace shock backend pointed at: " + url);
@@ -196,6 +205,106 @@ public class ShockBackendTest {
 		failGetBlob(md1);
 	}
 	
+	@Test
+	public void saveAndGetCompressedBlob() throws Exception {
+		ShockBackend gz = new ShockBackend(mongo, COLLECTION, url, user, pwd,
+				BlobCodec.GZIP);
+		MD5 md1 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa3");
+		String data = "{\"this is a blob\":\"yo yo yo yo yo yo yo yo yo yo\"}";
+		gz.saveBlob(md1, stringToWriteable(data), true);
+		String node = gz.getExternalIdentifier(md1);
+		byte[] raw = getNodeData(node);
+		assertThat("blob is encoded", raw[0], is((byte) 0));
+		assertThat("correct codec", getCodec(md1), is("gzip"));
+		// blobs are readable regardless of the current codec
+		for (ShockBackend b: Arrays.asList(gz, sb)) {
+			checkBlob(b, md1, data);
+		}
+		
+		assertThat("nothing to recode", gz.recodeBlobs(), is(0L));
+		assertThat("recoded blob", sb.recodeBlobs(), is(1L));
+		String newnode = sb.getExternalIdentifier(md1);
+		assertTrue("blob moved to a new node", !newnode.equals(node));
+		assertTrue("Got a valid shock id", UUID.matcher(newnode).matches());
+		failGetNode(node);
+		assertThat("blob is not encoded",
+				new String(getNodeData(newnode), "UTF-8"), is(data));
+		assertThat("correct codec", getCodec(md1), is("none"));
+		checkBlob(gz, md1, data);
+		assertThat("nothing to recode", sb.recodeBlobs(), is(0L));
+		
+		assertThat("recoded blob", gz.recodeBlobs(), is(1L));
+		node = newnode;
+		newnode = gz.getExternalIdentifier(md1);
+		assertTrue("blob moved to a new node", !newnode.equals(node));
+		failGetNode(node);
+		raw = getNodeData(newnode);
+		assertThat("blob is encoded", raw[0], is((byte) 0));
+		assertThat("correct codec", getCodec(md1), is("gzip"));
+		checkBlob(sb, md1, data);
+		
+		gz.removeBlob(md1);
+		failGetBlob(md1);
+		failGetNode(newnode);
+	}
+	
+	@Test
+	public void recodeUnencodedBlob() throws Exception {
+		// blobs saved before codecs were added have no codec field
+		String s = "{\"pooty\":\"poot\"}";
+		ShockNode sn = client.addNode(new ByteArrayInputStream(s.getBytes("UTF-8")), A32, "JSON");
+		DBObject rec = new BasicDBObject(Fields.SHOCK_CHKSUM, A32);
+		rec.put(Fields.SHOCK_NODE, sn.getId().getId());
+		rec.put(Fields.SHOCK_VER, sn.getVersion().getVersion());
+		mongo.getCollection(COLLECTION + ShockBackend.COLLECTION_SUFFIX).save(rec);
+		MD5 md5 = new MD5(A32);
+		assertThat("nothing to recode", sb.recodeBlobs(), is(0L));
+		ShockBackend gz = new ShockBackend(mongo, COLLECTION, url, user, pwd,
+				BlobCodec.GZIP);
+		assertThat("recoded blob", gz.recodeBlobs(), is(1L));
+		failGetNode(sn.getId().getId());
+		assertThat("blob is encoded",
+				getNodeData(gz.getExternalIdentifier(md5))[0], is((byte) 0));
+		assertThat("correct codec", getCodec(md5), is("gzip"));
+		ByteArrayFileCache d = sb.getBlob(md5,
+				new ByteArrayFileCacheManager(16000000, 2000000000L, tfm));
+		assertThat("data returned marked as unsorted", d.isSorted(), is(false));
+		assertThat("Didn't get same data back from store",
+				IOUtils.toString(d.getJSON()), is(s));
+		sb.removeBlob(md5);
+	}
+	
+	private void checkBlob(ShockBackend b, MD5 md5, String data)
+			throws Exception {
+		ByteArrayFileCache d = b.getBlob(md5,
+				new ByteArrayFileCacheManager(16000000, 2000000000L, tfm));
+		assertThat("data returned marked as sorted", d.isSorted(), is(true));
+		assertThat("Didn't get same data back from store",
+				IOUtils.toString(d.getJSON()), is(data));
+	}
+	
+	private String getCodec(MD5 md5) {
+		return (String) mongo.getCollection(
+				COLLECTION + ShockBackend.COLLECTION_SUFFIX).findOne(
+				new BasicDBObject(Fields.SHOCK_CHKSUM, md5.getMD5()))
+				.get(Fields.SHOCK_CODEC);
+	}
+	
+	private byte[] getNodeData(String node) throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		client.getFile(new ShockNodeId(node), baos);
+		return baos.toByteArray();
+	}
+	
+	private void failGetNode(String node) throws Exception {
+		try {
+			client.getNode(new ShockNodeId(node));
+			fail("got deleted shock node");
+		} catch (ShockHttpException she) {
+			// expected, the node was deleted
+		}
+	}
+	
 	@Test
 	public void getNonExistantBlob() throws Exception {
 		failGetBlob(new MD5(A32));
@@ -0,0 +1,318 @@
+package us.kbase.workspace.test.database.mongo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import us.kbase.typedobj.core.TempFilesManager;
+import us.kbase.typedobj.core.Writable;
+import us.kbase.workspace.database.ByteArrayFileCacheManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.mongo.BlobCodec;
+import us.kbase.workspace.database.mongo.ShockDownloader;
+import us.kbase.workspace.database.mongo.exceptions.BlobStoreAuthorizationException;
+import us.kbase.workspace.database.mongo.exceptions.BlobStoreCommunicationException;
+import us.kbase.workspace.test.WorkspaceTestCommon;
+
+/** Tests the Shock downloader against a stub Shock server that serves
+ * node metadata and node downloads, optionally with seek and length
+ * parameters.
+ */
+public class ShockDownloaderTest {
+
+	private static final String TOKEN = "fake token";
+	private static final long RANGE_SIZE = 1000;
+
+	private static HttpServer server;
+	private static URL url;
+	private static TempFilesManager tfm;
+
+	private static final Map<String, byte[]> nodes =
+			new ConcurrentHashMap<String, byte[]>();
+	private static final AtomicInteger rangeRequests = new AtomicInteger();
+	private static final AtomicInteger downloadRequests = new AtomicInteger();
+	private static volatile boolean supportRanges = true;
+	private static volatile boolean reportSize = true;
+	private static volatile int errorCode = 0;
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		final File tempDir = new File(WorkspaceTestCommon.getTempDir());
+		tempDir.mkdirs();
+		tfm = new TempFilesManager(tempDir);
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/node/", new StubShock());
+		server.start();
+		url = new URL("http://localhost:" + server.getAddress().getPort());
+		System.out.println("Started stub shock server at " + url);
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception {
+		if (server != null) {
+			server.stop(0);
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		nodes.clear();
+		rangeRequests.set(0);
+		downloadRequests.set(0);
+		supportRanges = true;
+		reportSize = true;
+		errorCode = 0;
+	}
+
+	private static class StubShock implements HttpHandler {
+
+		@Override
+		public void handle(final HttpExchange ex) throws IOException {
+			try {
+				if (errorCode != 0) {
+					send(ex, errorCode, ("{\"error\":[\"stub error " +
+							errorCode + "\"]}").getBytes("UTF-8"));
+					return;
+				}
+				if (!("OAuth " + TOKEN).equals(
+						ex.getRequestHeaders().getFirst("Authorization"))) {
+					send(ex, 401, "{\"error\":[\"bad token\"]}"
+							.getBytes("UTF-8"));
+					return;
+				}
+				final String id = ex.getRequestURI().getPath()
+						.substring("/node/".length());
+				final byte[] data = nodes.get(id);
+				if (data == null) {
+					send(ex, 404, "{\"error\":[\"Node not found\"]}"
+							.getBytes("UTF-8"));
+					return;
+				}
+				final Map<String, String> params = getParams(ex);
+				if (!params.containsKey("download")) {
+					final String file = reportSize ?
+							"{\"size\":" + data.length + "}" : "{}";
+					send(ex, 200, ("{\"status\":200,\"data\":{\"id\":\"" +
+							id + "\",\"file\":" + file + "},\"error\":null}")
+							.getBytes("UTF-8"));
+					return;
+				}
+				if (supportRanges && params.containsKey("seek")) {
+					rangeRequests.incrementAndGet();
+					final int seek = Integer.parseInt(params.get("seek"));
+					final int len = Integer.parseInt(params.get("length"));
+					final byte[] range = new byte[len];
+					System.arraycopy(data, seek, range, 0, len);
+					send(ex, 200, range);
+				} else {
+					downloadRequests.incrementAndGet();
+					send(ex, 200, data);
+				}
+			} finally {
+				ex.close();
+			}
+		}
+
+		private Map<String, String> getParams(final HttpExchange ex) {
+			final Map<String, String> ret = new HashMap<String, String>();
+			final String q = ex.getRequestURI().getQuery();
+			if (q != null) {
+				for (final String p: q.split("&")) {
+					final String[] kv = p.split("=", 2);
+					ret.put(kv[0], kv.length > 1 ? kv[1] : "");
+				}
+			}
+			return ret;
+		}
+
+		private void send(final HttpExchange ex, final int code,
+				final byte[] body) {
+			try {
+				ex.sendResponseHeaders(code, body.length);
+				final OutputStream os = ex.getResponseBody();
+				os.write(body);
+				os.close();
+			} catch (IOException ioe) {
+				// client aborted the download
+			}
+		}
+	}
+
+	private static String makeData(final int size) {
+		final StringBuilder sb = new StringBuilder();
+		int i = 0;
+		while (sb.length() < size) {
+			sb.append("blob data ").append(i++).append(" ");
+		}
+		return sb.substring(0, size);
+	}
+
+	private static ByteArrayFileCacheManager newBAFCMan() {
+		// small memory limit so all but the smallest nodes go to disk
+		return new ByteArrayFileCacheManager(100, 2000000000L, tfm);
+	}
+
+	@Test
+	public void streamSmallNode() throws Exception {
+		final ShockDownloader sd = new ShockDownloader(url, 4, RANGE_SIZE);
+		final String data = makeData(1500);
+		nodes.put("small", data.getBytes("UTF-8"));
+		final ByteArrayFileCache bafc = sd.download("small", TOKEN, false,
+				true, newBAFCMan());
+		assertThat("data returned marked as sorted", bafc.isSorted(), is(true));
+		assertThat("Didn't get same data back from shock",
+				IOUtils.toString(bafc.getJSON()), is(data));
+		assertThat("no range requests", rangeRequests.get(), is(0));
+		assertThat("one download request", downloadRequests.get(), is(1));
+		bafc.destroy();
+	}
+
+	@Test
+	public void rangedLargeNode() throws Exception {
+		final ShockDownloader sd = new ShockDownloader(url, 4, RANGE_SIZE);
+		final String data = makeData(10500);
+		nodes.put("large", data.getBytes("UTF-8"));
+		final ByteArrayFileCache bafc = sd.download("large", TOKEN, false,
+				false, newBAFCMan());
+		assertThat("data returned marked as unsorted", bafc.isSorted(),
+				is(false));
+		assertThat("data stored on disk", bafc.isOnDisk(), is(true));
+		assertThat("Didn't get same data back from shock",
+				IOUtils.toString(bafc.getJSON()), is(data));
+		assertThat("correct range requests", rangeRequests.get(), is(11));
+		assertThat("no full download requests", downloadRequests.get(),
+				is(0));
+		bafc.destroy();
+
+		final Map<String, Object> stats = sd.getStatistics();
+		assertThat("transfers", stats.get("transfers"), is((Object) 1L));
+		assertThat("ranged", stats.get("ranged"), is((Object) 1L));
+		assertThat("bytes", stats.get("bytes"), is((Object) 10500L));
+		assertThat("ranges supported", stats.get("rangessupported"),
+				is((Object) true));
+		@SuppressWarnings("unchecked")
+		final List<Map<String, Object>> recent =
+				(List<Map<String, Object>>) stats.get("recent");
+		assertThat("one recent transfer", recent.size(), is(1));
+		assertThat("recent node", recent.get(0).get("node"),
+				is((Object) "large"));
+		assertThat("recent ranges", recent.get(0).get("ranges"),
+				is((Object) 11L));
+	}
+
+	@Test
+	public void streamNodeWithoutSize() throws Exception {
+		final ShockDownloader sd = new ShockDownloader(url, 4, RANGE_SIZE);
+		reportSize = false;
+		final String data = makeData(10500);
+		nodes.put("nosize", data.getBytes("UTF-8"));
+		final ByteArrayFileCache bafc = sd.download("nosize", TOKEN, false,
+				true, newBAFCMan());
+		assertThat("Didn't get same data back from shock",
+				IOUtils.toString(bafc.getJSON()), is(data));
+		assertThat("no range requests", rangeRequests.get(), is(0));
+		assertThat("one download request", downloadRequests.get(), is(1));
+		assertThat("bytes", sd.getStatistics().get("bytes"),
+				is((Object) 10500L));
+		bafc.destroy();
+	}
+
+	@Test
+	public void streamEncodedNode() throws Exception {
+		final ShockDownloader sd = new ShockDownloader(url, 4, RANGE_SIZE);
+		final String data = makeData(50000);
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		BlobCodec.GZIP.write(stringToWriteable(data), baos);
+		nodes.put("encoded", baos.toByteArray());
+		final ByteArrayFileCache bafc = sd.download("encoded", TOKEN, true,
+				true, newBAFCMan());
+		assertThat("Didn't get same data back from shock",
+				IOUtils.toString(bafc.getJSON()), is(data));
+		assertThat("no range requests", rangeRequests.get(), is(0));
+		bafc.destroy();
+	}
+
+	@Test
+	public void rangesUnsupported() throws Exception {
+		final ShockDownloader sd = new ShockDownloader(url, 4, RANGE_SIZE);
+		supportRanges = false;
+		final String data = makeData(5000);
+		nodes.put("noranges", data.getBytes("UTF-8"));
+		for (int i = 0; i < 2; i++) {
+			final ByteArrayFileCache bafc = sd.download("noranges", TOKEN,
+					false, true, newBAFCMan());
+			assertThat("Didn't get same data back from shock",
+					IOUtils.toString(bafc.getJSON()), is(data));
+			bafc.destroy();
+		}
+		final Map<String, Object> stats = sd.getStatistics();
+		assertThat("ranges not supported", stats.get("rangessupported"),
+				is((Object) false));
+		assertThat("transfers", stats.get("transfers"), is((Object) 2L));
+		assertThat("ranged", stats.get("ranged"), is((Object) 0L));
+	}
+
+	@Test
+	public void errors() throws Exception {
+		final ShockDownloader sd = new ShockDownloader(url, 4, RANGE_SIZE);
+		nodes.put("node", makeData(100).getBytes("UTF-8"));
+		try {
+			sd.download("node", "bad token", false, true, newBAFCMan());
+			fail("downloaded with bad token");
+		} catch (BlobStoreAuthorizationException e) {
+			assertThat("correct exception message", e.getLocalizedMessage(),
+					is("Shock refused access to the node: bad token"));
+		}
+		try {
+			sd.download("nonode", TOKEN, false, true, newBAFCMan());
+			fail("downloaded missing node");
+		} catch (BlobStoreCommunicationException e) {
+			assertThat("correct exception message", e.getLocalizedMessage(),
+					is("Failed to retrieve shock node: Node not found"));
+		}
+		errorCode = 500;
+		try {
+			sd.download("node", TOKEN, false, true, newBAFCMan());
+			fail("downloaded with server error");
+		} catch (BlobStoreCommunicationException e) {
+			assertThat("correct exception message", e.getLocalizedMessage(),
+					is("Failed to retrieve shock node: stub error 500"));
+		}
+		assertThat("no transfers", sd.getStatistics().get("transfers"),
+				is((Object) 0L));
+	}
+
+	private static Writable stringToWriteable(final String s) {
+		return new Writable() {
+			@Override
+			public void write(OutputStream w) throws IOException {
+				w.write(s.getBytes("UTF-8"));
+			}
+			@Override
+			public void releaseResources() throws IOException {
+			}
+		};
+	}
+}
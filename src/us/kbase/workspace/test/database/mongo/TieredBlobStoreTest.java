@@ -0,0 +1,293 @@
+package us.kbase.workspace.test.database.mongo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import us.kbase.typedobj.core.MD5;
+import us.kbase.typedobj.core.TempFilesManager;
+import us.kbase.typedobj.core.Writable;
+import us.kbase.workspace.database.ByteArrayFileCacheManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.exceptions.FileCacheIOException;
+import us.kbase.workspace.database.exceptions.FileCacheLimitExceededException;
+import us.kbase.workspace.database.mongo.BlobStore;
+import us.kbase.workspace.database.mongo.FileSystemBackend;
+import us.kbase.workspace.database.mongo.TieredBlobStore;
+import us.kbase.workspace.database.mongo.exceptions.BlobStoreAuthorizationException;
+import us.kbase.workspace.database.mongo.exceptions.BlobStoreCommunicationException;
+import us.kbase.workspace.database.mongo.exceptions.BlobStoreException;
+import us.kbase.workspace.database.mongo.exceptions.NoSuchBlobException;
+import us.kbase.workspace.test.WorkspaceTestCommon;
+
+public class TieredBlobStoreTest {
+
+	private static final String a32 = "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa";
+	private static final long WAIT_MS = 10000;
+
+	private static TempFilesManager tfm;
+	private File root;
+	private FileSystemBackend durable;
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		final File tempDir = new File(WorkspaceTestCommon.getTempDir());
+		tempDir.mkdirs();
+		tfm = new TempFilesManager(tempDir);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		root = Files.createTempDirectory(
+				new File(WorkspaceTestCommon.getTempDir()).toPath(),
+				"TieredBlobStoreTest").toFile();
+		durable = new FileSystemBackend(new File(root, "durable"));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (root != null && WorkspaceTestCommon.getDeleteTempFiles()) {
+			FileUtils.deleteDirectory(root);
+		}
+	}
+
+	@Test
+	public void storetype() throws Exception {
+		final TieredBlobStore tbs = new TieredBlobStore(
+				new File(root, "tier"), durable);
+		assertThat("correct store type", tbs.getStoreType(),
+				is("FileSystem"));
+	}
+
+	@Test
+	public void saveReplicateAndGet() throws Exception {
+		final TieredBlobStore tbs = new TieredBlobStore(
+				new File(root, "tier"), durable);
+		final MD5 md1 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa1");
+		final MD5 md2 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa2");
+		tbs.saveBlob(md1, stringToWriteable("this is a blob yo"), true);
+		tbs.saveBlob(md2, stringToWriteable("this is also a blob yo"), false);
+		waitForReplication(tbs);
+
+		final Map<String, Object> status = tbs.getReplicationStatus();
+		assertThat("blobs replicated", status.get("replicated"), is((Object) 2L));
+		assertThat("lag", status.get("lag"), is((Object) 0L));
+		assertThat("no error", status.containsKey("error"), is(false));
+		assertThat("local tier empty",
+				new File(root, "tier/blobs/aa/aa").list().length, is(0));
+
+		ByteArrayFileCache d = durable.getBlob(md1, newBAFCMan());
+		assertThat("data replicated as sorted", d.isSorted(), is(true));
+		assertThat("Didn't get same data back from store",
+				IOUtils.toString(d.getJSON()), is("this is a blob yo"));
+		d = tbs.getBlob(md2, newBAFCMan());
+		assertThat("data returned marked as unsorted", d.isSorted(), is(false));
+		assertThat("Didn't get same data back from store",
+				IOUtils.toString(d.getJSON()), is("this is also a blob yo"));
+
+		tbs.removeBlob(md1);
+		tbs.removeBlob(md2);
+		try {
+			tbs.getBlob(md1, newBAFCMan());
+			fail("got removed blob");
+		} catch (BlobStoreException e) {
+			assertThat("correct exception message", e.getLocalizedMessage(),
+					is("Attempt to retrieve non-existant blob with chksum " +
+							md1.getMD5()));
+		}
+	}
+
+	@Test
+	public void replicateQueueAfterRestart() throws Exception {
+		// simulate a server that stopped before replicating a blob, without
+		// queuing another
+		final MD5 md1 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa3");
+		final MD5 md2 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa4");
+		final FileSystemBackend local = new FileSystemBackend(
+				new File(root, "tier/blobs"));
+		local.saveBlob(md1, stringToWriteable("queued blob"), true);
+		local.saveBlob(md2, stringToWriteable("unqueued blob"), true);
+		final File queue = new File(root, "tier/queue");
+		queue.mkdirs();
+		new File(queue, md1.getMD5()).createNewFile();
+
+		final TieredBlobStore tbs = new TieredBlobStore(
+				new File(root, "tier"), durable);
+		waitForReplication(tbs);
+		assertThat("blobs replicated", tbs.getReplicationStatus()
+				.get("replicated"), is((Object) 2L));
+		assertThat("Didn't get same data back from store", IOUtils.toString(
+				durable.getBlob(md1, newBAFCMan()).getJSON()),
+				is("queued blob"));
+		assertThat("Didn't get same data back from store", IOUtils.toString(
+				durable.getBlob(md2, newBAFCMan()).getJSON()),
+				is("unqueued blob"));
+	}
+
+	@Test
+	public void retryFailedReplication() throws Exception {
+		final AtomicInteger failures = new AtomicInteger(2);
+		final TieredBlobStore tbs = new TieredBlobStore(
+				new File(root, "tier"), new FailingBlobStore(failures), 1);
+		final MD5 md1 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa5");
+		tbs.saveBlob(md1, stringToWriteable("retried blob"), true);
+
+		final long end = System.currentTimeMillis() + WAIT_MS;
+		while (!tbs.getReplicationStatus().containsKey("error")) {
+			if (System.currentTimeMillis() > end) {
+				fail("Replication did not fail: " +
+						tbs.getReplicationStatus());
+			}
+			Thread.sleep(50);
+		}
+		assertThat("correct error", tbs.getReplicationStatus().get("error"),
+				is((Object) "backend down"));
+		assertThat("blob still readable", IOUtils.toString(
+				tbs.getBlob(md1, newBAFCMan()).getJSON()),
+				is("retried blob"));
+
+		waitForReplication(tbs);
+		final Map<String, Object> status = tbs.getReplicationStatus();
+		assertThat("all failures used", failures.get(), is(0));
+		assertThat("blobs replicated", status.get("replicated"),
+				is((Object) 1L));
+		assertThat("error cleared", status.containsKey("error"), is(false));
+		assertThat("local tier empty",
+				new File(root, "tier/blobs/aa/aa").list().length, is(0));
+		assertThat("Didn't get same data back from store", IOUtils.toString(
+				durable.getBlob(md1, newBAFCMan()).getJSON()),
+				is("retried blob"));
+	}
+
+	@Test
+	public void ignoreInvalidQueueEntries() throws Exception {
+		final File queue = new File(root, "tier/queue");
+		queue.mkdirs();
+		new File(queue, "notanmd5").createNewFile();
+		new File(queue, "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa").createNewFile();
+		new File(queue, "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa6").mkdir();
+
+		final TieredBlobStore tbs = new TieredBlobStore(
+				new File(root, "tier"), durable);
+		final MD5 md1 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa7");
+		tbs.saveBlob(md1, stringToWriteable("valid blob"), true);
+		waitForReplication(tbs);
+		assertThat("blobs replicated", tbs.getReplicationStatus()
+				.get("replicated"), is((Object) 1L));
+		assertThat("Didn't get same data back from store", IOUtils.toString(
+				durable.getBlob(md1, newBAFCMan()).getJSON()),
+				is("valid blob"));
+		assertThat("invalid entries untouched", new File(queue, "notanmd5")
+				.isFile(), is(true));
+	}
+
+	@Test
+	public void getNonExistantBlob() throws Exception {
+		final TieredBlobStore tbs = new TieredBlobStore(
+				new File(root, "tier"), durable);
+		try {
+			tbs.getBlob(new MD5(a32), newBAFCMan());
+			fail("getblob should throw exception");
+		} catch (BlobStoreException wbe) {
+			assertThat("wrong exception message from failed getblob",
+					wbe.getLocalizedMessage(), is("Attempt to retrieve non-existant blob with chksum " + a32));
+		}
+	}
+
+	private static void waitForReplication(final TieredBlobStore tbs)
+			throws Exception {
+		final long end = System.currentTimeMillis() + WAIT_MS;
+		while ((Integer) tbs.getReplicationStatus().get("queued") > 0) {
+			if (System.currentTimeMillis() > end) {
+				fail("Blobs were not replicated: " +
+						tbs.getReplicationStatus());
+			}
+			Thread.sleep(50);
+		}
+	}
+
+	// fails to save the given number of times, then saves to durable
+	private class FailingBlobStore implements BlobStore {
+
+		private final AtomicInteger failures;
+
+		private FailingBlobStore(final AtomicInteger failures) {
+			this.failures = failures;
+		}
+
+		@Override
+		public void saveBlob(final MD5 md5, final Writable data,
+				final boolean sorted)
+				throws BlobStoreAuthorizationException,
+				BlobStoreCommunicationException {
+			if (failures.getAndDecrement() > 0) {
+				throw new BlobStoreCommunicationException("backend down");
+			}
+			failures.set(0);
+			durable.saveBlob(md5, data, sorted);
+		}
+
+		@Override
+		public ByteArrayFileCache getBlob(final MD5 md5,
+				final ByteArrayFileCacheManager bafcMan)
+				throws BlobStoreAuthorizationException,
+				BlobStoreCommunicationException, NoSuchBlobException,
+				FileCacheLimitExceededException, FileCacheIOException {
+			return durable.getBlob(md5, bafcMan);
+		}
+
+		@Override
+		public void removeBlob(final MD5 md5)
+				throws BlobStoreAuthorizationException,
+				BlobStoreCommunicationException {
+			durable.removeBlob(md5);
+		}
+
+		@Override
+		public String getExternalIdentifier(final MD5 md5)
+				throws BlobStoreCommunicationException, NoSuchBlobException {
+			return durable.getExternalIdentifier(md5);
+		}
+
+		@Override
+		public long recodeBlobs() throws BlobStoreAuthorizationException,
+				BlobStoreCommunicationException {
+			return durable.recodeBlobs();
+		}
+
+		@Override
+		public String getStoreType() {
+			return durable.getStoreType();
+		}
+	}
+
+	private static ByteArrayFileCacheManager newBAFCMan() {
+		return new ByteArrayFileCacheManager(16000000, 2000000000L, tfm);
+	}
+
+	private static Writable stringToWriteable(final String s) {
+		return new Writable() {
+			@Override
+			public void write(OutputStream w) throws IOException {
+				w.write(s.getBytes("UTF-8"));
+			}
+			@Override
+			public void releaseResources() throws IOException {
+			}
+		};
+	}
+}
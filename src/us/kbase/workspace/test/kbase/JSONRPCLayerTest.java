@@ -21,6 +21,7 @@ import java.util.Set;
 
 import junit.framework.Assert;
 
+import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.junit.Test;
 import org.junit.matchers.JUnitMatchers;
@@ -462,6 +463,92 @@ public class JSONRPCLayerTest extends JSONRPCLayerTester {
 				.withWorkspace("savebadpkg").withNewPermission("n"));
 	}
 	
+	@Test
+	public void saveChunkedUpload() throws Exception {
+		CLIENT1.createWorkspace(new CreateWorkspaceParams()
+				.withWorkspace("chunkedupload"));
+		String json = "{\"foo\": \"bar\"}";
+		List<String> chunks = Arrays.asList(
+				json.substring(0, 4), json.substring(4, 8),
+				json.substring(8, 12), json.substring(12));
+		String id = CLIENT1.startUpload(4L);
+		for (int i : Arrays.asList(2, 0, 3, 1)) {
+			uploadChunk(id, i, chunks.get(i), null);
+		}
+		uploadChunk(id, 1, chunks.get(1), null); // resend
+		assertThat("correct chunks", CLIENT1.getUploadChunks(id),
+				is(Arrays.asList(0L, 1L, 2L, 3L)));
+		
+		try {
+			uploadChunk(id, 0, chunks.get(0), DigestUtils.md5Hex("foo"));
+			fail("uploaded chunk with bad md5");
+		} catch (ServerException e) {
+			assertThat("correct exception message", e.getLocalizedMessage(),
+					is("Checksum mismatch for chunk 0 of upload " + id));
+		}
+		try {
+			CLIENT2.getUploadChunks(id);
+			fail("got another user's upload");
+		} catch (ServerException e) {
+			assertThat("correct exception message", e.getLocalizedMessage(),
+					is("No upload with id " + id + " exists"));
+		}
+		
+		List<ObjectSaveData> objects = new ArrayList<ObjectSaveData>();
+		objects.add(new ObjectSaveData().withUploadId(id)
+				.withData(new UObject("foo")).withType(SAFE_TYPE));
+		saveBadObject(objects, "Object 1 has both data and an upload id",
+				"chunkedupload");
+		objects.set(0, new ObjectSaveData().withUploadId(id)
+				.withType(SAFE_TYPE).withName("uploaded"));
+		CLIENT1.saveObjects(new SaveObjectsParams()
+				.withWorkspace("chunkedupload").withObjects(objects));
+		Map<String, String> data = CLIENT1.getObjects(Arrays.asList(
+				new ObjectIdentity().withWorkspace("chunkedupload")
+				.withName("uploaded"))).get(0).getData().asInstance();
+		Map<String, String> expected = new HashMap<String, String>();
+		expected.put("foo", "bar");
+		assertThat("correct data", data, is(expected));
+		try {
+			CLIENT1.getUploadChunks(id);
+			fail("got saved upload");
+		} catch (ServerException e) {
+			assertThat("correct exception message", e.getLocalizedMessage(),
+					is("No upload with id " + id + " exists"));
+		}
+		
+		id = CLIENT1.startUpload(4L);
+		uploadChunk(id, 0, chunks.get(0), null);
+		uploadChunk(id, 2, chunks.get(2), null);
+		objects.set(0, new ObjectSaveData().withUploadId(id)
+				.withType(SAFE_TYPE));
+		saveBadObject(objects, "Object 1 upload error: Upload " + id +
+				" is incomplete", "chunkedupload");
+		try {
+			uploadChunk(id, 1, "fo", null);
+			fail("uploaded short chunk before the last chunk");
+		} catch (ServerException e) {
+			assertThat("correct exception message", e.getLocalizedMessage(),
+					is("Only the last chunk of upload " + id +
+							" may be shorter than the chunk size"));
+		}
+		CLIENT1.abortUpload(id);
+		try {
+			CLIENT1.getUploadChunks(id);
+			fail("got aborted upload");
+		} catch (ServerException e) {
+			assertThat("correct exception message", e.getLocalizedMessage(),
+					is("No upload with id " + id + " exists"));
+		}
+	}
+	
+	private void uploadChunk(String id, long chunk, String data, String md5)
+			throws Exception {
+		byte[] b = data.getBytes("UTF-8");
+		CLIENT1.uploadChunk(id, chunk, Base64.encodeBase64String(b),
+				md5 == null ? DigestUtils.md5Hex(b) : md5);
+	}
+	
 	@Test
 	public void saveProvenance() throws Exception {
 		CLIENT1.createWorkspace(new CreateWorkspaceParams().withWorkspace("provenance"));
@@ -426,8 +426,13 @@ public class JSONRPCLayerTester {
 
 	protected void saveBadObject(List<ObjectSaveData> objects, String exception) 
 			throws Exception {
+		saveBadObject(objects, exception, "savebadpkg");
+	}
+	
+	protected void saveBadObject(List<ObjectSaveData> objects, String exception,
+			String workspace) throws Exception {
 		try {
-			CLIENT1.saveObjects(new SaveObjectsParams().withWorkspace("savebadpkg")
+			CLIENT1.saveObjects(new SaveObjectsParams().withWorkspace(workspace)
 					.withObjects(objects));
 			fail("saved invalid data package");
 		} catch (ServerException e) {
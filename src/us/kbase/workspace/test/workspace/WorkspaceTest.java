@@ -941,7 +941,52 @@ public class WorkspaceTest extends WorkspaceTester {
 		ws.setWorkspaceDeleted(foo, read, false);
 		ws.setGlobalPermission(foo, read, Permission.NONE);
 	}
-	
+
+	@Test
+	public void saveObjectsAutoNameCollision() throws Exception {
+		WorkspaceUser user = new WorkspaceUser("foo");
+		WorkspaceIdentifier autonames = new WorkspaceIdentifier("autonamecollision");
+		ws.createWorkspace(user, autonames.getName(), false, null, null);
+		Map<String, Object> data = new HashMap<String, Object>();
+		Provenance p = new Provenance(user);
+		ws.saveObjects(user, autonames, Arrays.asList(new WorkspaceSaveObject(
+				new ObjectIDNoWSNoVer("auto4"), data, SAFE_TYPE1, null, p, false)),
+				getIdFactory(user));
+
+		/* the explicit name auto2 collides with the generated name of the
+		 * first object in the batch insert, and the generated name auto6
+		 * with the explicit name of the object before it. Ids, names and
+		 * versions must be the same as when the objects were saved one at
+		 * a time.
+		 */
+		List<ObjectInformation> objs = ws.saveObjects(user, autonames, Arrays.asList(
+				new WorkspaceSaveObject(data, SAFE_TYPE1, null, p, false),
+				new WorkspaceSaveObject(new ObjectIDNoWSNoVer("auto2"), data, SAFE_TYPE1, null, p, false),
+				new WorkspaceSaveObject(data, SAFE_TYPE1, null, p, false),
+				new WorkspaceSaveObject(new ObjectIDNoWSNoVer("auto6"), data, SAFE_TYPE1, null, p, false),
+				new WorkspaceSaveObject(data, SAFE_TYPE1, null, p, false),
+				new WorkspaceSaveObject(new ObjectIDNoWSNoVer("auto2"), data, SAFE_TYPE1, null, p, false)),
+				getIdFactory(user));
+		long[] ids = {2, 2, 4, 5, 6, 2};
+		String[] names = {"auto2", "auto2", "auto4-1", "auto6", "auto6-1", "auto2"};
+		int[] vers = {1, 2, 1, 1, 1, 3};
+		for (int i = 0; i < ids.length; i++) {
+			assertThat("incorrect id", objs.get(i).getObjectId(), is(ids[i]));
+			assertThat("incorrect name", objs.get(i).getObjectName(), is(names[i]));
+			assertThat("incorrect version", objs.get(i).getVersion(), is(vers[i]));
+		}
+		assertThat("incorrect version", ws.getObjectInformation(user, Arrays.asList(
+				new ObjectIdentifier(autonames, 2)), false, false).get(0).getVersion(),
+				is(3));
+		checkUnhiddenObjectCount(user, autonames, 5, 5);
+
+		ObjectInformation newobj = ws.saveObjects(user, autonames, Arrays.asList(
+				new WorkspaceSaveObject(data, SAFE_TYPE1, null, p, false)),
+				getIdFactory(user)).get(0);
+		assertThat("incorrect id", newobj.getObjectId(), is(7L));
+		assertThat("incorrect name", newobj.getObjectName(), is("auto7"));
+	}
+
 	@Test
 	public void saveObjectsAndTestExtractedMeta() throws Exception {
 		String module = "TestMetaData";
@@ -2206,6 +2251,112 @@ public class WorkspaceTest extends WorkspaceTester {
 				"Failed type checking at object #2 - the number of unique IDs in the saved objects exceeds the maximum allowed, 19"));
 	}
 
+	@Test
+	public void saveObjectsParallelValidation() throws Exception {
+		String idtype = "someid";
+		String mod = "TestParallelIds";
+		String listtype = "ListIdType";
+		final String idSpec =
+				"module " + mod + " {\n" +
+					"/* @id ws */\n" +
+					"typedef string ws_id;\n" +
+					"/* @id " + idtype + " */\n" +
+					"typedef string some_id;\n" +
+					"/* @optional ws_ids\n" +
+					"   @optional some_ids\n" +
+					"*/\n" +
+					"typedef structure {\n" +
+						"list<ws_id> ws_ids;\n" +
+						"list<some_id> some_ids;\n" +
+					"} " + listtype + ";\n" +
+				"};\n";
+		WorkspaceUser user = new WorkspaceUser("foo");
+		ws.requestModuleRegistration(user, mod);
+		ws.resolveModuleRegistration(mod, true);
+		ws.compileNewTypeSpec(user, idSpec, Arrays.asList(listtype),
+				null, null, false, null);
+		TypeDefId listidtype = new TypeDefId(new TypeDefName(mod, listtype), 0, 1);
+
+		WorkspaceIdentifier wsi = new WorkspaceIdentifier("parallelids");
+		long wsid = ws.createWorkspace(user, wsi.getName(), false, null, null).getId();
+		Provenance emptyprov = new Provenance(user);
+		saveObject(user, wsi, null, new HashMap<String, Object>(), SAFE_TYPE1,
+				"target", emptyprov);
+
+		// 3 unique IDs per object
+		List<WorkspaceSaveObject> objs = new LinkedList<WorkspaceSaveObject>();
+		for (int i = 1; i <= 6; i++) {
+			Map<String, Object> data = new HashMap<String, Object>();
+			data.put("ws_ids", Arrays.asList("parallelids/target"));
+			data.put("some_ids", Arrays.asList("id" + i + "a", "id" + i + "b", "id" + i + "a"));
+			objs.add(new WorkspaceSaveObject(new ObjectIDNoWSNoVer("obj" + i),
+					data, listidtype, null, emptyprov, false));
+		}
+		List<WorkspaceSaveObject> badobjs = new LinkedList<WorkspaceSaveObject>(objs);
+		for (int i: Arrays.asList(2, 5)) {
+			Map<String, Object> data = new HashMap<String, Object>();
+			data.put("some_ids", "id" + i);
+			badobjs.set(i - 1, new WorkspaceSaveObject(new ObjectIDNoWSNoVer("obj" + i),
+					data, listidtype, null, emptyprov, false));
+		}
+
+		ResourceUsageConfiguration oldcfg = ws.getResourceConfig();
+		ResourceUsageConfigurationBuilder build =
+				new ResourceUsageConfigurationBuilder(oldcfg);
+		try {
+			ws.setResourceConfig(build.withValidationThreads(1).build());
+			String tooManyIDs = getSaveError(user, wsi, objs, 17);
+			assertThat("incorrect serial error", tooManyIDs, is(
+					"Failed type checking at object #6 - the number of unique IDs in the saved objects exceeds the maximum allowed, 17"));
+			String invalid = getSaveError(user, wsi, badobjs, 18);
+			assertTrue("incorrect serial error: " + invalid,
+					invalid.startsWith("Object #2, obj2 failed type checking:\n"));
+
+			ws.setResourceConfig(build.withValidationThreads(4).build());
+			// the first failing object is reported regardless of timing
+			for (int i = 0; i < 10; i++) {
+				assertThat("incorrect parallel error", getSaveError(
+						user, wsi, objs, 17), is(tooManyIDs));
+				assertThat("incorrect parallel error", getSaveError(
+						user, wsi, badobjs, 18), is(invalid));
+			}
+			// the ID limit applies to the whole save, not each object
+			assertThat("incorrect parallel error", getSaveError(
+					user, wsi, objs.subList(0, 2), 5), is(
+					"Failed type checking at object #2 - the number of unique IDs in the saved objects exceeds the maximum allowed, 5"));
+
+			List<ObjectInformation> info = ws.saveObjects(user, wsi, objs,
+					makeFacForMaxIDTests(Arrays.asList(idtype), user, 18));
+			assertThat("incorrect object count", info.size(), is(6));
+			for (int i = 1; i <= 6; i++) {
+				assertThat("incorrect name", info.get(i - 1).getObjectName(), is("obj" + i));
+				WorkspaceObjectData wod = ws.getObjects(user, Arrays.asList(
+						new ObjectIdentifier(wsi, "obj" + i))).get(0);
+				assertThat("incorrect references", wod.getReferences(),
+						is(Arrays.asList(wsid + "/1/1")));
+				assertThat("incorrect extracted ids", new HashSet<String>(
+						wod.getExtractedIds().get(idtype)), is(new HashSet<String>(
+								Arrays.asList("id" + i + "a", "id" + i + "b"))));
+				wod.getDataAsTokens().destroy();
+			}
+		} finally {
+			ws.setResourceConfig(oldcfg);
+		}
+	}
+
+	private String getSaveError(WorkspaceUser user, WorkspaceIdentifier wsi,
+			List<WorkspaceSaveObject> objs, int maxIDs)
+			throws Exception {
+		try {
+			ws.saveObjects(user, wsi, objs, makeFacForMaxIDTests(
+					Arrays.asList("someid"), user, maxIDs));
+			fail("saved bad objects");
+		} catch (TypedObjectValidationException tove) {
+			return tove.getLocalizedMessage();
+		}
+		return null;
+	}
+
 	private IdReferenceHandlerSetFactory makeFacForMaxIDTests(List<String> idtypes,
 			WorkspaceUser user, int max) {
 		IdReferenceHandlerSetFactory fac = new IdReferenceHandlerSetFactory(max);
@@ -3526,6 +3677,61 @@ public class WorkspaceTest extends WorkspaceTester {
 		ws.setGlobalPermission(user1, clone4, Permission.NONE);
 	}
 
+	@Test
+	public void cloneLargeWorkspace() throws Exception {
+		// more objects than are cloned in one batch
+		WorkspaceUser user = new WorkspaceUser("foo");
+		WorkspaceIdentifier source = new WorkspaceIdentifier("clonelargesource");
+		long srcid = ws.createWorkspace(user, source.getName(), false, null, null).getId();
+		List<WorkspaceSaveObject> objs = new LinkedList<WorkspaceSaveObject>();
+		for (int i = 1; i <= 2500; i++) {
+			Map<String, Object> data = new HashMap<String, Object>();
+			data.put("i", i);
+			objs.add(new WorkspaceSaveObject(new ObjectIDNoWSNoVer("o" + i),
+					data, SAFE_TYPE1, null, new Provenance(user), false));
+		}
+		ws.saveObjects(user, source, objs, getIdFactory(user));
+		ws.saveObjects(user, source, Arrays.asList(new WorkspaceSaveObject(
+				new ObjectIDNoWSNoVer("o1200"), new HashMap<String, Object>(),
+				SAFE_TYPE1, null, new Provenance(user), true)), getIdFactory(user));
+		ws.setObjectsDeleted(user, Arrays.asList(new ObjectIdentifier(source, "o10")), true);
+
+		WorkspaceIdentifier clone = new WorkspaceIdentifier("clonelarge");
+		WorkspaceInformation info = ws.cloneWorkspace(user, source, clone.getName(), false, null, null);
+		assertThat("incorrect object count", info.getApproximateObjects(), is(2499L));
+		checkUnhiddenObjectCount(user, clone, 2498, 2499);
+
+		// ids are assigned in source id order with the deleted object skipped
+		List<ObjectInformation> infos = ws.getObjectInformation(user, Arrays.asList(
+				new ObjectIdentifier(clone, "o1"), new ObjectIdentifier(clone, "o11"),
+				new ObjectIdentifier(clone, "o1001"), new ObjectIdentifier(clone, "o1200"),
+				new ObjectIdentifier(clone, "o2500")), false, false);
+		assertThat("incorrect id", infos.get(0).getObjectId(), is(1L));
+		assertThat("incorrect id", infos.get(1).getObjectId(), is(10L));
+		assertThat("incorrect id", infos.get(2).getObjectId(), is(1000L));
+		assertThat("incorrect id", infos.get(3).getObjectId(), is(1199L));
+		assertThat("incorrect version", infos.get(3).getVersion(), is(2));
+		assertThat("incorrect id", infos.get(4).getObjectId(), is(2499L));
+		assertThat("incorrect version", infos.get(4).getVersion(), is(1));
+
+		WorkspaceObjectData wod = ws.getObjects(user, Arrays.asList(
+				new ObjectIdentifier(clone, "o2500"))).get(0);
+		Map<String, Object> expected = new HashMap<String, Object>();
+		expected.put("i", 2500);
+		assertThat("incorrect data", wod.getData(), is((Object) expected));
+		assertThat("incorrect copy ref", wod.getCopyReference().toString(),
+				is(srcid + "/2500/1"));
+		wod = ws.getObjects(user, Arrays.asList(
+				new ObjectIdentifier(clone, "o1200", 1))).get(0);
+		expected.put("i", 1200);
+		assertThat("incorrect data", wod.getData(), is((Object) expected));
+
+		ObjectInformation newobj = ws.saveObjects(user, clone, Arrays.asList(
+				new WorkspaceSaveObject(new HashMap<String, Object>(), SAFE_TYPE1,
+						null, new Provenance(user), false)), getIdFactory(user)).get(0);
+		assertThat("new object id reused a cloned id", newobj.getObjectId(), is(2500L));
+	}
+
 	@Test
 	public void lockWorkspace() throws Exception {
 		WorkspaceUser user = new WorkspaceUser("lockuser");
@@ -4512,6 +4718,110 @@ public class WorkspaceTest extends WorkspaceTester {
 		
 	}
 	
+	@Test
+	public void listObjectsStartAfter() throws Exception {
+		WorkspaceUser u = new WorkspaceUser("listObjsStartAfter");
+		WorkspaceIdentifier wsi1 = new WorkspaceIdentifier("listObjsStartAfter1");
+		WorkspaceIdentifier wsi2 = new WorkspaceIdentifier("listObjsStartAfter2");
+		long wsid1 = ws.createWorkspace(u, wsi1.getName(), false, null, null).getId();
+		ws.createWorkspace(u, wsi2.getName(), false, null, null);
+		Map<String, String> data = new HashMap<String, String>();
+		Provenance p = new Provenance(u);
+		saveObject(u, wsi1, null, data, SAFE_TYPE1, "o1", p);
+		ObjectInformation o1v2 = saveObject(u, wsi1, null, data, SAFE_TYPE1, "o1", p);
+		ObjectInformation o2 = saveObject(u, wsi1, null, data, SAFE_TYPE1, "o2", p);
+		ObjectInformation o3 = saveObject(u, wsi2, null, data, SAFE_TYPE1, "o3", p);
+		List<WorkspaceIdentifier> wsis = Arrays.asList(wsi1, wsi2);
+		
+		ObjectIdentifier start = new ObjectIdentifier(
+				new WorkspaceIdentifier(wsid1), 1, 1);
+		assertThat("correct page", ws.listObjects(u, wsis, null, null, null,
+				null, null, null, false, false, false, true, true, false, -1, 2,
+				start), is(Arrays.asList(o1v2, o2)));
+		start = new ObjectIdentifier(new WorkspaceIdentifier(wsid1), 2, 1);
+		assertThat("correct page", ws.listObjects(u, wsis, null, null, null,
+				null, null, null, false, false, false, true, true, false, -1, 2,
+				start), is(Arrays.asList(o3)));
+		start = new ObjectIdentifier(new WorkspaceIdentifier(wsid1), 1, 2);
+		assertThat("correct page", ws.listObjects(u, wsis, null, null, null,
+				null, null, null, false, false, false, false, true, false, -1, 1,
+				start), is(Arrays.asList(o2)));
+		
+		// runs of filtered versions longer than the limit
+		WorkspaceIdentifier wsi3 = new WorkspaceIdentifier("listObjsStartAfter3");
+		WorkspaceIdentifier wsi4 = new WorkspaceIdentifier("listObjsStartAfter4");
+		WorkspaceUser u2 = new WorkspaceUser("listObjsStartAfter2");
+		long wsid3 = ws.createWorkspace(u, wsi3.getName(), false, null, null).getId();
+		long wsid4 = ws.createWorkspace(u2, wsi4.getName(), false, null, null).getId();
+		ws.setPermissions(u2, wsi4, Arrays.asList(u), Permission.READ);
+		saveObject(u, wsi3, null, data, SAFE_TYPE1, "first", p);
+		List<ObjectInformation> hidden = new LinkedList<ObjectInformation>();
+		for (int i = 1; i <= 5; i++) {
+			hidden.add(ws.saveObjects(u, wsi3, Arrays.asList(
+					new WorkspaceSaveObject(new ObjectIDNoWSNoVer("h" + i),
+							data, SAFE_TYPE1, null, p, true)),
+					getIdFactory(u)).get(0));
+		}
+		ObjectInformation vers = null;
+		for (int i = 1; i <= 5; i++) {
+			vers = saveObject(u, wsi3, null, data, SAFE_TYPE1, "vers", p);
+		}
+		List<ObjectInformation> deleted = new LinkedList<ObjectInformation>();
+		for (int i = 1; i <= 5; i++) {
+			deleted.add(saveObject(u, wsi3, null, data, SAFE_TYPE1, "d" + i, p));
+			ws.setObjectsDeleted(u, Arrays.asList(
+					new ObjectIdentifier(wsi3, "d" + i)), true);
+		}
+		ObjectInformation last = saveObject(u, wsi3, null, data, SAFE_TYPE1, "last", p);
+		saveObject(u2, wsi4, null, data, SAFE_TYPE1, "first", p);
+		List<ObjectInformation> deleted4 = new LinkedList<ObjectInformation>();
+		for (int i = 1; i <= 5; i++) {
+			deleted4.add(saveObject(u2, wsi4, null, data, SAFE_TYPE1, "d" + i, p));
+			ws.setObjectsDeleted(u2, Arrays.asList(
+					new ObjectIdentifier(wsi4, "d" + i)), true);
+		}
+		ObjectInformation last4 = saveObject(u2, wsi4, null, data, SAFE_TYPE1, "last", p);
+		List<WorkspaceIdentifier> wsis34 = Arrays.asList(wsi3, wsi4);
+		
+		start = new ObjectIdentifier(new WorkspaceIdentifier(wsid3), 1, 1);
+		assertThat("correct page", ws.listObjects(u, wsis34, null, null, null,
+				null, null, null, false, false, false, false, true, false, -1, 2,
+				start), is(Arrays.asList(vers, last)));
+		assertThat("correct page", ws.listObjects(u, wsis34, null, null, null,
+				null, null, null, true, false, false, false, true, false, -1, 2,
+				start), is(hidden.subList(0, 2)));
+		assertThat("correct page", ws.listObjects(u, wsis34, null, null, null,
+				null, null, null, false, true, false, false, true, false, -1, 2,
+				new ObjectIdentifier(new WorkspaceIdentifier(wsid3), 7, 5)),
+				is(deleted.subList(0, 2)));
+		// deleted objects are only listed with write access
+		start = new ObjectIdentifier(new WorkspaceIdentifier(wsid4), 1, 1);
+		assertThat("correct page", ws.listObjects(u, wsis34, null, null, null,
+				null, null, null, false, true, false, false, true, false, -1, 2,
+				start), is(Arrays.asList(last4)));
+		assertThat("correct page", ws.listObjects(u2, Arrays.asList(wsi4),
+				null, null, null, null, null, null, false, true, false, false,
+				true, false, -1, 2, start), is(deleted4.subList(0, 2)));
+		
+		try {
+			ws.listObjects(u, wsis, null, null, null, null, null, null, false,
+					false, false, true, true, false, 1, 2, start);
+			fail("listed objects with bad args");
+		} catch (IllegalArgumentException e) {
+			assertThat("correct exception", e.getLocalizedMessage(),
+					is("Cannot specify both skip and an object to start after"));
+		}
+		try {
+			ws.listObjects(u, wsis, null, null, null, null, null, null, false,
+					false, false, true, true, false, -1, 2,
+					new ObjectIdentifier(wsi1, "o1"));
+			fail("listed objects with bad args");
+		} catch (IllegalArgumentException e) {
+			assertThat("correct exception", e.getLocalizedMessage(),
+					is("The object to start after must be specified by an absolute reference"));
+		}
+	}
+	
 	@Test
 	public void getObjectSubdata() throws Exception {
 		/* note most tests are performed at the same time as getObjects, so
@@ -4642,6 +4952,16 @@ public class WorkspaceTest extends WorkspaceTester {
 		compareObjectAndInfo(got.get(2), o2, p2, expdata3, refs2, refmap2);
 		compareObjectAndInfo(got.get(3), o3, p2, expdata4, refs2, refmap2);
 		
+		// fetching the data one object at a time gives the same results
+		List<WorkspaceObjectInformation> woi = ws.getObjectProvenance(user,
+				Arrays.asList(oident1, oident2));
+		compareObjectAndInfo(ws.getObjectData(woi.get(0), new ObjectPaths(
+				Arrays.asList("/map/id3", "/map/id1"))),
+				o1, p1, expdata1, refs1, refmap1);
+		compareObjectAndInfo(ws.getObjectData(woi.get(1), new ObjectPaths(
+				Arrays.asList("/array/2", "/array/0"))),
+				o2, p2, expdata3, refs2, refmap2);
+		
 		// new test for extractor that fails on an array OOB
 		failGetSubset(user, Arrays.asList(
 				new SubObjectIdentifier(oident2, new ObjectPaths(
@@ -5026,6 +5346,125 @@ public class WorkspaceTest extends WorkspaceTester {
 		ws.setGlobalPermission(user2, wsisrc2gl, Permission.NONE);
 	}
 	
+	@Test
+	public void getTransitiveReferences() throws Exception {
+		WorkspaceUser user1 = new WorkspaceUser("transRefUser");
+		WorkspaceUser user2 = new WorkspaceUser("transRefUser2");
+		WorkspaceIdentifier wsi = new WorkspaceIdentifier("transrefs");
+		WorkspaceIdentifier priv = new WorkspaceIdentifier("transrefspriv");
+		ws.createWorkspace(user1, wsi.getName(), false, null, null);
+		ws.setPermissions(user1, wsi, Arrays.asList(user2), Permission.READ);
+		ws.createWorkspace(user2, priv.getName(), false, null, null);
+		
+		TypeDefId reftype = new TypeDefId(new TypeDefName("CopyRev", "RefType"), 1, 0);
+		Map<String, Object> mtdata = new HashMap<String, Object>();
+		Provenance p = new Provenance(user1);
+		
+		// a <- b <- c <- d (provenance), c <- e (unreadable by user1)
+		ws.saveObjects(user1, wsi, Arrays.asList(
+				new WorkspaceSaveObject(new ObjectIDNoWSNoVer("a"), mtdata,
+						SAFE_TYPE1, null, p, false)), getIdFactory(user1));
+		Map<String, Object> refdata = new HashMap<String, Object>();
+		refdata.put("refs", Arrays.asList("transrefs/a"));
+		ws.saveObjects(user1, wsi, Arrays.asList(
+				new WorkspaceSaveObject(new ObjectIDNoWSNoVer("b"), refdata,
+						reftype, null, p, false)), getIdFactory(user1));
+		refdata.put("refs", Arrays.asList("transrefs/b"));
+		ws.saveObjects(user1, wsi, Arrays.asList(
+				new WorkspaceSaveObject(new ObjectIDNoWSNoVer("c"), refdata,
+						reftype, null, p, false)), getIdFactory(user1));
+		ws.saveObjects(user1, wsi, Arrays.asList(
+				new WorkspaceSaveObject(new ObjectIDNoWSNoVer("d"), mtdata,
+						SAFE_TYPE1, null,
+						new Provenance(user1).addAction(new ProvenanceAction()
+						.withWorkspaceObjects(Arrays.asList("transrefs/c"))),
+						false)), getIdFactory(user1));
+		refdata.put("refs", Arrays.asList("transrefs/c"));
+		ws.saveObjects(user2, priv, Arrays.asList(
+				new WorkspaceSaveObject(new ObjectIDNoWSNoVer("e"), refdata,
+						reftype, null, p, false)), getIdFactory(user2));
+		
+		List<ObjectIdentifier> a = Arrays.asList(new ObjectIdentifier(wsi, "a"));
+		List<ObjectIdentifier> d = Arrays.asList(new ObjectIdentifier(wsi, "d"));
+		assertThat("correct downstream refs", getRefNames(
+				ws.getTransitiveReferences(user1, a, true, 10, 100)),
+				is(Arrays.asList(set("b"), set("c"), set("d"))));
+		assertThat("correct downstream refs", getRefNames(
+				ws.getTransitiveReferences(user2, a, true, 10, 100)),
+				is(Arrays.asList(set("b"), set("c"), set("d", "e"))));
+		assertThat("correct depth limited refs", getRefNames(
+				ws.getTransitiveReferences(user1, a, true, 2, 100)),
+				is(Arrays.asList(set("b"), set("c"))));
+		assertThat("correct count limited refs", getRefNames(
+				ws.getTransitiveReferences(user1, a, true, 10, 1)),
+				is(Arrays.asList(set("b"))));
+		assertThat("correct upstream refs", getRefNames(
+				ws.getTransitiveReferences(user1, d, false, 10, 100)),
+				is(Arrays.asList(set("c"), set("b"), set("a"))));
+		List<Set<String>> none = new ArrayList<Set<String>>();
+		assertThat("correct upstream refs", getRefNames(
+				ws.getTransitiveReferences(user1, a, false, 10, 100)),
+				is(none));
+		
+		ws.setObjectsDeleted(user1, Arrays.asList(
+				new ObjectIdentifier(wsi, "c")), true);
+		assertThat("deleted objects not followed", getRefNames(
+				ws.getTransitiveReferences(user2, a, true, 10, 100)),
+				is(Arrays.asList(set("b"))));
+		
+		try {
+			ws.getTransitiveReferences(user1, a, true, 0, 100);
+			fail("got refs with bad depth");
+		} catch (IllegalArgumentException e) {
+			assertThat("correct exception", e.getLocalizedMessage(),
+					is("Maximum depth must be between 1 and 100"));
+		}
+		try {
+			ws.getTransitiveReferences(user1, a, true, 10, 10001);
+			fail("got refs with bad count");
+		} catch (IllegalArgumentException e) {
+			assertThat("correct exception", e.getLocalizedMessage(),
+					is("Maximum number of objects must be between 1 and 10000"));
+		}
+		try {
+			ws.getTransitiveReferences(user1, Arrays.asList(
+					new ObjectIdentifier(priv, "e")), false, 10, 100);
+			fail("got refs from private workspace");
+		} catch (InaccessibleObjectException ioe) {
+			assertThat("correct exception message", ioe.getLocalizedMessage(),
+					is("Object e cannot be accessed: User transRefUser may not read workspace transrefspriv"));
+		}
+		
+		// a level entirely in deleted workspaces
+		refdata.put("refs", Arrays.asList("transrefs/d"));
+		ws.saveObjects(user2, priv, Arrays.asList(
+				new WorkspaceSaveObject(new ObjectIDNoWSNoVer("f"), refdata,
+						reftype, null, p, false)), getIdFactory(user2));
+		assertThat("correct downstream refs", getRefNames(
+				ws.getTransitiveReferences(user2, d, true, 10, 100)),
+				is(Arrays.asList(set("f"))));
+		ws.setWorkspaceDeleted(user2, priv, true);
+		assertThat("objects in deleted workspaces not returned", getRefNames(
+				ws.getTransitiveReferences(user2, d, true, 10, 100)),
+				is(none));
+	}
+	
+	private List<Set<String>> getRefNames(List<Set<ObjectInformation>> levels) {
+		List<Set<String>> ret = new ArrayList<Set<String>>();
+		for (Set<ObjectInformation> level: levels) {
+			Set<String> names = new HashSet<String>();
+			for (ObjectInformation oi: level) {
+				names.add(oi.getObjectName());
+			}
+			ret.add(names);
+		}
+		return ret;
+	}
+	
+	private Set<String> set(String... names) {
+		return new HashSet<String>(Arrays.asList(names));
+	}
+	
 	@Test
 	public void getReferencedObjects() throws Exception {
 		WorkspaceUser user1 = new WorkspaceUser("refedUser");
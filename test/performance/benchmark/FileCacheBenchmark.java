@@ -0,0 +1,100 @@
+package performance.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import us.kbase.typedobj.core.ObjectPaths;
+import us.kbase.typedobj.core.TempFilesManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+
+/** Benchmarks for the ByteArrayFileCacheManager, which buffers object data
+ * returned from the workspace. Data is either kept in memory or spilled to
+ * disk, depending on the onDisk parameter.
+ * @author gaprice@lbl.gov
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FileCacheBenchmark {
+
+	private static final ObjectPaths PATHS = new ObjectPaths(Arrays.asList(
+			"/id", "/features/[*]/id", "/features/[*]/md5"));
+
+	@Param({"100", "10000"})
+	public int features;
+
+	@Param({"false", "true"})
+	public boolean onDisk;
+
+	private File tempdir;
+	private TempFilesManager tfm;
+	private ByteArrayFileCacheManager man;
+	private byte[] genome;
+	private ByteArrayFileCache parent;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		tempdir = Files.createTempDirectory("FileCacheBenchmark").toFile();
+		tfm = new TempFilesManager(tempdir);
+		// the workspace sorts data before saving, so do the same here
+		final ObjectMapper mapper = new ObjectMapper().configure(
+				SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+		genome = mapper.writeValueAsBytes(
+				new GenomeGenerator().generate(features));
+		man = new ByteArrayFileCacheManager(onDisk ? 1 : Integer.MAX_VALUE,
+				Long.MAX_VALUE, tfm);
+		parent = man.createBAFC(new ByteArrayInputStream(genome), true,
+				true);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		parent.destroy();
+		tfm.cleanup();
+		FileUtils.deleteDirectory(tempdir);
+	}
+
+	@Benchmark
+	public long createAndDestroy() throws Exception {
+		final ByteArrayFileCache bafc = man.createBAFC(
+				new ByteArrayInputStream(genome), true, true);
+		final long size = bafc.getSize();
+		bafc.destroy();
+		return size;
+	}
+
+	@Benchmark
+	public long subdataExtraction() throws Exception {
+		final ByteArrayFileCache bafc = man.getSubdataExtraction(parent,
+				PATHS);
+		final long size = bafc.getSize();
+		bafc.destroy();
+		return size;
+	}
+}
@@ -0,0 +1,111 @@
+package performance.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/** Generates synthetic SupahFakeKBGA.Genome documents for benchmarking.
+ *
+ * Documents are generated from a fixed seed, so a document with a given
+ * number of features is identical between runs and releases. Map keys are
+ * not in sorted order, so the documents exercise the sorting code on save.
+ * @author gaprice@lbl.gov
+ *
+ */
+public class GenomeGenerator {
+
+	public static final String SPEC_FILE =
+			"test/performance/SupahFakeKBGA.spec";
+	public static final String MODULE = "SupahFakeKBGA";
+	public static final String TYPE = "Genome";
+
+	private static final long SEED = 83333;
+	private static final String BASES = "ACGT";
+	private static final String AMINO_ACIDS = "ACDEFGHIKLMNPQRSTVWY";
+	private static final List<String> FUNCTIONS = Arrays.asList(
+			"hypothetical protein",
+			"DNA polymerase III beta subunit (EC 2.7.7.7)",
+			"Translation elongation factor Tu",
+			"ABC transporter, ATP-binding protein",
+			"Transcriptional regulator, LysR family",
+			"50S ribosomal protein L7/L12");
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private Random rand;
+
+	/** Generate a genome.
+	 * @param features the number of features in the genome.
+	 * @return the genome as a map.
+	 */
+	public Map<String, Object> generate(final int features) {
+		rand = new Random(SEED);
+		final Map<String, Object> genome = new LinkedHashMap<String, Object>();
+		genome.put("source_id", "NC_000913");
+		genome.put("scientific_name", "Escherichia coli K-12 MG1655");
+		genome.put("id", "kb|g.0");
+		genome.put("source", "KBase Central Store");
+		genome.put("genetic_code", 11);
+		genome.put("domain", "Bacteria");
+		final List<Map<String, Object>> feats =
+				new ArrayList<Map<String, Object>>(features);
+		for (int i = 0; i < features; i++) {
+			feats.add(generateFeature(i));
+		}
+		genome.put("features", feats);
+		return genome;
+	}
+
+	/** Generate a genome as JSON.
+	 * @param features the number of features in the genome.
+	 * @return the genome as UTF-8 encoded JSON.
+	 * @throws IOException if the genome could not be serialized.
+	 */
+	public byte[] generateJson(final int features) throws IOException {
+		return MAPPER.writeValueAsBytes(generate(features));
+	}
+
+	private Map<String, Object> generateFeature(final int num) {
+		final Map<String, Object> f = new LinkedHashMap<String, Object>();
+		final String prot = randomString(AMINO_ACIDS, 100 + rand.nextInt(400));
+		f.put("type", "peg");
+		f.put("id", "kb|g.0.peg." + num);
+		f.put("protein_translation", prot);
+		f.put("md5", DigestUtils.md5Hex(prot));
+		f.put("function", FUNCTIONS.get(rand.nextInt(FUNCTIONS.size())));
+		final List<List<Object>> loc = new ArrayList<List<Object>>();
+		final int regions = 1 + rand.nextInt(2);
+		for (int i = 0; i < regions; i++) {
+			loc.add(Arrays.asList((Object) "kb|g.0.c.1",
+					rand.nextInt(4000000) + 1,
+					rand.nextBoolean() ? "+" : "-",
+					(prot.length() + 1) * 3));
+		}
+		f.put("location", loc);
+		final List<String> aliases = new ArrayList<String>();
+		aliases.add("b" + String.format("%04d", num));
+		aliases.add(randomString(BASES, 4).toLowerCase() + (char) ('A' + num % 26));
+		f.put("aliases", aliases);
+		final List<List<Object>> annos = new ArrayList<List<Object>>();
+		annos.add(Arrays.asList((Object) "Set function from RAST",
+				"rast", 1300000000 + rand.nextInt(100000000)));
+		f.put("annotations", annos);
+		return f;
+	}
+
+	private String randomString(final String chars, final int length) {
+		final StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			sb.append(chars.charAt(rand.nextInt(chars.length())));
+		}
+		return sb.toString();
+	}
+}
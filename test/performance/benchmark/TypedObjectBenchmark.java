@@ -0,0 +1,176 @@
+package performance.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+
+import us.kbase.common.service.JsonTokenStream;
+import us.kbase.common.service.UObject;
+import us.kbase.common.utils.sortjson.UTF8JsonSorterFactory;
+import us.kbase.typedobj.core.ExtractedSubsetAndMetadata;
+import us.kbase.typedobj.core.ObjectPaths;
+import us.kbase.typedobj.core.SubdataExtractor;
+import us.kbase.typedobj.core.TypeDefId;
+import us.kbase.typedobj.core.TypedObjectValidationReport;
+import us.kbase.typedobj.core.TypedObjectValidator;
+import us.kbase.typedobj.core.Writable;
+import us.kbase.typedobj.db.FileTypeStorage;
+import us.kbase.typedobj.db.TypeDefinitionDB;
+import us.kbase.typedobj.idref.IdReferenceHandlerSet;
+import us.kbase.typedobj.idref.IdReferenceHandlerSetFactory;
+
+/** Benchmarks for the typed object hot paths used when saving and getting
+ * objects. Runs against a type database in a temporary directory and needs
+ * no external services.
+ *
+ * The save path is validate -> getRelabeledSize -> sort -> extract the
+ * searchable subset. Each stage that caches its results in the validation
+ * report gets a freshly validated report per invocation.
+ * @author gaprice@lbl.gov
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TypedObjectBenchmark {
+
+	private static final String USER = "benchmarker";
+	private static final TypeDefId TYPE = new TypeDefId(
+			GenomeGenerator.MODULE + "." + GenomeGenerator.TYPE);
+	private static final UTF8JsonSorterFactory SORT_FAC =
+			new UTF8JsonSorterFactory(100000000);
+	private static final long MAX_SUBSET_SIZE = 15000000;
+	private static final long MAX_METADATA_SIZE = 16000;
+	private static final ObjectPaths PATHS = new ObjectPaths(Arrays.asList(
+			"/id", "/scientific_name", "/features/[*]/id",
+			"/features/[*]/location"));
+
+	@Param({"100", "10000"})
+	public int features;
+
+	private File tempdir;
+	private TypedObjectValidator validator;
+	private byte[] genome;
+	private TypedObjectValidationReport sorted;
+	private byte[] sortedGenome;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		tempdir = Files.createTempDirectory("TypedObjectBenchmark").toFile();
+		final File storage = new File(tempdir, "typestorage");
+		storage.mkdir();
+		final TypeDefinitionDB db = new TypeDefinitionDB(
+				new FileTypeStorage(storage.getAbsolutePath()), tempdir);
+		final String spec = new String(Files.readAllBytes(
+				Paths.get(GenomeGenerator.SPEC_FILE)), StandardCharsets.UTF_8);
+		db.requestModuleRegistration(GenomeGenerator.MODULE, USER);
+		db.approveModuleRegistrationRequest(USER, GenomeGenerator.MODULE,
+				true);
+		db.registerModule(spec, Arrays.asList(GenomeGenerator.TYPE), USER);
+		db.releaseModule(GenomeGenerator.MODULE, USER, false);
+		validator = new TypedObjectValidator(db);
+		genome = new GenomeGenerator().generateJson(features);
+		sorted = validate();
+		sorted.sort(SORT_FAC);
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		final Writable w = sorted.createJsonWritable();
+		w.write(os);
+		w.releaseResources();
+		sortedGenome = os.toByteArray();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(tempdir);
+	}
+
+	private TypedObjectValidationReport validate() throws Exception {
+		final IdReferenceHandlerSet<String> handlers =
+				new IdReferenceHandlerSetFactory(100000)
+				.createHandlers(String.class).associateObject("bench");
+		final TypedObjectValidationReport rep = validator.validate(
+				new UObject(new JsonTokenStream(genome), null), TYPE,
+				handlers);
+		if (!rep.isInstanceValid()) {
+			throw new IllegalStateException("Generated genome is invalid: " +
+					rep.getErrorMessages());
+		}
+		handlers.processIDs();
+		return rep;
+	}
+
+	/** A freshly validated report for stages that cache their results. */
+	@State(Scope.Thread)
+	public static class Validated {
+
+		private TypedObjectValidationReport rep;
+
+		@Setup(Level.Invocation)
+		public void setUp(final TypedObjectBenchmark b) throws Exception {
+			rep = b.validate();
+		}
+	}
+
+	@Benchmark
+	public TypedObjectValidationReport validateGenome() throws Exception {
+		return validate();
+	}
+
+	@Benchmark
+	public long relabeledSize(final Validated v) throws Exception {
+		return v.rep.getRelabeledSize();
+	}
+
+	@Benchmark
+	public TypedObjectValidationReport sort(final Validated v)
+			throws Exception {
+		v.rep.sort(SORT_FAC);
+		return v.rep;
+	}
+
+	@Benchmark
+	public ExtractedSubsetAndMetadata extractSubsetAndMetadata()
+			throws Exception {
+		// calls SubsetAndMetadataExtractor.extractFields
+		return sorted.extractSearchableWsSubsetAndMetadata(MAX_SUBSET_SIZE,
+				MAX_METADATA_SIZE);
+	}
+
+	@Benchmark
+	public byte[] extractSubdata() throws Exception {
+		final JsonFactory jf = new JsonFactory();
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		final JsonParser jp = jf.createParser(sortedGenome);
+		final JsonGenerator jg = jf.createGenerator(os);
+		SubdataExtractor.extract(PATHS, jp, jg);
+		jg.close();
+		jp.close();
+		return os.toByteArray();
+	}
+}
@@ -679,12 +679,19 @@ module Workspace {
 	funcdef save_object(save_object_params params) 
 		returns(object_metadata metadata) authentication optional;
 	
+	/* The id of a chunked upload of object data. */
+	typedef string upload_id;
+	
 	/* An object and associated data required for saving.
 	
 		Required arguments:
 		type_string type - the type of the object. Omit the version information
 			to use the latest version.
+		
+		One, and only one, of the following is required:
 		UnspecifiedObject data - the object data.
+		upload_id upload_id - the id of a completed chunked upload containing
+			the object data. The upload is deleted once the object is saved.
 		
 		Optional arguments:
 		One of an object name or id. If no name or id is provided the name
@@ -711,6 +718,7 @@ module Workspace {
 		usermeta meta;
 		list<ProvenanceAction> provenance;
 		boolean hidden;
+		upload_id upload_id;
 	} ObjectSaveData;
 	
 	/* Input parameters for the "save_objects" function.
@@ -737,6 +745,51 @@ module Workspace {
 	funcdef save_objects(SaveObjectsParams params)
 		returns (list<object_info> info);
 	
+	/* 
+		Start a chunked upload of the data for an object. Chunked uploads
+		allow saving objects that are too large to send in a single
+		save_objects call. Once all the chunks are uploaded, save the object
+		by providing the upload id to save_objects rather than the data.
+		
+		Uploads are held by the server process that started them, so an
+		interrupted upload can only be resumed if it is sent to the same
+		server, and is lost if that server restarts. Idle uploads are
+		deleted after a day. A user may have at most 10 uploads in progress,
+		and the server at most 100.
+		
+		int chunk_size - the size of each chunk in bytes. Every chunk except
+			the last must be exactly this size. The maximum chunk size is
+			50MB.
+	*/
+	funcdef start_upload(int chunk_size) returns (upload_id id)
+		authentication required;
+	
+	/* 
+		Upload a chunk of object data. Chunks may be uploaded in any order,
+		and a chunk may be uploaded again, for example after a network error.
+		
+		upload_id id - the id of the upload.
+		int chunk - the number of the chunk, starting at 0.
+		string data - the chunk data, base64 encoded.
+		string md5 - the hex encoded MD5 checksum of the chunk data before
+			encoding.
+	*/
+	funcdef upload_chunk(upload_id id, int chunk, string data, string md5)
+		returns () authentication required;
+	
+	/* 
+		List the chunks received so far for an upload, so that an interrupted
+		upload may be resumed.
+	*/
+	funcdef get_upload_chunks(upload_id id) returns (list<int> chunks)
+		authentication required;
+	
+	/* 
+		Abort an upload and delete the uploaded data. Uploads that are not
+		accessed for a day are deleted automatically.
+	*/
+	funcdef abort_upload(upload_id id) returns () authentication required;
+	
 	authentication optional;
 	
 	/* Input parameters for the "get_object" function. Provided for backwards
@@ -910,6 +963,44 @@ module Workspace {
 	funcdef list_referencing_object_counts(list<ObjectIdentity> object_ids)
 		returns (list<int> counts);
 	
+	/* Input parameters for the "list_transitive_references" function.
+	
+		Required arguments:
+		list<ObjectIdentity> objects - the objects at which to start.
+		
+		Optional arguments:
+		boolean downstream - if true, list the objects that reference the
+			objects, the objects that reference those objects, and so on.
+			Otherwise list the objects referenced by the objects, including
+			references in their provenance, the objects referenced by those
+			objects, and so on. Default false.
+		int maxDepth - the maximum number of references to follow from the
+			objects. Default 10, maximum 100.
+		int maxObjects - the maximum number of objects to return. Default
+			and maximum 10000.
+	*/
+	typedef structure {
+		list<ObjectIdentity> objects;
+		boolean downstream;
+		int maxDepth;
+		int maxObjects;
+	} ListTransitiveReferencesParams;
+	
+	/* 
+		List the objects reachable from one or more objects by following
+		references.
+		
+		The objects are returned in levels. The first level contains the
+		objects one reference away from the input objects, the second level
+		the objects two references away, and so on. Each object is returned
+		once, in the first level in which it is found.
+		
+		Only objects accessible to the user are returned, and references
+		are not followed through inaccessible or deleted objects.
+	*/
+	funcdef list_transitive_references(ListTransitiveReferencesParams params)
+		returns (list<list<object_info>> levels);
+	
 	/* Get objects by references from other objects.
 	
 		NOTE: In the vast majority of cases, this method is not necessary and
@@ -1074,6 +1165,15 @@ module Workspace {
 			< 0 are treated as 0, the default.
 		int limit - limit the output to X objects. Default and maximum value
 			is 10000. Limit values < 1 are treated as 10000, the default.
+		obj_ref startAfter - only return objects after this object version,
+			which must be given as a reference of the form
+			wsid/objid/version, e.g. the workspace id, object id and version
+			of the last object returned by the previous call. Objects are
+			then returned in order of workspace id, object id and version,
+			and the limit applies to the objects returned after filtering,
+			so fewer objects than the limit means there are no more
+			objects. This is much faster than skip for large workspaces and
+			cannot be combined with skip.
 		
 	*/
 	typedef structure {
@@ -1093,6 +1193,7 @@ module Workspace {
 		boolean excludeGlobal;
 		int skip;
 		int limit;
+		obj_ref startAfter;
 	} ListObjectsParams;
 	
 	/*